@@ -34,6 +34,11 @@ public class ACL implements Serializable
      */
     private final List<ACE> _list;
 
+    /**
+     * Compiled form of this ACL, created on first use.
+     */
+    private transient volatile CompiledACL _compiled;
+
     /**
      * @param rsId
      *            Resource Identifier
@@ -68,6 +73,22 @@ public class ACL implements Serializable
         return _list.isEmpty();
     }
 
+    /**
+     * Returns the compiled form of this ACL. The compiled form is created
+     * on first use and shared by subsequent calls, thus an ACL that is
+     * kept in a cache is only compiled once.
+     *
+     * @return compiled form of this ACL
+     */
+    public CompiledACL compile() {
+        CompiledACL compiled = _compiled;
+        if (compiled == null) {
+            compiled = new CompiledACL(_rsType, _list);
+            _compiled = compiled;
+        }
+        return compiled;
+    }
+
     public String toOrgString() {
         StringBuilder sb = new StringBuilder();
         sb.append(_rsType.getValue()).append(LINE_SEPARATOR);
@@ -0,0 +1,141 @@
+package org.dcache.acl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.dcache.acl.enums.AceFlags;
+import org.dcache.acl.enums.AceType;
+import org.dcache.acl.enums.RsType;
+import org.dcache.acl.enums.Who;
+
+/**
+ * Pre-processed form of an ACL suitable for repeated evaluation.
+ * <p>
+ * Evaluating an ACL determines, for each access bit, the first ACE that
+ * applies to the subject and defines that bit. Much of this work does not
+ * depend on the subject: ACEs that only apply to inheriting objects are
+ * irrelevant for directories, and bits defined by an EVERYONE@ ACE are
+ * decided for all subjects, so no later ACE can define them. Compiling
+ * removes such ACEs and bits once, so that each evaluation only has to
+ * match the remaining ACEs against the subject.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public class CompiledACL
+{
+    /**
+     * The identity of the subject against which an ACL is evaluated.
+     */
+    public interface Principals
+    {
+        boolean hasUid(int uid);
+
+        boolean hasGid(int gid);
+
+        boolean isAnonymous();
+    }
+
+    private final Who[] _who;
+    private final int[] _whoId;
+    private final int[] _mask;
+    private final boolean[] _allow;
+
+    public CompiledACL(RsType rsType, List<ACE> aces)
+    {
+        int size = aces.size();
+        Who[] who = new Who[size];
+        int[] whoId = new int[size];
+        int[] mask = new int[size];
+        boolean[] allow = new boolean[size];
+
+        int n = 0;
+        int everyoneDefMsk = 0;
+        for (ACE ace : aces) {
+            if (rsType == RsType.DIR && AceFlags.INHERIT_ONLY_ACE.matches(ace.getFlags())) {
+                continue;
+            }
+            int effective = ace.getAccessMsk() & ~everyoneDefMsk;
+            if (effective == 0) {
+                continue;
+            }
+            boolean isAllowed = ace.getType() == AceType.ACCESS_ALLOWED_ACE_TYPE;
+            if (ace.getWho() == Who.EVERYONE) {
+                everyoneDefMsk |= effective;
+            }
+            who[n] = ace.getWho();
+            whoId[n] = ace.getWhoID();
+            mask[n] = effective;
+            allow[n] = isAllowed;
+            n++;
+        }
+
+        _who = (n == size) ? who : Arrays.copyOf(who, n);
+        _whoId = (n == size) ? whoId : Arrays.copyOf(whoId, n);
+        _mask = (n == size) ? mask : Arrays.copyOf(mask, n);
+        _allow = (n == size) ? allow : Arrays.copyOf(allow, n);
+    }
+
+    /**
+     * Evaluates the ACL for a subject.
+     *
+     * @param principals the subject requesting access
+     * @param ownerUid the uid of the owner of the object
+     * @param ownerGid the gid of the owning group of the object
+     * @return the mask of bits defined by the ACL in the upper 32 bits and
+     * the mask of allowed bits in the lower 32 bits
+     */
+    public long evaluate(Principals principals, int ownerUid, int ownerGid)
+    {
+        int defMsk = 0;
+        int allowMsk = 0;
+        for (int i = 0; i < _who.length && defMsk != -1; i++) {
+            int mask = _mask[i] & ~defMsk;
+            if (mask == 0 || !matches(i, principals, ownerUid, ownerGid)) {
+                continue;
+            }
+            defMsk |= mask;
+            if (_allow[i]) {
+                allowMsk |= mask;
+            }
+        }
+        return ((long) defMsk << 32) | (allowMsk & 0xFFFFFFFFL);
+    }
+
+    private boolean matches(int i, Principals principals, int ownerUid, int ownerGid)
+    {
+        switch (_who[i]) {
+        case OWNER:
+            return principals.hasUid(ownerUid);
+        case OWNER_GROUP:
+            return principals.hasGid(ownerGid);
+        case EVERYONE:
+            return true;
+        case ANONYMOUS:
+            return principals.isAnonymous();
+        case AUTHENTICATED:
+            return !principals.isAnonymous();
+        case USER:
+            return principals.hasUid(_whoId[i]);
+        case GROUP:
+            return principals.hasGid(_whoId[i]);
+        default:
+            throw new IllegalStateException("Invalid who: " + _who[i]);
+        }
+    }
+
+    /**
+     * Returns the defined bits of a result of {@link #evaluate}.
+     */
+    public static int defMsk(long result)
+    {
+        return (int) (result >>> 32);
+    }
+
+    /**
+     * Returns the allowed bits of a result of {@link #evaluate}.
+     */
+    public static int allowMsk(long result)
+    {
+        return (int) result;
+    }
+}
@@ -5,17 +5,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.security.auth.Subject;
 
-import java.util.List;
-
-import org.dcache.acl.ACE;
 import org.dcache.acl.ACL;
-import org.dcache.acl.ACLException;
+import org.dcache.acl.CompiledACL;
 import org.dcache.acl.Owner;
 import org.dcache.acl.Permission;
-import org.dcache.acl.enums.AceFlags;
 import org.dcache.acl.enums.RsType;
+import org.dcache.auth.GidPrincipal;
 import org.dcache.auth.Origin;
 import org.dcache.auth.Subjects;
+import org.dcache.auth.UidPrincipal;
 
 /**
  * The AclMapper has the task to evaluate an ACL taking information on the subject, object and
@@ -48,25 +46,9 @@ public class AclMapper {
             }
 
             rsType = acl.getRsType();
-            int def_msk = 0, allow_msk = 0;
-            List<ACE> aces = acl.getList();
-            for (ACE ace : aces) {
-                int mask;
-                Permission permACE = getPermission(subject, origin, owner, ace, rsType);
-                if ( permACE != null && (mask = (permACE.getDefMsk() & (~def_msk))) != 0 ) {
-                    // mask not empty and contains only "new" bits
-                    def_msk |= mask;
-                    if ( permACE.getAllowMsk() == 0 ) {
-                        allow_msk |= mask;
-                    }
-                }
-            }
-
-            permACL.setDefMsk(def_msk);
-            permACL.setAllowMsk(allow_msk);
-
-        } catch (ACLException e) {
-            logger.error(e.getMessage());
+            long result = acl.compile().evaluate(new SubjectPrincipals(subject), owner.getUid(), owner.getGid());
+            permACL.setDefMsk(CompiledACL.defMsk(result));
+            permACL.setAllowMsk(CompiledACL.allowMsk(result));
         } finally {
             if ( logger.isDebugEnabled() ) {
                 logger.debug("Getted Permission: {}", (rsType == null ? permACL
@@ -86,64 +68,47 @@ public class AclMapper {
         return perms;
     }
 
-    private static Permission getPermission(Subject subject, Origin origin, Owner owner, ACE ace, RsType rsType) throws ACLException {
-
-        Permission perm = null;
-        // match this ace only if either recourse is not a directory or an INHERIT_ONLY_ACE bit is not set in ace.flags
-        if ( rsType == RsType.DIR && AceFlags.INHERIT_ONLY_ACE.matches(ace.getFlags()) ) {
-            return null;
+    /**
+     * Principals of a subject. The uids and gids are extracted once, as an
+     * ACL typically checks several of them.
+     */
+    private static class SubjectPrincipals implements CompiledACL.Principals
+    {
+        private final long[] _uids;
+        private final long[] _gids;
+
+        SubjectPrincipals(Subject subject)
+        {
+            _uids = subject.getPrincipals(UidPrincipal.class).stream().mapToLong(UidPrincipal::getUid).toArray();
+            _gids = subject.getPrincipals(GidPrincipal.class).stream().mapToLong(GidPrincipal::getGid).toArray();
         }
 
-        switch (ace.getWho()) {
-        case OWNER:
-            if ( Subjects.hasUid(subject, owner.getUid()) ) {
-                perm = new Permission(ace.getAccessMsk(), ace.getType()
-                        .getValue());
-            }
-            break;
-
-        case OWNER_GROUP:
-            if ( Subjects.hasGid(subject, owner.getGid()) ) {
-                perm = new Permission(ace.getAccessMsk(), ace.getType()
-                        .getValue());
-            }
-            break;
-
-        case EVERYONE:
-            perm = new Permission(ace.getAccessMsk(), ace.getType().getValue());
-            break;
-
-        case ANONYMOUS:
-            if (Subjects.isNobody(subject)) {
-                perm = new Permission(ace.getAccessMsk(), ace.getType().getValue());
-            }
-            break;
+        @Override
+        public boolean hasUid(int uid)
+        {
+            return contains(_uids, uid);
+        }
 
-        case AUTHENTICATED:
-            if (!Subjects.isNobody(subject)) {
-                perm = new Permission(ace.getAccessMsk(), ace.getType().getValue());
-            }
-            break;
+        @Override
+        public boolean hasGid(int gid)
+        {
+            return contains(_gids, gid);
+        }
 
-        case USER:
-            if ( Subjects.hasUid(subject, ace.getWhoID()) ) {
-                perm = new Permission(ace.getAccessMsk(), ace.getType()
-                        .getValue());
-            }
-            break;
+        @Override
+        public boolean isAnonymous()
+        {
+            return _uids.length == 0;
+        }
 
-        case GROUP:
-            if ( Subjects.hasGid(subject, ace.getWhoID()) ) {
-                perm = new Permission(ace.getAccessMsk(), ace.getType()
-                        .getValue());
+        private static boolean contains(long[] ids, long id)
+        {
+            for (long i : ids) {
+                if (i == id) {
+                    return true;
+                }
             }
-            break;
-
-        default:
-            throw new ACLException("Get Permission", "Invalid who: " + ace.getWho());
+            return false;
         }
-
-        return perm;
     }
-
 }
@@ -0,0 +1,170 @@
+package org.dcache.acl.mapper;
+
+import org.junit.Test;
+
+import javax.security.auth.Subject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.dcache.acl.ACE;
+import org.dcache.acl.ACL;
+import org.dcache.acl.Owner;
+import org.dcache.acl.Permission;
+import org.dcache.acl.enums.AceFlags;
+import org.dcache.acl.enums.AceType;
+import org.dcache.acl.enums.RsType;
+import org.dcache.acl.enums.Who;
+import org.dcache.auth.Subjects;
+
+import static org.dcache.acl.enums.AccessMask.*;
+import static org.dcache.acl.enums.AceType.*;
+import static org.junit.Assert.*;
+
+public class AclMapperTest {
+
+    private static final Owner OWNER = new Owner(1000, 100);
+
+    @Test
+    public void testFirstMatchingAceDefinesBit() {
+        ACL acl = new ACL(RsType.FILE, Arrays.asList(
+                new ACE(ACCESS_DENIED_ACE_TYPE, 0, WRITE_DATA.getValue(), Who.USER, 2000),
+                new ACE(ACCESS_ALLOWED_ACE_TYPE, 0, READ_DATA.getValue() | WRITE_DATA.getValue(), Who.EVERYONE, -1)));
+
+        Permission perm = AclMapper.getPermission(Subjects.of(2000, 200, new int[0]), null, OWNER, acl);
+        assertEquals(READ_DATA.getValue() | WRITE_DATA.getValue(), perm.getDefMsk());
+        assertEquals(READ_DATA.getValue(), perm.getAllowMsk());
+
+        perm = AclMapper.getPermission(Subjects.of(3000, 300, new int[0]), null, OWNER, acl);
+        assertEquals(READ_DATA.getValue() | WRITE_DATA.getValue(), perm.getAllowMsk());
+    }
+
+    @Test
+    public void testEveryoneShadowsLaterAces() {
+        ACL acl = new ACL(RsType.FILE, Arrays.asList(
+                new ACE(ACCESS_DENIED_ACE_TYPE, 0, WRITE_DATA.getValue(), Who.EVERYONE, -1),
+                new ACE(ACCESS_ALLOWED_ACE_TYPE, 0, WRITE_DATA.getValue(), Who.OWNER, -1)));
+
+        Permission perm = AclMapper.getPermission(Subjects.of(1000, 100, new int[0]), null, OWNER, acl);
+        assertEquals(WRITE_DATA.getValue(), perm.getDefMsk());
+        assertEquals(0, perm.getAllowMsk());
+    }
+
+    @Test
+    public void testInheritOnlyAceIgnoredForDirectory() {
+        ACE ace = new ACE(ACCESS_ALLOWED_ACE_TYPE, AceFlags.INHERIT_ONLY_ACE.getValue(),
+                LIST_DIRECTORY.getValue(), Who.EVERYONE, -1);
+
+        Permission perm = AclMapper.getPermission(Subjects.NOBODY, null, OWNER,
+                new ACL(RsType.DIR, Arrays.asList(ace)));
+        assertEquals(0, perm.getDefMsk());
+    }
+
+    @Test
+    public void testAnonymousAndAuthenticated() {
+        ACL acl = new ACL(RsType.FILE, Arrays.asList(
+                new ACE(ACCESS_DENIED_ACE_TYPE, 0, READ_DATA.getValue(), Who.ANONYMOUS, -1),
+                new ACE(ACCESS_ALLOWED_ACE_TYPE, 0, READ_DATA.getValue(), Who.AUTHENTICATED, -1)));
+
+        assertEquals(0, AclMapper.getPermission(Subjects.NOBODY, null, OWNER, acl).getAllowMsk());
+        assertEquals(READ_DATA.getValue(),
+                AclMapper.getPermission(Subjects.of(2000, 200, new int[0]), null, OWNER, acl).getAllowMsk());
+    }
+
+    @Test
+    public void testRootHasAllPermissions() {
+        ACL acl = new ACL(RsType.FILE, Arrays.asList(
+                new ACE(ACCESS_DENIED_ACE_TYPE, 0, READ_DATA.getValue(), Who.EVERYONE, -1)));
+
+        Permission perm = AclMapper.getPermission(Subjects.ROOT, null, OWNER, acl);
+        assertEquals(Permission.ALLOW_ALL, perm.getAllowMsk());
+    }
+
+    @Test
+    public void testCompiledAclMatchesAceByAceEvaluation() {
+        Random random = new Random(42);
+        int[] masks = { READ_DATA.getValue(), WRITE_DATA.getValue(), APPEND_DATA.getValue(),
+                EXECUTE.getValue(), DELETE.getValue(), READ_ACL.getValue() };
+        Who[] whos = Who.values();
+        AceType[] types = AceType.values();
+        Subject[] subjects = {
+                Subjects.NOBODY,
+                Subjects.of(1000, 100, new int[0]),
+                Subjects.of(2000, 100, new int[] { 200 }),
+                Subjects.of(3000, 300, new int[] { 100, 200 })
+        };
+
+        for (int n = 0; n < 1000; n++) {
+            List<ACE> aces = new ArrayList<>();
+            for (int i = random.nextInt(8); i > 0; i--) {
+                int mask = 0;
+                for (int bits = 1 + random.nextInt(3); bits > 0; bits--) {
+                    mask |= masks[random.nextInt(masks.length)];
+                }
+                int flags = random.nextInt(4) == 0 ? AceFlags.INHERIT_ONLY_ACE.getValue() : 0;
+                Who who = whos[random.nextInt(whos.length)];
+                int id = (who == Who.USER) ? 1000 * (1 + random.nextInt(3))
+                        : (who == Who.GROUP) ? 100 * (1 + random.nextInt(3)) : -1;
+                aces.add(new ACE(types[random.nextInt(types.length)], flags, mask, who, id));
+            }
+            RsType rsType = random.nextBoolean() ? RsType.DIR : RsType.FILE;
+            ACL acl = new ACL(rsType, aces);
+
+            for (Subject subject : subjects) {
+                Permission expected = evaluate(subject, OWNER, acl);
+                Permission actual = AclMapper.getPermission(subject, null, OWNER, acl);
+                assertEquals(acl.toString(), expected.getDefMsk(), actual.getDefMsk());
+                assertEquals(acl.toString(), expected.getAllowMsk(), actual.getAllowMsk());
+            }
+        }
+    }
+
+    /**
+     * Straightforward ACE by ACE evaluation of an ACL.
+     */
+    private static Permission evaluate(Subject subject, Owner owner, ACL acl) {
+        int defMsk = 0;
+        int allowMsk = 0;
+        for (ACE ace : acl.getList()) {
+            if (acl.getRsType() == RsType.DIR && AceFlags.INHERIT_ONLY_ACE.matches(ace.getFlags())) {
+                continue;
+            }
+            boolean matches;
+            switch (ace.getWho()) {
+            case OWNER:
+                matches = Subjects.hasUid(subject, owner.getUid());
+                break;
+            case OWNER_GROUP:
+                matches = Subjects.hasGid(subject, owner.getGid());
+                break;
+            case EVERYONE:
+                matches = true;
+                break;
+            case ANONYMOUS:
+                matches = Subjects.isNobody(subject);
+                break;
+            case AUTHENTICATED:
+                matches = !Subjects.isNobody(subject);
+                break;
+            case USER:
+                matches = Subjects.hasUid(subject, ace.getWhoID());
+                break;
+            case GROUP:
+                matches = Subjects.hasGid(subject, ace.getWhoID());
+                break;
+            default:
+                throw new AssertionError();
+            }
+            int mask = ace.getAccessMsk() & ~defMsk;
+            if (matches && mask != 0) {
+                defMsk |= mask;
+                if (ace.getType() == ACCESS_ALLOWED_ACE_TYPE) {
+                    allowMsk |= mask;
+                }
+            }
+        }
+        return new Permission(defMsk, allowMsk);
+    }
+}
@@ -389,7 +389,8 @@ public class LocationMgrTunnel
         {
             // Older versions do not support the new serialization format
             // Due to lack of message versioning support, always use JOS with different dCache versions
-            message.ensureEncodedWith(serializer);
+            // Messages with locally deliverable payloads are encoded here for the first time
+            message = message.ensureEncodedWith(serializer);
 
             message.writeTo(out);
             out.flush();
@@ -26,6 +26,7 @@ import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import dmg.util.TimebasedCounter;
 
@@ -57,6 +58,16 @@ class CellGlue
     private final Optional<String> _zone;
     private final SerializationHandler.Serializer _serializer;
 
+    /**
+     * Number of messages delivered to local cells without serialization.
+     */
+    private final LongAdder _messagesDeliveredByReference = new LongAdder();
+
+    /**
+     * Number of messages deserialized for delivery to local cells.
+     */
+    private final LongAdder _messagesDeliveredDecoded = new LongAdder();
+
     CellGlue(String cellDomainName, @Nonnull CuratorFramework curatorFramework,
             Optional<String> zone, SerializationHandler.Serializer serializer)
     {
@@ -182,6 +193,16 @@ class CellGlue
         return _zone;
     }
 
+    long getMessagesDeliveredByReference()
+    {
+        return _messagesDeliveredByReference.sum();
+    }
+
+    long getMessagesDeliveredDecoded()
+    {
+        return _messagesDeliveredDecoded.sum();
+    }
+
     SerializationHandler.Serializer getMessageSerializer()
     {
         return _serializer;
@@ -477,7 +498,12 @@ class CellGlue
             throws SerializationException
     {
         if (!msg.isStreamMode()) {
-            msg = msg.encodeWith(_serializer);
+            /* Payloads that are safe to share are only encoded if the message
+             * is routed through a tunnel.
+             */
+            msg = (msg.getMessageObject() instanceof LocallyDeliverable)
+                    ? msg.clone()
+                    : msg.encodeWith(_serializer);
         }
         CellPath destination = msg.getDestinationPath();
         LOGGER.trace("sendMessage : {} send to {}", msg.getUOID(), destination);
@@ -602,7 +628,13 @@ class CellGlue
             CellPath destinationPath = msg.getDestinationPath();
             if (address.equals(destinationPath.getCurrent())) {
                 try {
-                    destNucleus.addToEventQueue(new MessageEvent(msg.decode()));
+                    if (msg.isStreamMode()) {
+                        msg = msg.decode();
+                        _messagesDeliveredDecoded.increment();
+                    } else {
+                        _messagesDeliveredByReference.increment();
+                    }
+                    destNucleus.addToEventQueue(new MessageEvent(msg));
                 } catch (SerializationException e) {
                     LOGGER.error("Received malformed message from {} with UOID {} and session [{}]: {}",
                                  msg.getSourcePath(), msg.getUOID(), msg.getSession(), e.getMessage());
@@ -624,7 +656,9 @@ class CellGlue
             throws SerializationException
     {
         if (msg.getSourceAddress().getCellName().equals("*")) {
-            Serializable messageObject = msg.decode().getMessageObject();
+            Serializable messageObject = msg.isStreamMode()
+                    ? msg.decode().getMessageObject()
+                    : msg.getMessageObject();
             if (messageObject instanceof NoRouteToCellException) {
                 LOGGER.info(
                         "Unable to notify {} about delivery failure of message sent to {}: No route for {} in {}.",
@@ -12,6 +12,7 @@ public class CellLock
     private final CellMessage _message;
     private final CDC _cdc = new CDC();
     private final Executor _executor;
+    private volatile TimingWheel.Timeout<?> _expiry;
 
     public CellLock(CellMessage msg, CellMessageAnswerable callback,
                     Executor executor, long timeout)
@@ -47,4 +48,18 @@ public class CellLock
     public CDC getCdc() {
         return _cdc;
     }
+
+    void setExpiry(TimingWheel.Timeout<?> expiry) {
+        _expiry = expiry;
+    }
+
+    /**
+     * Cancels the scheduled timeout of this lock, if any.
+     */
+    void cancelExpiry() {
+        TimingWheel.Timeout<?> expiry = _expiry;
+        if (expiry != null) {
+            expiry.cancel();
+        }
+    }
 }
@@ -192,12 +192,19 @@ public boolean equals( Object obj ){
         return encoded;
     }
 
-    // For LocationManagerTunnel to reencode using JOS
+    /**
+     * For LocationManagerTunnel to reencode using JOS. Messages with a
+     * {@link LocallyDeliverable} payload may not have been encoded yet; for
+     * those an encoded copy is returned.
+     */
     public CellMessage ensureEncodedWith(Serializer handler)
     {
-        checkState(_mode == STREAM_MODE, "not encoded");
         checkArgument(handler != null, "Cannot ensure CellMessage is encoded. The given msg payload serializer is null.");
 
+        if (_mode == ORIGINAL_MODE) {
+            return encodeWith(handler);
+        }
+
         if (!SerializationHandler.isEncodedWith(_messageStream, handler)) {
             Object payload = SerializationHandler.decode(_messageStream);
             _messageStream = SerializationHandler.encode(payload, handler);
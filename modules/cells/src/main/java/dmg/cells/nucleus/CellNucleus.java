@@ -15,7 +15,6 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import javax.annotation.Nonnull;
-import javax.annotation.concurrent.GuardedBy;
 
 import java.io.FileNotFoundException;
 import java.io.Reader;
@@ -27,8 +26,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
@@ -43,7 +40,6 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -57,13 +53,11 @@ import dmg.util.logback.RootFilterThresholds;
 
 import org.dcache.util.BoundedCachedExecutor;
 import org.dcache.util.BoundedExecutor;
-import org.dcache.util.FireAndForgetTask;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterables.consumingIterable;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
-import static java.util.Comparator.comparingLong;
 import static org.dcache.util.CompletableFutures.fromListenableFuture;
 import static org.dcache.util.MathUtils.addWithInfinity;
 import static org.dcache.util.MathUtils.subWithInfinity;
@@ -131,11 +125,6 @@ public class CellNucleus implements ThreadFactory
 
     private volatile State _state = State.NEW;
 
-    private ScheduledFuture _scheduledTimeoutRun;
-    private boolean _processingTimedOutCallbacks;
-
-    private final Queue<CellLock> _callbackExpiry
-            = new PriorityQueue<>(comparingLong(CellLock::getTimeout));
     private final ConcurrentMap<UOID, CellLock> _waitHash = new ConcurrentHashMap<>();
     private String _cellClass;
     private String _cellSimpleClass;
@@ -152,6 +141,24 @@ public class CellNucleus implements ThreadFactory
     private static final ScheduledExecutorService _timer = Executors.newSingleThreadScheduledExecutor(
             new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Cell maintenance task timer").build());
 
+    /**
+     * Resolution in milliseconds of callback timeouts.
+     */
+    private static final long CALLBACK_TIMEOUT_TICK = 10;
+
+    /**
+     * Timeouts of callbacks of all cell instances. Scheduling and cancelling
+     * a timeout are constant time operations that only lock a single bucket
+     * of the wheel, so a reply does not contend with other requests.
+     */
+    private static final TimingWheel<Runnable> _callbackTimeouts =
+            new TimingWheel<>(CALLBACK_TIMEOUT_TICK, 1024, System.currentTimeMillis());
+
+    static {
+        _timer.scheduleAtFixedRate(CellNucleus::processTimedOutMessages,
+                                   CALLBACK_TIMEOUT_TICK, CALLBACK_TIMEOUT_TICK, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Task for calling the Cell nucleus message timeout mechanism.
      */
@@ -555,7 +562,7 @@ public class CellNucleus implements ThreadFactory
          * to avoid a race with shutdown.
          */
         _waitHash.put(uoid, lock);
-        addCallbackTimeout(lock);
+        addCallbackTimeout(uoid, lock);
 
         if (!_state.areCallbacksGuaranteed) {
             /* Cell is shutting down so timeout the message.
@@ -959,74 +966,25 @@ public class CellNucleus implements ThreadFactory
         return null;
     }
 
-    private void addCallbackTimeout(CellLock lock)
+    private void addCallbackTimeout(UOID uoid, CellLock lock)
     {
-        synchronized (_callbackExpiry) {
-            _callbackExpiry.add(lock);
-
-            if (!_processingTimedOutCallbacks) {
-                rescheduleCallbackTimeout();
-            }
-        }
+        lock.setExpiry(_callbackTimeouts.schedule(
+                () -> timeOutMessage(uoid, lock, this::reregisterCallback), lock.getTimeout()));
     }
 
     private void removeCallbackTimeout(CellLock lock)
     {
-        synchronized (_callbackExpiry) {
-            boolean callbackRemoved = _callbackExpiry.remove(lock);
-
-            if (callbackRemoved && !_processingTimedOutCallbacks) {
-                if (_callbackExpiry.isEmpty()) {
-                    if (_scheduledTimeoutRun != null) {
-                        _scheduledTimeoutRun.cancel(false);
-                        _scheduledTimeoutRun = null;
-                    }
-                } else {
-                    rescheduleCallbackTimeout();
-                }
-            }
-        }
-    }
-
-    @GuardedBy("_callbackExpiry")
-    private void rescheduleCallbackTimeout()
-    {
-        CellLock earliestExpiringCallback = _callbackExpiry.peek();
-
-        if (earliestExpiringCallback != null) {
-            long delayUntilFirstTimeout = earliestExpiringCallback.getTimeout() - System.currentTimeMillis();
-
-            if (_scheduledTimeoutRun != null) {
-                long delayUntilNextTimeoutRun = _scheduledTimeoutRun.getDelay(TimeUnit.MILLISECONDS);
-
-                if (delayUntilNextTimeoutRun <= delayUntilFirstTimeout) {
-                    return; // Do nothing: the next scheduled run is soon enough.
-                }
-
-                _scheduledTimeoutRun.cancel(false);
-            }
-
-            _scheduledTimeoutRun = _timer.schedule(new FireAndForgetTask(this::processTimedOutMessages),
-                    delayUntilFirstTimeout, TimeUnit.MILLISECONDS);
-        }
+        lock.cancelExpiry();
     }
 
-    private void processTimedOutMessages()
+    private static void processTimedOutMessages()
     {
-        synchronized (_callbackExpiry) {
-            _processingTimedOutCallbacks = true;
+        for (Runnable task : _callbackTimeouts.expire(System.currentTimeMillis())) {
             try {
-                long now = System.currentTimeMillis();
-                _waitHash.entrySet().stream()
-                        .filter(e -> e.getValue().getTimeout() < now)
-                        .forEach(e -> {
-                                    _callbackExpiry.remove(e.getValue());
-                                    timeOutMessage(e.getKey(), e.getValue(), this::reregisterCallback);
-                                });
-            } finally {
-                _processingTimedOutCallbacks = false;
-                _scheduledTimeoutRun = null;
-                rescheduleCallbackTimeout();
+                task.run();
+            } catch (RuntimeException e) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e);
             }
         }
     }
@@ -1082,14 +1040,10 @@ public class CellNucleus implements ThreadFactory
 
             /* Cancel callbacks.
              */
-            _waitHash.forEach((uoid, lock) -> timeOutMessage(uoid, lock, (u, l) -> {}));
-            synchronized (_callbackExpiry) {
-                _callbackExpiry.clear();
-                if (_scheduledTimeoutRun != null) {
-                    _scheduledTimeoutRun.cancel(false);
-                    _scheduledTimeoutRun = null;
-                }
-            }
+            _waitHash.forEach((uoid, lock) -> {
+                removeCallbackTimeout(lock);
+                timeOutMessage(uoid, lock, (u, l) -> {});
+            });
 
             /* Shut down message executor.
              */
@@ -1148,7 +1102,7 @@ public class CellNucleus implements ThreadFactory
          * to avoid a race with shutdown.
          */
         _waitHash.put(uoid, lock);
-        addCallbackTimeout(lock);
+        addCallbackTimeout(uoid, lock);
 
         if (!_state.areCallbacksGuaranteed) {
             /* The cell is shutting down so we time out the message right away.
@@ -1231,6 +1185,24 @@ public class CellNucleus implements ThreadFactory
         return __cellGlue.getZone();
     }
 
+    /**
+     * Returns the number of messages delivered to cells in this domain
+     * without serialization.
+     */
+    public long getMessagesDeliveredByReference()
+    {
+        return __cellGlue.getMessagesDeliveredByReference();
+    }
+
+    /**
+     * Returns the number of messages deserialized for delivery to cells
+     * in this domain.
+     */
+    public long getMessagesDeliveredDecoded()
+    {
+        return __cellGlue.getMessagesDeliveredDecoded();
+    }
+
     public SerializationHandler.Serializer getMsgSerialization()
     {
         return __cellGlue.getMessageSerializer();
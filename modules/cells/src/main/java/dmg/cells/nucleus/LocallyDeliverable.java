@@ -0,0 +1,17 @@
+package dmg.cells.nucleus;
+
+import java.io.Serializable;
+
+/**
+ * Marker interface for message payloads that may be delivered to cells
+ * in the same domain without being serialized.
+ * <p>
+ * When such a payload is sent to a cell in the local domain, the receiver
+ * is given a reference to the very object the sender passed. The payload
+ * is only serialized once the message leaves the domain through a tunnel.
+ * Implementations must therefore be immutable: neither the sender nor the
+ * receiver may modify the object once it has been sent.
+ */
+public interface LocallyDeliverable extends Serializable
+{
+}
@@ -0,0 +1,77 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A hand-written binary encoding for a message payload class.
+ * <p>
+ * Codecs are used by the compact message serializer in place of Java
+ * object serialization for objects of exactly the class returned by
+ * {@link #getType}, wherever such objects appear in a message. Objects of
+ * all other classes are serialized as usual.
+ * <p>
+ * Codecs are discovered using {@link java.util.ServiceLoader}. Each codec
+ * must have a unique identifier. The version of the encoding is written
+ * along with the encoded object, allowing a codec to decode objects
+ * encoded by earlier versions of itself.
+ *
+ * @param <T> the class encoded by this codec
+ */
+public interface MessageCodec<T>
+{
+    /**
+     * Returns the identifier of this codec. Identifiers must be unique
+     * and must never be reused for a different codec.
+     */
+    int getId();
+
+    /**
+     * Returns the class of objects encoded by this codec.
+     */
+    Class<T> getType();
+
+    /**
+     * Returns the version of the encoding produced by {@link #encode}.
+     */
+    int getVersion();
+
+    /**
+     * Returns whether {@code object} can be encoded by this codec. If not,
+     * the object is serialized using Java object serialization.
+     */
+    default boolean canEncode(T object)
+    {
+        return true;
+    }
+
+    /**
+     * Writes {@code object} to {@code out}. Nested objects may be written
+     * with {@link ObjectOutput#writeObject}.
+     */
+    void encode(T object, ObjectOutput out) throws IOException;
+
+    /**
+     * Reads an object written by {@link #encode} of the given version
+     * of this codec.
+     */
+    T decode(ObjectInput in, int version) throws IOException, ClassNotFoundException;
+}
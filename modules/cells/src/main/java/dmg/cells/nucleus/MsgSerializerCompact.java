@@ -0,0 +1,175 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The class contains methods for serializing and deserializing
+ * objects to/from a byte array representation. It uses Java Object
+ * Serialization, except for objects of classes for which a
+ * {@link MessageCodec} is registered with {@link SerializationHandler}.
+ * Such objects are replaced in the stream by an envelope holding the
+ * compact encoding produced by the codec.
+ * <p>
+ * Streams are prefixed with a header, allowing them to be distinguished
+ * from plain JOS and FST streams.
+ */
+public final class MsgSerializerCompact {
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final byte[] COMPACT_MESSAGE_HEADER = new byte[] {
+            0x05, 0x4d,   // 054D -> [o]bject [s]tream [for] [d]Cache
+            0x01, 0x01    // codec stream, version 1
+    };
+
+    private MsgSerializerCompact() {}
+
+    public static byte[] encode(Object message) {
+        checkState(message != null, "Unencoded message payload is null.");
+        ByteArrayOutputStream array = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        array.write(COMPACT_MESSAGE_HEADER, 0, COMPACT_MESSAGE_HEADER.length);
+        try (ObjectOutputStream out = new CodecObjectOutputStream(array)) {
+            out.writeObject(message);
+        } catch (InvalidClassException e) {
+            throw new SerializationException("Failed to serialize object: "
+                    + e + "(this is usually a bug)", e);
+        } catch (NotSerializableException e) {
+            throw new SerializationException("Failed to serialize object because the object is not serializable (this is usually a bug)", e);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to serialize object: " + e, e);
+        }
+        return array.toByteArray();
+    }
+
+    public static Object decode(byte[] messageStream) {
+        checkState(messageStream != null, "Encoded message payload is null.");
+        checkState(isCompactEncoded(messageStream));
+        ByteArrayInputStream in = new ByteArrayInputStream(messageStream,
+                COMPACT_MESSAGE_HEADER.length, messageStream.length - COMPACT_MESSAGE_HEADER.length);
+        try (ObjectInputStream stream = new CodecObjectInputStream(in)) {
+            return stream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException("Failed to deserialize object: The class could not be found. Is there a software version mismatch in your installation?", e);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize object: " + e, e);
+        }
+    }
+
+    public static boolean isCompactEncoded(byte[] messageStream) {
+        return messageStream.length >= COMPACT_MESSAGE_HEADER.length &&
+                messageStream[0] == COMPACT_MESSAGE_HEADER[0] &&
+                messageStream[1] == COMPACT_MESSAGE_HEADER[1] &&
+                messageStream[2] == COMPACT_MESSAGE_HEADER[2] &&
+                messageStream[3] == COMPACT_MESSAGE_HEADER[3];
+    }
+
+    /**
+     * Takes the place of an object encoded by a codec in the object stream.
+     */
+    public static final class Envelope implements Externalizable
+    {
+        private static final long serialVersionUID = 4183553424591962581L;
+
+        private MessageCodec<Object> codec;
+        private Object value;
+
+        /**
+         * Required by {@link Externalizable}.
+         */
+        public Envelope()
+        {
+        }
+
+        private Envelope(MessageCodec<Object> codec, Object value)
+        {
+            this.codec = codec;
+            this.value = value;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException
+        {
+            out.writeShort(codec.getId());
+            out.writeByte(codec.getVersion());
+            codec.encode(value, out);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+        {
+            int id = in.readUnsignedShort();
+            int version = in.readUnsignedByte();
+            codec = SerializationHandler.getCodec(id);
+            if (codec == null) {
+                throw new InvalidObjectException("No codec with id " + id
+                        + ". Is there a software version mismatch in your installation?");
+            }
+            if (version > codec.getVersion()) {
+                throw new InvalidObjectException("Unsupported version " + version
+                        + " of " + codec.getType().getName() + " codec.");
+            }
+            value = codec.decode(in, version);
+        }
+    }
+
+    private static class CodecObjectOutputStream extends ObjectOutputStream
+    {
+        CodecObjectOutputStream(OutputStream out) throws IOException
+        {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj)
+        {
+            MessageCodec<Object> codec = SerializationHandler.getCodec(obj.getClass());
+            return (codec != null && codec.canEncode(obj)) ? new Envelope(codec, obj) : obj;
+        }
+    }
+
+    private static class CodecObjectInputStream extends ObjectInputStream
+    {
+        CodecObjectInputStream(ByteArrayInputStream in) throws IOException
+        {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj)
+        {
+            return (obj instanceof Envelope) ? ((Envelope) obj).value : obj;
+        }
+    }
+}
@@ -22,7 +22,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -32,14 +35,18 @@ import static com.google.common.base.Strings.isNullOrEmpty;
  * objects to/from a byte array representation. It selects the
  * deserialization method based on a header that is appended
  * to serialized byte arrays based on the used serializer.
- * Currently the class can differentiate between JOS and FST.
+ * Currently the class can differentiate between JOS, FST and the
+ * compact serializer.
+ * <p>
+ * The class also holds the registry of {@link MessageCodec}s used by the
+ * compact serializer. Codecs are discovered using {@link ServiceLoader}.
  */
 public final class SerializationHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SerializationHandler.class);
 
     public enum Serializer {
-        UNDEFINED("undefined"), JOS("standard"), FST("experimental");
+        UNDEFINED("undefined"), JOS("standard"), FST("experimental"), COMPACT("compact");
 
         private final String displayName;
         Serializer(String name) {
@@ -51,8 +58,52 @@ public final class SerializationHandler {
         }
     }
 
+    private static final Map<Class<?>, MessageCodec<?>> CODECS_BY_TYPE = new ConcurrentHashMap<>();
+    private static final Map<Integer, MessageCodec<?>> CODECS_BY_ID = new ConcurrentHashMap<>();
+
+    static {
+        for (MessageCodec<?> codec : ServiceLoader.load(MessageCodec.class)) {
+            try {
+                registerCodec(codec);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Failed to register message codec: {}", e.getMessage());
+            }
+        }
+    }
+
     private SerializationHandler() {}
 
+    /**
+     * Registers a codec for use by the compact serializer.
+     *
+     * @throws IllegalArgumentException if a codec with the same id or for the
+     * same class is already registered
+     */
+    public static synchronized void registerCodec(MessageCodec<?> codec) {
+        MessageCodec<?> existing = CODECS_BY_ID.get(codec.getId());
+        if (existing != null && existing != codec) {
+            throw new IllegalArgumentException("Codec id " + codec.getId() + " of "
+                    + codec.getType().getName() + " is already used by " + existing.getType().getName());
+        }
+        existing = CODECS_BY_TYPE.get(codec.getType());
+        if (existing != null && existing != codec) {
+            throw new IllegalArgumentException("A codec for " + codec.getType().getName()
+                    + " is already registered");
+        }
+        CODECS_BY_ID.put(codec.getId(), codec);
+        CODECS_BY_TYPE.put(codec.getType(), codec);
+    }
+
+    @SuppressWarnings("unchecked")
+    static MessageCodec<Object> getCodec(Class<?> type) {
+        return (MessageCodec<Object>) CODECS_BY_TYPE.get(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    static MessageCodec<Object> getCodec(int id) {
+        return (MessageCodec<Object>) CODECS_BY_ID.get(id);
+    }
+
     public static Serializer enumFromConfigString(String configString) {
         if(isNullOrEmpty(configString)){
             return Serializer.JOS;
@@ -63,6 +114,8 @@ public final class SerializationHandler {
                 return Serializer.FST;
             case "standard" :
                 return Serializer.JOS;
+            case "compact":
+                return Serializer.COMPACT;
             default:
                 LOGGER.warn("Unknown serializer specified in configuration. Defaulting to {}.", Serializer.JOS);
                 return Serializer.JOS;
@@ -71,7 +124,17 @@ public final class SerializationHandler {
     }
 
     public static boolean isEncodedWith(byte[] msgStream, Serializer serializer) {
-        return serializer == Serializer.FST && MsgSerializerFst.isFstEncoded(msgStream);
+        switch (serializer) {
+            case JOS:
+                return !MsgSerializerFst.isFstEncoded(msgStream)
+                        && !MsgSerializerCompact.isCompactEncoded(msgStream);
+            case FST:
+                return MsgSerializerFst.isFstEncoded(msgStream);
+            case COMPACT:
+                return MsgSerializerCompact.isCompactEncoded(msgStream);
+            default:
+                return false;
+        }
     }
 
     public static byte[] encode(Object message, Serializer serializer) {
@@ -80,6 +143,8 @@ public final class SerializationHandler {
                 return MsgSerializerJos.encode(message);
             case FST:
                 return MsgSerializerFst.encode(message);
+            case COMPACT:
+                return MsgSerializerCompact.encode(message);
             case UNDEFINED:
             default:
                 throw new UnsupportedOperationException("No such serializer. This should never happen.");
@@ -90,6 +155,9 @@ public final class SerializationHandler {
         if (MsgSerializerFst.isFstEncoded(messageStream)) {
             return MsgSerializerFst.decode(messageStream);
         }
+        if (MsgSerializerCompact.isCompactEncoded(messageStream)) {
+            return MsgSerializerCompact.decode(messageStream);
+        }
         return MsgSerializerJos.decode(messageStream);
     }
 
@@ -236,6 +236,9 @@ public class      SystemCell
         pw.append(" CellDomainName   = ").println(getCellDomainName());
         pw.append(" Zone = ").println(_nucleus.getZone().orElse("(none)"));
         pw.append(" Message payload serializer = ").println(_nucleus.getMsgSerialization());
+        pw.format(" Local delivery : by reference=%d;decoded=%d\n",
+                  _nucleus.getMessagesDeliveredByReference(),
+                  _nucleus.getMessagesDeliveredDecoded());
         pw.format(" I/O rcv=%d;asw=%d;frw=%d;rpy=%d;exc=%d\n",
                   _packetsReceived, _packetsAnswered, _packetsForwarded,
                   _packetsReplied, _exceptionCounter);
@@ -0,0 +1,243 @@
+package dmg.cells.nucleus;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Hashed timing wheel for tracking deadlines.
+ * <p>
+ * Deadlines are hashed by tick into a fixed number of buckets. Scheduling
+ * and cancelling a deadline only lock the bucket holding it and take
+ * constant time, independent of the number of scheduled deadlines. Expired
+ * deadlines are collected by calling {@link #expire} once per tick; each
+ * call visits only the buckets of the ticks that passed since the previous
+ * call.
+ * <p>
+ * Deadlines further in the future than one rotation of the wheel stay in
+ * their bucket and are skipped until they are due. Deadlines are thus
+ * reported at most one tick late.
+ *
+ * @param <T> the type of value associated with a deadline
+ */
+class TimingWheel<T>
+{
+    private final long _tickMillis;
+    private final Bucket<T>[] _wheel;
+    private final int _mask;
+    private final AtomicInteger _size = new AtomicInteger();
+
+    /**
+     * The last tick processed by {@link #expire}. Only updated while
+     * holding the lock of the bucket of that tick.
+     */
+    private volatile long _processedTick;
+
+    /**
+     * A scheduled deadline.
+     */
+    static class Timeout<T>
+    {
+        private final T _value;
+        private final long _deadline;
+
+        /**
+         * The bucket holding this timeout or null if the timeout expired
+         * or was cancelled.
+         */
+        private volatile Bucket<T> _bucket;
+
+        @GuardedBy("_bucket")
+        private Timeout<T> _previous;
+
+        @GuardedBy("_bucket")
+        private Timeout<T> _next;
+
+        private Timeout(T value, long deadline)
+        {
+            _value = value;
+            _deadline = deadline;
+        }
+
+        public T getValue()
+        {
+            return _value;
+        }
+
+        public long getDeadline()
+        {
+            return _deadline;
+        }
+
+        /**
+         * Removes the timeout from the wheel.
+         *
+         * @return true if the timeout was cancelled, false if it already
+         * expired or was cancelled
+         */
+        public boolean cancel()
+        {
+            Bucket<T> bucket = _bucket;
+            if (bucket == null) {
+                return false;
+            }
+            synchronized (bucket) {
+                if (_bucket != bucket) {
+                    return false;
+                }
+                bucket.unlink(this);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts.
+     */
+    private static class Bucket<T>
+    {
+        private final TimingWheel<T> _owner;
+
+        @GuardedBy("this")
+        private Timeout<T> _head;
+
+        Bucket(TimingWheel<T> owner)
+        {
+            _owner = owner;
+        }
+
+        @GuardedBy("this")
+        void link(Timeout<T> timeout)
+        {
+            timeout._next = _head;
+            if (_head != null) {
+                _head._previous = timeout;
+            }
+            _head = timeout;
+            timeout._bucket = this;
+            _owner._size.incrementAndGet();
+        }
+
+        @GuardedBy("this")
+        void unlink(Timeout<T> timeout)
+        {
+            if (timeout._previous == null) {
+                _head = timeout._next;
+            } else {
+                timeout._previous._next = timeout._next;
+            }
+            if (timeout._next != null) {
+                timeout._next._previous = timeout._previous;
+            }
+            timeout._previous = null;
+            timeout._next = null;
+            timeout._bucket = null;
+            _owner._size.decrementAndGet();
+        }
+
+        @GuardedBy("this")
+        void expire(long now, List<T> expired)
+        {
+            Timeout<T> timeout = _head;
+            while (timeout != null) {
+                Timeout<T> next = timeout._next;
+                if (timeout._deadline <= now) {
+                    unlink(timeout);
+                    expired.add(timeout._value);
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * Creates a new timing wheel.
+     *
+     * @param tickMillis the resolution of the wheel in milliseconds
+     * @param ticksPerWheel the number of buckets; rounded up to a power of two
+     * @param now the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int ticksPerWheel, long now)
+    {
+        checkArgument(tickMillis > 0, "Tick must be positive");
+        checkArgument(ticksPerWheel > 0 && ticksPerWheel <= 1 << 20,
+                      "Number of ticks must be between 1 and 2^20");
+        int size = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        size = Math.max(size, 1);
+        _tickMillis = tickMillis;
+        _wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            _wheel[i] = new Bucket<>(this);
+        }
+        _mask = size - 1;
+        _processedTick = now / tickMillis - 1;
+    }
+
+    public long getTickMillis()
+    {
+        return _tickMillis;
+    }
+
+    /**
+     * Returns the number of scheduled timeouts.
+     */
+    public int size()
+    {
+        return _size.get();
+    }
+
+    /**
+     * Schedules a deadline.
+     *
+     * @param value the value reported by {@link #expire} once the deadline passed
+     * @param deadline the time in milliseconds since the epoch
+     * @return a handle to cancel the deadline
+     */
+    public Timeout<T> schedule(T value, long deadline)
+    {
+        Timeout<T> timeout = new Timeout<>(value, deadline);
+        long deadlineTick = deadline / _tickMillis;
+        while (true) {
+            long tick = Math.max(deadlineTick, _processedTick + 1);
+            Bucket<T> bucket = _wheel[(int) (tick & _mask)];
+            synchronized (bucket) {
+                /* Unless the bucket was processed for this tick in the meantime,
+                 * the deadline will be seen by the next visit of the bucket.
+                 */
+                if (tick > _processedTick) {
+                    bucket.link(timeout);
+                    return timeout;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the values of all deadlines that are due.
+     * <p>
+     * Only ticks that have passed completely are processed, so that every
+     * deadline hashed to the bucket of a tick is due when that tick is
+     * processed. Must not be called concurrently.
+     *
+     * @param now the current time in milliseconds
+     */
+    public List<T> expire(long now)
+    {
+        List<T> expired = new ArrayList<>();
+        long nowTick = now / _tickMillis;
+        long tick = Math.max(_processedTick + 1, nowTick - 1 - _mask);
+        for (; tick < nowTick; tick++) {
+            Bucket<T> bucket = _wheel[(int) (tick & _mask)];
+            synchronized (bucket) {
+                bucket.expire(now, expired);
+                _processedTick = tick;
+            }
+        }
+        return expired;
+    }
+}
@@ -6,7 +6,6 @@ import javax.annotation.Nonnull;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.Serializable;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
@@ -19,6 +18,8 @@ import java.util.function.Consumer;
 
 import diskCacheV111.util.FsPath;
 
+import dmg.cells.nucleus.LocallyDeliverable;
+
 import org.dcache.util.NetworkUtils.InetAddressScope;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -33,7 +34,7 @@ import static java.util.Objects.requireNonNull;
  * object. This should preferably be the FQDN. The exception to this
  * rule is when the IP addresses doesn't have a corresponding name.
  */
-public class LoginBrokerInfo implements Serializable
+public class LoginBrokerInfo implements LocallyDeliverable
 {
     private static final long serialVersionUID = 4077557054990432737L;
 
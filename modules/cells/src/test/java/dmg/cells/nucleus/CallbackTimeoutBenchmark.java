@@ -0,0 +1,107 @@
+package dmg.cells.nucleus;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Microbenchmark of callback timeout bookkeeping for a send followed by a
+ * reply, with a given number of requests outstanding.
+ * <p>
+ * Compares the timing wheel used by CellNucleus with the priority queue
+ * it replaced. Each operation registers the timeout of a new request and
+ * cancels the timeout of the oldest outstanding request, which is what
+ * happens when a reply arrives.
+ * <p>
+ * Run with:
+ * <pre>
+ *     java -cp ... dmg.cells.nucleus.CallbackTimeoutBenchmark [operations]
+ * </pre>
+ */
+public class CallbackTimeoutBenchmark
+{
+    private static final int[] OUTSTANDING = { 1_000, 10_000, 100_000 };
+    private static final long TIMEOUT = 60_000;
+
+    private interface Timeouts
+    {
+        Object add(long deadline);
+
+        void cancel(Object handle);
+    }
+
+    private static class PriorityQueueTimeouts implements Timeouts
+    {
+        private final Queue<long[]> queue = new PriorityQueue<>(comparingLong(a -> a[0]));
+
+        @Override
+        public synchronized Object add(long deadline)
+        {
+            long[] entry = { deadline };
+            queue.add(entry);
+            return entry;
+        }
+
+        @Override
+        public synchronized void cancel(Object handle)
+        {
+            queue.remove(handle);
+        }
+    }
+
+    private static class TimingWheelTimeouts implements Timeouts
+    {
+        private final TimingWheel<Object> wheel =
+                new TimingWheel<>(10, 1024, System.currentTimeMillis());
+
+        @Override
+        public Object add(long deadline)
+        {
+            return wheel.schedule(this, deadline);
+        }
+
+        @Override
+        public void cancel(Object handle)
+        {
+            ((TimingWheel.Timeout<?>) handle).cancel();
+        }
+    }
+
+    private static double run(Timeouts timeouts, int outstanding, int operations)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+        ArrayDeque<Object> pending = new ArrayDeque<>(outstanding);
+        for (int i = 0; i < outstanding; i++) {
+            pending.add(timeouts.add(now + TIMEOUT + random.nextInt(1000)));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            pending.add(timeouts.add(now + TIMEOUT + random.nextInt(1000)));
+            timeouts.cancel(pending.poll());
+        }
+        long elapsed = System.nanoTime() - start;
+        return operations / (elapsed / 1e9);
+    }
+
+    public static void main(String[] args)
+    {
+        int operations = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+
+        /* Warm up both implementations. */
+        run(new PriorityQueueTimeouts(), 1_000, operations);
+        run(new TimingWheelTimeouts(), 1_000, operations);
+
+        System.out.printf("%12s %20s %20s%n", "outstanding", "priority queue op/s", "timing wheel op/s");
+        for (int outstanding : OUTSTANDING) {
+            double queue = run(new PriorityQueueTimeouts(), outstanding,
+                               Math.max(operations / (outstanding / 1_000), 1_000));
+            double wheel = run(new TimingWheelTimeouts(), outstanding, operations);
+            System.out.printf("%12d %20.0f %20.0f%n", outstanding, queue, wheel);
+        }
+    }
+}
@@ -62,6 +62,24 @@ public class CellMessageTest
         assertThat(decoded.getTtl(), is(message.getTtl()));
     }
 
+    @Test
+    public void shouldEncodeUnencodedMessageWhenEnsuringEncoding() throws Exception
+    {
+        CellMessage message = new CellMessage(new CellPath("foo", "bar"), "payload");
+        CellMessage encoded = message.ensureEncodedWith(SerializationHandler.Serializer.JOS);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream outStream = new DataOutputStream(out);
+        encoded.writeTo(outStream);
+
+        DataInputStream inStream = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        CellMessage decoded = CellMessage.createFrom(inStream).decode();
+
+        assertThat(decoded.getUOID(), is(message.getUOID()));
+        assertThat(decoded.getMessageObject(), is((Serializable) "payload"));
+        assertThat(message.getMessageObject(), is((Serializable) "payload"));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void shouldFailToSerializedUnencodedMessages() throws Exception
     {
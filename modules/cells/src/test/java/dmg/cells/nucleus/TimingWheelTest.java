@@ -0,0 +1,107 @@
+package dmg.cells.nucleus;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest
+{
+    private static final long START = 1_000_000;
+
+    private TimingWheel<String> wheel;
+
+    @Before
+    public void setUp()
+    {
+        wheel = new TimingWheel<>(10, 16, START);
+    }
+
+    @Test
+    public void shouldNotExpireBeforeDeadline()
+    {
+        wheel.schedule("a", START + 100);
+
+        assertThat(wheel.expire(START + 99), empty());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void shouldExpireWithinOneTickAfterDeadline()
+    {
+        wheel.schedule("a", START + 100);
+
+        assertThat(wheel.expire(START + 110), containsInAnyOrder("a"));
+        assertEquals(0, wheel.size());
+        assertThat(wheel.expire(START + 200), empty());
+    }
+
+    @Test
+    public void shouldExpireDeadlinesBeyondOneRotation()
+    {
+        wheel.schedule("far", START + 1000);
+        wheel.schedule("near", START + 20);
+
+        List<String> expired = new ArrayList<>();
+        for (long now = START; now <= START + 1000; now += 10) {
+            expired.addAll(wheel.expire(now));
+            if (now < START + 1000) {
+                assertFalse(expired.contains("far"));
+            }
+        }
+        expired.addAll(wheel.expire(START + 1010));
+
+        assertThat(expired, containsInAnyOrder("near", "far"));
+    }
+
+    @Test
+    public void shouldExpirePastDeadlinesOnNextTick()
+    {
+        wheel.expire(START + 500);
+        wheel.schedule("late", START);
+
+        assertThat(wheel.expire(START + 510), containsInAnyOrder("late"));
+    }
+
+    @Test
+    public void shouldExpireEverythingAfterLongPause()
+    {
+        wheel.schedule("a", START + 50);
+        wheel.schedule("b", START + 170);
+        wheel.schedule("c", START + 10_000);
+
+        assertThat(wheel.expire(START + 5_000), containsInAnyOrder("a", "b"));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void shouldNotExpireCancelledTimeouts()
+    {
+        TimingWheel.Timeout<String> a = wheel.schedule("a", START + 50);
+        wheel.schedule("b", START + 50);
+
+        assertTrue(a.cancel());
+        assertFalse(a.cancel());
+        assertThat(wheel.expire(START + 100), containsInAnyOrder("b"));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void shouldNotCancelExpiredTimeouts()
+    {
+        TimingWheel.Timeout<String> a = wheel.schedule("a", START + 50);
+
+        wheel.expire(START + 100);
+
+        assertFalse(a.cancel());
+        assertEquals(0, wheel.size());
+    }
+}
@@ -25,6 +25,8 @@ import java.util.Optional;
 import java.util.Set;
 
 import org.dcache.acl.ACE;
+import org.dcache.acl.ACL;
+import org.dcache.acl.enums.RsType;
 import org.dcache.chimera.posix.Stat;
 import org.dcache.chimera.store.InodeStorageInformation;
 import org.dcache.util.Checksum;
@@ -390,6 +392,18 @@ public interface FileSystemProvider extends Closeable {
      */
     List<ACE> getACL(FsInode inode) throws ChimeraFsException;
 
+    /**
+     * Get Access Control List for specified inode. Implementations may
+     * cache the ACL, thus the returned object may be shared.
+     * @param inode
+     * @param type resource type of the inode
+     * @return {@link ACL} of the inode.
+     * @throws ChimeraFsException
+     */
+    default ACL getACL(FsInode inode, RsType type) throws ChimeraFsException {
+        return new ACL(type, getACL(inode));
+    }
+
     /**
      * Set Access Control Entries list for specified inode.
      * @param inode
@@ -21,6 +21,7 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,8 +51,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.dcache.acl.ACE;
+import org.dcache.acl.ACL;
 import org.dcache.acl.enums.RsType;
 import org.dcache.chimera.posix.Stat;
 import org.dcache.chimera.store.InodeStorageInformation;
@@ -149,6 +152,36 @@ public class JdbcFs implements FileSystemProvider {
                     .maximumSize(100000)
                     .build();
 
+    /* Tags of directories, shared by all requests. Since a tag value is shared
+     * by the directory it was created in and all directories inheriting it,
+     * any tag update invalidates the whole cache. Tags updated through another
+     * instance are seen once the cached entry expires.
+     */
+    private volatile Cache<Long, ImmutableMap<String, byte[]>> _tagCache;
+    private long _tagCacheSize = 10000;
+    private long _tagCacheLifetime;
+    private TimeUnit _tagCacheLifetimeUnit = TimeUnit.SECONDS;
+
+    /* Incremented on every tag update; guards against caching tags read
+     * concurrently with an update.
+     */
+    private final AtomicLong _tagGeneration = new AtomicLong();
+
+    /* ACLs of inodes, shared by all requests. Since the cached ACL objects
+     * memoize their compiled form, permission checks on a cached inode need
+     * neither a database query nor recompiling the ACL. ACLs updated through
+     * another instance are seen once the cached entry expires.
+     */
+    private volatile Cache<Long, ACL> _aclCache;
+    private long _aclCacheSize = 10000;
+    private long _aclCacheLifetime;
+    private TimeUnit _aclCacheLifetimeUnit = TimeUnit.SECONDS;
+
+    /* Incremented on every ACL update; guards against caching an ACL read
+     * concurrently with an update.
+     */
+    private final AtomicLong _aclGeneration = new AtomicLong();
+
     /**
      * current fs id
      */
@@ -183,6 +216,96 @@ public class JdbcFs implements FileSystemProvider {
         _sqlDriver = FsSqlDriver.getDriverInstance(dataSource);
     }
 
+    /**
+     * Sets the maximum number of directories for which tags are cached.
+     */
+    public void setTagCacheSize(long size)
+    {
+        checkArgument(size > 0, "Tag cache size must be positive");
+        _tagCacheSize = size;
+        buildTagCache();
+    }
+
+    /**
+     * Sets for how long tags are cached. Tag caching is disabled if zero.
+     */
+    public void setTagCacheLifetime(long lifetime)
+    {
+        checkArgument(lifetime >= 0, "Tag cache lifetime must not be negative");
+        _tagCacheLifetime = lifetime;
+        buildTagCache();
+    }
+
+    public void setTagCacheLifetimeUnit(TimeUnit unit)
+    {
+        _tagCacheLifetimeUnit = unit;
+        buildTagCache();
+    }
+
+    private void buildTagCache()
+    {
+        _tagCache = (_tagCacheLifetime == 0)
+                    ? null
+                    : CacheBuilder.newBuilder()
+                            .maximumSize(_tagCacheSize)
+                            .expireAfterWrite(_tagCacheLifetime, _tagCacheLifetimeUnit)
+                            .build();
+    }
+
+    private void invalidateTags()
+    {
+        _tagGeneration.incrementAndGet();
+        Cache<Long, ImmutableMap<String, byte[]>> cache = _tagCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Sets the maximum number of inodes for which ACLs are cached.
+     */
+    public void setAclCacheSize(long size)
+    {
+        checkArgument(size > 0, "ACL cache size must be positive");
+        _aclCacheSize = size;
+        buildAclCache();
+    }
+
+    /**
+     * Sets for how long ACLs are cached. ACL caching is disabled if zero.
+     */
+    public void setAclCacheLifetime(long lifetime)
+    {
+        checkArgument(lifetime >= 0, "ACL cache lifetime must not be negative");
+        _aclCacheLifetime = lifetime;
+        buildAclCache();
+    }
+
+    public void setAclCacheLifetimeUnit(TimeUnit unit)
+    {
+        _aclCacheLifetimeUnit = unit;
+        buildAclCache();
+    }
+
+    private void buildAclCache()
+    {
+        _aclCache = (_aclCacheLifetime == 0)
+                    ? null
+                    : CacheBuilder.newBuilder()
+                            .maximumSize(_aclCacheSize)
+                            .expireAfterWrite(_aclCacheLifetime, _aclCacheLifetimeUnit)
+                            .build();
+    }
+
+    private void invalidateAcl(FsInode inode)
+    {
+        _aclGeneration.incrementAndGet();
+        Cache<Long, ACL> cache = _aclCache;
+        if (cache != null) {
+            cache.invalidate(inode.ino());
+        }
+    }
+
     private FsInode getWormID() throws ChimeraFsException {
 
         return this.path2inode("/admin/etc/config");
@@ -1145,7 +1268,20 @@ public class JdbcFs implements FileSystemProvider {
 
     @Override
     public Map<String, byte[]> getAllTags(FsInode inode) throws ChimeraFsException {
-        return _sqlDriver.getAllTags(inode);
+        Cache<Long, ImmutableMap<String, byte[]>> cache = _tagCache;
+        if (cache == null) {
+            return _sqlDriver.getAllTags(inode);
+        }
+        ImmutableMap<String, byte[]> tags = cache.getIfPresent(inode.ino());
+        if (tags == null) {
+            long generation = _tagGeneration.get();
+            tags = ImmutableMap.copyOf(_sqlDriver.getAllTags(inode));
+            cache.put(inode.ino(), tags);
+            if (_tagGeneration.get() != generation) {
+                cache.invalidate(inode.ino());
+            }
+        }
+        return tags;
     }
 
     @Override
@@ -1155,41 +1291,61 @@ public class JdbcFs implements FileSystemProvider {
 
     @Override
     public void createTag(FsInode inode, String name, int uid, int gid, int mode) throws ChimeraFsException {
-        inTransaction(status -> {
-            try {
-                _sqlDriver.createTag(inode, name, uid, gid, mode);
-                return null;
-            } catch (DuplicateKeyException e) {
-                throw new FileExistsChimeraFsException();
-            }
-        });
+        try {
+            inTransaction(status -> {
+                try {
+                    _sqlDriver.createTag(inode, name, uid, gid, mode);
+                    return null;
+                } catch (DuplicateKeyException e) {
+                    throw new FileExistsChimeraFsException();
+                }
+            });
+        } finally {
+            invalidateTags();
+        }
     }
 
     @Override
     public int pushTag(FsInode inode, String tagName) throws ChimeraFsException {
-        return inTransaction(status -> _sqlDriver.pushTag(inode, tagName));
+        try {
+            return inTransaction(status -> _sqlDriver.pushTag(inode, tagName));
+        } finally {
+            invalidateTags();
+        }
     }
 
     @Override
     public int setTag(FsInode inode, String tagName, byte[] data, int offset, int len) throws ChimeraFsException {
-        return inTransaction(status -> _sqlDriver.setTag(inode, tagName, data, offset, len));
+        try {
+            return inTransaction(status -> _sqlDriver.setTag(inode, tagName, data, offset, len));
+        } finally {
+            invalidateTags();
+        }
     }
 
     @Override
     public void removeTag(FsInode dir, String tagName) throws ChimeraFsException
     {
-        inTransaction(status -> {
-            _sqlDriver.removeTag(dir, tagName);
-            return null;
-        });
+        try {
+            inTransaction(status -> {
+                _sqlDriver.removeTag(dir, tagName);
+                return null;
+            });
+        } finally {
+            invalidateTags();
+        }
     }
 
     @Override
     public void removeTag(FsInode dir) throws ChimeraFsException {
-        inTransaction(status -> {
-            _sqlDriver.removeTag(dir);
-            return null;
-        });
+        try {
+            inTransaction(status -> {
+                _sqlDriver.removeTag(dir);
+                return null;
+            });
+        } finally {
+            invalidateTags();
+        }
     }
 
     @Override
@@ -1300,7 +1456,36 @@ public class JdbcFs implements FileSystemProvider {
      */
     @Override
     public List<ACE> getACL(FsInode inode) throws ChimeraFsException {
-        return _sqlDriver.readAcl(inode);
+        Cache<Long, ACL> cache = _aclCache;
+        ACL acl = (cache == null) ? null : cache.getIfPresent(inode.ino());
+        return (acl == null) ? _sqlDriver.readAcl(inode) : acl.getList();
+    }
+
+    /**
+     * Get inode's Access Control List. If ACL caching is enabled, the
+     * returned ACL may be shared with other callers.
+     * @param inode
+     * @param type resource type of the inode
+     * @return acl
+     */
+    @Override
+    public ACL getACL(FsInode inode, RsType type) throws ChimeraFsException {
+        Cache<Long, ACL> cache = _aclCache;
+        if (cache == null) {
+            return new ACL(type, _sqlDriver.readAcl(inode));
+        }
+        ACL acl = cache.getIfPresent(inode.ino());
+        if (acl == null) {
+            long generation = _aclGeneration.get();
+            acl = new ACL(type, _sqlDriver.readAcl(inode));
+            cache.put(inode.ino(), acl);
+            if (_aclGeneration.get() != generation) {
+                cache.invalidate(inode.ino());
+            }
+        } else if (acl.getRsType() != type) {
+            acl = new ACL(type, acl.getList());
+        }
+        return acl;
     }
 
     /**
@@ -1310,18 +1495,22 @@ public class JdbcFs implements FileSystemProvider {
      */
     @Override
     public void setACL(FsInode inode, List<ACE> acl) throws ChimeraFsException {
-        inTransaction(status -> {
-            boolean modified = _sqlDriver.deleteAcl(inode);
-            if (!acl.isEmpty()) {
-                _sqlDriver.writeAcl(inode, inode.isDirectory() ? RsType.DIR : RsType.FILE, acl);
-                modified = true;
-            }
-            if (modified) {
-                // empty stat will update ctime
-                _sqlDriver.setInodeAttributes(inode, 0, new Stat());
-            }
-            return null;
-        });
+        try {
+            inTransaction(status -> {
+                boolean modified = _sqlDriver.deleteAcl(inode);
+                if (!acl.isEmpty()) {
+                    _sqlDriver.writeAcl(inode, inode.isDirectory() ? RsType.DIR : RsType.FILE, acl);
+                    modified = true;
+                }
+                if (modified) {
+                    // empty stat will update ctime
+                    _sqlDriver.setInodeAttributes(inode, 0, new Stat());
+                }
+                return null;
+            });
+        } finally {
+            invalidateAcl(inode);
+        }
     }
 
     private static void checkNameLength(String name) throws InvalidNameChimeraException {
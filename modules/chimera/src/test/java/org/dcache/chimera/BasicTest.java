@@ -29,6 +29,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.dcache.acl.ACE;
+import org.dcache.acl.ACL;
 import org.dcache.acl.enums.AccessMask;
 import org.dcache.acl.enums.AceType;
 import org.dcache.acl.enums.RsType;
@@ -1297,6 +1298,102 @@ public class BasicTest extends ChimeraTestCaseHelper {
         assertArrayEquals(new String[] {tagName}, _fs.tags(d));
     }
 
+    @Test
+    public void testTagsAreCached() throws Exception {
+        ((JdbcFs) _fs).setTagCacheLifetime(60);
+        FsInode dir = _rootInode.mkdir("dir");
+        byte[] tagData = "a".getBytes(UTF_8);
+        _fs.createTag(dir, "aTag");
+        _fs.setTag(dir, "aTag", tagData, 0, tagData.length);
+
+        assertThat(_fs.getAllTags(dir), hasEntry("aTag", tagData));
+
+        new JdbcTemplate(_dataSource).update("UPDATE t_tags_inodes SET ivalue=?, isize=1",
+                ps -> ps.setBytes(1, "b".getBytes(UTF_8)));
+
+        assertThat(_fs.getAllTags(dir), hasEntry("aTag", tagData));
+    }
+
+    @Test
+    public void testAclIsCached() throws Exception {
+        ((JdbcFs) _fs).setAclCacheLifetime(60);
+        FsInode dirInode = _rootInode.mkdir("testDir", 0, 0, 0755);
+        List<ACE> aces = Collections.singletonList(
+                new ACE(AceType.ACCESS_ALLOWED_ACE_TYPE, 0, AccessMask.ADD_FILE.getValue(), Who.USER, 1001));
+        _fs.setACL(dirInode, aces);
+
+        ACL acl = _fs.getACL(dirInode, RsType.DIR);
+        assertEquals(aces, acl.getList());
+
+        new JdbcTemplate(_dataSource).update("DELETE FROM t_acl");
+
+        assertSame(acl, _fs.getACL(dirInode, RsType.DIR));
+        assertEquals(aces, _fs.getACL(dirInode));
+    }
+
+    @Test
+    public void testCachedAclUpdatedOnSetAcl() throws Exception {
+        ((JdbcFs) _fs).setAclCacheLifetime(60);
+        FsInode dirInode = _rootInode.mkdir("testDir", 0, 0, 0755);
+        _fs.setACL(dirInode, Collections.singletonList(
+                new ACE(AceType.ACCESS_ALLOWED_ACE_TYPE, 0, AccessMask.ADD_FILE.getValue(), Who.USER, 1001)));
+
+        assertFalse(_fs.getACL(dirInode, RsType.DIR).isEmpty());
+
+        _fs.setACL(dirInode, new ArrayList<>());
+
+        assertTrue(_fs.getACL(dirInode, RsType.DIR).isEmpty());
+        assertTrue(_fs.getACL(dirInode).isEmpty());
+    }
+
+    @Test
+    public void testCachedTagsUpdatedOnSetTagOfParent() throws Exception {
+        ((JdbcFs) _fs).setTagCacheLifetime(60);
+        FsInode top = _rootInode.mkdir("top");
+        byte[] tagData = "a".getBytes(UTF_8);
+        _fs.createTag(top, "aTag");
+        _fs.setTag(top, "aTag", tagData, 0, tagData.length);
+        FsInode dir = top.mkdir("dir");
+
+        assertThat(_fs.getAllTags(dir), hasEntry("aTag", tagData));
+
+        byte[] newTagData = "b".getBytes(UTF_8);
+        _fs.setTag(top, "aTag", newTagData, 0, newTagData.length);
+
+        assertThat(_fs.getAllTags(dir), hasEntry("aTag", newTagData));
+    }
+
+    @Test
+    public void testCachedTagsUpdatedOnRemoveTag() throws Exception {
+        ((JdbcFs) _fs).setTagCacheLifetime(60);
+        FsInode dir = _rootInode.mkdir("dir");
+        byte[] tagData = "a".getBytes(UTF_8);
+        _fs.createTag(dir, "aTag");
+        _fs.setTag(dir, "aTag", tagData, 0, tagData.length);
+
+        assertThat(_fs.getAllTags(dir), hasKey("aTag"));
+
+        _fs.removeTag(dir, "aTag");
+
+        assertThat(_fs.getAllTags(dir), not(hasKey("aTag")));
+    }
+
+    @Test
+    public void testCachedTagsUpdatedOnPushTag() throws Exception {
+        ((JdbcFs) _fs).setTagCacheLifetime(60);
+        FsInode top = _rootInode.mkdir("top");
+        FsInode dir = top.mkdir("dir");
+        byte[] tagData = "a".getBytes(UTF_8);
+        _fs.createTag(top, "aTag");
+        _fs.setTag(top, "aTag", tagData, 0, tagData.length);
+
+        assertThat(_fs.getAllTags(dir), not(hasKey("aTag")));
+
+        _fs.pushTag(top, "aTag");
+
+        assertThat(_fs.getAllTags(dir), hasEntry("aTag", tagData));
+    }
+
     @Test
     public void testTashTimestampOnRemove() throws Exception {
         final String name = "testTashTimestampOnRemove";
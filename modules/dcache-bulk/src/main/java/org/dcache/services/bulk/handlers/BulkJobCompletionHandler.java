@@ -71,6 +71,7 @@ import javax.annotation.concurrent.GuardedBy;
 import java.util.concurrent.TimeUnit;
 
 import org.dcache.services.bulk.job.BulkJob;
+import org.dcache.services.bulk.job.BulkJobKey;
 import org.dcache.services.bulk.queue.SignalAware;
 
 /**
@@ -128,8 +129,18 @@ public class BulkJobCompletionHandler
      */
     public void addChild(BulkJob job)
     {
-        Preconditions.checkArgument(job.getParentKey().getRequestId()
-                                       .equals(job.getKey().getRequestId()),
+        addChild(job.getParentKey(), job.getKey());
+    }
+
+    /**
+     *  Registers a target whose job has not yet been created,
+     *  so that it is already accounted for in the barrier and
+     *  in the request termination check.
+     */
+    public void addChild(BulkJobKey parentKey, BulkJobKey childKey)
+    {
+        Preconditions.checkArgument(parentKey.getRequestId()
+                                       .equals(childKey.getRequestId()),
                                     "Job completion listener is "
                                                     + "being shared between two "
                                                     + "different requests! "
@@ -137,14 +148,36 @@ public class BulkJobCompletionHandler
 
         synchronized (descendants)
         {
-            Long parentId = job.getParentKey().getJobId();
-            Long childId = job.getKey().getJobId();
+            Long parentId = parentKey.getJobId();
+            Long childId = childKey.getJobId();
             descendants.put(parentId, childId);
             LOGGER.trace("addChild: parent {}, child {}; descendants {}.",
                          parentId, childId, descendants.size());
         }
     }
 
+    /**
+     *  For targets which terminate without a job ever having been
+     *  created for them (e.g., on cancellation).
+     */
+    public void childTerminated(BulkJobKey parentKey, BulkJobKey childKey)
+    {
+        removeChild(parentKey.getJobId(), childKey.getJobId());
+        queue.signal();
+    }
+
+    /**
+     *  Non-blocking version of #waitForChildren, used by parallel
+     *  depth-first expansions.
+     */
+    public boolean childrenTerminated(Long parentId)
+    {
+        synchronized (descendants)
+        {
+            return areChildrenAllTerminated(parentId);
+        }
+    }
+
     /**
      *  In the case of cancellation, all jobs are cleared.
      */
@@ -239,6 +272,18 @@ public class BulkJobCompletionHandler
         }
     }
 
+    /**
+     *  Waits at most timeout milliseconds for a job of the
+     *  request to terminate.
+     */
+    public void waitForTermination(long timeout) throws InterruptedException
+    {
+        synchronized (descendants)
+        {
+            descendants.wait(timeout);
+        }
+    }
+
     @GuardedBy("descendants")
     @VisibleForTesting
     boolean areChildrenAllTerminated(Long parentId)
@@ -255,13 +300,16 @@ public class BulkJobCompletionHandler
                         job.getErrorObject().getMessage());
         }
 
+        removeChild(job.getParentKey().getJobId(), job.getKey().getJobId());
+
+        queue.signal();
+    }
+
+    private void removeChild(Long parentId, Long childId)
+    {
         synchronized (descendants)
         {
-            LOGGER.trace("removing job {} from parent {}",
-                         job.getKey(),
-                         job.getParentKey().getJobId());
-            Long parentId = job.getParentKey().getJobId();
-            Long childId = job.getKey().getJobId();
+            LOGGER.trace("removing job {} from parent {}", childId, parentId);
 
             descendants.remove(parentId, childId);
 
@@ -271,7 +319,5 @@ public class BulkJobCompletionHandler
 
             descendants.notifyAll();
         }
-
-        queue.signal();
     }
 }
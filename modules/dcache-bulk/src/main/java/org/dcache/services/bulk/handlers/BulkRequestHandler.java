@@ -62,12 +62,15 @@ package org.dcache.services.bulk.handlers;
 import static org.dcache.services.bulk.BulkRequestStatus.Status.CANCELLED;
 import static org.dcache.services.bulk.BulkRequestStatus.Status.COMPLETED;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import javax.annotation.concurrent.GuardedBy;
 import javax.security.auth.Subject;
 import org.dcache.auth.attributes.Restriction;
-import org.dcache.services.bulk.BulkJobStorageException;
 import org.dcache.services.bulk.BulkPermissionDeniedException;
 import org.dcache.services.bulk.BulkRequest;
 import org.dcache.services.bulk.BulkRequestNotFoundException;
@@ -86,6 +89,8 @@ import org.dcache.services.bulk.job.TargetExpansionJob;
 import org.dcache.services.bulk.queue.BulkServiceQueue;
 import org.dcache.services.bulk.store.BulkJobStore;
 import org.dcache.services.bulk.store.BulkRequestStore;
+import org.dcache.services.bulk.store.BulkTarget;
+import org.dcache.services.bulk.store.BulkTargetStore;
 import org.dcache.services.bulk.util.BulkServiceStatistics;
 import org.dcache.util.list.ListDirectoryHandler;
 import org.dcache.vehicles.FileAttributes;
@@ -99,6 +104,9 @@ import org.springframework.beans.factory.annotation.Required;
  * <p>
  * This includes submitting and handling the completion of individual target jobs.
  * <p>
+ * Targets found during expansion are first recorded in the target store; jobs are only created
+ * for them a page at a time per request, as earlier ones terminate.
+ * <p>
  * It interacts with the queue, the job factory and the stores.
  * <p>
  * It receives callbacks from the queue upon job and request termination.
@@ -108,14 +116,35 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
   private static final String PREMATURE_CLEAR_ERROR
       = "Request cannot be cleared until all jobs have terminated; "
       + "try cancelling the request first.";
+  private static final int DEFAULT_TARGET_PAGE_SIZE = 1000;
+  private static final int DEFAULT_MAX_CONCURRENT_LISTINGS = 4;
+  private static final int DEFAULT_EXPANSION_BUFFER_SIZE = 10000;
+
+  /**
+   * Top-level jobs of the running requests.  They provide the subject, restriction and completion
+   * handler for the jobs created from the target store.
+   */
+  @GuardedBy("this")
+  private final Map<String, BulkRequestJob> requestJobs = new HashMap<>();
+
+  /**
+   * Number of target jobs created and not yet terminated, per request.
+   */
+  @GuardedBy("this")
+  private final Map<String, Integer> targetJobs = new HashMap<>();
 
   private ListDirectoryHandler listHandler;
   private BulkServiceQueue queue;
   private BulkJobStore jobStore;
   private BulkRequestStore requestStore;
+  private BulkTargetStore targetStore;
   private BulkJobFactory jobFactory;
   private BulkServiceStatistics statistics;
   private ExecutorService callbackExecutorService;
+  private ExecutorService expansionExecutorService;
+  private int targetPageSize = DEFAULT_TARGET_PAGE_SIZE;
+  private int maxConcurrentListings = DEFAULT_MAX_CONCURRENT_LISTINGS;
+  private int expansionBufferSize = DEFAULT_EXPANSION_BUFFER_SIZE;
 
   /**
    * Caused by an internal issue.
@@ -149,6 +178,7 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
 
     LOGGER.trace("clearRequest {}, calling clear on request store", requestId);
     requestStore.clear(subject, requestId);
+    forgetRequest(requestId);
   }
 
   /**
@@ -178,6 +208,12 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     if (requestHasStoredJobs(requestId)) {
       requestStore.update(requestId, Status.CANCELLING);
       cancelAllJobs(requestId);
+      if (!requestHasStoredJobs(requestId)) {
+        /*
+         *  Only targets without jobs were outstanding.
+         */
+        requestStore.update(requestId, CANCELLED);
+      }
     } else {
       requestStore.update(requestId, CANCELLED);
     }
@@ -233,6 +269,16 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     callbackExecutorService = service;
   }
 
+  @Required
+  public void setExpansionBufferSize(int expansionBufferSize) {
+    this.expansionBufferSize = expansionBufferSize;
+  }
+
+  @Required
+  public void setExpansionExecutorService(ExecutorService service) {
+    expansionExecutorService = service;
+  }
+
   @Required
   public void setJobFactory(BulkJobFactory jobFactory) {
     this.jobFactory = jobFactory;
@@ -248,6 +294,11 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     this.listHandler = listHandler;
   }
 
+  @Required
+  public void setMaxConcurrentListings(int maxConcurrentListings) {
+    this.maxConcurrentListings = maxConcurrentListings;
+  }
+
   @Required
   public void setQueue(BulkServiceQueue queue) {
     this.queue = queue;
@@ -263,6 +314,63 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     this.statistics = statistics;
   }
 
+  @Required
+  public void setTargetPageSize(int targetPageSize) {
+    this.targetPageSize = targetPageSize;
+  }
+
+  @Required
+  public void setTargetStore(BulkTargetStore targetStore) {
+    this.targetStore = targetStore;
+  }
+
+  /**
+   * Tops up the created jobs of each running request to the page size from the target store.
+   */
+  @Override
+  public synchronized void submitQueuedTargets() throws BulkServiceException {
+    for (Iterator<BulkRequestJob> i = requestJobs.values().iterator(); i.hasNext(); ) {
+      BulkRequestJob requestJob = i.next();
+      String requestId = requestJob.getKey().getRequestId();
+
+      if (!isRequestActive(requestId)) {
+        i.remove();
+        targetJobs.remove(requestId);
+        continue;
+      }
+
+      int limit = targetPageSize - targetJobs.getOrDefault(requestId, 0);
+      if (limit <= 0) {
+        continue;
+      }
+
+      boolean failed = false;
+      for (BulkTarget target : targetStore.next(requestId, limit)) {
+        try {
+          SingleTargetJob job = jobFactory.createSingleTargetJob(target.getKey(),
+              target.getPath(), target.getParentKey(), target.getAttributes(), requestJob);
+          job.setExecutorService(callbackExecutorService);
+          targetJobs.merge(requestId, 1, Integer::sum);
+          LOGGER.trace("submitQueuedTargets: {}, storing job.", job.getKey());
+          jobStore.store(job);
+          queue.submit(job);
+        } catch (BulkServiceException e) {
+          LOGGER.error("submitQueuedTargets: could not create job for {}: {}.", target,
+              e.toString());
+          targetStore.update(requestId, target.getPath(), BulkTarget.State.FAILED, e);
+          targetTerminated(requestJob, target, e);
+          statistics.incrementJobsFailed();
+          failed = true;
+        }
+      }
+
+      if (failed && requestJob.getCompletionHandler().isRequestCompleted()
+          && !requestHasStoredJobs(requestId)) {
+        setTerminalRequestState(requestId);
+      }
+    }
+  }
+
   /**
    * Processes the request as a top-level BulkRequestJob, adds a completion listener, and submits
    * the job to the queue.
@@ -285,6 +393,7 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     LOGGER.trace("submitRequest {}, creating multiple target job.", request);
     BulkRequestJob job = jobFactory.createRequestJob(request, subject.get(), restriction.get());
     job.setSubmissionHandler(this);
+    requestJobs.put(requestId, job);
 
     LOGGER.trace("submitRequest {}, setting a new completion handler.", job.getKey().getKey());
     job.setCompletionHandler(new BulkJobCompletionHandler(queue));
@@ -299,9 +408,25 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
                                                  FileAttributes attributes,
                                                  MultipleTargetJob parent)
       throws BulkServiceException {
-    SingleTargetJob job = jobFactory.createSingleTargetJob(target, parentKey, attributes, parent);
-    job.setExecutorService(callbackExecutorService);
-    submit(job);
+    String requestId = parentKey.getRequestId();
+
+    if (!isRequestActive(requestId)) {
+      LOGGER.trace("submitSingleTargetJob: {}, not storing target; request no longer active",
+          target);
+      return;
+    }
+
+    BulkJobKey key = BulkJobKey.newKey(requestId);
+    if (!targetStore.store(new BulkTarget(target, key, parentKey, attributes))) {
+      LOGGER.debug("submitSingleTargetJob: {}, target {} already stored; skipping.", requestId,
+          target);
+      return;
+    }
+
+    LOGGER.trace("submitSingleTargetJob: {}, stored target {}.", key.getKey(), target);
+    parent.getCompletionHandler().addChild(parentKey, key);
+    requestStore.addTarget(requestId);
+    queue.signal();
   }
 
   @Override
@@ -314,6 +439,9 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
      */
     TargetExpansionJob job = jobFactory.createTargetExpansionJob(target, attributes, parent);
     job.setListHandler(listHandler);
+    job.setListingExecutor(expansionExecutorService);
+    job.setMaxConcurrentListings(maxConcurrentListings);
+    job.setBufferSize(expansionBufferSize);
     job.setSubmissionHandler(this);
     submit(job);
   }
@@ -329,6 +457,25 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     queue.cancelRequestJob(requestId);
 
     jobStore.cancelAll(requestId);
+
+    /*
+     *  Targets for which no job has been created yet, a page at a time.
+     */
+    BulkRequestJob requestJob = requestJobs.get(requestId);
+    List<BulkTarget> cancelled;
+    do {
+      cancelled = targetStore.cancelQueued(requestId, targetPageSize);
+      for (BulkTarget target : cancelled) {
+        targetTerminated(requestJob, target, null);
+        statistics.incrementJobsCancelled();
+      }
+    } while (!cancelled.isEmpty());
+  }
+
+  @GuardedBy("this")
+  private void forgetRequest(String requestId) {
+    requestJobs.remove(requestId);
+    targetJobs.remove(requestId);
   }
 
   /**
@@ -397,6 +544,10 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
              */
             try {
               cancelAllJobs(requestId);
+              if (job.getCompletionHandler().isRequestCompleted()
+                  && !requestHasStoredJobs(requestId)) {
+                setTerminalRequestState(requestId);
+              }
             } catch (BulkServiceException e) {
               LOGGER.error("{} failed; request clear on failure, error  cancelling jobs: {}.",
                   key.getKey(), e.toString());
@@ -406,6 +557,9 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
       }
 
       if (job instanceof SingleTargetJob) {
+        targetJobs.computeIfPresent(requestId, (id, count) -> count > 1 ? count - 1 : null);
+        targetStore.update(requestId, job.getTarget(), targetState(job.getState()),
+            job.getErrorObject());
         LOGGER.debug("{}: {}, {}, calling target completed on request store.", message,
                                                                                key.getKey(),
                                                                                job.getTarget());
@@ -455,13 +609,14 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
   }
 
   private boolean requestHasStoredJobs(String requestId)
-      throws BulkJobStorageException {
+      throws BulkStorageException {
     return !jobStore.find(j -> j.getKey().getRequestId().equals(requestId),
-        1L).isEmpty();
+        1L).isEmpty() || targetStore.countQueued(requestId) > 0;
   }
 
   @GuardedBy("this")
   private void setTerminalRequestState(String requestId) {
+    forgetRequest(requestId);
     try {
       requestStore.getStatus(requestId).ifPresent(brs -> {
         switch (brs.getStatus()) {
@@ -490,6 +645,29 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     }
   }
 
+  private static BulkTarget.State targetState(State state) {
+    switch (state) {
+      case COMPLETED:
+        return BulkTarget.State.COMPLETED;
+      case CANCELLED:
+        return BulkTarget.State.CANCELLED;
+      default:
+        return BulkTarget.State.FAILED;
+    }
+  }
+
+  /**
+   * Accounts for a target which terminated without ever having had a job.
+   */
+  @GuardedBy("this")
+  private void targetTerminated(BulkRequestJob requestJob, BulkTarget target, Throwable error)
+      throws BulkServiceException {
+    if (requestJob != null) {
+      requestJob.getCompletionHandler().childTerminated(target.getParentKey(), target.getKey());
+    }
+    requestStore.targetCompleted(target.getRequestId(), target.getPath(), error);
+  }
+
   /**
    * Stores the job.
    * <p>
@@ -509,11 +687,6 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     LOGGER.trace("submit: {}, storing job.", key.getKey());
     jobStore.store(job);
 
-    if (job instanceof SingleTargetJob) {
-      LOGGER.trace("submit: {}, adding target to request store.", key.getKey());
-      requestStore.addTarget(key.getRequestId());
-    }
-
     LOGGER.trace("submit: {}, passing job to the queue.", key.getKey());
     queue.submit(job);
   }
@@ -105,6 +105,14 @@ public interface BulkSubmissionHandler
     void clearRequest(Subject subject, String requestId)
                     throws BulkServiceException;
 
+    /**
+     * Creates and submits jobs for the next page of targets recorded
+     * for each running request.  Called by the queue on each pass.
+     *
+     * @throws BulkServiceException
+     */
+    void submitQueuedTargets() throws BulkServiceException;
+
     /**
      * Should configure and submit the top-level job responsible for
      * processing all targets defined by the bulk request.
@@ -118,6 +126,7 @@ public interface BulkSubmissionHandler
      * Submits a job which takes action on a specific target.  The
      * job is created by the factory on the basis of the request's
      * activity definition (this is passed through the parent).
+     * It need not be created immediately; see #submitQueuedTargets.
      *
      * @param target file or directory.
      * @param parentKey key of the generating job (i.e., with a directory target).
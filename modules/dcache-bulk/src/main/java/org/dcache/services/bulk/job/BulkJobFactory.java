@@ -187,6 +187,19 @@ public class BulkJobFactory implements CellLifeCycleAware, CellMessageSender {
                                                FileAttributes attributes,
                                                MultipleTargetJob parent)
       throws BulkServiceException {
+    return createSingleTargetJob(BulkJobKey.newKey(parentKey.getRequestId()), target, parentKey,
+        attributes, parent);
+  }
+
+  /**
+   * For targets whose key was assigned when they were discovered.
+   */
+  public SingleTargetJob createSingleTargetJob(BulkJobKey key,
+                                               String target,
+                                               BulkJobKey parentKey,
+                                               FileAttributes attributes,
+                                               MultipleTargetJob parent)
+      throws BulkServiceException {
     BulkJobProvider provider = providers.get(parent.getActivity());
     if (provider == null) {
       throw new BulkServiceException("cannot create SingleTargetJob; "
@@ -194,7 +207,7 @@ public class BulkJobFactory implements CellLifeCycleAware, CellMessageSender {
           + parent.getActivity());
     }
 
-    SingleTargetJob job = provider.createJob(BulkJobKey.newKey(parentKey.getRequestId()), parentKey);
+    SingleTargetJob job = provider.createJob(key, parentKey);
     configureTarget(target, attributes, job);
     configurePermissionsFromParent(parent, job);
     configureEndpoints(job);
@@ -59,11 +59,28 @@ documents or software obtained from this server.
  */
 package org.dcache.services.bulk.job;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Range;
 
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FsPath;
 
+import org.dcache.namespace.FileType;
 import org.dcache.services.bulk.BulkJobExecutionException;
 import org.dcache.services.bulk.BulkRequest;
 import org.dcache.services.bulk.BulkServiceException;
@@ -79,6 +96,12 @@ import org.dcache.vehicles.FileAttributes;
  *
  *  These, along with what kinds of targets the expansion should submit as
  *  single target jobs, are determined by the specific activity.
+ *
+ *  If a listing executor is set, the whole tree is expanded by this job,
+ *  listing up to maxConcurrentListings directories at the same time.
+ *  The entries read by the listings are passed through a bounded buffer
+ *  to the job's own thread, which hands them off as targets as soon
+ *  as they arrive; listings pause while the buffer is full.
  */
 public final class TargetExpansionJob extends MultipleTargetJob
 {
@@ -87,6 +110,8 @@ public final class TargetExpansionJob extends MultipleTargetJob
         BREADTH_FIRST, DEPTH_FIRST
     }
 
+    private static final long POLL_INTERVAL_MS = 100L;
+
     /**
      *  Set on the basis of the specific request.
      */
@@ -97,6 +122,44 @@ public final class TargetExpansionJob extends MultipleTargetJob
      */
     private ListDirectoryHandler listHandler;
 
+    /**
+     *  Runs the directory listings of parallel expansion.  If not set,
+     *  directories are listed one after another on the job's thread.
+     */
+    private ExecutorService listingExecutor;
+    private int             maxConcurrentListings = 1;
+    private int             bufferSize = 1000;
+
+    /**
+     *  Directories found but not yet listed.
+     */
+    @GuardedBy("unlisted")
+    private final Deque<DirectoryNode> unlisted = new ArrayDeque<>();
+
+    @GuardedBy("unlisted")
+    private int activeListings;
+
+    private final AtomicReference<Throwable> listingError = new AtomicReference<>();
+
+    /**
+     *  Tells the listings to give up once the job's thread has
+     *  stopped expanding.
+     */
+    private volatile boolean expansionStopped;
+
+    /**
+     *  Entries read by the listings, waiting to be handed off
+     *  by the job's thread.
+     */
+    private BlockingQueue<Discovered> discovered;
+
+    /**
+     *  Depth-first directories which are completely expanded
+     *  and wait for their children to terminate.  Only accessed
+     *  by the job's thread.
+     */
+    private final List<DirectoryNode> awaiting = new ArrayList<>();
+
     public TargetExpansionJob(BulkJobKey key,
                               BulkJobKey parentKey,
                               BulkRequest request,
@@ -118,11 +181,26 @@ public final class TargetExpansionJob extends MultipleTargetJob
         return false;
     }
 
+    public void setBufferSize(int bufferSize)
+    {
+        this.bufferSize = bufferSize;
+    }
+
     public void setListHandler(ListDirectoryHandler listHandler)
     {
         this.listHandler = listHandler;
     }
 
+    public void setListingExecutor(ExecutorService listingExecutor)
+    {
+        this.listingExecutor = listingExecutor;
+    }
+
+    public void setMaxConcurrentListings(int maxConcurrentListings)
+    {
+        this.maxConcurrentListings = maxConcurrentListings;
+    }
+
     /**
      *  Entry point for the job.
      *
@@ -133,6 +211,10 @@ public final class TargetExpansionJob extends MultipleTargetJob
      *  for all expansion of subdirectories (via recursion).  This
      *  avoids a memory-unfriendly chain of job dependencies (breadth-first
      *  expansions have no such chained dependencies).
+     *
+     *  In parallel expansion, the "root" expansion job is responsible
+     *  for all subdirectories in both cases, listing several of them
+     *  at a time.
      */
     @Override
     protected void doRun()
@@ -155,7 +237,11 @@ public final class TargetExpansionJob extends MultipleTargetJob
         }
 
         try {
-            expand(target, key, parentKey, attributes);
+            if (listingExecutor == null) {
+                expand(target, key, parentKey, attributes);
+            } else {
+                expandInParallel();
+            }
             setState(State.COMPLETED);
         } catch (CacheException | BulkServiceException e) {
             errorObject = e;
@@ -246,19 +332,293 @@ public final class TargetExpansionJob extends MultipleTargetJob
                 checkForDirectoryTarget(target, parentKey, attributes);
             }
         } catch (InterruptedException e) {
-            State state = getState();
-            if (state == State.CANCELLED) {
-                /*
-                 *  The call to cancel will have
-                 *  already notified the listener.
-                 */
+            handleInterrupted();
+        }
+
+        LOGGER.trace("{}, expand() {}, exiting ...", loggingPrefix(), target);
+    }
+
+    /*
+     *  The job's thread hands off what the listings discover and closes
+     *  the directories whose expansion is complete.  It returns when
+     *  the root directory has been closed.
+     */
+    private void expandInParallel() throws CacheException, BulkServiceException
+    {
+        LOGGER.debug("{}, {}, expanding with up to {} concurrent listings.",
+                     loggingPrefix(), expansionType.name(), maxConcurrentListings);
+
+        discovered = new LinkedBlockingQueue<>(bufferSize);
+        DirectoryNode root = new DirectoryNode(target, key, parentKey,
+                                               attributes, null);
+
+        if (expansionType == ExpansionType.BREADTH_FIRST) {
+            checkForDirectoryTarget(target, parentKey, attributes);
+        }
+
+        try {
+            enqueue(root);
+            long nextCheck = 0L;
+            while (!root.closed) {
+                if (isTerminated()) {
+                    LOGGER.debug("{}, expansion job for {} {}; returning ...",
+                                 loggingPrefix(), target, state.name());
+                    return;
+                }
+
+                Throwable error = listingError.get();
+                if (error instanceof BulkServiceException) {
+                    throw (BulkServiceException) error;
+                } else if (error != null) {
+                    Throwables.propagateIfPossible(error, CacheException.class,
+                                                   InterruptedException.class);
+                    throw new RuntimeException(error);
+                }
+
+                Discovered next = awaiting.isEmpty()
+                                ? discovered.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)
+                                : discovered.poll();
+                if (next != null) {
+                    handOff(next);
+                }
+
+                long now = System.currentTimeMillis();
+                if (next == null || now >= nextCheck) {
+                    closeTerminatedDirectories();
+                    nextCheck = now + POLL_INTERVAL_MS;
+                    if (next == null && !awaiting.isEmpty()) {
+                        /*
+                         *  Nothing to hand off; wake up as soon as
+                         *  a child terminates.
+                         */
+                        completionHandler.waitForTermination(POLL_INTERVAL_MS);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            handleInterrupted();
+        } finally {
+            expansionStopped = true;
+            synchronized (unlisted) {
+                unlisted.clear();
+            }
+            discovered.clear();
+        }
+
+        LOGGER.debug("{}, {}, parallel expansion of {} finished.",
+                     loggingPrefix(), expansionType.name(), target);
+    }
+
+    /*
+     *  Called on a listing thread.
+     */
+    private void list(DirectoryNode node)
+    {
+        try {
+            if (isExpansionStopped()) {
+                return;
+            }
+
+            LOGGER.debug("{}, listing target {}", key.getJobId(), node.path);
+            try (DirectoryStream stream = getDirectoryListing(node.path)) {
+                for (DirectoryEntry entry : stream) {
+                    if (isExpansionStopped()) {
+                        return;
+                    }
+                    handleChildEntry(node, entry);
+                }
+            }
+
+            /*
+             *  Queued after all the entries, so that they have all been
+             *  handed off when the job's thread sees the directory as listed.
+             */
+            put(new Discovered(node));
+        } catch (BulkServiceException | CacheException | InterruptedException
+                        | RuntimeException e) {
+            if (!isExpansionStopped()) {
+                listingError.compareAndSet(null, e);
+            }
+        } finally {
+            synchronized (unlisted) {
+                --activeListings;
+                startListings();
+            }
+        }
+    }
+
+    /*
+     *  Called on a listing thread.  Subdirectories to be expanded
+     *  are queued for listing straight away.
+     */
+    private void handleChildEntry(DirectoryNode node, DirectoryEntry entry)
+                    throws BulkServiceException, InterruptedException
+    {
+        String childTarget = node.path + "/" + entry.getName();
+        FileAttributes attributes = entry.getFileAttributes();
+
+        switch (attributes.getFileType())
+        {
+            case DIR:
+                switch (request.getExpandDirectories()) {
+                    case ALL:
+                        if (expansionType == ExpansionType.BREADTH_FIRST) {
+                            put(new Discovered(childTarget, node.key, attributes));
+                        }
+                        node.pending.incrementAndGet();
+                        enqueue(new DirectoryNode(childTarget,
+                                                  BulkJobKey.newKey(request.getId()),
+                                                  node.key,
+                                                  attributes,
+                                                  node));
+                        break;
+                    case TARGETS:
+                        put(new Discovered(childTarget, node.key, attributes));
+                        break;
+                    default:
+                }
+                break;
+            case LINK:
+            case REGULAR:
+                put(new Discovered(childTarget, node.key, attributes));
+                break;
+            case SPECIAL:
+            default:
+                LOGGER.trace("{}, handleChildEntry(), "
+                                             + "cannot handle special file {}.",
+                             loggingPrefix(), childTarget);
+                break;
+        }
+    }
+
+    private void put(Discovered next) throws InterruptedException
+    {
+        while (!discovered.offer(next, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            if (isExpansionStopped()) {
+                throw new InterruptedException(key + " stopped expanding.");
+            }
+        }
+    }
+
+    private void enqueue(DirectoryNode node)
+    {
+        synchronized (unlisted) {
+            /*
+             *  Listing the most recently found directory first keeps
+             *  the number of open depth-first directories small.
+             */
+            if (expansionType == ExpansionType.DEPTH_FIRST) {
+                unlisted.addFirst(node);
             } else {
-                setState(State.CANCELLED);
-                completionHandler.jobInterrupted(this);
+                unlisted.addLast(node);
             }
+            startListings();
         }
+    }
 
-        LOGGER.trace("{}, expand() {}, exiting ...", loggingPrefix(), target);
+    @GuardedBy("unlisted")
+    private void startListings()
+    {
+        while (activeListings < maxConcurrentListings && !unlisted.isEmpty()
+                        && !isExpansionStopped()) {
+            DirectoryNode node = unlisted.pollFirst();
+            ++activeListings;
+            try {
+                listingExecutor.execute(() -> list(node));
+            } catch (RejectedExecutionException e) {
+                --activeListings;
+                listingError.compareAndSet(null, e);
+                return;
+            }
+        }
+    }
+
+    /*
+     *  Called on the job's thread.
+     */
+    private void handOff(Discovered next) throws BulkServiceException
+    {
+        if (next.listed != null) {
+            directoryExpanded(next.listed);
+        } else if (next.attributes.getFileType() == FileType.DIR) {
+            checkForDirectoryTarget(next.target, next.parentKey, next.attributes);
+        } else {
+            checkForFileTarget(next.target, next.parentKey, next.attributes);
+        }
+    }
+
+    /*
+     *  Called when the directory has been listed, and whenever one of its
+     *  subdirectories is closed.
+     */
+    private void directoryExpanded(DirectoryNode node) throws BulkServiceException
+    {
+        if (node.pending.decrementAndGet() > 0) {
+            return;
+        }
+
+        if (expansionType == ExpansionType.DEPTH_FIRST) {
+            /*
+             *  As in the sequential expansion, the directory is only
+             *  processed after all its descendants have terminated.
+             */
+            awaiting.add(node);
+        } else {
+            close(node);
+        }
+    }
+
+    private void closeTerminatedDirectories() throws BulkServiceException
+    {
+        List<DirectoryNode> terminated = new ArrayList<>();
+        do {
+            terminated.clear();
+            for (Iterator<DirectoryNode> i = awaiting.iterator(); i.hasNext(); ) {
+                DirectoryNode node = i.next();
+                if (completionHandler.childrenTerminated(node.key.getJobId())) {
+                    i.remove();
+                    terminated.add(node);
+                }
+            }
+
+            for (DirectoryNode node : terminated) {
+                LOGGER.debug("{}, {}, children of {} have terminated.",
+                             loggingPrefix(), expansionType.name(), node.path);
+                close(node);
+            }
+        } while (!terminated.isEmpty());
+    }
+
+    private void close(DirectoryNode node) throws BulkServiceException
+    {
+        if (expansionType == ExpansionType.DEPTH_FIRST) {
+            checkForDirectoryTarget(node.path, node.parentKey, node.attributes);
+        }
+
+        node.closed = true;
+
+        if (node.parent != null) {
+            directoryExpanded(node.parent);
+        }
+    }
+
+    private boolean isExpansionStopped()
+    {
+        return expansionStopped || isTerminated();
+    }
+
+    private void handleInterrupted()
+    {
+        State state = getState();
+        if (state == State.CANCELLED) {
+            /*
+             *  The call to cancel will have
+             *  already notified the listener.
+             */
+        } else {
+            setState(State.CANCELLED);
+            completionHandler.jobInterrupted(this);
+        }
     }
 
     /*
@@ -436,4 +796,66 @@ public final class TargetExpansionJob extends MultipleTargetJob
     {
         return this.target + " TargetExpansionJob";
     }
+
+    /**
+     *  A directory of a parallel expansion.
+     */
+    private static final class DirectoryNode
+    {
+        private final String         path;
+        private final BulkJobKey     key;
+        private final BulkJobKey     parentKey;
+        private final FileAttributes attributes;
+        private final DirectoryNode  parent;
+
+        /**
+         *  Its own listing plus the subdirectories which
+         *  have not yet been closed.
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private volatile boolean closed;
+
+        private DirectoryNode(String path,
+                              BulkJobKey key,
+                              BulkJobKey parentKey,
+                              FileAttributes attributes,
+                              DirectoryNode parent)
+        {
+            this.path = path;
+            this.key = key;
+            this.parentKey = parentKey;
+            this.attributes = attributes;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     *  Either a target read by a listing or the end of a listing.
+     */
+    private static final class Discovered
+    {
+        private final String         target;
+        private final BulkJobKey     parentKey;
+        private final FileAttributes attributes;
+        private final DirectoryNode  listed;
+
+        private Discovered(String target,
+                           BulkJobKey parentKey,
+                           FileAttributes attributes)
+        {
+            this.target = target;
+            this.parentKey = parentKey;
+            this.attributes = attributes;
+            this.listed = null;
+        }
+
+        private Discovered(DirectoryNode listed)
+        {
+            this.target = listed.path;
+            this.parentKey = listed.parentKey;
+            this.attributes = listed.attributes;
+            this.listed = listed;
+        }
+    }
 }
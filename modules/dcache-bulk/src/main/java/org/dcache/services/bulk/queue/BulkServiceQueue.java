@@ -512,7 +512,7 @@ public class BulkServiceQueue implements SignalAware {
    *
    * <p>Second, it elects from the store the next available requests to be submitted and calls
    * activate on them, converting them into BulkRequestJobs and placing them on the submitted
-   * queue.
+   * queue.  It then has the next page of stored targets of each request turned into jobs.
    *
    * <p>Third, it appends the submitted jobs to the ready queue, again removing cancelled jobs
    * there
@@ -545,6 +545,12 @@ public class BulkServiceQueue implements SignalAware {
         throw new InterruptedException();
       }
 
+      processQueuedTargets();
+
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
       appendSubmitted();
 
       if (Thread.interrupted()) {
@@ -771,6 +777,24 @@ public class BulkServiceQueue implements SignalAware {
       statistics.activeRequests(activeRequests());
     }
 
+    /**
+     * Has the submission handler create jobs for the next page of stored targets of each running
+     * request, rather than holding a job in memory for every target of a large request.
+     *
+     * <p>This method runs before the appendSubmitted() method, so that the new jobs are appended
+     * at this pass.
+     */
+    private void processQueuedTargets() {
+      LOGGER.trace("processQueuedTargets()");
+
+      try {
+        submissionHandler.submitQueuedTargets();
+      } catch (BulkServiceException e) {
+        LOGGER.error("processQueuedTargets(), problem submitting stored targets: {}",
+            e.toString());
+      }
+    }
+
     /**
      * Scans the running queue for terminal jobs and removes them, sending them to the
      * post-processor. It also checks to see if the running job is in a waiting state, and if so, it
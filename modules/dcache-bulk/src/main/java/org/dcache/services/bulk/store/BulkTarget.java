@@ -0,0 +1,198 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store;
+
+import java.io.Serializable;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.services.bulk.BulkServiceException;
+import org.dcache.services.bulk.BulkStorageException;
+import org.dcache.services.bulk.job.BulkJobKey;
+import org.dcache.vehicles.FileAttributes;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *  A single target (path) of a request, as recorded by the target store.
+ *  <p>
+ *  Holds only what is needed to create the corresponding job at a later
+ *  time: the keys which tie it into the job tree of the request and the
+ *  minimal file attributes obtained during expansion.
+ */
+public class BulkTarget implements Serializable
+{
+    private static final long serialVersionUID = -3126571409362876122L;
+
+    public enum State
+    {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isTerminal()
+        {
+            switch (this) {
+                case COMPLETED:
+                case FAILED:
+                case CANCELLED:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private final String   requestId;
+    private final String   path;
+    private final String   key;
+    private final String   parentKey;
+    private final PnfsId   pnfsId;
+    private final FileType fileType;
+
+    private State     state = State.QUEUED;
+    private Throwable error;
+    private long      lastModified;
+
+    public BulkTarget(String path,
+                      BulkJobKey key,
+                      BulkJobKey parentKey,
+                      FileAttributes attributes)
+    {
+        this.requestId = key.getRequestId();
+        this.path = requireNonNull(path);
+        this.key = key.getKey();
+        this.parentKey = parentKey.getKey();
+        pnfsId = attributes.isDefined(FileAttribute.PNFSID) ?
+                        attributes.getPnfsId() : null;
+        fileType = attributes.isDefined(FileAttribute.TYPE) ?
+                        attributes.getFileType() : null;
+        lastModified = System.currentTimeMillis();
+    }
+
+    public FileAttributes getAttributes()
+    {
+        FileAttributes attributes = new FileAttributes();
+        if (pnfsId != null) {
+            attributes.setPnfsId(pnfsId);
+        }
+        if (fileType != null) {
+            attributes.setFileType(fileType);
+        }
+        return attributes;
+    }
+
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    public BulkJobKey getKey() throws BulkStorageException
+    {
+        return parseKey(key);
+    }
+
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    public BulkJobKey getParentKey() throws BulkStorageException
+    {
+        return parseKey(parentKey);
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public String getRequestId()
+    {
+        return requestId;
+    }
+
+    public State getState()
+    {
+        return state;
+    }
+
+    public void setState(State state, Throwable error)
+    {
+        this.state = requireNonNull(state);
+        this.error = error;
+        lastModified = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString()
+    {
+        return requestId + " " + path + " (" + key + ", " + state + ")";
+    }
+
+    private static BulkJobKey parseKey(String key) throws BulkStorageException
+    {
+        try {
+            return BulkJobKey.parse(key);
+        } catch (BulkServiceException | IllegalArgumentException e) {
+            throw new BulkStorageException("corrupt target key " + key, e);
+        }
+    }
+}
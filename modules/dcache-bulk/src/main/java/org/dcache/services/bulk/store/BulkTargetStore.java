@@ -0,0 +1,144 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.dcache.services.bulk.BulkStorageException;
+import org.dcache.services.bulk.store.BulkTarget.State;
+
+/**
+ *  Records the targets discovered for a request so that jobs need only
+ *  be created for them a page at a time.
+ *  <p>
+ *  Targets are stored as QUEUED, handed out as RUNNING by {@link #next},
+ *  and finally updated to their terminal state.
+ */
+public interface BulkTargetStore
+{
+    /**
+     * Sets the next page of targets of the request which have not yet been
+     * handed out to CANCELLED.  Callers cancelling a request repeat this
+     * until no targets are returned.
+     *
+     * @param requestId of the request being cancelled.
+     * @param limit maximum number of targets to cancel.
+     * @return list of at most limit targets which were cancelled.
+     * @throws BulkStorageException
+     */
+    List<BulkTarget> cancelQueued(String requestId, int limit) throws BulkStorageException;
+
+    /**
+     * @param requestId of the request whose targets should be removed.
+     * @throws BulkStorageException
+     */
+    void clear(String requestId) throws BulkStorageException;
+
+    /**
+     * @param requestId of the request.
+     * @return number of targets of the request still waiting to be handed out.
+     * @throws BulkStorageException
+     */
+    int countQueued(String requestId) throws BulkStorageException;
+
+    /**
+     * Visits the targets of the request which have terminated.
+     *
+     * @param requestId of the request.
+     * @param visitor called once for each terminated target.
+     * @throws BulkStorageException
+     */
+    void forEachTerminated(String requestId, Consumer<BulkTarget> visitor)
+                    throws BulkStorageException;
+
+    /**
+     * Hands out the next page of queued targets of the request, marking
+     * them as RUNNING.
+     *
+     * @param requestId of the request.
+     * @param limit maximum number of targets to return.
+     * @return list of at most limit targets.
+     * @throws BulkStorageException
+     */
+    List<BulkTarget> next(String requestId, int limit) throws BulkStorageException;
+
+    /**
+     * Stores a newly discovered target as QUEUED.
+     *
+     * @param target to store.
+     * @return false if the path is already known for this request,
+     *         for instance because it terminated before a restart.
+     * @throws BulkStorageException
+     */
+    boolean store(BulkTarget target) throws BulkStorageException;
+
+    /**
+     * Update the state of the target.
+     *
+     * @param requestId of the request.
+     * @param path of the target.
+     * @param state RUNNING, COMPLETED, FAILED, CANCELLED.
+     * @param error if failed.
+     * @throws BulkStorageException
+     */
+    void update(String requestId, String path, State state, Throwable error)
+                    throws BulkStorageException;
+}
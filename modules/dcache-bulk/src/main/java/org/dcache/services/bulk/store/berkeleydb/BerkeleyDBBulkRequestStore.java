@@ -0,0 +1,494 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.berkeleydb;
+
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Required;
+
+import javax.security.auth.Subject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.dcache.auth.attributes.Restriction;
+import org.dcache.services.bulk.BulkFailures;
+import org.dcache.services.bulk.BulkPermissionDeniedException;
+import org.dcache.services.bulk.BulkRequest;
+import org.dcache.services.bulk.BulkRequestNotFoundException;
+import org.dcache.services.bulk.BulkRequestStatus;
+import org.dcache.services.bulk.BulkRequestStatus.Status;
+import org.dcache.services.bulk.BulkRequestStorageException;
+import org.dcache.services.bulk.BulkStorageException;
+import org.dcache.services.bulk.store.BulkRequestStore;
+import org.dcache.services.bulk.store.BulkTargetStore;
+import org.dcache.services.bulk.store.file.FileBulkRequestStore.FileBulkRequestWrapper;
+import org.dcache.services.bulk.store.memory.InMemoryBulkRequestStore;
+
+import static com.sleepycat.je.OperationStatus.SUCCESS;
+import static org.dcache.services.bulk.store.BulkRequestStore.uidGidKey;
+import static org.dcache.services.bulk.store.berkeleydb.BulkDatabase.storageException;
+
+/**
+ *  Request table of the Berkeley DB bulk store.
+ *  <p>
+ *  As with the file store, queries are served by the in-memory
+ *  implementation; every change of request state is written through
+ *  to the database in its own transaction.
+ *  <p>
+ *  Per-target progress is not written to the request table.  When an
+ *  unfinished request is reset at start-up, its counts and failures are
+ *  instead rebuilt from the targets which terminated before the restart,
+ *  and only the remaining targets are processed again.
+ */
+public class BerkeleyDBBulkRequestStore implements BulkRequestStore
+{
+    private static final Logger LOGGER
+                    = LoggerFactory.getLogger(BerkeleyDBBulkRequestStore.class);
+
+    private final BulkDatabase database;
+    private final InMemoryBulkRequestStore delegate;
+
+    private BulkTargetStore targetStore;
+
+    /**
+     *  For handling delayed clear requests.
+     */
+    private ScheduledExecutorService scheduler;
+
+    public BerkeleyDBBulkRequestStore(BulkDatabase database,
+                                      InMemoryBulkRequestStore delegate)
+    {
+        this.database = database;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void abort(String requestId, Throwable exception)
+    {
+        LOGGER.trace("abort {}, {}.", requestId, exception.toString());
+
+        Optional<BulkRequest> request = delegate.getRequest(requestId);
+        if (!request.isPresent()) {
+            LOGGER.error("Fatal error trying to abort {}: request not found; "
+                                         + "error which caused the abort: {}.",
+                         requestId, exception.toString());
+            return;
+        }
+
+        delegate.abort(requestId, exception);
+        write(requestId);
+
+        if (request.get().isClearOnFailure()) {
+            clear(requestId);
+        }
+    }
+
+    @Override
+    public void addTarget(String requestId)
+    {
+        delegate.addTarget(requestId);
+    }
+
+    @Override
+    public void clear(Subject subject, String requestId)
+                    throws BulkRequestStorageException,
+                    BulkPermissionDeniedException
+    {
+        LOGGER.trace("clear {}, {}.", uidGidKey(subject), requestId);
+
+        if (!delegate.isRequestSubject(subject, requestId)) {
+            throw new BulkPermissionDeniedException(requestId);
+        }
+
+        if (!delegate.getRequest(requestId).isPresent()) {
+            throw new BulkRequestNotFoundException(requestId);
+        }
+
+        clear(requestId);
+    }
+
+    @Override
+    public void clear(String requestId)
+    {
+        LOGGER.trace("clear {}.", requestId);
+
+        Optional<BulkRequest> request = delegate.getRequest(requestId);
+
+        if (!request.isPresent()) {
+            return;
+        }
+
+        Integer delay = request.get().getDelayClear();
+        if (delay == null || delay == 0) {
+            delegate.clear(requestId);
+            delete(requestId);
+        } else {
+            scheduler.schedule(() -> {
+                delegate.clear(requestId);
+                delete(requestId);
+            }, delay, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public int countActive() throws BulkRequestStorageException
+    {
+        return delegate.countActive();
+    }
+
+    @Override
+    public int countNonTerminated(String user)
+    {
+        return delegate.countNonTerminated(user);
+    }
+
+    @Override
+    public Collection<BulkRequest> find(Optional<Predicate<BulkRequest>> requestFilter,
+                                        Optional<Predicate<BulkRequestStatus>> statusFilter,
+                                        Long limit)
+    {
+        return delegate.find(requestFilter, statusFilter, limit);
+    }
+
+    @Override
+    public Set<String> getRequestUrls(Subject subject, Set<Status> status)
+    {
+        return delegate.getRequestUrls(subject, status);
+    }
+
+    @Override
+    public Optional<BulkRequest> getRequest(String requestId)
+    {
+        return delegate.getRequest(requestId);
+    }
+
+    @Override
+    public Optional<Restriction> getRestriction(String requestId)
+    {
+        return delegate.getRestriction(requestId);
+    }
+
+    @Override
+    public BulkRequestStatus getStatus(Subject subject, String requestId)
+                    throws BulkPermissionDeniedException,
+                    BulkRequestStorageException
+    {
+        return delegate.getStatus(subject, requestId);
+    }
+
+    @Override
+    public Optional<BulkRequestStatus> getStatus(String requestId)
+    {
+        return delegate.getStatus(requestId);
+    }
+
+    @Override
+    public Comparator<String> getStatusComparator()
+    {
+        return delegate.getStatusComparator();
+    }
+
+    @Override
+    public Optional<Subject> getSubject(String requestId)
+    {
+        return delegate.getSubject(requestId);
+    }
+
+    @Override
+    public Set<String> ids()
+    {
+        return delegate.ids();
+    }
+
+    @Override
+    public boolean isRequestSubject(Subject subject, String requestId)
+    {
+        return delegate.isRequestSubject(subject, requestId);
+    }
+
+    /**
+     *  Reads all requests into memory and restarts those which were
+     *  running when the service went down.
+     */
+    @Override
+    public void load() throws BulkStorageException
+    {
+        LOGGER.trace("load called.");
+
+        List<String> unfinished = new ArrayList<>();
+
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry data = new DatabaseEntry();
+
+        try (Cursor cursor = database.getRequestDatabase()
+                                     .openCursor(null, CursorConfig.READ_COMMITTED)) {
+            OperationStatus status = cursor.getFirst(key, data, LockMode.DEFAULT);
+            while (status == SUCCESS) {
+                FileBulkRequestWrapper wrapper = database.toRequest(data);
+                BulkRequestStatus requestStatus = wrapper.getStatus();
+
+                switch (requestStatus.getStatus()) {
+                    case CANCELLING:
+                        /*
+                         *  Cancellation is not resumed; the remaining
+                         *  targets are simply not processed.
+                         */
+                        requestStatus.setStatus(Status.CANCELLED);
+                        break;
+                    case STARTED:
+                        unfinished.add(database.toKey(key));
+                        break;
+                    default:
+                }
+
+                delegate.store(wrapper.getSubject(),
+                               wrapper.getRestriction(),
+                               wrapper.getRequest(),
+                               requestStatus);
+
+                status = cursor.getNext(key, data, LockMode.DEFAULT);
+            }
+        } catch (DatabaseException e) {
+            throw storageException("load", e);
+        }
+
+        for (String requestId : unfinished) {
+            restart(requestId);
+        }
+
+        LOGGER.info("Loaded {} requests, {} of which were restarted.",
+                    delegate.ids().size(), unfinished.size());
+    }
+
+    @Override
+    public List<BulkRequest> next(long limit)
+    {
+        return delegate.next(limit);
+    }
+
+    /**
+     *  Called by the admin to run the request again from scratch,
+     *  so its targets are forgotten as well.
+     */
+    @Override
+    public void reset(String requestId) throws BulkRequestStorageException
+    {
+        LOGGER.trace("reset {}.", requestId);
+        delegate.reset(requestId);
+        try {
+            targetStore.clear(requestId);
+        } catch (BulkStorageException e) {
+            throw new BulkRequestStorageException("could not clear targets of "
+                                                                  + requestId, e);
+        }
+        write(requestId);
+    }
+
+    /**
+     *  All changes are written through.
+     */
+    @Override
+    public void save()
+    {
+    }
+
+    @Required
+    public void setScheduler(ScheduledExecutorService scheduler)
+    {
+        this.scheduler = scheduler;
+    }
+
+    @Required
+    public void setTargetStore(BulkTargetStore targetStore)
+    {
+        this.targetStore = targetStore;
+    }
+
+    @Override
+    public void store(Subject subject,
+                      Restriction restriction,
+                      BulkRequest request,
+                      BulkRequestStatus status)
+    {
+        LOGGER.trace("store {}, subject {}.", request.getId(), uidGidKey(subject));
+        delegate.store(subject, restriction, request, status);
+        write(request.getId());
+    }
+
+    @Override
+    public void targetAborted(String requestId, String target, Throwable exception)
+                    throws BulkRequestStorageException
+    {
+        delegate.targetAborted(requestId, target, exception);
+    }
+
+    @Override
+    public void targetCompleted(String requestId, String target, Throwable exception)
+                    throws BulkRequestStorageException
+    {
+        delegate.targetCompleted(requestId, target, exception);
+    }
+
+    @Override
+    public void update(String requestId, Status status)
+                    throws BulkRequestStorageException
+    {
+        LOGGER.trace("update {}, {}.", requestId, status);
+
+        Optional<BulkRequest> request = delegate.getRequest(requestId);
+        if (!request.isPresent()) {
+            throw new BulkRequestStorageException("Request " + requestId
+                                                                  + " not found.");
+        }
+
+        delegate.update(requestId, status);
+        write(requestId);
+
+        if (status == Status.COMPLETED) {
+            BulkRequestStatus requestStatus = delegate.getStatus(requestId).orElseThrow(
+                            () -> new BulkRequestStorageException("Request " + requestId
+                                                   + " has been corrupted and has no "
+                                                   + "status object."));
+
+            BulkFailures failures = requestStatus.getFailures();
+            if (failures != null) {
+                if (request.get().isClearOnFailure()) {
+                    LOGGER.trace("request is clear on failure: {}.", requestId);
+                    clear(requestId);
+                }
+            } else if (request.get().isClearOnSuccess()) {
+                LOGGER.trace("request is clear on success: {}.", requestId);
+                clear(requestId);
+            }
+        }
+    }
+
+    private void delete(String requestId)
+    {
+        LOGGER.trace("delete {}.", requestId);
+
+        try {
+            targetStore.clear(requestId);
+            database.getRequestDatabase().delete(null, database.toEntry(requestId));
+        } catch (BulkStorageException | DatabaseException e) {
+            LOGGER.warn("Failed to delete {} from the database: {}.", requestId,
+                        e.getMessage());
+        }
+    }
+
+    /*
+     *  Puts the request back on the queue, keeping the record of the
+     *  targets which had already terminated.
+     */
+    private void restart(String requestId) throws BulkStorageException
+    {
+        LOGGER.trace("restart {}.", requestId);
+
+        delegate.reset(requestId);
+        targetStore.forEachTerminated(requestId, target -> {
+            delegate.addTarget(requestId);
+            try {
+                delegate.targetCompleted(requestId, target.getPath(), target.getError());
+            } catch (BulkRequestStorageException e) {
+                LOGGER.warn("Could not restore {}: {}.", target, e.getMessage());
+            }
+        });
+        write(requestId);
+    }
+
+    private void write(String requestId)
+    {
+        LOGGER.trace("write {}.", requestId);
+
+        BulkRequest request = delegate.getRequest(requestId).orElse(null);
+        if (request == null) {
+            LOGGER.warn("Could not find request {}; cannot write to the database.",
+                        requestId);
+            return;
+        }
+
+        FileBulkRequestWrapper wrapper
+                        = new FileBulkRequestWrapper(request,
+                                                     delegate.getStatus(requestId).orElse(null),
+                                                     delegate.getSubject(requestId).orElse(null),
+                                                     delegate.getRestriction(requestId).orElse(null));
+        try {
+            database.getRequestDatabase().put(null, database.toEntry(requestId),
+                                              database.toEntry(wrapper));
+        } catch (DatabaseException e) {
+            LOGGER.warn("Failed to write {} to the database: {}.", requestId,
+                        e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.berkeleydb;
+
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.SecondaryCursor;
+import com.sleepycat.je.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.dcache.services.bulk.BulkStorageException;
+import org.dcache.services.bulk.store.BulkTarget;
+import org.dcache.services.bulk.store.BulkTarget.State;
+import org.dcache.services.bulk.store.BulkTargetStore;
+
+import static com.sleepycat.je.OperationStatus.SUCCESS;
+import static java.util.Objects.requireNonNull;
+import static org.dcache.services.bulk.store.berkeleydb.BulkDatabase.abort;
+import static org.dcache.services.bulk.store.berkeleydb.BulkDatabase.storageException;
+
+/**
+ *  Target table of the Berkeley DB bulk store.
+ *  <p>
+ *  Terminated targets are kept until their request is cleared, so that
+ *  they are not processed again should the request be restarted.  Targets
+ *  which had not terminated when the service went down are removed on
+ *  initialization; they are stored anew when the restarted request
+ *  expands its targets again.
+ *  <p>
+ *  Bulk changes (recovery, cancellation, clearing) are committed in
+ *  batches so that a request with millions of targets does not produce
+ *  a single huge transaction.
+ */
+public class BerkeleyDBBulkTargetStore implements BulkTargetStore
+{
+    private static final Logger LOGGER
+                    = LoggerFactory.getLogger(BerkeleyDBBulkTargetStore.class);
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private final BulkDatabase database;
+
+    public BerkeleyDBBulkTargetStore(BulkDatabase database)
+    {
+        this.database = requireNonNull(database);
+    }
+
+    /**
+     *  Removes all targets left in a non-terminal state by the previous
+     *  run of the service.
+     */
+    public void initialize() throws BulkStorageException
+    {
+        long removed = remove("", t -> !t.getState().isTerminal());
+        LOGGER.info("Removed {} unfinished targets from the previous run.", removed);
+    }
+
+    @Override
+    public List<BulkTarget> cancelQueued(String requestId, int limit)
+                    throws BulkStorageException
+    {
+        List<BulkTarget> cancelled = transition(requestId, State.QUEUED, State.CANCELLED, limit);
+
+        LOGGER.trace("cancelQueued {}, cancelled {} targets.", requestId, cancelled.size());
+
+        return cancelled;
+    }
+
+    @Override
+    public void clear(String requestId) throws BulkStorageException
+    {
+        long removed = remove(BulkDatabase.targetKeyPrefix(requestId), t -> true);
+        LOGGER.trace("clear {}, removed {} targets.", requestId, removed);
+    }
+
+    @Override
+    public int countQueued(String requestId) throws BulkStorageException
+    {
+        DatabaseEntry key = database.toEntry(BulkDatabase.stateKey(requestId, State.QUEUED));
+        DatabaseEntry pKey = new DatabaseEntry();
+        DatabaseEntry data = new DatabaseEntry();
+        data.setPartial(0, 0, true);
+
+        try (SecondaryCursor cursor = database.getTargetStateIndex()
+                                              .openCursor(null, CursorConfig.READ_COMMITTED)) {
+            if (cursor.getSearchKey(key, pKey, data, LockMode.DEFAULT) != SUCCESS) {
+                return 0;
+            }
+            return cursor.count();
+        } catch (DatabaseException e) {
+            throw storageException("countQueued " + requestId, e);
+        }
+    }
+
+    @Override
+    public void forEachTerminated(String requestId, Consumer<BulkTarget> visitor)
+                    throws BulkStorageException
+    {
+        String prefix = BulkDatabase.targetKeyPrefix(requestId);
+        DatabaseEntry key = database.toEntry(prefix);
+        DatabaseEntry data = new DatabaseEntry();
+
+        try (Cursor cursor = database.getTargetDatabase()
+                                     .openCursor(null, CursorConfig.READ_COMMITTED)) {
+            OperationStatus status = cursor.getSearchKeyRange(key, data, LockMode.DEFAULT);
+            while (status == SUCCESS && database.toKey(key).startsWith(prefix)) {
+                BulkTarget target = database.toTarget(data);
+                if (target.getState().isTerminal()) {
+                    visitor.accept(target);
+                }
+                status = cursor.getNext(key, data, LockMode.DEFAULT);
+            }
+        } catch (DatabaseException e) {
+            throw storageException("forEachTerminated " + requestId, e);
+        }
+    }
+
+    @Override
+    public List<BulkTarget> next(String requestId, int limit) throws BulkStorageException
+    {
+        return transition(requestId, State.QUEUED, State.RUNNING, limit);
+    }
+
+    @Override
+    public boolean store(BulkTarget target) throws BulkStorageException
+    {
+        DatabaseEntry key = database.toEntry(BulkDatabase.targetKey(target.getRequestId(),
+                                                                    target.getPath()));
+        try {
+            return database.getTargetDatabase()
+                           .putNoOverwrite(null, key, database.toEntry(target)) == SUCCESS;
+        } catch (DatabaseException e) {
+            throw storageException("store " + target, e);
+        }
+    }
+
+    @Override
+    public void update(String requestId, String path, State state, Throwable error)
+                    throws BulkStorageException
+    {
+        DatabaseEntry key = database.toEntry(BulkDatabase.targetKey(requestId, path));
+        DatabaseEntry data = new DatabaseEntry();
+
+        Transaction txn = null;
+        try {
+            txn = database.beginTransaction();
+            if (database.getTargetDatabase().get(txn, key, data, LockMode.RMW) != SUCCESS) {
+                LOGGER.debug("update {} {}: target not found.", requestId, path);
+                txn.commit();
+                return;
+            }
+
+            BulkTarget target = database.toTarget(data);
+            target.setState(state, error);
+            database.getTargetDatabase().put(txn, key, database.toEntry(target));
+            txn.commit();
+        } catch (DatabaseException e) {
+            abort(txn);
+            throw storageException("update " + requestId + " " + path, e);
+        }
+    }
+
+    /*
+     *  Moves up to limit targets of the request from one state to another
+     *  in a single transaction.  The primary keys are collected first, as
+     *  updating the state of a target moves its entry in the index.
+     */
+    private List<BulkTarget> transition(String requestId, State from, State to, int limit)
+                    throws BulkStorageException
+    {
+        List<DatabaseEntry> keys = new ArrayList<>();
+        List<BulkTarget> targets = new ArrayList<>();
+
+        Transaction txn = null;
+        try {
+            txn = database.beginTransaction();
+
+            DatabaseEntry key = database.toEntry(BulkDatabase.stateKey(requestId, from));
+            DatabaseEntry pKey = new DatabaseEntry();
+            DatabaseEntry data = new DatabaseEntry();
+
+            try (SecondaryCursor cursor = database.getTargetStateIndex().openCursor(txn, null)) {
+                OperationStatus status = cursor.getSearchKey(key, pKey, data, LockMode.RMW);
+                while (status == SUCCESS && keys.size() < limit) {
+                    keys.add(pKey);
+                    targets.add(database.toTarget(data));
+                    pKey = new DatabaseEntry();
+                    data = new DatabaseEntry();
+                    status = cursor.getNextDup(key, pKey, data, LockMode.RMW);
+                }
+            }
+
+            for (int i = 0; i < keys.size(); ++i) {
+                BulkTarget target = targets.get(i);
+                target.setState(to, null);
+                database.getTargetDatabase().put(txn, keys.get(i), database.toEntry(target));
+            }
+
+            txn.commit();
+        } catch (DatabaseException e) {
+            abort(txn);
+            throw storageException("transition " + requestId + " from " + from
+                                                   + " to " + to, e);
+        }
+
+        return targets;
+    }
+
+    /*
+     *  Deletes the targets whose key starts with the prefix and which
+     *  match the filter.
+     */
+    private long remove(String prefix, Predicate<BulkTarget> filter)
+                    throws BulkStorageException
+    {
+        long removed = 0;
+        String resumeAt = prefix;
+
+        while (resumeAt != null) {
+            Transaction txn = null;
+            try {
+                txn = database.beginTransaction();
+
+                DatabaseEntry key = database.toEntry(resumeAt);
+                DatabaseEntry data = new DatabaseEntry();
+                resumeAt = null;
+
+                try (Cursor cursor = database.getTargetDatabase().openCursor(txn, null)) {
+                    OperationStatus status = cursor.getSearchKeyRange(key, data, LockMode.RMW);
+                    int visited = 0;
+                    while (status == SUCCESS && database.toKey(key).startsWith(prefix)) {
+                        if (visited++ == BATCH_SIZE) {
+                            resumeAt = database.toKey(key);
+                            break;
+                        }
+                        if (filter.test(database.toTarget(data))) {
+                            cursor.delete();
+                            ++removed;
+                        }
+                        status = cursor.getNext(key, data, LockMode.RMW);
+                    }
+                }
+
+                txn.commit();
+            } catch (DatabaseException e) {
+                abort(txn);
+                throw storageException("remove " + prefix, e);
+            }
+        }
+
+        return removed;
+    }
+}
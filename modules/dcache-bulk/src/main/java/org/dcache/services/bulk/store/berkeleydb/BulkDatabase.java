@@ -0,0 +1,259 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.berkeleydb;
+
+import com.sleepycat.bind.serial.SerialBinding;
+import com.sleepycat.bind.serial.StoredClassCatalog;
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.SecondaryConfig;
+import com.sleepycat.je.SecondaryDatabase;
+import com.sleepycat.je.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+import org.dcache.services.bulk.BulkStorageException;
+import org.dcache.services.bulk.store.BulkTarget;
+import org.dcache.services.bulk.store.BulkTarget.State;
+import org.dcache.services.bulk.store.file.FileBulkRequestStore.FileBulkRequestWrapper;
+
+/**
+ *  Encapsulates the Berkeley DB environment holding the bulk requests
+ *  and their targets.
+ *  <p>
+ *  Requests are keyed by id.  Targets are keyed by request id and path,
+ *  so that the targets of a request are adjacent; a secondary index on
+ *  request id and state allows the queued targets of a request to be
+ *  paged through without scanning the others.
+ */
+public class BulkDatabase
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkDatabase.class);
+
+    private static final String CLASS_CATALOG = "java_class_catalog";
+    private static final String REQUEST_STORE = "request_store";
+    private static final String TARGET_STORE = "target_store";
+    private static final String TARGET_STATE_INDEX = "target_state_index";
+
+    private static final String SEPARATOR = "::";
+
+    private final Environment env;
+    private final StoredClassCatalog javaCatalog;
+    private final Database requestDatabase;
+    private final Database targetDatabase;
+    private final SecondaryDatabase targetStateIndex;
+    private final SerialBinding<FileBulkRequestWrapper> requestBinding;
+    private final SerialBinding<BulkTarget> targetBinding;
+
+    private boolean closed;
+
+    public static String targetKey(String requestId, String path)
+    {
+        return requestId + SEPARATOR + path;
+    }
+
+    public static String targetKeyPrefix(String requestId)
+    {
+        return requestId + SEPARATOR;
+    }
+
+    public static String stateKey(String requestId, State state)
+    {
+        return requestId + SEPARATOR + state.name();
+    }
+
+    public BulkDatabase(File homeDirectory) throws DatabaseException
+    {
+        if (!homeDirectory.exists()) {
+            homeDirectory.mkdirs();
+        }
+
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setTransactional(true);
+        envConfig.setAllowCreate(true);
+
+        /*
+         *  Losing the last few state changes in a crash only means the
+         *  corresponding targets are processed again.
+         */
+        envConfig.setDurability(Durability.COMMIT_WRITE_NO_SYNC);
+
+        env = new Environment(homeDirectory, envConfig);
+
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setTransactional(true);
+        dbConfig.setAllowCreate(true);
+
+        javaCatalog = new StoredClassCatalog(env.openDatabase(null, CLASS_CATALOG, dbConfig));
+        requestBinding = new SerialBinding<>(javaCatalog, FileBulkRequestWrapper.class);
+        targetBinding = new SerialBinding<>(javaCatalog, BulkTarget.class);
+
+        requestDatabase = env.openDatabase(null, REQUEST_STORE, dbConfig);
+        targetDatabase = env.openDatabase(null, TARGET_STORE, dbConfig);
+
+        SecondaryConfig indexConfig = new SecondaryConfig();
+        indexConfig.setTransactional(true);
+        indexConfig.setAllowCreate(true);
+        indexConfig.setAllowPopulate(true);
+        indexConfig.setSortedDuplicates(true);
+        indexConfig.setKeyCreator((secondary, key, data, result) -> {
+            BulkTarget target = targetBinding.entryToObject(data);
+            StringBinding.stringToEntry(stateKey(target.getRequestId(),
+                                                 target.getState()), result);
+            return true;
+        });
+        targetStateIndex = env.openSecondaryDatabase(null, TARGET_STATE_INDEX,
+                                                     targetDatabase, indexConfig);
+
+        LOGGER.info("Opened bulk database in {}.", homeDirectory);
+    }
+
+    public synchronized void close() throws DatabaseException
+    {
+        if (!closed) {
+            targetStateIndex.close();
+            targetDatabase.close();
+            requestDatabase.close();
+            javaCatalog.close();
+            env.close();
+            closed = true;
+        }
+    }
+
+    public Transaction beginTransaction() throws DatabaseException
+    {
+        return env.beginTransaction(null, null);
+    }
+
+    public Database getRequestDatabase()
+    {
+        return requestDatabase;
+    }
+
+    public Database getTargetDatabase()
+    {
+        return targetDatabase;
+    }
+
+    public SecondaryDatabase getTargetStateIndex()
+    {
+        return targetStateIndex;
+    }
+
+    public DatabaseEntry toEntry(String key)
+    {
+        DatabaseEntry entry = new DatabaseEntry();
+        StringBinding.stringToEntry(key, entry);
+        return entry;
+    }
+
+    public String toKey(DatabaseEntry entry)
+    {
+        return StringBinding.entryToString(entry);
+    }
+
+    public DatabaseEntry toEntry(FileBulkRequestWrapper wrapper)
+    {
+        DatabaseEntry entry = new DatabaseEntry();
+        requestBinding.objectToEntry(wrapper, entry);
+        return entry;
+    }
+
+    public FileBulkRequestWrapper toRequest(DatabaseEntry entry)
+    {
+        return requestBinding.entryToObject(entry);
+    }
+
+    public DatabaseEntry toEntry(BulkTarget target)
+    {
+        DatabaseEntry entry = new DatabaseEntry();
+        targetBinding.objectToEntry(target, entry);
+        return entry;
+    }
+
+    public BulkTarget toTarget(DatabaseEntry entry)
+    {
+        return targetBinding.entryToObject(entry);
+    }
+
+    static void abort(Transaction txn)
+    {
+        if (txn != null) {
+            try {
+                txn.abort();
+            } catch (DatabaseException e) {
+                LOGGER.warn("Failed to abort transaction: {}.", e.getMessage());
+            }
+        }
+    }
+
+    static BulkStorageException storageException(String operation, DatabaseException e)
+    {
+        return new BulkStorageException(operation + " failed: " + e.getMessage(), e);
+    }
+}
@@ -106,7 +106,7 @@ import static org.dcache.services.bulk.store.BulkRequestStore.uidGidKey;
 public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkRequestWrapper>
                 implements BulkRequestStore
 {
-    static class FileBulkRequestWrapper implements Serializable
+    public static class FileBulkRequestWrapper implements Serializable
     {
         private static final long serialVersionUID = 2678690448465233963L;
 
@@ -129,10 +129,10 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
         Subject                   subject;
         Restriction               restriction;
 
-        FileBulkRequestWrapper(BulkRequest request,
-                               BulkRequestStatus status,
-                               Subject subject,
-                               Restriction restriction)
+        public FileBulkRequestWrapper(BulkRequest request,
+                                      BulkRequestStatus status,
+                                      Subject subject,
+                                      Restriction restriction)
         {
             if (request != null) {
                 setRequest(request);
@@ -146,7 +146,7 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
             this.restriction = restriction;
         }
 
-        BulkRequest getRequest()
+        public BulkRequest getRequest()
         {
             BulkRequest request = new BulkRequest();
             request.setId(requestId);
@@ -162,12 +162,12 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
             return request;
         }
 
-        Restriction getRestriction()
+        public Restriction getRestriction()
         {
             return restriction;
         }
 
-        BulkRequestStatus getStatus()
+        public BulkRequestStatus getStatus()
         {
             BulkRequestStatus status = new BulkRequestStatus();
             status.setFirstArrived(firstArrived);
@@ -181,7 +181,7 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
             return status;
         }
 
-        Subject getSubject()
+        public Subject getSubject()
         {
             return subject;
         }
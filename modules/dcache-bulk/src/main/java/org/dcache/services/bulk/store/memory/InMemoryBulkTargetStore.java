@@ -0,0 +1,227 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.dcache.services.bulk.store.BulkTarget;
+import org.dcache.services.bulk.store.BulkTarget.State;
+import org.dcache.services.bulk.store.BulkTargetStore;
+
+/**
+ *  Holds the targets of requests which have not yet terminated.
+ *  <p>
+ *  Terminated targets are dropped immediately, as there is nothing
+ *  to recover them for after a restart.
+ */
+public class InMemoryBulkTargetStore extends InMemoryStore implements BulkTargetStore
+{
+    private final Map<String, Map<String, BulkTarget>> queued  = new HashMap<>();
+    private final Map<String, Map<String, BulkTarget>> running = new HashMap<>();
+
+    @Override
+    public List<BulkTarget> cancelQueued(String requestId, int limit)
+    {
+        write.lock();
+        try {
+            Map<String, BulkTarget> targets = queued.get(requestId);
+            if (targets == null) {
+                return Collections.emptyList();
+            }
+
+            List<BulkTarget> cancelled = new ArrayList<>();
+            for (Iterator<BulkTarget> i = targets.values().iterator();
+                 i.hasNext() && cancelled.size() < limit; ) {
+                BulkTarget target = i.next();
+                i.remove();
+                target.setState(State.CANCELLED, null);
+                cancelled.add(target);
+            }
+
+            if (targets.isEmpty()) {
+                queued.remove(requestId);
+            }
+
+            return cancelled;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String requestId)
+    {
+        write.lock();
+        try {
+            queued.remove(requestId);
+            running.remove(requestId);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public int countQueued(String requestId)
+    {
+        read.lock();
+        try {
+            Map<String, BulkTarget> targets = queued.get(requestId);
+            return targets == null ? 0 : targets.size();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public void forEachTerminated(String requestId, Consumer<BulkTarget> visitor)
+    {
+        /*
+         *  Terminated targets are not kept.
+         */
+    }
+
+    @Override
+    public List<BulkTarget> next(String requestId, int limit)
+    {
+        write.lock();
+        try {
+            Map<String, BulkTarget> targets = queued.get(requestId);
+            if (targets == null) {
+                return Collections.emptyList();
+            }
+
+            Map<String, BulkTarget> handedOut
+                            = running.computeIfAbsent(requestId, k -> new HashMap<>());
+            List<BulkTarget> next = new ArrayList<>();
+            for (Iterator<BulkTarget> i = targets.values().iterator();
+                 i.hasNext() && next.size() < limit; ) {
+                BulkTarget target = i.next();
+                i.remove();
+                target.setState(State.RUNNING, null);
+                handedOut.put(target.getPath(), target);
+                next.add(target);
+            }
+
+            if (targets.isEmpty()) {
+                queued.remove(requestId);
+            }
+
+            return next;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public boolean store(BulkTarget target)
+    {
+        String requestId = target.getRequestId();
+        String path = target.getPath();
+
+        write.lock();
+        try {
+            Map<String, BulkTarget> handedOut = running.get(requestId);
+            if (handedOut != null && handedOut.containsKey(path)) {
+                return false;
+            }
+
+            return queued.computeIfAbsent(requestId, k -> new LinkedHashMap<>())
+                         .putIfAbsent(path, target) == null;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void update(String requestId, String path, State state, Throwable error)
+    {
+        write.lock();
+        try {
+            if (!state.isTerminal()) {
+                return;
+            }
+
+            remove(queued, requestId, path);
+            remove(running, requestId, path);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    private static void remove(Map<String, Map<String, BulkTarget>> targets,
+                               String requestId,
+                               String path)
+    {
+        Map<String, BulkTarget> ofRequest = targets.get(requestId);
+        if (ofRequest != null) {
+            ofRequest.remove(path);
+            if (ofRequest.isEmpty()) {
+                targets.remove(requestId);
+            }
+        }
+    }
+}
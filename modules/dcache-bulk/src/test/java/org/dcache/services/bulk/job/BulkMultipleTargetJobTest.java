@@ -61,14 +61,19 @@ package org.dcache.services.bulk.job;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import diskCacheV111.util.PnfsHandler;
 import diskCacheV111.util.PnfsId;
@@ -99,6 +104,7 @@ import static org.dcache.services.bulk.job.MultipleTargetJob.TargetType.BOTH;
 import static org.dcache.services.bulk.job.MultipleTargetJob.TargetType.FILE;
 import static org.dcache.services.bulk.job.TargetExpansionJob.ExpansionType.BREADTH_FIRST;
 import static org.dcache.services.bulk.job.TargetExpansionJob.ExpansionType.DEPTH_FIRST;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -150,6 +156,7 @@ public class BulkMultipleTargetJobTest implements SignalAware
     ListDirectoryHandler             listDirectoryHandler;
     BulkSubmissionHandler            submissionHandler;
     BulkJobCompletionHandler         completionHandler;
+    ExecutorService                  listingExecutor;
 
     BulkRequest        request;
     BulkJobKey         requestKey;
@@ -399,6 +406,67 @@ public class BulkMultipleTargetJobTest implements SignalAware
         assertThatSingleTargetSubmitWasCalled(3);
     }
 
+    @Test
+    public void parallelDepthFirstExpansionShouldSubmitThirteenSingleTargetJobs()
+                    throws Exception
+    {
+        givenRequestWithTargetAndDepth("pnfs", ALL);
+        givenExpansionWith("pnfs", DEPTH_FIRST, TargetType.FILE);
+        givenParallelListingWithBufferSize(100);
+        whenExpansionJobRuns();
+        assertThatSingleTargetSubmitWasCalled(13);
+        assertThatExpansionSubmitWasCalled(0);
+    }
+
+    @Test
+    public void parallelDepthFirstExpansionShouldSubmitDirectoriesAfterDescendants()
+                    throws Exception
+    {
+        givenRequestWithTargetAndDepth("pnfs", ALL);
+        givenExpansionWith("pnfs", DEPTH_FIRST, TargetType.DIR);
+        givenParallelListingWithBufferSize(100);
+        whenExpansionJobRuns();
+        assertThatTargetsWereSubmittedInOrder(7,
+                                              "pnfs/fs/test/test-child-2/test-child-2-empty",
+                                              "pnfs/fs/test/test-child-2",
+                                              "pnfs/fs/test",
+                                              "pnfs/fs",
+                                              "pnfs");
+        assertThatTargetsWereSubmittedInOrder(7,
+                                              "pnfs/fs/scratch",
+                                              "pnfs/fs");
+    }
+
+    @Test
+    public void parallelBreadthFirstExpansionShouldExpandWholeTreeItself()
+                    throws Exception
+    {
+        /*
+         *  Unlike the sequential breadth-first expansion, no new
+         *  expansion jobs are submitted for subdirectories.
+         */
+        givenRequestWithTargetAndDepth("pnfs", ALL);
+        givenExpansionWith("test", BREADTH_FIRST, BOTH);
+        givenParallelListingWithBufferSize(100);
+        whenExpansionJobRuns();
+        assertThatExpansionSubmitWasCalled(0);
+        assertThatTargetsWereSubmittedInOrder(11,
+                                              "test",
+                                              "test/test-child-2",
+                                              "test/test-child-2/test-child-2-file-1");
+    }
+
+    @Test
+    public void parallelExpansionShouldSubmitAllTargetsWithMinimalBuffer()
+                    throws Exception
+    {
+        givenRequestWithTargetAndDepth("pnfs", ALL);
+        givenExpansionWith("pnfs", DEPTH_FIRST, BOTH);
+        givenParallelListingWithBufferSize(1);
+        whenExpansionJobRuns();
+        assertThatSingleTargetSubmitWasCalled(20);
+    }
+
     @Before
     public void setup() throws Exception
     {
@@ -409,6 +477,13 @@ public class BulkMultipleTargetJobTest implements SignalAware
         listDirectoryHandler = new ListDirectoryHandler(pnfsHandler);
         submissionHandler = mock(BulkSubmissionHandler.class);
         completionHandler = new BulkJobCompletionHandler(this);
+        listingExecutor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void shutdown()
+    {
+        listingExecutor.shutdownNow();
     }
 
     @Override
@@ -442,6 +517,23 @@ public class BulkMultipleTargetJobTest implements SignalAware
                                                any(MultipleTargetJob.class));
     }
 
+    private void assertThatTargetsWereSubmittedInOrder(int times, String ... targets)
+                    throws Exception
+    {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(submissionHandler, times(times))
+                        .submitSingleTargetJob(captor.capture(),
+                                               any(BulkJobKey.class),
+                                               any(),
+                                               any(MultipleTargetJob.class));
+        List<String> submitted = captor.getAllValues();
+        for (int i = 1; i < targets.length; ++i) {
+            assertTrue(targets[i - 1] + " submitted after " + targets[i],
+                       submitted.indexOf(targets[i - 1])
+                                       < submitted.indexOf(targets[i]));
+        }
+    }
+
     private void add(String dir, String name, FileType type)
     {
         FileAttributes attr = new FileAttributes();
@@ -470,6 +562,13 @@ public class BulkMultipleTargetJobTest implements SignalAware
         targetExpansionJob.setCompletionHandler(completionHandler);
     }
 
+    private void givenParallelListingWithBufferSize(int bufferSize)
+    {
+        targetExpansionJob.setListingExecutor(listingExecutor);
+        targetExpansionJob.setMaxConcurrentListings(2);
+        targetExpansionJob.setBufferSize(bufferSize);
+    }
+
     private void givenRequestJobOfType(TargetType targetType) throws Exception
     {
         requestJob = new BulkRequestJob(requestKey, request, targetType);
@@ -0,0 +1,259 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.berkeleydb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.dcache.auth.Subjects;
+import org.dcache.auth.attributes.Restrictions;
+import org.dcache.services.bulk.BulkRequest;
+import org.dcache.services.bulk.BulkRequest.Depth;
+import org.dcache.services.bulk.BulkRequestStatus;
+import org.dcache.services.bulk.BulkRequestStatus.Status;
+import org.dcache.services.bulk.job.BulkJobKey;
+import org.dcache.services.bulk.store.BulkTarget;
+import org.dcache.services.bulk.store.BulkTarget.State;
+import org.dcache.services.bulk.store.memory.InMemoryBulkRequestStore;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BerkeleyDBBulkRequestStoreTest
+{
+    @Rule
+    public TemporaryFolder     folder = new TemporaryFolder();
+
+    ScheduledExecutorService   scheduler;
+    BulkDatabase               database;
+    BerkeleyDBBulkTargetStore  targetStore;
+    BerkeleyDBBulkRequestStore store;
+    BulkRequest                request;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        givenServiceStarted();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        database.close();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldLoadStoredRequest() throws Exception
+    {
+        givenStoredRequest();
+
+        whenServiceRestarts();
+
+        assertTrue(store.getRequest(request.getId()).isPresent());
+        assertEquals(Status.QUEUED, status().getStatus());
+        assertTrue(store.isRequestSubject(Subjects.ROOT, request.getId()));
+    }
+
+    @Test
+    public void shouldRestartStartedRequestWithTerminatedTargets() throws Exception
+    {
+        givenStoredRequest();
+        store.update(request.getId(), Status.STARTED);
+        givenStoredTargets(4);
+        targetStore.next(request.getId(), 3);
+        targetStore.update(request.getId(), "/file0", State.COMPLETED, null);
+        targetStore.update(request.getId(), "/file1", State.FAILED, new Exception("failed"));
+
+        whenServiceRestarts();
+
+        BulkRequestStatus status = status();
+        assertEquals(Status.QUEUED, status.getStatus());
+        assertEquals(2, status.getTargets());
+        assertEquals(2, status.getProcessed());
+        assertEquals(1, status.getFailures().count());
+        assertTrue(status.getFailures().getFailures().containsKey("/file1"));
+        assertEquals(0, targetStore.countQueued(request.getId()));
+        assertEquals(request.getId(), store.next(10).get(0).getId());
+    }
+
+    @Test
+    public void shouldCancelCancellingRequestOnLoad() throws Exception
+    {
+        givenStoredRequest();
+        store.update(request.getId(), Status.STARTED);
+        store.update(request.getId(), Status.CANCELLING);
+
+        whenServiceRestarts();
+
+        assertEquals(Status.CANCELLED, status().getStatus());
+        assertTrue(store.next(10).isEmpty());
+    }
+
+    @Test
+    public void shouldNotRestartCompletedRequest() throws Exception
+    {
+        givenStoredRequest();
+        store.update(request.getId(), Status.STARTED);
+        givenStoredTargets(1);
+        targetStore.next(request.getId(), 1);
+        targetStore.update(request.getId(), "/file0", State.COMPLETED, null);
+        store.targetCompleted(request.getId(), "/file0", null);
+        store.update(request.getId(), Status.COMPLETED);
+
+        whenServiceRestarts();
+
+        assertEquals(Status.COMPLETED, status().getStatus());
+        assertEquals(1, status().getProcessed());
+        assertTrue(store.next(10).isEmpty());
+    }
+
+    @Test
+    public void shouldRemoveClearedRequestAndItsTargets() throws Exception
+    {
+        givenStoredRequest();
+        givenStoredTargets(2);
+        targetStore.next(request.getId(), 1);
+        targetStore.update(request.getId(), "/file0", State.COMPLETED, null);
+
+        store.clear(request.getId());
+        whenServiceRestarts();
+
+        assertFalse(store.getRequest(request.getId()).isPresent());
+        assertTrue(targetStore.store(target("/file0")));
+    }
+
+    @Test
+    public void shouldForgetTargetsOfResetRequest() throws Exception
+    {
+        givenStoredRequest();
+        store.update(request.getId(), Status.STARTED);
+        givenStoredTargets(2);
+        targetStore.next(request.getId(), 1);
+        targetStore.update(request.getId(), "/file0", State.COMPLETED, null);
+
+        store.reset(request.getId());
+        whenServiceRestarts();
+
+        assertEquals(Status.QUEUED, status().getStatus());
+        assertEquals(0, status().getProcessed());
+        assertNull(status().getFailures());
+        assertTrue(targetStore.store(target("/file0")));
+    }
+
+    private void givenServiceStarted() throws Exception
+    {
+        database = new BulkDatabase(folder.getRoot());
+        targetStore = new BerkeleyDBBulkTargetStore(database);
+        targetStore.initialize();
+        store = new BerkeleyDBBulkRequestStore(database, new InMemoryBulkRequestStore());
+        store.setScheduler(scheduler);
+        store.setTargetStore(targetStore);
+        store.load();
+    }
+
+    private void givenStoredRequest()
+    {
+        request = new BulkRequest();
+        request.setExpandDirectories(Depth.ALL);
+        request.setActivity("test");
+        request.setTarget("/");
+        request.setId(UUID.randomUUID().toString());
+        BulkRequestStatus status = new BulkRequestStatus();
+        status.setStatus(Status.QUEUED);
+        store.store(Subjects.ROOT, Restrictions.none(), request, status);
+    }
+
+    private void givenStoredTargets(int count) throws Exception
+    {
+        for (int i = 0; i < count; ++i) {
+            assertTrue(targetStore.store(target("/file" + i)));
+        }
+    }
+
+    private void whenServiceRestarts() throws Exception
+    {
+        database.close();
+        givenServiceStarted();
+    }
+
+    private BulkRequestStatus status()
+    {
+        return store.getStatus(request.getId()).get();
+    }
+
+    private BulkTarget target(String path) throws Exception
+    {
+        String requestId = request.getId();
+        return new BulkTarget(path, BulkJobKey.newKey(requestId),
+                              BulkJobKey.newKey(requestId), new FileAttributes());
+    }
+}
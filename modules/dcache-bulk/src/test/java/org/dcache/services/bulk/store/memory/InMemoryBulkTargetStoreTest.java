@@ -0,0 +1,203 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.memory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.namespace.FileType;
+import org.dcache.services.bulk.job.BulkJobKey;
+import org.dcache.services.bulk.store.BulkTarget;
+import org.dcache.services.bulk.store.BulkTarget.State;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryBulkTargetStoreTest
+{
+    InMemoryBulkTargetStore store;
+    String                  requestId;
+    BulkJobKey              parentKey;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        store = new InMemoryBulkTargetStore();
+        requestId = UUID.randomUUID().toString();
+        parentKey = BulkJobKey.newKey(requestId);
+    }
+
+    @Test
+    public void shouldHandOutTargetsInPagesInOrderOfArrival() throws Exception
+    {
+        givenStoredTargets(5);
+
+        assertEquals(List.of("/file0", "/file1"), paths(store.next(requestId, 2)));
+        assertEquals(List.of("/file2", "/file3"), paths(store.next(requestId, 2)));
+        assertEquals(1, store.countQueued(requestId));
+    }
+
+    @Test
+    public void shouldMarkHandedOutTargetsAsRunning() throws Exception
+    {
+        givenStoredTargets(1);
+
+        BulkTarget target = store.next(requestId, 1).get(0);
+
+        assertEquals(State.RUNNING, target.getState());
+        assertEquals(0, store.countQueued(requestId));
+    }
+
+    @Test
+    public void shouldKeepAttributesAndKeysOfTarget() throws Exception
+    {
+        BulkJobKey key = BulkJobKey.newKey(requestId);
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(new PnfsId("0000B706DD4045F346F2B90F882B706DA807"));
+        attributes.setFileType(FileType.REGULAR);
+        store.store(new BulkTarget("/file", key, parentKey, attributes));
+
+        BulkTarget target = store.next(requestId, 1).get(0);
+
+        assertEquals(key.getKey(), target.getKey().getKey());
+        assertEquals(parentKey.getKey(), target.getParentKey().getKey());
+        assertEquals(attributes.getPnfsId(), target.getAttributes().getPnfsId());
+        assertEquals(FileType.REGULAR, target.getAttributes().getFileType());
+    }
+
+    @Test
+    public void shouldNotStoreSamePathTwiceWhileUnfinished() throws Exception
+    {
+        givenStoredTargets(1);
+        assertFalse(store.store(target("/file0")));
+
+        store.next(requestId, 1);
+        assertFalse(store.store(target("/file0")));
+
+        store.update(requestId, "/file0", State.COMPLETED, null);
+        assertTrue(store.store(target("/file0")));
+    }
+
+    @Test
+    public void shouldCancelOnlyQueuedTargets() throws Exception
+    {
+        givenStoredTargets(3);
+        store.next(requestId, 1);
+
+        List<BulkTarget> cancelled = store.cancelQueued(requestId, 10);
+
+        assertEquals(List.of("/file1", "/file2"), paths(cancelled));
+        assertTrue(cancelled.stream().allMatch(t -> t.getState() == State.CANCELLED));
+        assertEquals(0, store.countQueued(requestId));
+        assertTrue(store.next(requestId, 10).isEmpty());
+    }
+
+    @Test
+    public void shouldCancelQueuedTargetsInPages() throws Exception
+    {
+        givenStoredTargets(5);
+
+        assertEquals(2, store.cancelQueued(requestId, 2).size());
+        assertEquals(2, store.cancelQueued(requestId, 2).size());
+        assertEquals(1, store.cancelQueued(requestId, 2).size());
+        assertTrue(store.cancelQueued(requestId, 2).isEmpty());
+        assertEquals(0, store.countQueued(requestId));
+    }
+
+    @Test
+    public void shouldKeepRequestsSeparate() throws Exception
+    {
+        givenStoredTargets(2);
+        String otherId = UUID.randomUUID().toString();
+        store.store(new BulkTarget("/other", BulkJobKey.newKey(otherId),
+                                   BulkJobKey.newKey(otherId), new FileAttributes()));
+
+        store.clear(requestId);
+
+        assertEquals(0, store.countQueued(requestId));
+        assertEquals(1, store.countQueued(otherId));
+    }
+
+    private void givenStoredTargets(int count) throws Exception
+    {
+        for (int i = 0; i < count; ++i) {
+            assertTrue(store.store(target("/file" + i)));
+        }
+    }
+
+    private List<String> paths(List<BulkTarget> targets)
+    {
+        return targets.stream().map(BulkTarget::getPath).collect(Collectors.toList());
+    }
+
+    private BulkTarget target(String path) throws Exception
+    {
+        return new BulkTarget(path, BulkJobKey.newKey(requestId), parentKey,
+                              new FileAttributes());
+    }
+}
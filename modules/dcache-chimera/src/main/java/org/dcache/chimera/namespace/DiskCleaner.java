@@ -1,5 +1,6 @@
 package org.dcache.chimera.namespace;
 
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.UncheckedExecutionException;
@@ -8,26 +9,32 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 
 import java.io.PrintWriter;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
 
 import diskCacheV111.util.CacheException;
@@ -48,6 +55,7 @@ import org.dcache.cells.CellStub;
 import org.dcache.util.CacheExceptionFactory;
 import org.dcache.util.TimeUtils;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Throwables.throwIfInstanceOf;
 import static com.google.common.util.concurrent.Futures.allAsList;
 import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
@@ -68,6 +76,11 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
 
     private static final Logger _log = LoggerFactory.getLogger(DiskCleaner.class);
 
+    /**
+     * Maximum number of pnfsids in a single DELETE statement on the trash-table.
+     */
+    private static final int MAX_DELETE_BATCH = 1000;
+
     private final ConcurrentHashMap<String, Long> _poolsBlackList = new ConcurrentHashMap<>();
 
     private ScheduledFuture<?> _cleanerTask;
@@ -77,6 +90,25 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
     private int _processAtOnce;
     private CellStub _notificationStub;
 
+    /**
+     * Executor on which pools are cleaned.
+     */
+    private ExecutorService _poolExecutor;
+    private int _concurrentPools = 1;
+    private int _inFlightPerPool = 1;
+
+    /*
+     * Statistics.  The backlog is sampled at the start of each periodic run.
+     */
+    private final LongAdder _removedReplicas = new LongAdder();
+    private final LongAdder _removedNotifications = new LongAdder();
+    private volatile long _replicaBacklog = -1;
+    private volatile long _notificationBacklog = -1;
+    private volatile Instant _lastRunStarted;
+    private volatile Duration _lastRunDuration;
+    private volatile long _lastRunRemovedReplicas;
+    private volatile long _lastRunRemovedNotifications;
+
     @Required
     public void setRecoverTimer(long recoverTimer) {
         _recoverTimer = recoverTimer;
@@ -97,6 +129,21 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
         _notificationStub = stub;
     }
 
+    @Required
+    public void setPoolExecutor(ExecutorService executor) {
+        _poolExecutor = executor;
+    }
+
+    public void setConcurrentPools(int concurrentPools) {
+        checkArgument(concurrentPools > 0, "At least one pool must be cleaned at a time");
+        _concurrentPools = concurrentPools;
+    }
+
+    public void setInFlightPerPool(int inFlightPerPool) {
+        checkArgument(inFlightPerPool > 0, "At least one request per pool must be allowed");
+        _inFlightPerPool = inFlightPerPool;
+    }
+
     /**
      * runDelete
      * Delete files on each pool from the poolList.
@@ -111,6 +158,8 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
             _log.debug("INFO: Refresh Interval : {} {}", _refreshInterval, _refreshIntervalUnit);
             _log.debug("INFO: Number of files processed at once: {}", _processAtOnce);
 
+            updateBacklog();
+
             // get list of pool names from the trash_table
             List<String> poolList = getPoolList();
 
@@ -153,21 +202,51 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
 
     /**
      * runDelete
-     * Delete files on each pool from the poolList.
+     * Delete files on each pool from the poolList.  Up to concurrentPools
+     * pools are cleaned at the same time.
      *
      * @param poolList list of pools
      * @throws InterruptedException
      */
     private void runDelete(List<String> poolList) throws InterruptedException {
-        for (String pool: poolList) {
-            if (Thread.interrupted()) {
-                throw new InterruptedException("Cleaner interrupted");
-            }
+        Instant started = Instant.now();
+        long removedReplicas = _removedReplicas.sum();
+        long removedNotifications = _removedNotifications.sum();
+
+        CompletionService<String> completion = new ExecutorCompletionService<>(_poolExecutor);
+        List<Future<String>> tasks = new ArrayList<>();
+        Iterator<String> pools = poolList.iterator();
+        int running = 0;
+        try {
+            while (running > 0 || pools.hasNext()) {
+                while (running < _concurrentPools && pools.hasNext()) {
+                    String pool = pools.next();
+                    tasks.add(completion.submit(() -> {
+                        runDelete(pool);
+                        return pool;
+                    }));
+                    running++;
+                }
+
+                Future<String> done = completion.take();
+                running--;
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    throwIfInstanceOf(e.getCause(), InterruptedException.class);
+                    _log.error("Failed to clean pool: {}", e.getCause().toString());
+                }
 
-            runDelete(pool);
+                // Notify other components that we are done deleting
+                runNotification();
+            }
+        } finally {
+            tasks.forEach(t -> t.cancel(true));
 
-            // Notify other components that we are done deleting
-            runNotification();
+            _lastRunStarted = started;
+            _lastRunDuration = Duration.between(started, Instant.now());
+            _lastRunRemovedReplicas = _removedReplicas.sum() - removedReplicas;
+            _lastRunRemovedNotifications = _removedNotifications.sum() - removedNotifications;
         }
     }
 
@@ -178,10 +257,29 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
                 cleanPoolComplete(pool);
             } catch (NoRouteToCellException | CacheException e) {
                 _log.warn("Failed to remove files from {}: {}", pool, e.getMessage());
+            } catch (DataAccessException e) {
+                _log.error("Database failure while cleaning {}: {}", pool, e.getMessage());
             }
         }
     }
 
+    /**
+     * Counts the replicas and the deletion notifications still to be
+     * processed.
+     */
+    private void updateBacklog() {
+        _replicaBacklog = 0;
+        _notificationBacklog = 0;
+        _db.query("SELECT itype, COUNT(*) AS n FROM t_locationinfo_trash WHERE itype IN (1,2) GROUP BY itype",
+                rs -> {
+                    if (rs.getInt("itype") == 1) {
+                        _replicaBacklog = rs.getLong("n");
+                    } else {
+                        _notificationBacklog = rs.getLong("n");
+                    }
+                });
+    }
+
     /**
      * Returns a list of dinstinct pool names from the trash-table.
      *
@@ -194,26 +292,40 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
 
     /**
      * Delete entries from the trash-table.
-     * Pool name and the file names are input parameters.
+     * Pool name and the file names are input parameters.  The entries
+     * are deleted with one statement per MAX_DELETE_BATCH files.
      *
      * @param poolname name of the pool
      * @param filelist file list for this pool
      *
      */
     void removeFiles(final String poolname, final List<String> filelist) {
-        _db.batchUpdate("DELETE FROM t_locationinfo_trash WHERE ilocation=? AND ipnfsid=? AND itype=1",
-                new BatchPreparedStatementSetter() {
-                    @Override
-                    public int getBatchSize() {
-                        return filelist.size();
-                    }
+        for (List<String> batch : Lists.partition(filelist, MAX_DELETE_BATCH)) {
+            List<Object> args = new ArrayList<>(batch.size() + 1);
+            args.add(poolname);
+            args.addAll(batch);
+            _db.update("DELETE FROM t_locationinfo_trash WHERE ilocation=? AND itype=1 AND ipnfsid IN ("
+                       + placeholders(batch.size()) + ")", args.toArray());
+        }
+        _removedReplicas.add(filelist.size());
+    }
 
-                    @Override
-                    public void setValues(PreparedStatement ps, int i) throws SQLException {
-                        ps.setString(1, poolname);
-                        ps.setString(2, filelist.get(i));
-                    }
-                });
+    /**
+     * Delete the deletion notification entries of the given files from the
+     * trash-table.
+     *
+     * @param filelist files for which the notification has been sent
+     */
+    void removeNotifications(List<String> filelist) {
+        for (List<String> batch : Lists.partition(filelist, MAX_DELETE_BATCH)) {
+            _db.update("DELETE FROM t_locationinfo_trash WHERE itype=2 AND ipnfsid IN ("
+                       + placeholders(batch.size()) + ")", batch.toArray());
+        }
+        _removedNotifications.add(filelist.size());
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
     }
 
     /**
@@ -227,12 +339,25 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
      */
     private int sendRemoveToPoolCleaner(String poolName, List<String> removeList)
             throws InterruptedException, CacheException, NoRouteToCellException {
+        return awaitRemoval(poolName, removeList, sendRemove(poolName, removeList));
+    }
+
+    private ListenableFuture<PoolRemoveFilesMessage> sendRemove(String poolName, List<String> removeList) {
         _log.trace("sendRemoveToPoolCleaner: poolName={} removeList={}", poolName, removeList);
+        return _poolStub.send(new CellPath(poolName), new PoolRemoveFilesMessage(poolName, removeList));
+    }
 
+    /**
+     * Waits for the reply of a pool to a remove request and deletes the
+     * entries of the removed files from the trash-table.
+     *
+     * @return number of successful removes
+     */
+    private int awaitRemoval(String poolName, List<String> removeList,
+                             ListenableFuture<PoolRemoveFilesMessage> reply)
+            throws InterruptedException, CacheException, NoRouteToCellException {
         try {
-            PoolRemoveFilesMessage msg =
-                    CellStub.get(_poolStub.send(new CellPath(poolName),
-                            new PoolRemoveFilesMessage(poolName, removeList)));
+            PoolRemoveFilesMessage msg = CellStub.get(reply);
             if (msg.getReturnCode() == 0) {
                 removeFiles(poolName, removeList);
                 return removeList.size();
@@ -265,17 +390,29 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
         }
     }
 
+    /**
+     * Sends the deletion notifications for files of which all replicas have
+     * been removed.  The notifications for up to processAtOnce files are sent
+     * concurrently, and the entries of the files for which they succeeded are
+     * then deleted together.
+     */
     private void runNotification() throws InterruptedException {
         final String QUERY =
                 "SELECT ipnfsid FROM t_locationinfo_trash t1 " +
                         "WHERE itype=2 AND NOT EXISTS (SELECT 1 FROM t_locationinfo_trash t2 WHERE t2.ipnfsid=t1.ipnfsid AND t2.itype <> 2)";
-        for (String id : _db.queryForList(QUERY, String.class)) {
-            try {
-                sendDeleteNotifications(new PnfsId(id)).get();
-                _db.update("DELETE FROM t_locationinfo_trash WHERE ipnfsid=? AND itype=2", id);
-            } catch (ExecutionException e) {
-                _log.warn(e.getCause().getMessage());
+        for (List<String> ids : Lists.partition(_db.queryForList(QUERY, String.class), _processAtOnce)) {
+            List<ListenableFuture<List<PnfsDeleteEntryNotificationMessage>>> notifications =
+                    ids.stream().map(id -> sendDeleteNotifications(new PnfsId(id))).collect(toList());
+            List<String> notified = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                try {
+                    notifications.get(i).get();
+                    notified.add(ids.get(i));
+                } catch (ExecutionException e) {
+                    _log.warn(e.getCause().getMessage());
+                }
             }
+            removeNotifications(notified);
         }
     }
 
@@ -291,35 +428,45 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
 
     /**
      * cleanPoolComplete
-     * delete all files from the pool 'poolName' found in the trash-table for this pool
+     * delete all files from the pool 'poolName' found in the trash-table for this pool.
+     * Up to inFlightPerPool remove requests are sent to the pool before waiting for
+     * the reply to the oldest one.
      *
      * @param poolName name of the pool
      */
     void cleanPoolComplete(final String poolName) throws InterruptedException, CacheException, NoRouteToCellException {
         _log.trace("CleanPoolComplete(): poolname={}", poolName);
 
+        Deque<List<String>> files = new ArrayDeque<>(_inFlightPerPool);
+        Deque<ListenableFuture<PoolRemoveFilesMessage>> replies = new ArrayDeque<>(_inFlightPerPool);
         try {
-            List<String> files = new ArrayList<>(_processAtOnce);
             Timestamp graceTime = Timestamp.from(Instant.now().minusSeconds(_gracePeriod.getSeconds()));
 
             String lastSeenIpnfsid = "";
+            boolean exhausted = false;
             int removed = 0;
             while (true) {
-                _db.query("SELECT ipnfsid FROM t_locationinfo_trash WHERE ilocation=? AND itype=1 AND ictime<? AND ipnfsid>? ORDER BY ipnfsid ASC LIMIT ?",
-                        rs -> {
-                            files.add(rs.getString("ipnfsid"));
-                        },
-                        poolName,
-                        graceTime,
-                        lastSeenIpnfsid,
-                        _processAtOnce
-                );
-                if(files.isEmpty()) {
+                while (!exhausted && replies.size() < _inFlightPerPool) {
+                    List<String> batch = _db.queryForList(
+                            "SELECT ipnfsid FROM t_locationinfo_trash WHERE ilocation=? AND itype=1 AND ictime<? AND ipnfsid>? ORDER BY ipnfsid ASC LIMIT ?",
+                            String.class,
+                            poolName,
+                            graceTime,
+                            lastSeenIpnfsid,
+                            _processAtOnce
+                    );
+                    if (batch.isEmpty()) {
+                        exhausted = true;
+                    } else {
+                        lastSeenIpnfsid = batch.get(batch.size() - 1);
+                        files.add(batch);
+                        replies.add(sendRemove(poolName, batch));
+                    }
+                }
+                if (replies.isEmpty()) {
                     break;
                 }
-                lastSeenIpnfsid = files.get(files.size() - 1);
-                removed += sendRemoveToPoolCleaner(poolName, files);
-                files.clear();
+                removed += awaitRemoval(poolName, files.remove(), replies.remove());
             }
             _log.info("Removed {} files from pool {} deleted before {}", removed, poolName, graceTime);
         } catch (UncheckedExecutionException e) {
@@ -327,6 +474,8 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
             throwIfInstanceOf(e.getCause(), CacheException.class);
             throwIfInstanceOf(e.getCause(), NoRouteToCellException.class);
             throw new RuntimeException(e.getCause());
+        } finally {
+            replies.forEach(r -> r.cancel(true));
         }
     }
 
@@ -474,6 +623,21 @@ public class DiskCleaner extends AbstractCleaner implements  CellCommandListener
         pw.printf("Cleanup grace period: %s\n", TimeUtils.describe(_gracePeriod).orElse("-"));
         pw.printf("Reply Timeout:  %d\n", _poolStub.getTimeout());
         pw.printf("Number of files processed at once:  %d\n", _processAtOnce);
+        pw.printf("Pools cleaned concurrently:  %d\n", _concurrentPools);
+        pw.printf("Remove requests in flight per pool:  %d\n", _inFlightPerPool);
+        pw.printf("Backlog at start of last run:  %s replicas, %s notifications\n",
+                  _replicaBacklog < 0 ? "-" : _replicaBacklog,
+                  _notificationBacklog < 0 ? "-" : _notificationBacklog);
+        Duration duration = _lastRunDuration;
+        if (duration != null) {
+            double seconds = Math.max(duration.toMillis(), 1) / 1000.0;
+            pw.printf("Last run:  started %s, took %s\n", _lastRunStarted,
+                      TimeUtils.describe(duration).orElse("-"));
+            pw.printf("Last run drain rate:  %.1f replicas/s, %.1f notifications/s\n",
+                      _lastRunRemovedReplicas / seconds, _lastRunRemovedNotifications / seconds);
+        }
+        pw.printf("Total removed:  %d replicas, %d notifications\n",
+                  _removedReplicas.sum(), _removedNotifications.sum());
         pw.printf("Delete notification targets:  %s\n", Arrays.toString(_deleteNotificationTargets));
     }
 
@@ -213,7 +213,7 @@ public class ExtendedInode extends FsInode
     {
         if (acl == null) {
             RsType rsType = isDirectory() ? RsType.DIR : RsType.FILE;
-            acl = new ACL(rsType, _fs.getACL(this));
+            acl = _fs.getACL(this, rsType);
         }
         return acl;
     }
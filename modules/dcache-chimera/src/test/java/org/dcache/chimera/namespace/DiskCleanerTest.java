@@ -0,0 +1,193 @@
+package org.dcache.chimera.namespace;
+
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.Futures;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import diskCacheV111.vehicles.PoolRemoveFilesMessage;
+
+import dmg.cells.nucleus.CellPath;
+
+import org.dcache.cells.CellStub;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DiskCleanerTest {
+
+    private final static URL DB_TEST_PROPERTIES
+            = Resources.getResource("org/dcache/chimera/chimera-test.properties");
+
+    private static final int REPLICA = 1;
+    private static final int NOTIFICATION = 2;
+
+    private Connection _conn;
+    private JdbcTemplate _db;
+    private DiskCleaner _cleaner;
+
+    /** Files which the pool fails to remove. */
+    private final Set<String> _notRemovable = new TreeSet<>();
+
+    @Before
+    public void setUp() throws Exception {
+        Properties dbProperties = new Properties();
+        try (InputStream input = Resources.asByteSource(DB_TEST_PROPERTIES).openStream()) {
+            dbProperties.load(input);
+        }
+
+        _conn = DriverManager.getConnection(dbProperties.getProperty("chimera.db.url"),
+                dbProperties.getProperty("chimera.db.user"), dbProperties.getProperty("chimera.db.password"));
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(_conn));
+        Liquibase liquibase = new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                new ClassLoaderResourceAccessor(), database);
+        liquibase.update("");
+
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(_conn, true);
+        _db = new JdbcTemplate(dataSource);
+
+        CellStub poolStub = mock(CellStub.class);
+        when(poolStub.send(any(CellPath.class), any(PoolRemoveFilesMessage.class)))
+                .thenAnswer(invocation -> Futures.immediateFuture(reply(invocation.getArgument(1))));
+
+        _cleaner = new DiskCleaner();
+        _cleaner.setDataSource(dataSource);
+        _cleaner.setPoolStub(poolStub);
+        _cleaner.setNotificationStub(mock(CellStub.class));
+        _cleaner.setGracePeriod(Duration.ZERO);
+        _cleaner.setProcessAtOnce(700);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _conn.createStatement().execute("SHUTDOWN;");
+        _conn.close();
+    }
+
+    @Test
+    public void shouldRemoveOnlyListedReplicasOfPool() {
+        givenTrash(REPLICA, "pool1", id(1), id(2), id(3));
+        givenTrash(REPLICA, "pool2", id(1));
+        givenTrash(NOTIFICATION, "", id(1));
+
+        _cleaner.removeFiles("pool1", Arrays.asList(id(1), id(2)));
+
+        assertEquals(ids(3), trash(REPLICA, "pool1"));
+        assertEquals(ids(1), trash(REPLICA, "pool2"));
+        assertEquals(ids(1), trash(NOTIFICATION, ""));
+    }
+
+    @Test
+    public void shouldRemoveListedReplicasAcrossBatches() {
+        givenTrash(REPLICA, "pool1", range(0, 2500));
+
+        _cleaner.removeFiles("pool1", range(0, 2001));
+
+        assertEquals(new TreeSet<>(range(2001, 2500)), trash(REPLICA, "pool1"));
+    }
+
+    @Test
+    public void shouldRemoveOnlyListedNotifications() {
+        givenTrash(NOTIFICATION, "", id(1), id(2), id(3));
+        givenTrash(REPLICA, "pool1", id(1));
+
+        _cleaner.removeNotifications(Arrays.asList(id(1), id(2)));
+
+        assertEquals(ids(3), trash(NOTIFICATION, ""));
+        assertEquals(ids(1), trash(REPLICA, "pool1"));
+    }
+
+    @Test
+    public void shouldRemoveListedNotificationsAcrossBatches() {
+        givenTrash(NOTIFICATION, "", range(0, 2500));
+
+        _cleaner.removeNotifications(range(500, 2500));
+
+        assertEquals(new TreeSet<>(range(0, 500)), trash(NOTIFICATION, ""));
+    }
+
+    @Test
+    public void shouldKeepReplicasNotRemovedByPool() throws Exception {
+        List<String> files = range(0, 2000);
+        givenTrash(REPLICA, "pool1", files);
+        _notRemovable.add(id(5));
+        _notRemovable.add(id(1500));
+
+        _cleaner.cleanPoolComplete("pool1");
+
+        assertEquals(_notRemovable, trash(REPLICA, "pool1"));
+    }
+
+    private PoolRemoveFilesMessage reply(PoolRemoveFilesMessage request) {
+        List<String> failed = new ArrayList<>(Arrays.asList(request.getFiles()));
+        failed.retainAll(_notRemovable);
+        if (!failed.isEmpty()) {
+            request.setFailed(1, failed.toArray(String[]::new));
+        }
+        return request;
+    }
+
+    private void givenTrash(int type, String location, String... ids) {
+        givenTrash(type, location, Arrays.asList(ids));
+    }
+
+    private void givenTrash(int type, String location, List<String> ids) {
+        Timestamp created = Timestamp.from(Instant.now().minusSeconds(60));
+        List<Object[]> rows = new ArrayList<>();
+        for (String id : ids) {
+            rows.add(new Object[] { id, type, location, created, created });
+        }
+        _db.batchUpdate("INSERT INTO t_locationinfo_trash (ipnfsid, itype, ilocation, ipriority, ictime, iatime, istate) "
+                        + "VALUES (?, ?, ?, 0, ?, ?, 1)", rows);
+    }
+
+    private Set<String> trash(int type, String location) {
+        return new TreeSet<>(_db.queryForList(
+                "SELECT ipnfsid FROM t_locationinfo_trash WHERE itype=? AND ilocation=?",
+                String.class, type, location));
+    }
+
+    private static Set<String> ids(int... numbers) {
+        Set<String> ids = new TreeSet<>();
+        for (int number : numbers) {
+            ids.add(id(number));
+        }
+        return ids;
+    }
+
+    private static List<String> range(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(id(i));
+        }
+        return ids;
+    }
+
+    private static String id(int number) {
+        return String.format("%036X", number);
+    }
+}
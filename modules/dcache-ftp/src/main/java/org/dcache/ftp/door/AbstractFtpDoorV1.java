@@ -204,9 +204,11 @@ import org.dcache.auth.attributes.Restriction;
 import org.dcache.auth.attributes.RootDirectory;
 import org.dcache.cells.CellStub;
 import org.dcache.ftp.proxy.ActiveAdapter;
+import org.dcache.ftp.proxy.EventDrivenSocketAdapter;
 import org.dcache.ftp.proxy.PassiveConnectionHandler;
 import org.dcache.ftp.proxy.ProxyAdapter;
 import org.dcache.ftp.proxy.ProxyAdapter.Direction;
+import org.dcache.ftp.proxy.ProxyEventLoop;
 import org.dcache.ftp.TransferMode;
 import org.dcache.ftp.proxy.SocketAdapter;
 import org.dcache.namespace.ACLPermissionHandler;
@@ -1083,8 +1085,15 @@ public abstract class AbstractFtpDoorV1
         {
             switch (_mode) {
             case PASSIVE:
-                _adapter =
-                    new SocketAdapter(_clientConnectionHandler, _internalInetAddress);
+                ProxyEventLoop eventLoop = _settings.getProxyEventLoop();
+                if (eventLoop != null) {
+                    _adapter =
+                        new EventDrivenSocketAdapter(_clientConnectionHandler,
+                                                     _internalInetAddress, eventLoop);
+                } else {
+                    _adapter =
+                        new SocketAdapter(_clientConnectionHandler, _internalInetAddress);
+                }
                 break;
 
             case ACTIVE:
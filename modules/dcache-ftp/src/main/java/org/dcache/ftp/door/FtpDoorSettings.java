@@ -1,5 +1,6 @@
 package org.dcache.ftp.door;
 
+import java.io.IOException;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
@@ -12,6 +13,7 @@ import dmg.cells.nucleus.CellPath;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.dcache.cells.CellStub;
+import org.dcache.ftp.proxy.ProxyEventLoop;
 import org.dcache.poolmanager.PoolManagerHandler;
 import org.dcache.poolmanager.PoolManagerStub;
 import org.dcache.util.Option;
@@ -152,6 +154,27 @@ public class FtpDoorSettings
             defaultValue = "false")
     protected boolean isProxyRequiredOnActive;
 
+    /**
+     * How transfers are relayed through the door: "threads" uses threads
+     * per adapter and data channel, "event-loop" relays passive transfers
+     * on a selector shared by all transfers.
+     */
+    @Option(name = "proxyImplementation",
+            description = "How data is relayed by the door",
+            defaultValue = "threads")
+    protected String proxyImplementation;
+
+    @Option(name = "proxyEventLoopThreads",
+            description = "Number of threads relaying data in event-loop proxies",
+            defaultValue = "2")
+    protected int proxyEventLoopThreads;
+
+    @Option(name = "proxyBufferSize",
+            description = "Size of the direct buffers of event-loop proxies",
+            defaultValue = "131072",
+            unit = "bytes")
+    protected int proxyBufferSize;
+
     /**
      * File (StageConfiguration.conf) containing DNs and FQANs whose owner are allowed to STAGE files
      * (i.e. allowed to copy file from dCache in case file is stored on tape but not on disk).
@@ -231,6 +254,8 @@ public class FtpDoorSettings
 
     private KafkaProducer _kafkaProducer;
 
+    private ProxyEventLoop _proxyEventLoop;
+
 
     public PortRange getPortRange()
     {
@@ -312,6 +337,11 @@ public class FtpDoorSettings
         return isProxyRequiredOnActive;
     }
 
+    public boolean isProxyEventLoopEnabled()
+    {
+        return proxyImplementation.equals("event-loop");
+    }
+
     public String getStageConfigurationFilePath()
     {
         return stageConfigurationFilePath;
@@ -454,6 +484,26 @@ public class FtpDoorSettings
         return _kafkaProducer;
     }
 
+    public ProxyEventLoop createProxyEventLoop() throws IOException
+    {
+        _proxyEventLoop = new ProxyEventLoop("ftp-proxy", proxyEventLoopThreads, proxyBufferSize);
+        return _proxyEventLoop;
+    }
+
+    /**
+     * Returns the event loop relaying passive transfers, or null if
+     * passive transfers are relayed with threads.
+     */
+    public ProxyEventLoop getProxyEventLoop()
+    {
+        return _proxyEventLoop;
+    }
+
+    public void destroyProxyEventLoop()
+    {
+        _proxyEventLoop.close();
+    }
+
     public PnfsHandler createPnfsHandler(CellEndpoint cellEndpoint)
     {
         return new PnfsHandler(new CellStub(cellEndpoint, pnfsManager, pnfsTimeout, pnfsTimeoutUnit));
@@ -22,6 +22,7 @@ import com.google.common.cache.LoadingCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Optional;
 import java.util.concurrent.Executor;
@@ -63,6 +64,13 @@ public abstract class FtpInterpreterFactory implements NettyLineBasedInterpreter
             LOGGER.info("Creating KafkaProducer");
 
         }
+        if (settings.isProxyEventLoopEnabled()) {
+            try {
+                settings.createProxyEventLoop();
+            } catch (IOException e) {
+                throw new ConfigurationException("Failed to create proxy event loop: " + e.getMessage(), e);
+            }
+        }
     }
 
     @Override
@@ -98,5 +106,8 @@ public abstract class FtpInterpreterFactory implements NettyLineBasedInterpreter
             settings.destroy();
             LOGGER.info("Shutdow KafkaProducer");
         }
+        if (settings.isProxyEventLoopEnabled()) {
+            settings.destroyProxyEventLoop();
+        }
     }
 }
@@ -0,0 +1,1007 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.ftp.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcache.ftp.TransferMode;
+import org.dcache.util.PortRange;
+import org.dcache.util.SequentialExecutor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.synchronizedList;
+import static java.util.Objects.requireNonNull;
+import static org.dcache.ftp.TransferMode.MODE_E;
+import static org.dcache.ftp.TransferMode.MODE_S;
+import static org.dcache.ftp.proxy.ProxyAdapter.Direction.UPLOAD;
+import static org.dcache.util.ByteUnit.KiB;
+import static org.dcache.util.Strings.indentLines;
+
+/**
+ * A passive proxy adapter with the same behaviour as {@link SocketAdapter},
+ * but which relays data on a {@link ProxyEventLoop} shared by all transfers
+ * of the door rather than with a thread per data channel.
+ * <p>
+ * The adapter thread only establishes the connections: it accepts the single
+ * connection to the data recipient and then the data sender connections.
+ * Each data sender connection is relayed by a {@link Stream} that reads into
+ * a pooled direct buffer and hands the filled buffer to the {@link Sink} of
+ * the data recipient connection.  A stream stops reading until the sink has
+ * written its buffer, so each stream has at most one buffer in flight.
+ * <p>
+ * In mode S the buffer is forwarded as is.  In mode E every buffer becomes a
+ * complete block with its own header, so blocks of concurrent streams never
+ * interleave on the data recipient connection.
+ */
+public class EventDrivenSocketAdapter implements Runnable, ProxyAdapter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventDrivenSocketAdapter.class);
+
+    /** Connection orientated ChannelHandler references. */
+    private final PassiveConnectionHandler _clientConnectionHandler;
+    private final PassiveConnectionHandler _poolConnectionHandler;
+
+    /** Data direction orientated ChannelHandler references. */
+    private PassiveConnectionHandler _inbound;
+    private PassiveConnectionHandler _outbound;
+
+    private TransferMode _mode;
+
+    /**
+     * The number of EOD markers we have seen. This is only used for mode E
+     * transfers.
+     */
+    @GuardedBy("this")
+    private int _eodSeen;
+
+    /**
+     * The number of EOD markers expected, or zero if that number is
+     * not yet known.  This is only used for mode E transfers.
+     */
+    @GuardedBy("this")
+    private long _eodExpected;
+
+    private Direction _direction = Direction.UPLOAD;
+
+    /**
+     * Non null if an error has occurred and the transfer has failed.
+     */
+    @GuardedBy("this")
+    private String _error;
+
+    /**
+     * Size of the largest block sent in mode E. Blocks larger than this
+     * are divided into smaller blocks.
+     */
+    private int _maxBlockSize = KiB.toBytes(128);
+
+    /**
+     * A thread accepting connections.
+     */
+    private final Thread _thread;
+
+    /**
+     * The event loop worker relaying the data of this adapter.
+     */
+    private final ProxyEventLoop.Worker _worker;
+
+    /**
+     * Runs the calls into the inbound connection handler made on behalf of
+     * the worker, in order.  These block while the adapter thread stops
+     * accepting and hence must not stall the worker.
+     */
+    private final Executor _inboundExecutor;
+
+    /**
+     * True when the adapter is closing or has been closed. Used to
+     * suppress error messages when killing the adapter.
+     */
+    @GuardedBy("this")
+    private boolean _closing;
+
+    /**
+     * True once the sink has written everything.
+     */
+    @GuardedBy("this")
+    private boolean _drained;
+
+    /** All streams created by the adapter. */
+    private final List<Stream> _streams = synchronizedList(new ArrayList<>());
+
+    /** Number of streams that have not yet completed. */
+    private final AtomicInteger _activeStreams = new AtomicInteger();
+
+    private SocketChannel _output;
+    private Sink _sink;
+    private String _outputLocalAddress = "awaiting";
+    private String _outputRemoteAddress = "awaiting";
+
+    /**
+     * Writes the buffers handed to it by streams to the data recipient
+     * connection, in the order they are handed over.  Only accessed by the
+     * worker thread.
+     */
+    private class Sink implements ProxyEventLoop.Handler
+    {
+        private final Deque<Stream> _pending = new ArrayDeque<>();
+        private SelectionKey _key;
+        private ByteBuffer[] _current;
+        private Stream _writer;
+        private ByteBuffer _trailer;
+        private boolean _finishing;
+        private boolean _flushing;
+        private boolean _aborted;
+
+        private void register()
+        {
+            try {
+                _key = _worker.register(_output, 0, this);
+            } catch (IOException e) {
+                setError("Error writing to " + _outputRemoteAddress + ": " + e.getMessage());
+                abort();
+            }
+        }
+
+        /**
+         * Queue the buffers of the stream for writing.  The stream is
+         * told once they have been written.
+         */
+        private void send(Stream stream)
+        {
+            if (!_aborted) {
+                _pending.addLast(stream);
+                flush();
+            }
+        }
+
+        /**
+         * Write the trailer, if any, once everything else has been written.
+         */
+        private void finish(ByteBuffer trailer)
+        {
+            _trailer = trailer;
+            _finishing = true;
+            flush();
+        }
+
+        @Override
+        public void ready(SelectionKey key)
+        {
+            if (key.isWritable()) {
+                flush();
+            }
+        }
+
+        private void flush()
+        {
+            if (_flushing || _aborted || _key == null) {
+                return;
+            }
+            _flushing = true;
+            try {
+                while (true) {
+                    if (_current == null) {
+                        _writer = _pending.pollFirst();
+                        if (_writer != null) {
+                            _current = _writer._chunk;
+                        } else if (_finishing && _trailer != null) {
+                            _current = new ByteBuffer[] { _trailer };
+                            _trailer = null;
+                        } else {
+                            _key.interestOps(0);
+                            if (_finishing) {
+                                setDrained();
+                            }
+                            return;
+                        }
+                    }
+
+                    _output.write(_current);
+                    if (_current[_current.length - 1].hasRemaining()) {
+                        _key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+
+                    Stream stream = _writer;
+                    _writer = null;
+                    _current = null;
+                    if (stream != null) {
+                        stream.written();
+                    }
+                }
+            } catch (IOException e) {
+                setError("Error writing to " + _outputRemoteAddress + ": " + e.getMessage());
+                abortAll();
+            } finally {
+                _flushing = false;
+            }
+        }
+
+        private void abort()
+        {
+            _aborted = true;
+            _pending.clear();
+            _current = null;
+            _writer = null;
+            if (_key != null) {
+                _key.cancel();
+            }
+        }
+    }
+
+    /**
+     * Relays the data of a single data sender connection.  Apart from
+     * construction, only accessed by the worker thread.
+     */
+    private abstract class Stream implements ProxyEventLoop.Handler
+    {
+        protected final SocketChannel _input;
+        protected final String _inputRemoteAddress;
+        private final ByteBuffer _initial;
+        private SelectionKey _key;
+        private boolean _completed;
+
+        /** The buffer data is read into. */
+        protected ByteBuffer _buffer;
+
+        /** The buffers handed to the sink. */
+        protected ByteBuffer[] _chunk;
+
+        Stream(SocketChannel input, ByteBuffer initial)
+        {
+            _input = requireNonNull(input);
+            _initial = initial;
+            _inputRemoteAddress = SocketAdapter.toString(_input.socket().getRemoteSocketAddress());
+        }
+
+        private void start()
+        {
+            if (_completed) {
+                return;
+            }
+            LOGGER.debug("Accepting data from {}, initial data: {}", _inputRemoteAddress, _initial);
+            try {
+                _key = _worker.register(_input, 0, this);
+                _buffer = _worker.acquire();
+                started();
+                process();
+            } catch (IOException e) {
+                setError("Error reading from " + _inputRemoteAddress + ": " + e.getMessage());
+                complete(false);
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key)
+        {
+            if (key.isReadable()) {
+                try {
+                    process();
+                } catch (IOException e) {
+                    setError("Error reading from " + _inputRemoteAddress + ": " + e.getMessage());
+                    complete(false);
+                }
+            }
+        }
+
+        /**
+         * Called by the sink once the buffers of this stream are written.
+         */
+        private void written()
+        {
+            try {
+                process();
+            } catch (IOException e) {
+                setError("Error reading from " + _inputRemoteAddress + ": " + e.getMessage());
+                complete(false);
+            }
+        }
+
+        /**
+         * Called once the stream is registered with the worker.
+         */
+        protected void started()
+        {
+        }
+
+        /**
+         * Reads from the data sender until either the sink has been handed
+         * a chunk, more data has to be awaited, or the stream is complete.
+         */
+        protected abstract void process() throws IOException;
+
+        protected void awaitData()
+        {
+            _key.interestOps(SelectionKey.OP_READ);
+        }
+
+        protected void send(ByteBuffer... chunk)
+        {
+            _key.interestOps(0);
+            _chunk = chunk;
+            _sink.send(this);
+        }
+
+        /**
+         * Copies any initial data and then reads from the channel until
+         * either the target is full or no more data is available.
+         *
+         * @return the number of bytes added to the target, or -1 if the
+         * channel has reached end-of-stream and nothing was added.
+         */
+        protected int fill(ByteBuffer target) throws IOException
+        {
+            int count = 0;
+            if (_initial.hasRemaining()) {
+                count = Math.min(_initial.remaining(), target.remaining());
+                ByteBuffer initial = _initial.duplicate();
+                initial.limit(initial.position() + count);
+                target.put(initial);
+                _initial.position(_initial.position() + count);
+            }
+            while (target.hasRemaining()) {
+                int n = _input.read(target);
+                if (n == -1) {
+                    return count == 0 ? -1 : count;
+                }
+                if (n == 0) {
+                    break;
+                }
+                count += n;
+            }
+            return count;
+        }
+
+        protected void markInputClosed()
+        {
+            try {
+                _input.shutdownInput();
+            } catch (IOException e) {
+                LOGGER.error("Failed to mark socket {} closed: {}", _input, e.toString());
+            }
+        }
+
+        /**
+         * Releases the resources of the stream and returns the channel.
+         * Idempotent.
+         */
+        protected void complete(boolean eod)
+        {
+            if (_completed) {
+                return;
+            }
+            _completed = true;
+
+            if (_key != null) {
+                _key.cancel();
+            }
+            if (_buffer != null) {
+                _worker.release(_buffer);
+                _buffer = null;
+            }
+            _chunk = null;
+
+            if (eod) {
+                incrementEODSeen();
+                if (hasSeenAllExpectedEOD()) {
+                    finishAccept();
+                }
+            }
+
+            _inboundExecutor.execute(() -> {
+                LOGGER.debug("Returning input channel");
+                _inbound.returnChannel(_input);
+
+                _activeStreams.decrementAndGet();
+                streamCompleted();
+            });
+        }
+    }
+
+    /**
+     * Relays a data sender connection in mode S.
+     */
+    private class StreamModeS extends Stream
+    {
+        StreamModeS(SocketChannel input, ByteBuffer initial)
+        {
+            super(input, initial);
+        }
+
+        @Override
+        protected void started()
+        {
+            finishAccept(); // only expect a single connection.
+        }
+
+        @Override
+        protected void process() throws IOException
+        {
+            _buffer.clear();
+            int count = fill(_buffer);
+            if (count == -1) {
+                markInputClosed();
+                complete(false);
+            } else if (count == 0) {
+                awaitData();
+            } else {
+                _buffer.flip();
+                send(_buffer);
+            }
+        }
+    }
+
+    /**
+     * Relays a data sender connection in mode E.  EOF blocks are not
+     * forwarded as the adapter sends its own EOF at the beginning of the
+     * transfer.  Other blocks are forwarded as one or more blocks of at
+     * most the size of a buffer or the maximum block size.
+     */
+    private class StreamModeE extends Stream
+    {
+        private final ByteBuffer _inHeader = ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+        private final ByteBuffer _outHeader = ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+
+        /** Bytes of the current block still to be relayed. */
+        private long _remaining;
+
+        /** Offset of the next byte of the current block. */
+        private long _position;
+
+        /** Whether the current block carries the EOD descriptor. */
+        private boolean _eod;
+
+        /** Whether at least one header has been read. */
+        private boolean _used;
+
+        StreamModeE(SocketChannel input, ByteBuffer initial)
+        {
+            super(input, initial);
+        }
+
+        @Override
+        protected void process() throws IOException
+        {
+            while (true) {
+                if (_remaining == 0) {
+                    if (_eod) {
+                        complete(true);
+                        return;
+                    }
+                    if (!readHeader()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                int len = (int) Math.min(_remaining, Math.min(_buffer.capacity(), _maxBlockSize));
+                _buffer.clear().limit(len);
+                int count = fill(_buffer);
+                if (count == -1) {
+                    markInputClosed();
+                    closedBeforeEod();
+                    return;
+                }
+                if (count == 0) {
+                    awaitData();
+                    return;
+                }
+                _buffer.flip();
+
+                _outHeader.clear();
+                _outHeader.put((byte) 0);
+                _outHeader.putLong(count);
+                _outHeader.putLong(_position);
+                _outHeader.flip();
+
+                _remaining -= count;
+                _position += count;
+
+                LOGGER.debug("Sending {} bytes", count);
+                send(_outHeader, _buffer);
+                return;
+            }
+        }
+
+        /**
+         * Reads the next block header.
+         *
+         * @return true if the header was read, false if processing has to
+         * stop
+         */
+        private boolean readHeader() throws IOException
+        {
+            int count = fill(_inHeader);
+            if (count == -1) {
+                markInputClosed();
+                if (_used || _inHeader.position() > 0) {
+                    closedBeforeEod();
+                } else {
+                    complete(false);
+                }
+                return false;
+            }
+            if (_inHeader.hasRemaining()) {
+                awaitData();
+                return false;
+            }
+
+            _used = true;
+            byte descriptors = _inHeader.get(0);
+            long size = _inHeader.getLong(1);
+            long offset = _inHeader.getLong(9);
+            _inHeader.clear();
+
+            if ((descriptors & EDataBlockNio.EOF_DESCRIPTOR) != 0) {
+                if (offset <= 0) {
+                    throw new IOException("Invalid Data Channel Count value: " + offset);
+                }
+                setEODExcepted(offset);
+                if (hasSeenAllExpectedEOD()) {
+                    finishAccept();
+                }
+                LOGGER.debug("EOF descriptor: conns={}", offset);
+                _remaining = 0;
+            } else {
+                LOGGER.debug("Read header for {} bytes at offset {}", size, offset);
+                _remaining = size;
+                _position = offset;
+            }
+
+            if ((descriptors & EDataBlockNio.EOD_DESCRIPTOR) != 0) {
+                LOGGER.debug("Block just received contains EOD");
+                _eod = true;
+            }
+            return true;
+        }
+
+        private void closedBeforeEod()
+        {
+            setError("Data channel from " + _inputRemoteAddress
+                    + " was closed before EOD marker");
+            complete(false);
+        }
+    }
+
+    public EventDrivenSocketAdapter(PassiveConnectionHandler handler, InetAddress addressForPools,
+            ProxyEventLoop eventLoop) throws IOException
+    {
+        _clientConnectionHandler = handler;
+        _clientConnectionHandler.setErrorConsumer(this::setError);
+
+        _poolConnectionHandler = new PassiveConnectionHandler(addressForPools, PortRange.ANY);
+        _poolConnectionHandler.open();
+
+        _worker = eventLoop.next();
+        _inboundExecutor = new SequentialExecutor(eventLoop.getBlockingExecutor());
+        _thread = new Thread(this, "EventDrivenSocketAdapter-"
+                + SocketAdapter.toString(_clientConnectionHandler.getLocalAddress()));
+    }
+
+    /** Increments the EOD seen counter. Thread safe. */
+    private synchronized void incrementEODSeen()
+    {
+        _eodSeen++;
+    }
+
+    /** Returns the EOD seen counter. Thread safe. */
+    private synchronized int getEODSeen()
+    {
+        return _eodSeen;
+    }
+
+    /**
+     * Specify expected number of streams, so therefore expected number
+     * of EOD.
+     */
+    private synchronized void setEODExcepted(long value)
+    {
+        checkArgument(value > 0);
+        _eodExpected = value;
+    }
+
+    /**
+     * Returns true if the expected number of EOD is known and the
+     * number of observed EOD matches.
+     */
+    private synchronized boolean hasSeenAllExpectedEOD()
+    {
+        return isEODExpectedSpecified() && _eodSeen == _eodExpected;
+    }
+
+    /**
+     * @return true iff setEODExpected has been called.
+     */
+    private synchronized boolean isEODExpectedSpecified()
+    {
+        return _eodExpected > 0;
+    }
+
+    /** Returns the EOD expected counter. Thread safe. */
+    private synchronized long getEODExpected()
+    {
+        return _eodExpected;
+    }
+
+    /**
+     * Sets the error field. This indicates that the transfer has
+     * failed.
+     */
+    protected synchronized void setError(String msg)
+    {
+        if (!isClosing()) {
+            LOGGER.error(msg);
+            if (_error == null) {
+                _inbound.close();
+                _error = msg;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sets the error field. This indicates that the transfer has
+     * failed.
+     */
+    protected synchronized void setFatalError(Exception e)
+    {
+        if (!isClosing()) {
+            LOGGER.error("Socket adapter {} caught fatal error: {}",
+                    _clientConnectionHandler.getLocalAddress(), e.getMessage());
+
+            if (_error == null) {
+                _inbound.close();
+                _error = e.getMessage();
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public synchronized String getError()
+    {
+        return _error;
+    }
+
+    @Override
+    public synchronized boolean hasError()
+    {
+        return _error != null;
+    }
+
+    @Override
+    public void setMaxBlockSize(int size)
+    {
+        _maxBlockSize = size;
+    }
+
+    @Override
+    public synchronized void setMode(TransferMode mode)
+    {
+        checkArgument(mode == MODE_S || mode == MODE_E, "Unsupported transfer mode %s", mode);
+        _mode = mode;
+    }
+
+    @Override
+    public InetSocketAddress getInternalAddress()
+    {
+        return _poolConnectionHandler.getLocalAddress();
+    }
+
+    @Override
+    public void setDataDirection(Direction dir)
+    {
+        _direction = dir;
+
+        switch (dir) {
+        case UPLOAD:
+            _inbound = _clientConnectionHandler;
+            _outbound = _poolConnectionHandler;
+            break;
+        case DOWNLOAD:
+            _inbound = _poolConnectionHandler;
+            _outbound = _clientConnectionHandler;
+            break;
+        }
+    }
+
+    /**
+     * Sets the closing flag. @see _closing
+     */
+    private synchronized void setClosing(boolean closing)
+    {
+        _closing = closing;
+        notifyAll();
+    }
+
+    /**
+     * Returns the value of the closing flag. @see _closing
+     */
+    private synchronized boolean isClosing()
+    {
+        return _closing;
+    }
+
+    private synchronized void setDrained()
+    {
+        _drained = true;
+        notifyAll();
+    }
+
+    private synchronized void streamCompleted()
+    {
+        notifyAll();
+    }
+
+    /**
+     * Stops accepting data sender connections.  Called by the worker
+     * thread, as the adapter thread is busy accepting, but returns without
+     * waiting for the adapter thread.
+     */
+    private void finishAccept()
+    {
+        _inboundExecutor.execute(() -> {
+            try {
+                LOGGER.debug("Finishing accept");
+                _inbound.finishAccept();
+            } catch (InterruptedException e) {
+                setError("Interrupted waiting for accept to shut down");
+            }
+        });
+    }
+
+    @Override
+    public void run()
+    {
+        LOGGER.debug("Socket adapter thread starting");
+        assert _direction == UPLOAD || _mode == MODE_S;
+
+        try {
+            /* As for the SocketAdapter, there will be exactly one
+             * connection on the output channel.
+             */
+            _output = _outbound.accept();
+            _outputRemoteAddress = SocketAdapter.toString(_output.socket().getRemoteSocketAddress());
+            _outputLocalAddress = SocketAdapter.toString(_output.socket().getLocalSocketAddress());
+            LOGGER.debug("Sending data: {} --> {}", _outputLocalAddress, _outputRemoteAddress);
+
+            try {
+                /* Send the EOF up front, while the channel is still
+                 * blocking.
+                 */
+                if (_mode == MODE_E) {
+                    _output.write(eofBlock());
+                }
+
+                _sink = new Sink();
+                _worker.execute(_sink::register);
+
+                _inbound.accept(this::acceptNewChannel);
+
+                awaitStreams();
+
+                ByteBuffer trailer = null;
+                if (_mode == MODE_E) {
+                    if (!isEODExpectedSpecified()) {
+                        setError("Did not receive EOF marker. Transfer failed.");
+                    } else if (!hasSeenAllExpectedEOD()) {
+                        setError("Transfer failed: not enough EOD markers (expected " +
+                                getEODExpected() + ", got " + getEODSeen() + ")");
+                    } else {
+                        trailer = eodBlock();
+                    }
+                }
+                if (!hasError()) {
+                    ByteBuffer eod = trailer;
+                    _worker.execute(() -> _sink.finish(eod));
+                    awaitDrained();
+                }
+            } finally {
+                _worker.execute(this::abortAll);
+                try {
+                    _output.close();
+                    _outputLocalAddress = "closed";
+                    _outputRemoteAddress = "closed";
+                } catch (IOException e) {
+                    LOGGER.warn("Problem closing output: {}", e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            /* This will always be a symptom of another error, so
+             * there is no reason to log this exception.
+             */
+        } catch (IOException e) {
+            setError(e.getMessage());
+        } catch (RuntimeException e) {
+            _thread.getUncaughtExceptionHandler().uncaughtException(_thread, e);
+            setFatalError(e);
+        } finally {
+            /* Close down everything on the pool side. */
+            _poolConnectionHandler.close();
+        }
+    }
+
+    private static ByteBuffer eofBlock()
+    {
+        ByteBuffer block = ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+        block.put((byte) EDataBlockNio.EOF_DESCRIPTOR);
+        block.putLong(0);
+        block.putLong(1);
+        block.flip();
+        return block;
+    }
+
+    private static ByteBuffer eodBlock()
+    {
+        ByteBuffer block = ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+        block.put((byte) EDataBlockNio.EOD_DESCRIPTOR);
+        block.putLong(0);
+        block.putLong(0);
+        block.flip();
+        return block;
+    }
+
+    private synchronized void awaitStreams() throws InterruptedException
+    {
+        LOGGER.debug("Waiting for {} streams to finish", _activeStreams.get());
+        while (_activeStreams.get() > 0 && _error == null && !_closing) {
+            wait();
+        }
+        LOGGER.debug("All streams have finished");
+    }
+
+    private synchronized void awaitDrained() throws InterruptedException
+    {
+        while (!_drained && _error == null && !_closing) {
+            wait();
+        }
+    }
+
+    /**
+     * Releases the resources of the sink and of all streams still active.
+     * Called on the worker thread.
+     */
+    private void abortAll()
+    {
+        if (_sink != null) {
+            _sink.abort();
+        }
+        List<Stream> streams;
+        synchronized (_streams) {
+            streams = new ArrayList<>(_streams);
+        }
+        for (Stream stream : streams) {
+            stream.complete(false);
+        }
+    }
+
+    /**
+     * Called by the adapter thread for every data sender connection.  Must
+     * not block.
+     */
+    private void acceptNewChannel(SocketChannel input, ByteBuffer initialInput)
+    {
+        LOGGER.debug("Accepting new TCP connection");
+
+        Stream stream;
+        switch (_mode) {
+        case MODE_E:
+            stream = new StreamModeE(input, initialInput);
+            break;
+        case MODE_S:
+            stream = new StreamModeS(input, initialInput);
+            break;
+        default:
+            throw new RuntimeException("Unsupported transfer mode: " + _mode);
+        }
+        _activeStreams.incrementAndGet();
+        _streams.add(stream);
+        _worker.execute(stream::start);
+    }
+
+    @Override
+    public void close() {
+        LOGGER.debug("Closing listener sockets");
+        _poolConnectionHandler.close();
+
+        setClosing(true);
+        try {
+            _inbound.finishAccept();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while closing EventDrivenSocketAdapter");
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        return _thread.isAlive();
+    }
+
+    @Override
+    public void join(long millis) throws InterruptedException {
+        _thread.join(millis);
+    }
+
+    @Override
+    public void start() {
+        _thread.start();
+    }
+
+    @Override
+    public String toString() {
+        return "EventDrivenSocketAdapter[mode=" + _mode.getLabel() + " in=" + _inbound + ", out=" + _outbound + "]";
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        pw.println("Passive adapter (event driven):");
+        pw.println("    Transfer mode: " + _mode.getLabel());
+        pw.println("    Listening on:");
+        pw.println("        Client: " + _clientConnectionHandler.getLocalAddress());
+        pw.println("        Pool: " + _poolConnectionHandler.getLocalAddress());
+        if (_output == null) {
+            pw.println("    Proxy status: not connected");
+        } else {
+            pw.println("    Proxy status:");
+            ProxyPrinter proxy = new ProxyPrinter();
+            Socket out = _output.socket();
+            List<Stream> streams;
+            synchronized (_streams) {
+                streams = new ArrayList<>(_streams);
+            }
+            boolean isFirstRow = true;
+            for (Stream stream : streams) {
+                if (isFirstRow) {
+                    if (_direction == UPLOAD) {
+                        proxy.pool(out);
+                    } else {
+                        proxy.client(out);
+                    }
+                    isFirstRow = false;
+                }
+                Socket in = stream._input.socket();
+                if (_direction == UPLOAD) {
+                    proxy.client(in);
+                } else {
+                    proxy.pool(in);
+                }
+                proxy.add();
+            }
+            pw.println(indentLines("        ", proxy.toString()));
+        }
+    }
+}
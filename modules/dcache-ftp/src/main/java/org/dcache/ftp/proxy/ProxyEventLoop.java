@@ -0,0 +1,257 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.ftp.proxy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A fixed set of selector threads shared by all event driven proxy adapters
+ * of a door.  Each adapter is bound to a single {@link Worker}, so that all
+ * the state of its data channels is only ever touched by the worker's thread.
+ * <p>
+ * Each worker keeps a pool of direct buffers.  Data read from a channel into
+ * a direct buffer is written to the other channel from that same buffer,
+ * without the copying through a temporary direct buffer the JDK does for
+ * heap buffers.
+ */
+public class ProxyEventLoop implements Closeable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProxyEventLoop.class);
+
+    /**
+     * Maximum number of unused buffers each worker keeps for later reuse.
+     */
+    private static final int MAX_IDLE_BUFFERS = 64;
+
+    /**
+     * Something that reacts to its channel becoming ready.
+     */
+    public interface Handler
+    {
+        /**
+         * Called by the worker thread when the channel is ready for one
+         * of the operations of interest.  Implementations must not block.
+         */
+        void ready(SelectionKey key);
+    }
+
+    /**
+     * A single selector thread with its own buffer pool.
+     */
+    public class Worker implements Executor, Runnable
+    {
+        private final Selector _selector;
+        private final Thread _thread;
+        private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+        private final Deque<ByteBuffer> _buffers = new ArrayDeque<>();
+
+        private Worker(String name) throws IOException
+        {
+            _selector = Selector.open();
+            _thread = new Thread(this, name);
+            _thread.setDaemon(true);
+        }
+
+        /**
+         * Run the task on the worker thread.
+         */
+        @Override
+        public void execute(Runnable task)
+        {
+            _tasks.add(task);
+            _selector.wakeup();
+        }
+
+        /**
+         * Register a channel with this worker.  Must be called on the worker
+         * thread.
+         */
+        public SelectionKey register(SelectableChannel channel, int ops, Handler handler)
+                throws IOException
+        {
+            checkState(Thread.currentThread() == _thread, "register called outside worker");
+            channel.configureBlocking(false);
+            return channel.register(_selector, ops, handler);
+        }
+
+        /**
+         * Returns a cleared direct buffer.  Must be called on the worker
+         * thread.
+         */
+        public ByteBuffer acquire()
+        {
+            ByteBuffer buffer = _buffers.pollFirst();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(_bufferSize);
+                _allocatedBuffers.incrementAndGet();
+            }
+            return buffer;
+        }
+
+        /**
+         * Returns a buffer obtained from {@link #acquire} to the pool.  Must
+         * be called on the worker thread.
+         */
+        public void release(ByteBuffer buffer)
+        {
+            if (_buffers.size() < MAX_IDLE_BUFFERS) {
+                buffer.clear();
+                _buffers.addFirst(buffer);
+            } else {
+                _allocatedBuffers.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                while (!_closed) {
+                    _selector.select();
+                    Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid()) {
+                            try {
+                                ((Handler) key.attachment()).ready(key);
+                            } catch (RuntimeException e) {
+                                LOGGER.error("Bug detected in proxy handler", e);
+                            }
+                        }
+                    }
+                    runTasks();
+                }
+            } catch (IOException e) {
+                LOGGER.error("Proxy event loop failed: {}", e.toString());
+            } finally {
+                try {
+                    _selector.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close selector: {}", e.toString());
+                }
+            }
+        }
+
+        private void runTasks()
+        {
+            Runnable task;
+            while ((task = _tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Bug detected in proxy task", e);
+                }
+            }
+        }
+    }
+
+    private final Worker[] _workers;
+    private final ExecutorService _blockingExecutor;
+    private final int _bufferSize;
+    private final AtomicInteger _next = new AtomicInteger();
+    private final AtomicInteger _allocatedBuffers = new AtomicInteger();
+
+    private volatile boolean _closed;
+
+    public ProxyEventLoop(String name, int threads, int bufferSize) throws IOException
+    {
+        checkArgument(threads > 0, "At least one thread is required");
+        checkArgument(bufferSize > 0, "Buffer size must be positive");
+        _bufferSize = bufferSize;
+        _workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            _workers[i] = new Worker(name + "-" + i);
+        }
+        for (Worker worker : _workers) {
+            worker._thread.start();
+        }
+        _blockingExecutor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat(name + "-blocking-%d").build());
+    }
+
+    /**
+     * Returns the worker to which the next adapter is bound.  Workers are
+     * handed out round robin.
+     */
+    public Worker next()
+    {
+        return _workers[Math.floorMod(_next.getAndIncrement(), _workers.length)];
+    }
+
+    /**
+     * Returns an executor for tasks of adapters which may block, and which
+     * hence must not run on a worker.
+     */
+    public Executor getBlockingExecutor()
+    {
+        return _blockingExecutor;
+    }
+
+    public int getBufferSize()
+    {
+        return _bufferSize;
+    }
+
+    /**
+     * Returns the number of direct buffers currently allocated, both
+     * in use and idle.
+     */
+    public int getAllocatedBuffers()
+    {
+        return _allocatedBuffers.get();
+    }
+
+    @Override
+    public void close()
+    {
+        _closed = true;
+        for (Worker worker : _workers) {
+            worker._selector.wakeup();
+        }
+        _blockingExecutor.shutdown();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ProxyEventLoop[threads=" + _workers.length + ", buffer-size=" + _bufferSize
+                + ", buffers=" + _allocatedBuffers + "]";
+    }
+}
@@ -404,7 +404,7 @@ public class SocketAdapter implements Runnable, ProxyAdapter
      * from the IP address, even if the hostname is not supplied.  In addition,
      * any IPv6 address is not compressed.
      */
-    private static String toString(SocketAddress sockAddr)
+    static String toString(SocketAddress sockAddr)
     {
         if (sockAddr == null) {
             return "disconnected";
@@ -0,0 +1,207 @@
+package org.dcache.ftp.proxy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.dcache.util.PortRange;
+
+import static org.dcache.ftp.TransferMode.MODE_E;
+import static org.dcache.ftp.TransferMode.MODE_S;
+import static org.dcache.ftp.proxy.ProxyAdapter.Direction.DOWNLOAD;
+import static org.dcache.ftp.proxy.ProxyAdapter.Direction.UPLOAD;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+
+public class EventDrivenSocketAdapterTest
+{
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long TIMEOUT = 10_000;
+
+    private final InetAddress localhost = InetAddress.getLoopbackAddress();
+
+    private ProxyEventLoop eventLoop;
+    private PassiveConnectionHandler clientHandler;
+    private EventDrivenSocketAdapter adapter;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        eventLoop = new ProxyEventLoop("test-proxy", 2, BUFFER_SIZE);
+        clientHandler = new PassiveConnectionHandler(localhost, PortRange.ANY);
+        clientHandler.open();
+        data = new byte[1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (adapter != null) {
+            adapter.close();
+        }
+        clientHandler.close();
+        eventLoop.close();
+    }
+
+    @Test
+    public void shouldRelayModeSUpload() throws Exception
+    {
+        givenAdapter(MODE_S, UPLOAD);
+
+        try (SocketChannel pool = SocketChannel.open(adapter.getInternalAddress());
+             SocketChannel client = SocketChannel.open(clientHandler.getLocalAddress())) {
+            client.write(ByteBuffer.wrap(data));
+            client.shutdownOutput();
+
+            assertArrayEquals(data, readStream(pool));
+        }
+
+        adapter.join(TIMEOUT);
+        assertThat(adapter.getError(), is(nullValue()));
+        assertThat(adapter.isAlive(), is(false));
+    }
+
+    @Test
+    public void shouldRelayModeSDownload() throws Exception
+    {
+        givenAdapter(MODE_S, DOWNLOAD);
+
+        try (SocketChannel client = SocketChannel.open(clientHandler.getLocalAddress());
+             SocketChannel pool = SocketChannel.open(adapter.getInternalAddress())) {
+            pool.write(ByteBuffer.wrap(data));
+            pool.shutdownOutput();
+
+            assertArrayEquals(data, readStream(client));
+        }
+
+        adapter.join(TIMEOUT);
+        assertThat(adapter.getError(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRelayModeEUploadOverParallelStreams() throws Exception
+    {
+        givenAdapter(MODE_E, UPLOAD);
+        adapter.setMaxBlockSize(4096);
+
+        try (SocketChannel pool = SocketChannel.open(adapter.getInternalAddress());
+             SocketChannel client1 = SocketChannel.open(clientHandler.getLocalAddress());
+             SocketChannel client2 = SocketChannel.open(clientHandler.getLocalAddress());
+             SocketChannel client3 = SocketChannel.open(clientHandler.getLocalAddress())) {
+            int third = data.length / 3;
+            client1.write(block(EDataBlockNio.EOF_DESCRIPTOR, 0, 3));
+            sendModeE(client1, 0, third);
+            sendModeE(client2, third, 2 * third);
+            sendModeE(client3, 2 * third, data.length);
+
+            assertArrayEquals(data, readModeE(pool));
+        }
+
+        adapter.join(TIMEOUT);
+        assertThat(adapter.getError(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFailWhenModeEStreamClosedBeforeEod() throws Exception
+    {
+        givenAdapter(MODE_E, UPLOAD);
+
+        try (SocketChannel pool = SocketChannel.open(adapter.getInternalAddress());
+             SocketChannel client = SocketChannel.open(clientHandler.getLocalAddress())) {
+            client.write(block(EDataBlockNio.EOF_DESCRIPTOR, 0, 1));
+            client.write(block(0, 1000, 0));
+            client.write(ByteBuffer.wrap(data, 0, 1000));
+            client.close();
+
+            adapter.join(TIMEOUT);
+        }
+
+        assertThat(adapter.getError(), is(notNullValue()));
+    }
+
+    private void givenAdapter(org.dcache.ftp.TransferMode mode, ProxyAdapter.Direction direction)
+            throws IOException
+    {
+        adapter = new EventDrivenSocketAdapter(clientHandler, localhost, eventLoop);
+        adapter.setMode(mode);
+        adapter.setDataDirection(direction);
+        adapter.start();
+    }
+
+    private void sendModeE(SocketChannel channel, int from, int to) throws IOException
+    {
+        int position = from;
+        while (position < to) {
+            int len = Math.min(10_000, to - position);
+            int descriptors = position + len == to ? EDataBlockNio.EOD_DESCRIPTOR : 0;
+            channel.write(block(descriptors, len, position));
+            channel.write(ByteBuffer.wrap(data, position, len));
+            position += len;
+        }
+    }
+
+    private static ByteBuffer block(int descriptors, long size, long offset)
+    {
+        ByteBuffer header = ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+        header.put((byte) descriptors);
+        header.putLong(size);
+        header.putLong(offset);
+        header.flip();
+        return header;
+    }
+
+    private static byte[] readStream(SocketChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * 1024 * 1024);
+        while (channel.read(buffer) != -1) {
+        }
+        buffer.flip();
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    private byte[] readModeE(SocketChannel channel) throws IOException
+    {
+        byte[] result = new byte[data.length];
+        ByteBuffer header = ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+
+        readFully(channel, header);
+        assertThat(header.get(0), is((byte) EDataBlockNio.EOF_DESCRIPTOR));
+        assertThat(header.getLong(9), is(1L));
+
+        while (true) {
+            header.clear();
+            readFully(channel, header);
+            if ((header.get(0) & EDataBlockNio.EOD_DESCRIPTOR) != 0) {
+                assertThat(header.getLong(1), is(0L));
+                return result;
+            }
+            int size = (int) header.getLong(1);
+            int offset = (int) header.getLong(9);
+            assertThat(size <= 4096, is(true));
+            readFully(channel, ByteBuffer.wrap(result, offset, size));
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new IOException("Unexpected end of stream: " + Arrays.toString(buffer.array()));
+            }
+        }
+    }
+}
@@ -74,6 +74,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.pools.json.PoolCostData;
 import diskCacheV111.util.CacheException;
@@ -82,10 +83,13 @@ import org.dcache.pool.classic.json.SweeperData;
 import org.dcache.pool.json.PoolData;
 import org.dcache.pool.json.PoolDataDetails;
 import org.dcache.pool.json.PoolInfoWrapper;
+import org.dcache.services.history.timeseries.TimeseriesStore;
 import org.dcache.util.collector.RequestFutureProcessor;
 import org.dcache.util.collector.pools.PoolHistoriesAggregator;
 import org.dcache.util.collector.pools.PoolInfoCollectorUtils;
 import org.dcache.util.histograms.CountingHistogram;
+import org.dcache.util.histograms.TimeseriesHistogram;
+import org.dcache.vehicles.histograms.PoolTimeseriesRequestMessage.TimeseriesType;
 import org.dcache.vehicles.pool.PoolLiveDataForHistoriesMessage;
 
 /**
@@ -93,8 +97,10 @@ import org.dcache.vehicles.pool.PoolLiveDataForHistoriesMessage;
  * {@link PoolInfoWrapper}.  The data handled by this transformation are
  * the timeseries histograms for request queues and for file lifetime.</p>
  *
- * <p>Post-processing stores all data to local files that are read back
- * in on start-up.</p>
+ * <p>Post-processing appends the latest value of each timeseries to the
+ * {@link TimeseriesStore} and stores the remaining pool data to local
+ * JSON files.  On start-up, the histograms are rebuilt from the points
+ * in the store.</p>
  */
 public final class PoolHistoriesRequestProcessor extends
                 RequestFutureProcessor<PoolInfoWrapper, PoolLiveDataForHistoriesMessage> {
@@ -105,9 +111,16 @@ public final class PoolHistoriesRequestProcessor extends
         }
     };
 
+    /*
+     *  Queue histograms cover 48 hours, file lifetime histograms 61 days.
+     */
+    private static final long QUEUE_WINDOW = TimeUnit.HOURS.toMillis(49);
+    private static final long LIFETIME_WINDOW = TimeUnit.DAYS.toMillis(62);
+
     private PoolTimeseriesServiceImpl service;
     private PoolHistoriesAggregator   handler;
     private File                      storageDir;
+    private TimeseriesStore           store;
 
     /**
      * <p>It is assumed the storage directory points to a shallow directory
@@ -158,13 +171,53 @@ public final class PoolHistoriesRequestProcessor extends
             }
 
             if (key != null) {
-                values.put(key, info == null ? new PoolInfoWrapper() : info);
+                if (info == null) {
+                    info = new PoolInfoWrapper();
+                    info.setKey(key);
+                }
+                readTimeseries(key, info);
+                values.put(key, info);
             }
         }
 
         return values;
     }
 
+    /**
+     * <p>Rebuilds the histograms of the wrapper by replaying the points
+     * stored for its timeseries.  Histograms for which the store holds
+     * no points (for instance, those read from files written before the
+     * store existed) are left as they are.</p>
+     */
+    private void readTimeseries(String key, PoolInfoWrapper info) {
+        long now = System.currentTimeMillis();
+        for (TimeseriesType type : TimeseriesType.values()) {
+            String series = seriesKey(key, type);
+            TimeseriesHistogram[] histogram = new TimeseriesHistogram[1];
+            if (isLifetime(type)) {
+                String label = lifetimeLabel(type);
+                store.readMerged(series, now - LIFETIME_WINDOW, now,
+                                 (t, v) -> histogram[0] =
+                                                 PoolInfoCollectorUtils.updateFileLifetimeSeries(
+                                                                 label, v, histogram[0], t));
+            } else {
+                String label = queueLabel(type);
+                store.readMerged(series, now - QUEUE_WINDOW, now,
+                                 (t, v) -> histogram[0] =
+                                                 PoolInfoCollectorUtils.updateQueueSeries(
+                                                                 label, v, histogram[0], t));
+            }
+            if (histogram[0] != null) {
+                setHistogram(info, type, histogram[0]);
+            }
+        }
+    }
+
+    @Required
+    public void setStore(TimeseriesStore store) {
+        this.store = store;
+    }
+
     @Required
     public void setHandler(PoolHistoriesAggregator handler) {
         this.handler = handler;
@@ -190,6 +243,7 @@ public final class PoolHistoriesRequestProcessor extends
                          e.getMessage());
         }
 
+        writeTimeseries();
         writeMapToDisk();
         service.updateJsonData(next);
     }
@@ -243,12 +297,47 @@ public final class PoolHistoriesRequestProcessor extends
         return info;
     }
 
+    /**
+     * <p>Appends the value of the current bin of each histogram to the
+     * store.  Only the histograms are kept in the store; rewriting
+     * them in full at every collection is what made the JSON files
+     * expensive to maintain.</p>
+     */
+    private void writeTimeseries() {
+        long now = System.currentTimeMillis();
+        try {
+            for (Entry<String, PoolInfoWrapper> entry : next.entrySet()) {
+                PoolInfoWrapper info = entry.getValue();
+                if (info == null) {
+                    continue;
+                }
+                for (TimeseriesType type : TimeseriesType.values()) {
+                    Double value = currentValue(getHistogram(info, type), now);
+                    if (value != null) {
+                        store.append(seriesKey(entry.getKey(), type), now, value);
+                    }
+                }
+            }
+            store.flush(now);
+        } catch (IOException e) {
+            LOGGER.warn("There was a problem storing timeseries data: {}.",
+                        e.getMessage());
+        }
+    }
+
     private void writeMapToDisk() {
         GsonBuilder builder = new GsonBuilder().setPrettyPrinting();
         for (Entry<String, PoolInfoWrapper> entry : next.entrySet()) {
             File file = new File(storageDir, entry.getKey() + ".json");
+            PoolInfoWrapper info = entry.getValue();
+            if (info == null) {
+                continue;
+            }
+            PoolInfoWrapper data = new PoolInfoWrapper();
+            data.setKey(entry.getKey());
+            data.setInfo(info.getInfo());
             try (FileWriter writer = new FileWriter(file, false)) {
-                builder.create().toJson(entry.getValue(), writer);
+                builder.create().toJson(data, writer);
             } catch (IOException e) {
                 LOGGER.warn("There was a problem serializing json to file {}: "
                                             + "{}, {}",
@@ -256,4 +345,158 @@ public final class PoolHistoriesRequestProcessor extends
             }
         }
     }
+
+    private static Double currentValue(TimeseriesHistogram histogram,
+                                       long timestamp) {
+        if (histogram == null) {
+            return null;
+        }
+        int index = (int) Math.floor((timestamp - histogram.getLowestBin())
+                                                     / histogram.getBinSize());
+        if (index < 0 || index >= histogram.getBinCount()) {
+            return null;
+        }
+        return histogram.getData().get(index);
+    }
+
+    static String seriesKey(String key, TimeseriesType type) {
+        return key + "/" + type.name();
+    }
+
+    private static boolean isLifetime(TimeseriesType type) {
+        switch (type) {
+            case FILE_LIFETIME_MAX:
+            case FILE_LIFETIME_AVG:
+            case FILE_LIFETIME_MIN:
+            case FILE_LIFETIME_STDDEV:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String lifetimeLabel(TimeseriesType type) {
+        switch (type) {
+            case FILE_LIFETIME_MAX:
+                return "MAX";
+            case FILE_LIFETIME_AVG:
+                return "AVG";
+            case FILE_LIFETIME_MIN:
+                return "MIN";
+            default:
+                return "STD DEV";
+        }
+    }
+
+    private static String queueLabel(TimeseriesType type) {
+        switch (type) {
+            case ACTIVE_MOVERS:
+                return "Active Movers";
+            case QUEUED_MOVERS:
+                return "Queued Movers";
+            case ACTIVE_P2P:
+                return "Active P2P";
+            case QUEUED_P2P:
+                return "Queued P2P";
+            case ACTIVE_P2P_CLIENT:
+                return "Active P2P Client";
+            case QUEUED_P2P_CLIENT:
+                return "Queued P2P Client";
+            case ACTIVE_FLUSH:
+                return "Active Stores";
+            case QUEUED_FLUSH:
+                return "Queued Stores";
+            case ACTIVE_STAGE:
+                return "Active Restores";
+            default:
+                return "Queued Restores";
+        }
+    }
+
+    private static TimeseriesHistogram getHistogram(PoolInfoWrapper info,
+                                                    TimeseriesType type) {
+        switch (type) {
+            case FILE_LIFETIME_MAX:
+                return info.getFileLiftimeMax();
+            case FILE_LIFETIME_AVG:
+                return info.getFileLiftimeAvg();
+            case FILE_LIFETIME_MIN:
+                return info.getFileLiftimeMin();
+            case FILE_LIFETIME_STDDEV:
+                return info.getFileLiftimeStddev();
+            case ACTIVE_MOVERS:
+                return info.getActiveMovers();
+            case QUEUED_MOVERS:
+                return info.getQueuedMovers();
+            case ACTIVE_P2P:
+                return info.getActiveP2P();
+            case QUEUED_P2P:
+                return info.getQueuedP2P();
+            case ACTIVE_P2P_CLIENT:
+                return info.getActiveP2PClient();
+            case QUEUED_P2P_CLIENT:
+                return info.getQueuedP2PClient();
+            case ACTIVE_FLUSH:
+                return info.getActiveFlush();
+            case QUEUED_FLUSH:
+                return info.getQueuedFlush();
+            case ACTIVE_STAGE:
+                return info.getActiveStage();
+            case QUEUED_STAGE:
+                return info.getQueuedStage();
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    private static void setHistogram(PoolInfoWrapper info,
+                                     TimeseriesType type,
+                                     TimeseriesHistogram histogram) {
+        switch (type) {
+            case FILE_LIFETIME_MAX:
+                info.setFileLiftimeMax(histogram);
+                break;
+            case FILE_LIFETIME_AVG:
+                info.setFileLiftimeAvg(histogram);
+                break;
+            case FILE_LIFETIME_MIN:
+                info.setFileLiftimeMin(histogram);
+                break;
+            case FILE_LIFETIME_STDDEV:
+                info.setFileLiftimeStddev(histogram);
+                break;
+            case ACTIVE_MOVERS:
+                info.setActiveMovers(histogram);
+                break;
+            case QUEUED_MOVERS:
+                info.setQueuedMovers(histogram);
+                break;
+            case ACTIVE_P2P:
+                info.setActiveP2P(histogram);
+                break;
+            case QUEUED_P2P:
+                info.setQueuedP2P(histogram);
+                break;
+            case ACTIVE_P2P_CLIENT:
+                info.setActiveP2PClient(histogram);
+                break;
+            case QUEUED_P2P_CLIENT:
+                info.setQueuedP2PClient(histogram);
+                break;
+            case ACTIVE_FLUSH:
+                info.setActiveFlush(histogram);
+                break;
+            case QUEUED_FLUSH:
+                info.setQueuedFlush(histogram);
+                break;
+            case ACTIVE_STAGE:
+                info.setActiveStage(histogram);
+                break;
+            case QUEUED_STAGE:
+                info.setQueuedStage(histogram);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
 }
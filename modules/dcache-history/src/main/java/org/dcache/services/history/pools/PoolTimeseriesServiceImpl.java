@@ -61,19 +61,26 @@ package org.dcache.services.history.pools;
 
 import org.springframework.beans.factory.annotation.Required;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.poolManager.PoolSelectionUnit;
 import diskCacheV111.vehicles.Message;
 
 import dmg.cells.nucleus.CellMessageReceiver;
 import dmg.cells.nucleus.Reply;
+import dmg.util.command.Argument;
 import dmg.util.command.Command;
+import dmg.util.command.Option;
 
 import org.dcache.cells.MessageReply;
 import org.dcache.pool.classic.json.SweeperData;
@@ -81,6 +88,8 @@ import org.dcache.pool.json.PoolData;
 import org.dcache.pool.json.PoolInfoWrapper;
 import org.dcache.poolmanager.PoolMonitor;
 import org.dcache.services.collector.CellDataCollectingService;
+import org.dcache.services.history.timeseries.Resolution;
+import org.dcache.services.history.timeseries.TimeseriesStore;
 import org.dcache.util.collector.ListenableFutureWrapper;
 import org.dcache.util.collector.pools.PoolInfoCollectorUtils;
 import org.dcache.util.collector.pools.PoolLiveDataCollector;
@@ -106,6 +115,8 @@ public final class PoolTimeseriesServiceImpl extends
 
     private PoolMonitor monitor;
 
+    private TimeseriesStore store;
+
     protected Executor executor;
 
     @Command(name = "pools set timeout",
@@ -127,6 +138,57 @@ public final class PoolTimeseriesServiceImpl extends
         }
     }
 
+    @Command(name = "pools timeseries info",
+                    hint = "Show statistics of the timeseries store",
+                    description = "Shows, for each resolution, the number of "
+                                    + "series, segment files, bytes and points "
+                                    + "held by the timeseries store.")
+    class PoolsTimeseriesInfoCommand implements Callable<String> {
+        @Override
+        public String call() {
+            StringWriter writer = new StringWriter();
+            PrintWriter pw = new PrintWriter(writer);
+            store.getInfo(pw);
+            pw.flush();
+            return writer.toString();
+        }
+    }
+
+    @Command(name = "pools timeseries show",
+                    hint = "Show stored points of a timeseries",
+                    description = "Lists the points stored for the given "
+                                    + "pool or pool group and timeseries type.")
+    class PoolsTimeseriesShowCommand implements Callable<String> {
+        @Argument(index = 0,
+                        usage = "Name of the pool or pool group.")
+        String key;
+
+        @Argument(index = 1,
+                        usage = "Type of timeseries.")
+        TimeseriesType type;
+
+        @Option(name = "resolution",
+                        valueSpec = "RAW|HOURLY|DAILY",
+                        usage = "Resolution of the points (default is RAW).")
+        Resolution resolution = Resolution.RAW;
+
+        @Option(name = "hours",
+                        usage = "Number of hours back from now to show "
+                                        + "(default is 1).")
+        long hours = 1;
+
+        @Override
+        public String call() {
+            StringBuilder builder = new StringBuilder();
+            long now = System.currentTimeMillis();
+            store.read(PoolHistoriesRequestProcessor.seriesKey(key, type),
+                       resolution, now - TimeUnit.HOURS.toMillis(hours), now,
+                       (t, v) -> builder.append(Instant.ofEpochMilli(t))
+                                        .append(' ').append(v).append('\n'));
+            return builder.toString();
+        }
+    }
+
     @Override
     public void configure() {
         synchronized (cache) {
@@ -134,6 +196,13 @@ public final class PoolTimeseriesServiceImpl extends
         }
     }
 
+    @Override
+    public void getInfo(PrintWriter pw) {
+        super.getInfo(pw);
+        pw.println("    Timeseries store :");
+        store.getInfo(pw);
+    }
+
     public SweeperData getSweeperData(String key) {
         PoolInfoWrapper wrapper = getWrapper(key);
         if (wrapper != null) {
@@ -260,6 +329,11 @@ public final class PoolTimeseriesServiceImpl extends
         this.processor = processor;
     }
 
+    @Required
+    public void setStore(TimeseriesStore store) {
+        this.store = store;
+    }
+
     /**
      * <p>Callback invoked by processor when it has completed
      * the update.</p>
@@ -0,0 +1,45 @@
+package org.dcache.services.history.timeseries;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits written by {@link BitWriter}.
+ */
+final class BitReader
+{
+    private final ByteBuffer buffer;
+    private final int offset;
+    private int position;
+
+    /**
+     * @param buffer buffer holding the bits
+     * @param offset absolute position of the first byte of the bits in the buffer
+     */
+    BitReader(ByteBuffer buffer, int offset)
+    {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    boolean readBit()
+    {
+        int bit = (buffer.get(offset + (position >>> 3)) >>> (7 - (position & 7))) & 1;
+        position++;
+        return bit != 0;
+    }
+
+    long readBits(int count)
+    {
+        long value = 0;
+        while (count > 0) {
+            int available = 8 - (position & 7);
+            int n = Math.min(available, count);
+            int current = buffer.get(offset + (position >>> 3)) & 0xff;
+            int bits = (current >>> (available - n)) & ((1 << n) - 1);
+            value = (value << n) | bits;
+            position += n;
+            count -= n;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,75 @@
+package org.dcache.services.history.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of bits, written most significant bit first.
+ */
+final class BitWriter
+{
+    private byte[] buffer;
+    private int bitLength;
+
+    BitWriter()
+    {
+        this(64);
+    }
+
+    BitWriter(int capacity)
+    {
+        buffer = new byte[Math.max(capacity, 8)];
+    }
+
+    /**
+     * Creates a writer continuing after the given bits.
+     */
+    BitWriter(byte[] bits, int bitLength)
+    {
+        buffer = Arrays.copyOf(bits, Math.max(bits.length * 2, 8));
+        this.bitLength = bitLength;
+    }
+
+    void writeBit(boolean bit)
+    {
+        ensureCapacity(1);
+        if (bit) {
+            buffer[bitLength >>> 3] |= 0x80 >>> (bitLength & 7);
+        }
+        bitLength++;
+    }
+
+    /**
+     * Writes the {@code count} least significant bits of {@code value}.
+     */
+    void writeBits(long value, int count)
+    {
+        ensureCapacity(count);
+        while (count > 0) {
+            int index = bitLength >>> 3;
+            int free = 8 - (bitLength & 7);
+            int n = Math.min(free, count);
+            int bits = (int) (value >>> (count - n)) & ((1 << n) - 1);
+            buffer[index] |= bits << (free - n);
+            bitLength += n;
+            count -= n;
+        }
+    }
+
+    int bitLength()
+    {
+        return bitLength;
+    }
+
+    byte[] toByteArray()
+    {
+        return Arrays.copyOf(buffer, (bitLength + 7) >>> 3);
+    }
+
+    private void ensureCapacity(int bits)
+    {
+        int required = (bitLength + bits + 7) >>> 3;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.dcache.services.history.timeseries;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A run of points of a single timeseries, compressed as described in
+ * "Gorilla: A Fast, Scalable, In-Memory Time Series Database" (Pelkonen
+ * et al., VLDB 2015).
+ * <p>
+ * Timestamps are stored as the difference between successive deltas, which
+ * for regularly sampled series is mostly zero and takes a single bit. Values
+ * are stored as the XOR with the previous value; unchanged values take a
+ * single bit, slowly changing values only a few more.
+ * <p>
+ * Timestamps are in seconds and must be strictly increasing.
+ */
+final class Chunk
+{
+    private final BitWriter bits;
+    private int count;
+    private long firstTime;
+    private long lastTime;
+    private long lastDelta;
+    private long lastValue;
+    private int lastLeading = -1;
+    private int lastTrailing;
+
+    Chunk()
+    {
+        bits = new BitWriter();
+    }
+
+    private Chunk(BitWriter bits)
+    {
+        this.bits = bits;
+    }
+
+    /**
+     * Appends a point.
+     *
+     * @return false if the timestamp is not after the last timestamp
+     */
+    boolean append(long time, double value)
+    {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            bits.writeBits(time, 64);
+            bits.writeBits(valueBits, 64);
+            firstTime = time;
+        } else {
+            if (time <= lastTime) {
+                return false;
+            }
+            long delta = time - lastTime;
+            writeDeltaOfDelta(delta - lastDelta);
+            writeValue(valueBits ^ lastValue);
+            lastDelta = delta;
+        }
+        lastTime = time;
+        lastValue = valueBits;
+        count++;
+        return true;
+    }
+
+    private void writeDeltaOfDelta(long dod)
+    {
+        if (dod == 0) {
+            bits.writeBit(false);
+        } else if (dod >= -63 && dod <= 64) {
+            bits.writeBits(0b10, 2);
+            bits.writeBits(dod + 63, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            bits.writeBits(0b110, 3);
+            bits.writeBits(dod + 255, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            bits.writeBits(0b1110, 4);
+            bits.writeBits(dod + 2047, 12);
+        } else {
+            bits.writeBits(0b1111, 4);
+            bits.writeBits(dod, 64);
+        }
+    }
+
+    private void writeValue(long xor)
+    {
+        if (xor == 0) {
+            bits.writeBit(false);
+            return;
+        }
+        bits.writeBit(true);
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+            bits.writeBit(false);
+            bits.writeBits(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+        } else {
+            int length = 64 - leading - trailing;
+            bits.writeBit(true);
+            bits.writeBits(leading, 5);
+            bits.writeBits(length - 1, 6);
+            bits.writeBits(xor >>> trailing, length);
+            lastLeading = leading;
+            lastTrailing = trailing;
+        }
+    }
+
+    int getCount()
+    {
+        return count;
+    }
+
+    long getFirstTime()
+    {
+        return firstTime;
+    }
+
+    long getLastTime()
+    {
+        return lastTime;
+    }
+
+    int getBitLength()
+    {
+        return bits.bitLength();
+    }
+
+    byte[] toByteArray()
+    {
+        return bits.toByteArray();
+    }
+
+    void forEach(PointConsumer consumer)
+    {
+        decode(ByteBuffer.wrap(bits.toByteArray()), 0, count, consumer);
+    }
+
+    /**
+     * Decodes the points of a chunk.
+     *
+     * @param buffer buffer holding the compressed chunk
+     * @param offset absolute position of the compressed chunk in the buffer
+     * @param count number of points in the chunk
+     * @param consumer receives the points
+     */
+    static void decode(ByteBuffer buffer, int offset, int count, PointConsumer consumer)
+    {
+        if (count == 0) {
+            return;
+        }
+        BitReader reader = new BitReader(buffer, offset);
+        long time = reader.readBits(64);
+        long value = reader.readBits(64);
+        consumer.accept(time, Double.longBitsToDouble(value));
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(reader);
+            time += delta;
+
+            if (reader.readBit()) {
+                if (reader.readBit()) {
+                    leading = (int) reader.readBits(5);
+                    int length = (int) reader.readBits(6) + 1;
+                    trailing = 64 - leading - length;
+                }
+                value ^= reader.readBits(64 - leading - trailing) << trailing;
+            }
+            consumer.accept(time, Double.longBitsToDouble(value));
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader reader)
+    {
+        if (!reader.readBit()) {
+            return 0;
+        }
+        if (!reader.readBit()) {
+            return reader.readBits(7) - 63;
+        }
+        if (!reader.readBit()) {
+            return reader.readBits(9) - 255;
+        }
+        if (!reader.readBit()) {
+            return reader.readBits(12) - 2047;
+        }
+        return reader.readBits(64);
+    }
+
+    /**
+     * Writes the chunk including the state needed to continue appending.
+     */
+    void writeTo(DataOutput out) throws IOException
+    {
+        byte[] data = bits.toByteArray();
+        out.writeInt(count);
+        out.writeInt(bits.bitLength());
+        out.writeLong(firstTime);
+        out.writeLong(lastTime);
+        out.writeLong(lastDelta);
+        out.writeLong(lastValue);
+        out.writeInt(lastLeading);
+        out.writeInt(lastTrailing);
+        out.write(data);
+    }
+
+    static Chunk readFrom(DataInput in) throws IOException
+    {
+        int count = in.readInt();
+        int bitLength = in.readInt();
+        long firstTime = in.readLong();
+        long lastTime = in.readLong();
+        long lastDelta = in.readLong();
+        long lastValue = in.readLong();
+        int lastLeading = in.readInt();
+        int lastTrailing = in.readInt();
+        byte[] data = new byte[(bitLength + 7) >>> 3];
+        in.readFully(data);
+
+        Chunk chunk = new Chunk(new BitWriter(data, bitLength));
+        chunk.count = count;
+        chunk.firstTime = firstTime;
+        chunk.lastTime = lastTime;
+        chunk.lastDelta = lastDelta;
+        chunk.lastValue = lastValue;
+        chunk.lastLeading = lastLeading;
+        chunk.lastTrailing = lastTrailing;
+        return chunk;
+    }
+}
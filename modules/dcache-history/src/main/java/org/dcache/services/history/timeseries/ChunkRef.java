@@ -0,0 +1,27 @@
+package org.dcache.services.history.timeseries;
+
+/**
+ * Location of a sealed chunk in a segment.
+ */
+final class ChunkRef
+{
+    final Segment segment;
+    final int offset;
+    final long firstTime;
+    final long lastTime;
+    final int count;
+
+    ChunkRef(Segment segment, int offset, long firstTime, long lastTime, int count)
+    {
+        this.segment = segment;
+        this.offset = offset;
+        this.firstTime = firstTime;
+        this.lastTime = lastTime;
+        this.count = count;
+    }
+
+    void forEach(PointConsumer consumer)
+    {
+        segment.decode(this, consumer);
+    }
+}
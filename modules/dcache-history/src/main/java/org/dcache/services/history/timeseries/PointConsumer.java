@@ -0,0 +1,10 @@
+package org.dcache.services.history.timeseries;
+
+/**
+ * Receives the points of a timeseries in order of increasing time.
+ */
+@FunctionalInterface
+public interface PointConsumer
+{
+    void accept(long timestamp, double value);
+}
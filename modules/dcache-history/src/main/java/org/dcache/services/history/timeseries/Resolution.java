@@ -0,0 +1,57 @@
+package org.dcache.services.history.timeseries;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resolutions at which the store keeps timeseries.
+ * <p>
+ * Raw points are kept as appended. The coarser resolutions hold one point
+ * per step, the average of the raw points appended during that step,
+ * timestamped with the start of the step.
+ * <p>
+ * Points of each resolution are stored in segment files covering a fixed
+ * span of time; retention is applied by deleting whole segments.
+ */
+public enum Resolution
+{
+    RAW(0, TimeUnit.DAYS.toSeconds(1)),
+    HOURLY(TimeUnit.HOURS.toSeconds(1), TimeUnit.DAYS.toSeconds(30)),
+    DAILY(TimeUnit.DAYS.toSeconds(1), TimeUnit.DAYS.toSeconds(720));
+
+    /** Step in seconds between points, or zero for raw points. */
+    private final long step;
+
+    /** Time in seconds covered by a segment. */
+    private final long span;
+
+    Resolution(long step, long span)
+    {
+        this.step = step;
+        this.span = span;
+    }
+
+    long getStep()
+    {
+        return step;
+    }
+
+    long getSpan()
+    {
+        return span;
+    }
+
+    long spanStart(long time)
+    {
+        return time - Math.floorMod(time, span);
+    }
+
+    long stepStart(long time)
+    {
+        return time - Math.floorMod(time, step);
+    }
+
+    boolean isRollup()
+    {
+        return step > 0;
+    }
+}
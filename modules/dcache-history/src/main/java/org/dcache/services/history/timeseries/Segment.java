@@ -0,0 +1,282 @@
+package org.dcache.services.history.timeseries;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only file of sealed chunks of one resolution, covering a fixed span
+ * of time.
+ * <p>
+ * A segment starts with a fixed size header followed by chunk records. Each
+ * record is prefixed by its length and followed by a CRC32 checksum, so that
+ * a record torn by a crash is detected and cut off when the segment is
+ * opened. Chunks are read through a read-only memory mapping of the file.
+ */
+final class Segment
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(Segment.class);
+
+    private static final int MAGIC = 0x64545331;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    /* key length, first time, last time, count, bit length, checksum */
+    private static final int RECORD_OVERHEAD = 2 + 8 + 8 + 4 + 4 + 4;
+
+    private final Path path;
+    private final Resolution resolution;
+    private final long spanStart;
+
+    /** Channel for appending, or null once the segment is finished. */
+    private FileChannel channel;
+
+    private int size;
+
+    private MappedByteBuffer mapped;
+
+    private boolean isDirty;
+
+    private Segment(Path path, Resolution resolution, long spanStart, FileChannel channel, int size)
+    {
+        this.path = path;
+        this.resolution = resolution;
+        this.spanStart = spanStart;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    static String fileName(Resolution resolution, long spanStart)
+    {
+        return resolution.name().toLowerCase() + '-' + spanStart + ".seg";
+    }
+
+    /**
+     * Creates a new, empty segment in the given directory.
+     */
+    static Segment create(Path dir, Resolution resolution, long spanStart) throws IOException
+    {
+        Path path = dir.resolve(fileName(resolution, spanStart));
+        FileChannel channel = FileChannel.open(path, CREATE_NEW, READ, WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(resolution.ordinal()).putLong(spanStart)
+                    .putLong(spanStart + resolution.getSpan());
+            header.rewind();
+            writeFully(channel, header, 0);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new Segment(path, resolution, spanStart, channel, HEADER_SIZE);
+    }
+
+    /**
+     * Opens an existing segment and reports the chunks it contains.
+     * <p>
+     * Records following the first damaged record are cut off.
+     *
+     * @param visitor called with the series key and location of each chunk
+     */
+    static Segment open(Path path, BiConsumer<String, ChunkRef> visitor) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, READ, WRITE);
+        try {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Invalid segment size " + fileSize);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a timeseries segment");
+            }
+            int ordinal = buffer.getInt(8);
+            if (ordinal < 0 || ordinal >= Resolution.values().length) {
+                throw new IOException("Invalid resolution " + ordinal);
+            }
+            Segment segment = new Segment(path, Resolution.values()[ordinal], buffer.getLong(12),
+                                          channel, HEADER_SIZE);
+            segment.mapped = buffer;
+
+            int position = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (position + 4 <= fileSize) {
+                int length = buffer.getInt(position);
+                int start = position + 4;
+                if (length < RECORD_OVERHEAD || length > fileSize - start) {
+                    break;
+                }
+                ByteBuffer record = buffer.duplicate();
+                record.limit(start + length - 4).position(start);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != buffer.getInt(start + length - 4)) {
+                    break;
+                }
+
+                int keyLength = buffer.getShort(start) & 0xffff;
+                byte[] key = new byte[keyLength];
+                record.position(start + 2);
+                record.get(key);
+                int header = start + 2 + keyLength;
+                long firstTime = buffer.getLong(header);
+                long lastTime = buffer.getLong(header + 8);
+                int count = buffer.getInt(header + 16);
+                visitor.accept(new String(key, StandardCharsets.UTF_8),
+                               new ChunkRef(segment, header + 24, firstTime, lastTime, count));
+                position = start + length;
+            }
+
+            if (position < fileSize) {
+                LOGGER.warn("Truncating damaged segment {} from {} to {} bytes.", path, fileSize, position);
+                channel.truncate(position);
+                segment.mapped = null;
+            }
+            segment.size = position;
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path getPath()
+    {
+        return path;
+    }
+
+    Resolution getResolution()
+    {
+        return resolution;
+    }
+
+    long getSpanStart()
+    {
+        return spanStart;
+    }
+
+    long getSpanEnd()
+    {
+        return spanStart + resolution.getSpan();
+    }
+
+    synchronized long getSize()
+    {
+        return size;
+    }
+
+    synchronized ChunkRef append(String key, Chunk chunk) throws IOException
+    {
+        if (channel == null) {
+            channel = FileChannel.open(path, READ, WRITE);
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] data = chunk.toByteArray();
+        int length = RECORD_OVERHEAD + keyBytes.length + data.length;
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        record.putLong(chunk.getFirstTime());
+        record.putLong(chunk.getLastTime());
+        record.putInt(chunk.getCount());
+        record.putInt(chunk.getBitLength());
+        record.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        writeFully(channel, record, size);
+        int offset = size + 4 + 2 + keyBytes.length + 24;
+        size += 4 + length;
+        isDirty = true;
+        return new ChunkRef(this, offset, chunk.getFirstTime(), chunk.getLastTime(), chunk.getCount());
+    }
+
+    void decode(ChunkRef ref, PointConsumer consumer)
+    {
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = view();
+        }
+        Chunk.decode(buffer, ref.offset, ref.count, consumer);
+    }
+
+    private ByteBuffer view()
+    {
+        if (mapped == null || mapped.capacity() < size) {
+            try {
+                FileChannel channel = (this.channel != null) ? this.channel : FileChannel.open(path, READ);
+                try {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } finally {
+                    if (channel != this.channel) {
+                        channel.close();
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to map " + path + ": " + e.getMessage(), e);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Forces appended chunks to disk.
+     */
+    synchronized void force() throws IOException
+    {
+        if (isDirty && channel != null) {
+            channel.force(false);
+            isDirty = false;
+        }
+    }
+
+    /**
+     * Forces appended chunks to disk and releases the channel used for
+     * appending. The segment remains readable and is reopened if more chunks
+     * are appended.
+     */
+    synchronized void finish() throws IOException
+    {
+        if (channel != null) {
+            force();
+            view();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    synchronized void delete() throws IOException
+    {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        mapped = null;
+        Files.deleteIfExists(path);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package org.dcache.services.history.timeseries;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Append-only store of numeric timeseries.
+ * <p>
+ * Points are kept in compressed chunks (see {@link Chunk}), typically taking
+ * one to two bytes per point for slowly changing series, compared to the
+ * hundreds of bytes needed to repeatedly rewrite the same data as JSON.
+ * Each series has an open chunk per resolution to which points are appended.
+ * Once full or once the span of its segment has passed, the chunk is sealed
+ * and appended to the segment file of that span. Sealed chunks are never
+ * modified.
+ * <p>
+ * Besides the raw points, an hourly and a daily rollup are maintained, each
+ * with its own retention. Expired data is removed by deleting whole segment
+ * files.
+ * <p>
+ * Open chunks and incomplete rollups are periodically checkpointed to a
+ * head file, which is replaced atomically. After a crash, at most the points
+ * appended since the last checkpoint are lost.
+ * <p>
+ * Timestamps are in milliseconds since the epoch at the interface of the
+ * store, but are stored with a resolution of seconds.
+ */
+public class TimeseriesStore
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimeseriesStore.class);
+
+    private static final int HEAD_MAGIC = 0x64545348;
+    private static final int HEAD_VERSION = 1;
+    private static final String HEAD = "head";
+    private static final String HEAD_TMP = "head.tmp";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    static final int MAX_CHUNK_POINTS = 4096;
+
+    private static class Accumulator
+    {
+        long step;
+        double sum;
+        int count;
+
+        Accumulator(long step)
+        {
+            this.step = step;
+        }
+    }
+
+    private final Map<Resolution, Map<String, List<ChunkRef>>> index = new EnumMap<>(Resolution.class);
+    private final Map<Resolution, Map<String, Chunk>> open = new EnumMap<>(Resolution.class);
+    private final Map<Resolution, Map<String, Accumulator>> rollups = new EnumMap<>(Resolution.class);
+    private final Map<Resolution, NavigableMap<Long, Segment>> segments = new EnumMap<>(Resolution.class);
+
+    private Path directory;
+    private long rawRetention = 31;
+    private long hourlyRetention = 400;
+    private long dailyRetention = 3650;
+    private TimeUnit retentionUnit = TimeUnit.DAYS;
+    private long checkpointInterval = 10;
+    private TimeUnit checkpointIntervalUnit = TimeUnit.MINUTES;
+
+    private long lastCheckpoint;
+
+    public TimeseriesStore()
+    {
+        for (Resolution resolution : Resolution.values()) {
+            index.put(resolution, new HashMap<>());
+            open.put(resolution, new HashMap<>());
+            segments.put(resolution, new TreeMap<>());
+            if (resolution.isRollup()) {
+                rollups.put(resolution, new HashMap<>());
+            }
+        }
+    }
+
+    @Required
+    public void setDirectory(File directory)
+    {
+        this.directory = directory.toPath();
+    }
+
+    public void setRawRetention(long rawRetention)
+    {
+        this.rawRetention = rawRetention;
+    }
+
+    public void setHourlyRetention(long hourlyRetention)
+    {
+        this.hourlyRetention = hourlyRetention;
+    }
+
+    public void setDailyRetention(long dailyRetention)
+    {
+        this.dailyRetention = dailyRetention;
+    }
+
+    public void setRetentionUnit(TimeUnit retentionUnit)
+    {
+        this.retentionUnit = retentionUnit;
+    }
+
+    public void setCheckpointInterval(long checkpointInterval)
+    {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public void setCheckpointIntervalUnit(TimeUnit checkpointIntervalUnit)
+    {
+        this.checkpointIntervalUnit = checkpointIntervalUnit;
+    }
+
+    private long getRetention(Resolution resolution)
+    {
+        switch (resolution) {
+        case RAW:
+            return retentionUnit.toSeconds(rawRetention);
+        case HOURLY:
+            return retentionUnit.toSeconds(hourlyRetention);
+        default:
+            return retentionUnit.toSeconds(dailyRetention);
+        }
+    }
+
+    /**
+     * Loads the index of sealed chunks from the segment files and the open
+     * chunks from the last checkpoint.
+     */
+    public synchronized void init() throws IOException
+    {
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                try {
+                    Segment segment = Segment.open(path, (key, ref) -> refs(ref.segment.getResolution(), key).add(ref));
+                    segments.get(segment.getResolution()).put(segment.getSpanStart(), segment);
+                } catch (IOException e) {
+                    LOGGER.error("Failed to open timeseries segment {}: {}", path, e.getMessage());
+                }
+            }
+        }
+        for (Map<String, List<ChunkRef>> series : index.values()) {
+            for (List<ChunkRef> refs : series.values()) {
+                refs.sort(Comparator.comparingLong(ref -> ref.firstTime));
+            }
+        }
+
+        try {
+            readHead(directory.resolve(HEAD));
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            LOGGER.error("Failed to read timeseries checkpoint, recent points are lost: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Checkpoints open chunks and releases all segments.
+     */
+    public synchronized void shutdown()
+    {
+        try {
+            checkpoint();
+            for (NavigableMap<Long, Segment> map : segments.values()) {
+                for (Segment segment : map.values()) {
+                    segment.finish();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to checkpoint timeseries: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a point to a series. Points not later than the last point of
+     * the series are ignored.
+     *
+     * @param key identifies the series
+     * @param timestamp milliseconds since the epoch
+     * @param value the value at that time
+     */
+    public synchronized void append(String key, long timestamp, double value) throws IOException
+    {
+        long time = TimeUnit.MILLISECONDS.toSeconds(timestamp);
+        if (!append(Resolution.RAW, key, time, value)) {
+            return;
+        }
+
+        for (Map.Entry<Resolution, Map<String, Accumulator>> e : rollups.entrySet()) {
+            Resolution resolution = e.getKey();
+            long step = resolution.stepStart(time);
+            Accumulator accumulator = e.getValue().get(key);
+            if (accumulator == null) {
+                accumulator = new Accumulator(step);
+                e.getValue().put(key, accumulator);
+            } else if (accumulator.step != step) {
+                append(resolution, key, accumulator.step, accumulator.sum / accumulator.count);
+                accumulator.step = step;
+                accumulator.sum = 0;
+                accumulator.count = 0;
+            }
+            accumulator.sum += value;
+            accumulator.count++;
+        }
+    }
+
+    private boolean append(Resolution resolution, String key, long time, double value) throws IOException
+    {
+        Map<String, Chunk> chunks = open.get(resolution);
+        Chunk chunk = chunks.get(key);
+        if (chunk != null) {
+            if (time <= chunk.getLastTime()) {
+                return false;
+            }
+            if (chunk.getCount() >= MAX_CHUNK_POINTS ||
+                    resolution.spanStart(chunk.getFirstTime()) != resolution.spanStart(time)) {
+                seal(resolution, key, chunk);
+                chunk = null;
+            }
+        } else {
+            List<ChunkRef> refs = index.get(resolution).get(key);
+            if (refs != null && !refs.isEmpty() && time <= refs.get(refs.size() - 1).lastTime) {
+                return false;
+            }
+        }
+        if (chunk == null) {
+            chunk = new Chunk();
+            chunks.put(key, chunk);
+        }
+        return chunk.append(time, value);
+    }
+
+    private void seal(Resolution resolution, String key, Chunk chunk) throws IOException
+    {
+        long spanStart = resolution.spanStart(chunk.getFirstTime());
+        NavigableMap<Long, Segment> map = segments.get(resolution);
+        Segment segment = map.get(spanStart);
+        if (segment == null) {
+            segment = Segment.create(directory, resolution, spanStart);
+            map.put(spanStart, segment);
+        }
+        refs(resolution, key).add(segment.append(key, chunk));
+        open.get(resolution).remove(key, chunk);
+    }
+
+    private List<ChunkRef> refs(Resolution resolution, String key)
+    {
+        return index.get(resolution).computeIfAbsent(key, k -> new ArrayList<>());
+    }
+
+    /**
+     * Completes rollups and seals chunks whose time has passed, forces
+     * appended chunks to disk, removes expired segments and checkpoints
+     * open chunks if the checkpoint interval has passed.
+     *
+     * @param now the current time in milliseconds since the epoch
+     */
+    public synchronized void flush(long now) throws IOException
+    {
+        long time = TimeUnit.MILLISECONDS.toSeconds(now);
+
+        for (Map.Entry<Resolution, Map<String, Accumulator>> e : rollups.entrySet()) {
+            Resolution resolution = e.getKey();
+            Iterator<Map.Entry<String, Accumulator>> iterator = e.getValue().entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Accumulator> entry = iterator.next();
+                Accumulator accumulator = entry.getValue();
+                if (accumulator.step + resolution.getStep() <= time) {
+                    append(resolution, entry.getKey(), accumulator.step, accumulator.sum / accumulator.count);
+                    iterator.remove();
+                }
+            }
+        }
+
+        for (Resolution resolution : Resolution.values()) {
+            long spanStart = resolution.spanStart(time);
+            for (Map.Entry<String, Chunk> entry : new ArrayList<>(open.get(resolution).entrySet())) {
+                if (resolution.spanStart(entry.getValue().getFirstTime()) < spanStart) {
+                    seal(resolution, entry.getKey(), entry.getValue());
+                }
+            }
+
+            NavigableMap<Long, Segment> map = segments.get(resolution);
+            for (Segment segment : map.values()) {
+                if (segment.getSpanEnd() <= spanStart) {
+                    segment.finish();
+                } else {
+                    segment.force();
+                }
+            }
+
+            expire(resolution, time - getRetention(resolution));
+        }
+
+        if (lastCheckpoint == 0) {
+            lastCheckpoint = now;
+        } else if (now - lastCheckpoint >= checkpointIntervalUnit.toMillis(checkpointInterval)) {
+            checkpoint();
+            lastCheckpoint = now;
+        }
+    }
+
+    private void expire(Resolution resolution, long cutoff) throws IOException
+    {
+        NavigableMap<Long, Segment> map = segments.get(resolution);
+        while (!map.isEmpty() && map.firstEntry().getValue().getSpanEnd() <= cutoff) {
+            Segment segment = map.pollFirstEntry().getValue();
+            Iterator<List<ChunkRef>> iterator = index.get(resolution).values().iterator();
+            while (iterator.hasNext()) {
+                List<ChunkRef> refs = iterator.next();
+                refs.removeIf(ref -> ref.segment == segment);
+                if (refs.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+            segment.delete();
+            LOGGER.debug("Removed expired timeseries segment {}.", segment.getPath());
+        }
+    }
+
+    /**
+     * Writes open chunks and incomplete rollups to the head file.
+     */
+    private void checkpoint() throws IOException
+    {
+        Path tmp = directory.resolve(HEAD_TMP);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(HEAD_MAGIC);
+            out.writeInt(HEAD_VERSION);
+            for (Resolution resolution : Resolution.values()) {
+                Map<String, Chunk> chunks = open.get(resolution);
+                out.writeInt(chunks.size());
+                for (Map.Entry<String, Chunk> entry : chunks.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+            }
+            for (Map.Entry<Resolution, Map<String, Accumulator>> e : rollups.entrySet()) {
+                out.writeInt(e.getValue().size());
+                for (Map.Entry<String, Accumulator> entry : e.getValue().entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().step);
+                    out.writeDouble(entry.getValue().sum);
+                    out.writeInt(entry.getValue().count);
+                }
+            }
+        }
+        Files.move(tmp, directory.resolve(HEAD), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private void readHead(Path path) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != HEAD_MAGIC || in.readInt() != HEAD_VERSION) {
+                throw new IOException("Not a timeseries checkpoint");
+            }
+            for (Resolution resolution : Resolution.values()) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    Chunk chunk = Chunk.readFrom(in);
+                    /* The chunk may have been sealed after the checkpoint was written. */
+                    List<ChunkRef> refs = index.get(resolution).get(key);
+                    if (refs == null || refs.isEmpty() ||
+                            refs.get(refs.size() - 1).lastTime < chunk.getFirstTime()) {
+                        open.get(resolution).put(key, chunk);
+                    }
+                }
+            }
+            for (Map.Entry<Resolution, Map<String, Accumulator>> e : rollups.entrySet()) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    Accumulator accumulator = new Accumulator(in.readLong());
+                    accumulator.sum = in.readDouble();
+                    accumulator.count = in.readInt();
+                    e.getValue().put(key, accumulator);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the points of a series within a time interval.
+     *
+     * @param key identifies the series
+     * @param resolution the resolution to read
+     * @param from start of the interval in milliseconds since the epoch, inclusive
+     * @param to end of the interval in milliseconds since the epoch, inclusive
+     * @param consumer receives the points with timestamps in milliseconds
+     */
+    public synchronized void read(String key, Resolution resolution, long from, long to, PointConsumer consumer)
+    {
+        readSeconds(key, resolution, TimeUnit.MILLISECONDS.toSeconds(from), TimeUnit.MILLISECONDS.toSeconds(to),
+                    (t, v) -> consumer.accept(TimeUnit.SECONDS.toMillis(t), v));
+    }
+
+    /**
+     * Reads the points of a series within a time interval at the finest
+     * resolution available. Where raw points have expired, rollup points
+     * are returned instead.
+     *
+     * @see #read
+     */
+    public synchronized void readMerged(String key, long from, long to, PointConsumer consumer)
+    {
+        long start = TimeUnit.MILLISECONDS.toSeconds(from);
+        long end = TimeUnit.MILLISECONDS.toSeconds(to);
+        PointConsumer converter = (t, v) -> consumer.accept(TimeUnit.SECONDS.toMillis(t), v);
+
+        /* Each resolution covers the interval up to the first point of the next finer one. */
+        long[] upper = new long[Resolution.values().length];
+        long limit = end;
+        for (Resolution resolution : Resolution.values()) {
+            upper[resolution.ordinal()] = limit;
+            long first = getFirstTime(key, resolution);
+            if (first >= 0) {
+                limit = Math.min(limit, first - 1);
+            }
+        }
+        for (int i = upper.length - 1; i >= 0; i--) {
+            readSeconds(key, Resolution.values()[i], start, upper[i], converter);
+        }
+    }
+
+    private void readSeconds(String key, Resolution resolution, long from, long to, PointConsumer consumer)
+    {
+        if (from > to) {
+            return;
+        }
+        PointConsumer filter = (t, v) -> {
+            if (t >= from && t <= to) {
+                consumer.accept(t, v);
+            }
+        };
+        List<ChunkRef> refs = index.get(resolution).get(key);
+        if (refs != null) {
+            for (ChunkRef ref : refs) {
+                if (ref.lastTime >= from && ref.firstTime <= to) {
+                    ref.forEach(filter);
+                }
+            }
+        }
+        Chunk chunk = open.get(resolution).get(key);
+        if (chunk != null && chunk.getLastTime() >= from && chunk.getFirstTime() <= to) {
+            chunk.forEach(filter);
+        }
+    }
+
+    private long getFirstTime(String key, Resolution resolution)
+    {
+        List<ChunkRef> refs = index.get(resolution).get(key);
+        if (refs != null && !refs.isEmpty()) {
+            return refs.get(0).firstTime;
+        }
+        Chunk chunk = open.get(resolution).get(key);
+        return (chunk != null) ? chunk.getFirstTime() : -1;
+    }
+
+    public synchronized void getInfo(PrintWriter pw)
+    {
+        pw.printf("%-10s %8s %8s %12s %12s %8s%n", "Resolution", "Series", "Segments", "Bytes", "Points", "B/Point");
+        for (Resolution resolution : Resolution.values()) {
+            Map<String, List<ChunkRef>> series = index.get(resolution);
+            long bytes = segments.get(resolution).values().stream().mapToLong(Segment::getSize).sum();
+            long points = series.values().stream().flatMap(List::stream).mapToLong(ref -> ref.count).sum();
+            long keys = series.size() + open.get(resolution).keySet().stream().filter(k -> !series.containsKey(k)).count();
+            for (Chunk chunk : open.get(resolution).values()) {
+                bytes += (chunk.getBitLength() + 7) / 8;
+                points += chunk.getCount();
+            }
+            pw.printf("%-10s %8d %8d %12d %12d %8.2f%n", resolution, keys, segments.get(resolution).size(),
+                      bytes, points, (points == 0) ? 0.0 : (double) bytes / points);
+        }
+    }
+}
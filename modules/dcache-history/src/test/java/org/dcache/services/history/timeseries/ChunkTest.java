@@ -0,0 +1,122 @@
+package org.dcache.services.history.timeseries;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkTest
+{
+    private static void assertPoints(long[] times, double[] values, Chunk chunk)
+    {
+        List<Long> actualTimes = new ArrayList<>();
+        List<Long> actualValues = new ArrayList<>();
+        chunk.forEach((t, v) -> {
+            actualTimes.add(t);
+            actualValues.add(Double.doubleToRawLongBits(v));
+        });
+        assertEquals(times.length, actualTimes.size());
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], (long) actualTimes.get(i));
+            assertEquals(Double.doubleToRawLongBits(values[i]), (long) actualValues.get(i));
+        }
+    }
+
+    @Test
+    public void shouldRoundTripRandomPoints()
+    {
+        Random random = new Random(7);
+        long[] times = new long[2000];
+        double[] values = new double[times.length];
+        long time = 1_500_000_000;
+        for (int i = 0; i < times.length; i++) {
+            time += (random.nextInt(10) == 0) ? 1 + random.nextInt(100_000) : 120;
+            times[i] = time;
+            switch (random.nextInt(4)) {
+            case 0:
+                values[i] = random.nextGaussian() * 1e6;
+                break;
+            case 1:
+                values[i] = random.nextInt(50);
+                break;
+            default:
+                values[i] = (i > 0) ? values[i - 1] : 0;
+                break;
+            }
+        }
+
+        Chunk chunk = new Chunk();
+        for (int i = 0; i < times.length; i++) {
+            assertTrue(chunk.append(times[i], values[i]));
+        }
+
+        assertEquals(times.length, chunk.getCount());
+        assertEquals(times[0], chunk.getFirstTime());
+        assertEquals(times[times.length - 1], chunk.getLastTime());
+        assertPoints(times, values, chunk);
+    }
+
+    @Test
+    public void shouldRoundTripSpecialValues()
+    {
+        long[] times = { 0, 1, 2, 3, 4, 5, 6, Long.MAX_VALUE / 2 };
+        double[] values = { Double.NaN, Double.POSITIVE_INFINITY, -0.0, 0.0, Double.MIN_VALUE,
+                            Double.MAX_VALUE, Double.NEGATIVE_INFINITY, 1.0 };
+
+        Chunk chunk = new Chunk();
+        for (int i = 0; i < times.length; i++) {
+            chunk.append(times[i], values[i]);
+        }
+
+        assertPoints(times, values, chunk);
+    }
+
+    @Test
+    public void shouldRejectPointsOutOfOrder()
+    {
+        Chunk chunk = new Chunk();
+        assertTrue(chunk.append(100, 1));
+        assertFalse(chunk.append(100, 2));
+        assertFalse(chunk.append(99, 3));
+
+        assertPoints(new long[] { 100 }, new double[] { 1 }, chunk);
+    }
+
+    @Test
+    public void shouldCompressRegularSeries()
+    {
+        Chunk chunk = new Chunk();
+        for (int i = 0; i < 720; i++) {
+            chunk.append(1_500_000_000 + i * 120, (i / 30) % 4);
+        }
+
+        assertTrue(chunk.toByteArray().length < 720 / 2);
+    }
+
+    @Test
+    public void shouldContinueAfterRestore() throws Exception
+    {
+        Chunk chunk = new Chunk();
+        chunk.append(1000, 1.5);
+        chunk.append(1120, 2.5);
+        chunk.append(1240, 2.5);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        chunk.writeTo(new DataOutputStream(bytes));
+        Chunk restored = Chunk.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        restored.append(1360, 3.5);
+        restored.append(1500, 3.75);
+
+        assertPoints(new long[] { 1000, 1120, 1240, 1360, 1500 },
+                     new double[] { 1.5, 2.5, 2.5, 3.5, 3.75 }, restored);
+    }
+}
@@ -0,0 +1,215 @@
+package org.dcache.services.history.timeseries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeseriesStoreTest
+{
+    private static final long START = TimeUnit.DAYS.toMillis(17_000);
+    private static final long STEP = TimeUnit.MINUTES.toMillis(2);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private TimeseriesStore store;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = folder.newFolder();
+        store = newStore();
+    }
+
+    @After
+    public void tearDown()
+    {
+        store.shutdown();
+    }
+
+    private TimeseriesStore newStore() throws IOException
+    {
+        TimeseriesStore store = new TimeseriesStore();
+        store.setDirectory(directory);
+        store.setRawRetention(3);
+        store.setHourlyRetention(60);
+        store.setDailyRetention(3650);
+        store.setRetentionUnit(TimeUnit.DAYS);
+        store.setCheckpointInterval(1);
+        store.setCheckpointIntervalUnit(TimeUnit.HOURS);
+        store.init();
+        return store;
+    }
+
+    private static List<Double> values(List<long[]> points)
+    {
+        List<Double> values = new ArrayList<>();
+        for (long[] point : points) {
+            values.add(Double.longBitsToDouble(point[1]));
+        }
+        return values;
+    }
+
+    private List<long[]> read(String key, Resolution resolution, long from, long to)
+    {
+        List<long[]> points = new ArrayList<>();
+        store.read(key, resolution, from, to, (t, v) -> points.add(new long[] { t, Double.doubleToLongBits(v) }));
+        return points;
+    }
+
+    private void appendSeries(String key, long from, int count) throws IOException
+    {
+        for (int i = 0; i < count; i++) {
+            long time = from + i * STEP;
+            store.append(key, time, i % 10);
+            store.flush(time);
+        }
+    }
+
+    @Test
+    public void shouldReadAppendedPoints() throws Exception
+    {
+        store.append("pool1/ACTIVE_MOVERS", START, 1);
+        store.append("pool1/ACTIVE_MOVERS", START + STEP, 2);
+        store.append("pool1/ACTIVE_MOVERS", START + STEP, 3);
+        store.append("pool2/ACTIVE_MOVERS", START + STEP, 4);
+
+        List<long[]> points = read("pool1/ACTIVE_MOVERS", Resolution.RAW, START, START + STEP);
+
+        assertEquals(2, points.size());
+        assertEquals(START, points.get(0)[0]);
+        assertEquals(START + STEP, points.get(1)[0]);
+        assertEquals(List.of(1.0, 2.0), values(points));
+    }
+
+    @Test
+    public void shouldRestrictReadsToInterval() throws Exception
+    {
+        appendSeries("pool", START, 100);
+
+        List<long[]> points = read("pool", Resolution.RAW, START + 10 * STEP, START + 19 * STEP);
+
+        assertEquals(10, points.size());
+        assertEquals(START + 10 * STEP, points.get(0)[0]);
+    }
+
+    @Test
+    public void shouldRetainPointsAcrossRestart() throws Exception
+    {
+        int count = (int) (TimeUnit.DAYS.toMillis(2) / STEP);
+        appendSeries("pool", START, count);
+        store.shutdown();
+
+        store = newStore();
+
+        assertEquals(count, read("pool", Resolution.RAW, START, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void shouldRetainSealedChunksWithoutCheckpoint() throws Exception
+    {
+        int count = (int) (TimeUnit.DAYS.toMillis(1) / STEP);
+        appendSeries("pool", START, count + 5);
+
+        /* Simulates a crash: the store is not shut down. */
+        TimeseriesStore other = newStore();
+        List<long[]> points = new ArrayList<>();
+        other.read("pool", Resolution.RAW, START, Long.MAX_VALUE, (t, v) -> points.add(new long[] { t }));
+        other.shutdown();
+
+        assertTrue(points.size() >= count);
+    }
+
+    @Test
+    public void shouldRollUpToHourlyAverages() throws Exception
+    {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < 60; i++) {
+            store.append("pool", START + i * TimeUnit.MINUTES.toMillis(1), i);
+        }
+        store.append("pool", START + hour, 100);
+
+        List<long[]> points = read("pool", Resolution.HOURLY, START, START + 2 * hour);
+
+        assertEquals(1, points.size());
+        assertEquals(START, points.get(0)[0]);
+        assertEquals(List.of(29.5), values(points));
+    }
+
+    @Test
+    public void shouldCompleteRollupOnFlush() throws Exception
+    {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        store.append("pool", START, 4);
+        store.append("pool", START + 1000, 6);
+
+        store.flush(START + hour);
+
+        assertEquals(List.of(5.0), values(read("pool", Resolution.HOURLY, START, START + hour)));
+    }
+
+    @Test
+    public void shouldDeleteExpiredSegments() throws Exception
+    {
+        int count = (int) (TimeUnit.DAYS.toMillis(6) / STEP);
+        appendSeries("pool", START, count);
+
+        List<long[]> raw = read("pool", Resolution.RAW, START, Long.MAX_VALUE);
+        File[] rawSegments = directory.listFiles((dir, name) -> name.startsWith("raw-"));
+
+        assertTrue(raw.get(0)[0] >= START + TimeUnit.DAYS.toMillis(2));
+        assertTrue(rawSegments.length <= 4);
+        assertFalse(read("pool", Resolution.HOURLY, START, START).isEmpty());
+    }
+
+    @Test
+    public void shouldFallBackToRollupsWhereRawPointsExpired() throws Exception
+    {
+        int count = (int) (TimeUnit.DAYS.toMillis(6) / STEP);
+        appendSeries("pool", START, count);
+
+        List<Long> times = new ArrayList<>();
+        store.readMerged("pool", START, Long.MAX_VALUE, (t, v) -> times.add(t));
+
+        assertEquals(START, (long) times.get(0));
+        assertEquals(START + (count - 1) * STEP, (long) times.get(times.size() - 1));
+        for (int i = 1; i < times.size(); i++) {
+            assertTrue(times.get(i) > times.get(i - 1));
+        }
+    }
+
+    @Test
+    public void shouldTruncateTornSegment() throws Exception
+    {
+        int count = (int) (TimeUnit.DAYS.toMillis(1) / STEP);
+        appendSeries("pool", START, count + 5);
+        store.shutdown();
+
+        File segment = directory.listFiles((dir, name) -> name.startsWith("raw-"))[0];
+        long length = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(length + 10);
+            file.seek(length);
+            file.writeInt(1000);
+        }
+
+        store = newStore();
+
+        assertEquals(length, segment.length());
+        assertEquals(count + 5, read("pool", Resolution.RAW, START, Long.MAX_VALUE).size());
+    }
+}
@@ -22,6 +22,7 @@ import org.dcache.services.info.base.StatePath;
 import org.dcache.services.info.conduits.Conduit;
 import org.dcache.services.info.gathers.DataGatheringScheduler;
 import org.dcache.services.info.gathers.MessageHandlerChain;
+import org.dcache.services.info.serialisation.CachingSerialiser;
 import org.dcache.services.info.serialisation.SimpleTextSerialiser;
 import org.dcache.services.info.serialisation.StateSerialiser;
 import org.dcache.util.Args;
@@ -72,6 +73,13 @@ public class InfoProvider  implements CellCommandListener, CellInfoProvider,
         pw.print(_availableSerialisers.size());
         pw.println(" available serialisers.");
 
+        for (StateSerialiser serialiser : _availableSerialisers.values()) {
+            if (serialiser instanceof CachingSerialiser) {
+                pw.print("    ");
+                pw.println(serialiser);
+            }
+        }
+
         _state.getInfo(pw);
     }
 
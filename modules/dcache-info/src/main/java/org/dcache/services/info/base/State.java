@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -64,6 +65,13 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
     private final Lock _stateReadLock = _stateRWLock.readLock();
     private final Lock _stateWriteLock = _stateRWLock.writeLock();
 
+    /**
+     * The generation of the state tree.  This is incremented each time a
+     * StateTransition is applied, allowing clients to cache information
+     * derived from the state for as long as the generation is unchanged.
+     */
+    private final AtomicLong _generation = new AtomicLong();
+
     // TODO: remove this completely. It's only needed to support derived
     // metrics
     private StateUpdateManager _updateManager;
@@ -112,6 +120,20 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
         return earliestExpiryDate;
     }
 
+    /**
+     * Discover the current generation of dCache state.  Two calls that
+     * return the same value bracket a period during which the state was not
+     * modified, so any information derived from the state during that period
+     * is still valid.
+     *
+     * @return the current generation number.
+     */
+    @Override
+    public long getGeneration()
+    {
+        return _generation.get();
+    }
+
     /**
      * Update the current dCache state by applying, at most, a single
      * StateUpdate from a Stack of pending updates. If no updates are needed,
@@ -197,6 +219,7 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
 
             _state.applyTransition(null, transition);
 
+            _generation.incrementAndGet();
         } finally {
             _stateWriteLock.unlock();
         }
@@ -502,5 +525,8 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
 
         pw.print(_updateManager.countPendingUpdates());
         pw.println(" pending updates to state.");
+
+        pw.print("Current state generation: ");
+        pw.println(_generation.get());
     }
 }
@@ -19,4 +19,15 @@ public interface StateExhibitor
      * Query the state of dCache.
      */
     void visitState(StateVisitor visitor);
+
+    /**
+     * Provide the generation of the exhibited state.  The generation changes
+     * whenever the state is modified, so information derived from the state
+     * may be reused while the generation is unchanged.  A negative value
+     * indicates that the exhibitor does not track modifications.
+     */
+    default long getGeneration()
+    {
+        return -1;
+    }
 }
@@ -0,0 +1,149 @@
+package org.dcache.services.info.serialisation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dcache.services.info.base.StateExhibitor;
+import org.dcache.services.info.base.StatePath;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A StateSerialiser that wraps some other serialiser, caching the serialised
+ * output.  Cached output is keyed by the subtree path and the generation of
+ * dCache state, so a cached entry is used only as long as the state has not
+ * been modified.  This allows monitoring tools that poll frequently to be
+ * served without walking the complete state tree for each request.
+ * <p>
+ * If the StateExhibitor does not track modifications then no output is
+ * cached.
+ * <p>
+ * Unlike the wrapped serialiser, instances of this class are thread-safe.
+ */
+public class CachingSerialiser implements StateSerialiser
+{
+    private static final int DEFAULT_MAXIMUM_SIZE = 64;
+
+    private final StateSerialiser _inner;
+    private final StateExhibitor _exhibitor;
+    private final Cache<Key,String> _cache;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    /**
+     * The cache key: a subtree path (null for the complete tree) and the
+     * generation of the state from which the output was created.
+     */
+    private static class Key
+    {
+        private final StatePath _path;
+        private final long _generation;
+
+        Key(StatePath path, long generation)
+        {
+            _path = path;
+            _generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (other == this) {
+                return true;
+            }
+
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Key otherKey = (Key) other;
+            return _generation == otherKey._generation
+                    && Objects.equals(_path, otherKey._path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(_path) ^ Long.hashCode(_generation);
+        }
+    }
+
+    public CachingSerialiser(StateSerialiser inner, StateExhibitor exhibitor)
+    {
+        this(inner, exhibitor, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public CachingSerialiser(StateSerialiser inner, StateExhibitor exhibitor,
+            int maximumSize)
+    {
+        _inner = requireNonNull(inner);
+        _exhibitor = requireNonNull(exhibitor);
+        _cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    @Override
+    public String getName()
+    {
+        return _inner.getName();
+    }
+
+    @Override
+    public String serialise()
+    {
+        return serialise(null);
+    }
+
+    @Override
+    public String serialise(StatePath start)
+    {
+        /*
+         * The generation is taken before serialising, so a concurrent update
+         * can only result in newer data being cached against an older
+         * generation, never the reverse.
+         */
+        long generation = _exhibitor.getGeneration();
+        if (generation < 0) {
+            _misses.increment();
+            return serialiseUncached(start);
+        }
+
+        Key key = new Key(start, generation);
+        String result = _cache.getIfPresent(key);
+        if (result != null) {
+            _hits.increment();
+            return result;
+        }
+
+        _misses.increment();
+        result = serialiseUncached(start);
+        _cache.put(key, result);
+        return result;
+    }
+
+    private String serialiseUncached(StatePath start)
+    {
+        synchronized (_inner) {
+            return start == null ? _inner.serialise() : _inner.serialise(start);
+        }
+    }
+
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return _inner.getName() + " (cached: " + getHits() + " hits, "
+                + getMisses() + " misses)";
+    }
+}
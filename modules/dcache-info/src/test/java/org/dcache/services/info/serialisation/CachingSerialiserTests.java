@@ -0,0 +1,111 @@
+package org.dcache.services.info.serialisation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.dcache.services.info.base.StateExhibitor;
+import org.dcache.services.info.base.StatePath;
+import org.dcache.services.info.base.StateVisitor;
+
+import static org.junit.Assert.assertEquals;
+
+public class CachingSerialiserTests {
+
+    /** A serialiser that records how often it was called */
+    private static class CountingSerialiser implements StateSerialiser {
+        int count;
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public String serialise() {
+            count++;
+            return "all-" + count;
+        }
+
+        @Override
+        public String serialise(StatePath start) {
+            count++;
+            return start + "-" + count;
+        }
+    }
+
+    /** An exhibitor with a generation under the control of the test */
+    private static class GenerationExhibitor implements StateExhibitor {
+        long generation;
+
+        @Override
+        public void visitState(StateVisitor visitor) {
+        }
+
+        @Override
+        public long getGeneration() {
+            return generation;
+        }
+    }
+
+    CountingSerialiser _inner;
+    GenerationExhibitor _exhibitor;
+    CachingSerialiser _serialiser;
+
+    @Before
+    public void setUp() {
+        _inner = new CountingSerialiser();
+        _exhibitor = new GenerationExhibitor();
+        _serialiser = new CachingSerialiser(_inner, _exhibitor);
+    }
+
+    @Test
+    public void shouldHaveSameNameAsWrappedSerialiser() {
+        assertEquals("counting", _serialiser.getName());
+    }
+
+    @Test
+    public void shouldReuseOutputForSameGeneration() {
+        String first = _serialiser.serialise();
+        String second = _serialiser.serialise();
+
+        assertEquals(first, second);
+        assertEquals(1, _inner.count);
+        assertEquals(1, _serialiser.getHits());
+        assertEquals(1, _serialiser.getMisses());
+    }
+
+    @Test
+    public void shouldSerialiseAgainAfterGenerationChange() {
+        _serialiser.serialise();
+        _exhibitor.generation++;
+        String output = _serialiser.serialise();
+
+        assertEquals("all-2", output);
+        assertEquals(2, _inner.count);
+    }
+
+    @Test
+    public void shouldCacheSubtreesIndependently() {
+        StatePath pools = StatePath.parsePath("pools");
+        StatePath domains = StatePath.parsePath("domains");
+
+        _serialiser.serialise(pools);
+        _serialiser.serialise(domains);
+        _serialiser.serialise(StatePath.parsePath("pools"));
+        _serialiser.serialise();
+
+        assertEquals(3, _inner.count);
+        assertEquals(1, _serialiser.getHits());
+    }
+
+    @Test
+    public void shouldNotCacheWhenGenerationIsNotTracked() {
+        _exhibitor.generation = -1;
+
+        _serialiser.serialise();
+        _serialiser.serialise();
+
+        assertEquals(2, _inner.count);
+        assertEquals(0, _serialiser.getHits());
+    }
+}
@@ -43,6 +43,7 @@ import java.util.stream.Collectors;
 import org.dcache.acl.ACE;
 import org.dcache.acl.enums.AceFlags;
 import org.dcache.acl.enums.AceType;
+import org.dcache.acl.enums.RsType;
 import org.dcache.acl.enums.Who;
 import org.dcache.chimera.ChimeraFsException;
 import org.dcache.chimera.DirNotEmptyChimeraFsException;
@@ -378,8 +379,8 @@ public class ChimeraVfs implements VirtualFileSystem, AclCheckable {
         FsInode fsInode = toFsInode(inode);
         try {
             nfsace4[] aces;
-            List<ACE> dacl = _fs.getACL(fsInode);
             org.dcache.chimera.posix.Stat stat = fsInode.statCache();
+            List<ACE> dacl = _fs.getACL(fsInode, rsTypeOf(stat)).getList();
 
             nfsace4[] unixAcl = Acls.of(stat.getMode(), fsInode.isDirectory());
             aces = new nfsace4[dacl.size() + unixAcl.length];
@@ -613,11 +614,15 @@ public class ChimeraVfs implements VirtualFileSystem, AclCheckable {
     @Override
     public Access checkAcl(Subject subject, Inode inode, int access) throws IOException {
         FsInode fsInode = toFsInode(inode);
-        List<ACE> acl = _fs.getACL(fsInode);
         org.dcache.chimera.posix.Stat stat = _fs.stat(fsInode);
+        List<ACE> acl = _fs.getACL(fsInode, rsTypeOf(stat)).getList();
         return checkAcl(subject, acl, stat.getUid(), stat.getGid(), access);
     }
 
+    private static RsType rsTypeOf(org.dcache.chimera.posix.Stat stat) {
+        return ((stat.getMode() & UnixPermission.F_TYPE) == UnixPermission.S_IFDIR) ? RsType.DIR : RsType.FILE;
+    }
+
 
     @Override
     public byte[] getXattr(Inode inode, String attr) throws IOException {
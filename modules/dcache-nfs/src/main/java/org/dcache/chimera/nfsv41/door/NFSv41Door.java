@@ -287,6 +287,8 @@ public class NFSv41Door extends AbstractCellComponent implements
     private LoginBrokerPublisher _loginBrokerPublisher;
 
     private ProxyIoFactory _proxyIoFactory;
+    private boolean _proxyIoSharedSessions = true;
+    private int _proxyIoMaxSlots = NfsProxyIoFactory.DEFAULT_MAX_SLOTS;
 
     private Consumer<DoorRequestInfoMessage> _kafkaSender = (s) -> {};
 
@@ -413,6 +415,21 @@ public class NFSv41Door extends AbstractCellComponent implements
         _clientStore = clientStore;
     }
 
+    /**
+     * Whether proxied files on the same pool share a single NFSv4.1 session.
+     */
+    public void setProxyIoSharedSessions(boolean sharedSessions) {
+        _proxyIoSharedSessions = sharedSessions;
+    }
+
+    /**
+     * The number of concurrent requests to request for a shared proxy-io
+     * session.
+     */
+    public void setProxyIoMaxSlots(int maxSlots) {
+        _proxyIoMaxSlots = maxSlots;
+    }
+
     public VirtualFileSystem wrapWithMonitoring(VirtualFileSystem inner) {
         MonitoringVfs monitor = new MonitoringVfs();
         monitor.setInner(inner);
@@ -451,7 +468,7 @@ public class NFSv41Door extends AbstractCellComponent implements
                     break;
                 case V41:
                     final NFSv41DeviceManager _dm = this;
-                    _proxyIoFactory = new NfsProxyIoFactory(_dm);
+                    _proxyIoFactory = new NfsProxyIoFactory(_dm, _proxyIoSharedSessions, _proxyIoMaxSlots);
                     _executor = new StatsDecoratedOperationExecutor(
                             new DoorOperationFactory(
                             _proxyIoFactory,
@@ -1,15 +1,27 @@
 package org.dcache.chimera.nfsv41.door.proxy;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -57,20 +69,63 @@ public class NfsProxyIoFactory implements ProxyIoFactory {
     private static final TimeUnit TIMEOUT_STEP_UNIT = TimeUnit.MILLISECONDS;
     private static final long TIMEOUT_STEP = 100;
 
+    /**
+     * How often shared sessions are renewed.
+     */
+    private static final long SESSION_RENEW_PERIOD = 60;
+    private static final TimeUnit SESSION_RENEW_PERIOD_UNIT = TimeUnit.SECONDS;
+
+    /**
+     * How long a shared session without proxied files is kept.
+     */
+    private static final long SESSION_IDLE_TIMEOUT = 10;
+    private static final TimeUnit SESSION_IDLE_TIMEOUT_UNIT = TimeUnit.MINUTES;
+
+    public static final int DEFAULT_MAX_SLOTS = 64;
+
     private static final Logger _log = LoggerFactory.getLogger(NfsProxyIoFactory.class);
 
     private final Cache<stateid4, ProxyIoAdapter> _proxyIO
             = CacheBuilder.newBuilder()
             .build();
 
+    /**
+     * Shared sessions by pool address.
+     */
+    private final ConcurrentMap<InetSocketAddress, CompletableFuture<NfsProxySession>> _sessions =
+            new ConcurrentHashMap<>();
+
     private final NFSv41DeviceManager deviceManager;
     private final ExponentialBackoffAlgorithmFactory backoffFactory;
+    private final boolean useSharedSessions;
+    private final int maxSlots;
+    private final ScheduledExecutorService sessionThread;
 
     public NfsProxyIoFactory(NFSv41DeviceManager deviceManager) {
+        this(deviceManager, true, DEFAULT_MAX_SLOTS);
+    }
+
+    /**
+     * @param useSharedSessions whether files on the same pool share a single
+     * NFSv4.1 session rather than each using a session of its own
+     * @param maxSlots the number of slots requested for shared sessions
+     */
+    public NfsProxyIoFactory(NFSv41DeviceManager deviceManager, boolean useSharedSessions, int maxSlots) {
         this.deviceManager = deviceManager;
+        this.useSharedSessions = useSharedSessions;
+        this.maxSlots = maxSlots;
         backoffFactory = new ExponentialBackoffAlgorithmFactory();
         backoffFactory.setMinDelay(TIMEOUT_STEP);
         backoffFactory.setMinUnit(TIMEOUT_STEP_UNIT);
+
+        if (useSharedSessions) {
+            sessionThread = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("proxy-nfs-sessions-%d").build());
+            sessionThread.scheduleWithFixedDelay(this::maintainSessions,
+                    SESSION_RENEW_PERIOD, SESSION_RENEW_PERIOD, SESSION_RENEW_PERIOD_UNIT);
+        } else {
+            sessionThread = null;
+        }
     }
 
 
@@ -153,6 +208,10 @@ retry:  while (true) {
                     InetAddress address = poolSocketAddress.getAddress();
                     if (!isHostLocal(address)) {
                         try {
+                            if (useSharedSessions) {
+                                NfsProxySession session = acquireSession(poolSocketAddress, timeout, TIMEOUT_STEP_UNIT);
+                                return new SharedSessionProxyIo(session, context.getRemoteSocketAddress(), inode, stateid);
+                            }
                             return new NfsProxyIo(poolSocketAddress, context.getRemoteSocketAddress(), inode, stateid, timeout, TIMEOUT_STEP_UNIT);
                         } catch (IOException e) {
                             _log.warn("Failed to connect to remote mover {} : {}", address, e.getMessage());
@@ -183,6 +242,110 @@ retry:  while (true) {
         throw new NfsIoException("can't connect to pool");
     }
 
+    /**
+     * Returns the shared session to a pool, creating a new session if there
+     * is none or the existing session is no longer valid. The session is
+     * acquired on behalf of the caller.
+     * <p>
+     * The session is created outside of any map update, by the first caller
+     * asking for it. Concurrent callers for the same pool wait for the result
+     * of that caller rather than creating sessions of their own.
+     */
+    NfsProxySession acquireSession(InetSocketAddress poolAddress, long timeout, TimeUnit unit)
+            throws IOException {
+        while (true) {
+            CompletableFuture<NfsProxySession> created = new CompletableFuture<>();
+            CompletableFuture<NfsProxySession> future = _sessions.computeIfAbsent(poolAddress, a -> created);
+
+            if (future == created) {
+                try {
+                    NfsProxySession session = createSession(poolAddress, timeout, unit);
+                    session.acquire();
+                    created.complete(session);
+                    return session;
+                } catch (IOException | RuntimeException | Error e) {
+                    _sessions.remove(poolAddress, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            NfsProxySession session = await(future, poolAddress, timeout, unit);
+            session.acquire();
+            if (session.isValid() && _sessions.get(poolAddress) == future) {
+                return session;
+            }
+            session.release();
+            if (_sessions.remove(poolAddress, future)) {
+                tryToClose(session);
+            }
+        }
+    }
+
+    /**
+     * Creates a new shared session to a pool.
+     */
+    NfsProxySession createSession(InetSocketAddress poolAddress, long timeout, TimeUnit unit)
+            throws IOException {
+        return new NfsProxySession(poolAddress, maxSlots, timeout, unit);
+    }
+
+    private static NfsProxySession await(CompletableFuture<NfsProxySession> future,
+            InetSocketAddress poolAddress, long timeout, TimeUnit unit) throws IOException {
+        try {
+            return future.get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for proxy-io session to " + poolAddress);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for proxy-io session to " + poolAddress);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            Throwables.throwIfInstanceOf(cause, IOException.class);
+            Throwables.throwIfUnchecked(cause);
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Returns the session of {@code future}, or null if the session is still
+     * being created or its creation failed.
+     */
+    private static NfsProxySession getIfCreated(CompletableFuture<NfsProxySession> future) {
+        return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * Renews shared sessions and closes sessions which are invalid or have
+     * been idle for too long.
+     */
+    private void maintainSessions() {
+        List<NfsProxySession> expired = new ArrayList<>();
+        List<NfsProxySession> active = new ArrayList<>();
+        _sessions.forEach((address, future) -> {
+            NfsProxySession session = getIfCreated(future);
+            if (session == null) {
+                return;
+            }
+            if (!session.isValid() || session.isIdle(SESSION_IDLE_TIMEOUT, SESSION_IDLE_TIMEOUT_UNIT)) {
+                if (_sessions.remove(address, future)) {
+                    expired.add(session);
+                }
+            } else {
+                active.add(session);
+            }
+        });
+        expired.forEach(NfsProxyIoFactory::tryToClose);
+
+        for (NfsProxySession session : active) {
+            try {
+                session.renew();
+            } catch (IOException e) {
+                _log.warn("Failed to renew proxy-io session {}: {}", session, e.getMessage());
+            }
+        }
+    }
+
     private static boolean isHostLocal(InetAddress address) {
         return address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress();
     }
@@ -205,12 +368,39 @@ retry:  while (true) {
         }
     }
 
+    private static void tryToClose(NfsProxySession session) {
+        try {
+            session.close();
+        } catch (IOException e) {
+            _log.warn("failed to close proxy-io session {}: {}", session, e.getMessage());
+        }
+    }
+
     @Override
     public void shutdownAdapter(stateid4 stateid) {
+        /*
+         * An adapter on a shared session failing with an IO error most likely
+         * lost its session. Drop the adapter, the next request of the client
+         * creates a new one on a new session.
+         */
+        if (useSharedSessions) {
+            ProxyIoAdapter adapter = _proxyIO.asMap().remove(stateid);
+            if (adapter != null) {
+                tryToClose(adapter);
+            }
+        }
     }
 
     @Override
     public void shutdown() {
+        if (sessionThread != null) {
+            sessionThread.shutdown();
+        }
+        _sessions.values().stream()
+                .map(NfsProxyIoFactory::getIfCreated)
+                .filter(Objects::nonNull)
+                .forEach(NfsProxyIoFactory::tryToClose);
+        _sessions.clear();
     }
 
     @Override
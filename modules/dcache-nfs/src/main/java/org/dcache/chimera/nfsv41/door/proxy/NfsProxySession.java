@@ -0,0 +1,377 @@
+package org.dcache.chimera.nfsv41.door.proxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import org.dcache.util.NetworkUtils;
+
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.status.DelayException;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.CREATE_SESSION4resok;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.count4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.state_protect_how4;
+import org.dcache.oncrpc4j.rpc.IoStrategy;
+import org.dcache.oncrpc4j.rpc.OncRpcSvc;
+import org.dcache.oncrpc4j.rpc.OncRpcSvcBuilder;
+import org.dcache.oncrpc4j.rpc.RpcAuth;
+import org.dcache.oncrpc4j.rpc.RpcAuthTypeUnix;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.dcache.oncrpc4j.rpc.RpcTransport;
+import org.dcache.oncrpc4j.rpc.net.IpProtocolType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived NFSv4.1 session between the door and a single pool.
+ * <p>
+ * The session is shared by all files proxied to the pool. Its slot table has
+ * as many slots as negotiated with the pool at session creation, each slot
+ * with its own sequence id. Every request takes a free slot for the duration
+ * of the call, thus as many requests as there are slots are in flight on the
+ * single connection at the same time. Replies are matched to their calls by
+ * the RPC layer and may complete in any order.
+ * <p>
+ * A slot whose request timed out is retired, as its sequence id on the pool
+ * is unknown. The session becomes invalid when the connection fails, the pool
+ * no longer knows the session or no slots are left.
+ */
+public class NfsProxySession implements Closeable {
+
+    private static final Logger _log = LoggerFactory.getLogger(NfsProxySession.class);
+
+    private static final int ROOT_UID = 0;
+    private static final int ROOT_GID = 0;
+    private static final int[] ROOT_GIDS = new int[0];
+
+    private static final String IMPL_DOMAIN = "dCache.ORG";
+    private static final String IMPL_NAME = "proxyio-nfs-client";
+
+    /**
+     * How long we wait for an IO request. The typical NFS client will wait
+     * 30 sec. We will use a shorter timeout to avoid retry.
+     */
+    private static final int IO_TIMEOUT = 15;
+    private static final TimeUnit IO_TIMEOUT_UNIT = TimeUnit.SECONDS;
+
+    private static class Slot {
+        private final int id;
+        private int sequence;
+
+        Slot(int id) {
+            this.id = id;
+        }
+    }
+
+    private final InetSocketAddress poolAddress;
+    private final OncRpcSvc rpcsvc;
+    private final RpcTransport transport;
+    private final RpcCall client;
+
+    /**
+     * Free slots. Slots are taken from and returned to the head, such that
+     * the pool sees a small number of slots in use if the load is low.
+     */
+    private final BlockingDeque<Slot> freeSlots = new LinkedBlockingDeque<>();
+    private final AtomicInteger usableSlots = new AtomicInteger();
+    private final AtomicInteger users = new AtomicInteger();
+
+    private clientid4 clientIdByServer;
+    private sequenceid4 sequenceId;
+    private sessionid4 sessionid;
+    private int highestSlotId;
+
+    private volatile boolean isValid = true;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    public NfsProxySession(InetSocketAddress poolAddress, int maxSlots, long timeout, TimeUnit timeUnit)
+            throws IOException {
+        this.poolAddress = poolAddress;
+        rpcsvc = new OncRpcSvcBuilder()
+                .withClientMode()
+                .withPort(0)
+                .withIpProtocolType(IpProtocolType.TCP)
+                .withIoStrategy(IoStrategy.SAME_THREAD)
+                .withServiceName("proxy-io-session-" + poolAddress.getAddress().getHostAddress())
+                .withSelectorThreadPoolSize(1)
+                .build();
+
+        try {
+            rpcsvc.start();
+            transport = rpcsvc.connect(poolAddress, timeout, timeUnit);
+
+            RpcAuth credential = new RpcAuthTypeUnix(ROOT_UID, ROOT_GID, ROOT_GIDS,
+                    (int) (System.currentTimeMillis() / 1000),
+                    NetworkUtils.getCanonicalHostName());
+            client = new RpcCall(nfs4_prot.NFS4_PROGRAM, nfs4_prot.NFS_V4, credential, transport);
+
+            exchange_id();
+            create_session(maxSlots);
+        } catch (IOException | Error | RuntimeException e) {
+            rpcsvc.stop();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a session over an established connection.
+     */
+    NfsProxySession(InetSocketAddress poolAddress, OncRpcSvc rpcsvc, RpcTransport transport, RpcCall client,
+            int maxSlots) throws IOException {
+        this.poolAddress = poolAddress;
+        this.rpcsvc = rpcsvc;
+        this.transport = transport;
+        this.client = client;
+
+        exchange_id();
+        create_session(maxSlots);
+    }
+
+    public InetSocketAddress getPoolAddress() {
+        return poolAddress;
+    }
+
+    public RpcTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Returns the number of slots usable for requests.
+     */
+    public int getSlotCount() {
+        return usableSlots.get();
+    }
+
+    public boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * Registers a user of the session.
+     */
+    void acquire() {
+        users.incrementAndGet();
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Unregisters a user of the session.
+     */
+    void release() {
+        lastUsed = System.currentTimeMillis();
+        users.decrementAndGet();
+    }
+
+    /**
+     * Returns true if the session has no users and has not been used for
+     * the given time.
+     */
+    boolean isIdle(long time, TimeUnit unit) {
+        return users.get() == 0 && System.currentTimeMillis() - lastUsed > unit.toMillis(time);
+    }
+
+    /**
+     * Sends a compound request on a free slot of the session. The compound
+     * starts with a SEQUENCE operation, {@code operations} adds the remaining
+     * operations to the compound.
+     *
+     * @return the result of the compound, of which the result of the first
+     * operation added by {@code operations} has index one.
+     */
+    public COMPOUND4res call(String tag, UnaryOperator<CompoundBuilder> operations) throws IOException {
+        if (!isValid) {
+            throw new IOException("Proxy-io session to " + poolAddress + " is no longer valid");
+        }
+
+        Slot slot;
+        try {
+            slot = freeSlots.pollFirst(IO_TIMEOUT, IO_TIMEOUT_UNIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DelayException("Interrupted while waiting for a proxy-io slot", e);
+        }
+        if (slot == null) {
+            throw new DelayException("No free proxy-io slot to " + poolAddress);
+        }
+
+        COMPOUND4args args = operations.apply(new CompoundBuilder()
+                .withSequence(false, sessionid, slot.sequence, slot.id, highestSlotId))
+                .withTag(tag)
+                .build();
+
+        COMPOUND4res res;
+        try {
+            res = nfsProcCompound(args);
+        } catch (DelayException e) {
+            retire(slot);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            invalidate();
+            throw e;
+        }
+
+        boolean isReusable = true;
+        try {
+            isReusable = processSequence(slot, res);
+        } finally {
+            if (isReusable) {
+                freeSlots.offerFirst(slot);
+            }
+        }
+        nfsstat.throwIfNeeded(res.status);
+        return res;
+    }
+
+    /**
+     * Keeps the session alive by sending a SEQUENCE operation.
+     */
+    public void renew() throws IOException {
+        call("sequence", b -> b);
+    }
+
+    public void invalidate() {
+        isValid = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        invalidate();
+        try {
+            destroy_session();
+        } finally {
+            rpcsvc.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pool=[%s], slots=%d/%d, users=%d%s",
+                poolAddress.getAddress().getHostAddress(),
+                usableSlots.get() - freeSlots.size(), usableSlots.get(), users.get(),
+                isValid ? "" : ", invalid");
+    }
+
+    private COMPOUND4res nfsProcCompound(COMPOUND4args arg) throws IOException {
+        COMPOUND4res result = new COMPOUND4res();
+        try {
+            client.call(nfs4_prot.NFSPROC4_COMPOUND_4, arg, result, IO_TIMEOUT, IO_TIMEOUT_UNIT);
+        } catch (TimeoutException e) {
+            throw new DelayException(e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Updates the slot according to the result of the SEQUENCE operation.
+     *
+     * @return true if the slot may be used for further requests, false if it
+     * was retired or the session was lost.
+     */
+    private boolean processSequence(Slot slot, COMPOUND4res res) {
+        /*
+         * A compound rejected before the SEQUENCE operation was processed
+         * leaves the sequence id of the slot unchanged.
+         */
+        if (res.resarray.isEmpty() || res.resarray.get(0).resop != nfs_opnum4.OP_SEQUENCE) {
+            return true;
+        }
+
+        nfs_resop4 op = res.resarray.get(0);
+        switch (op.opsequence.sr_status) {
+        case nfsstat.NFS_OK:
+            slot.sequence++;
+            return true;
+        case nfsstat.NFSERR_BADSESSION:
+        case nfsstat.NFSERR_DEADSESSION:
+            _log.warn("Proxy-io session to {} lost: {}", poolAddress, nfsstat.toString(op.opsequence.sr_status));
+            invalidate();
+            return false;
+        case nfsstat.NFSERR_SEQ_MISORDERED:
+        case nfsstat.NFSERR_BADSLOT:
+            retire(slot);
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    private void retire(Slot slot) {
+        _log.warn("Retiring slot {} of proxy-io session to {}", slot.id, poolAddress);
+        if (usableSlots.decrementAndGet() == 0) {
+            invalidate();
+        }
+    }
+
+    private void exchange_id() throws IOException {
+
+        COMPOUND4args args = new CompoundBuilder()
+                .withExchangeId(IMPL_DOMAIN, IMPL_NAME, UUID.randomUUID().toString(), 0, state_protect_how4.SP4_NONE)
+                .withTag("exchange_id")
+                .build();
+
+        COMPOUND4res compound4res = nfsProcCompound(args);
+        nfsstat.throwIfNeeded(compound4res.status);
+
+        clientIdByServer = compound4res.resarray.get(0).opexchange_id.eir_resok4.eir_clientid;
+        sequenceId = compound4res.resarray.get(0).opexchange_id.eir_resok4.eir_sequenceid;
+
+        if ((compound4res.resarray.get(0).opexchange_id.eir_resok4.eir_flags.value
+                & nfs4_prot.EXCHGID4_FLAG_USE_PNFS_DS) == 0) {
+            throw new IOException("remote server is not a DS");
+        }
+    }
+
+    private void create_session(int maxSlots) throws IOException {
+
+        COMPOUND4args args = new CompoundBuilder()
+                .withCreatesession(clientIdByServer, sequenceId)
+                .withTag("create_session")
+                .build();
+        args.argarray[0].opcreate_session.csa_fore_chan_attrs.ca_maxrequests = new count4(maxSlots);
+
+        COMPOUND4res compound4res = nfsProcCompound(args);
+        nfsstat.throwIfNeeded(compound4res.status);
+
+        CREATE_SESSION4resok resok = compound4res.resarray.get(0).opcreate_session.csr_resok4;
+        sessionid = resok.csr_sessionid;
+
+        /*
+         * The pool may grant fewer slots than requested, but never more.
+         */
+        int slots = Math.max(1, Math.min(maxSlots, resok.csr_fore_chan_attrs.ca_maxrequests.value));
+        for (int i = 0; i < slots; i++) {
+            freeSlots.addLast(new Slot(i));
+        }
+        usableSlots.set(slots);
+        highestSlotId = slots - 1;
+
+        _log.info("Created proxy-io session to {} with {} slots", poolAddress, slots);
+    }
+
+    private void destroy_session() throws IOException {
+
+        COMPOUND4args args = new CompoundBuilder()
+                .withDestroysession(sessionid)
+                .withTag("destroy_session")
+                .build();
+
+        COMPOUND4res compound4res = nfsProcCompound(args);
+        nfsstat.throwIfNeeded(compound4res.status);
+    }
+}
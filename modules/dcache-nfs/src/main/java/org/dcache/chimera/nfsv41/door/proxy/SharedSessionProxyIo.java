@@ -0,0 +1,85 @@
+package org.dcache.chimera.nfsv41.door.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.READ4resok;
+import org.dcache.nfs.v4.xdr.WRITE4resok;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+
+/**
+ * A {@link ProxyIoAdapter} which proxies requests to an other NFSv4.1 server
+ * over a {@link NfsProxySession} shared with other files on the same pool.
+ * <p>
+ * Requests are not serialized: concurrent reads and writes of the file are
+ * in flight at the same time, limited only by the slots of the session.
+ */
+public class SharedSessionProxyIo implements ProxyIoAdapter {
+
+    /**
+     * Most up-to-date seqid for a given stateid as defined by rfc5661.
+     */
+    private static final int SEQ_UP_TO_DATE = 0;
+
+    private final NfsProxySession session;
+    private final stateid4 stateid;
+    private final nfs_fh4 fh;
+    private final InetSocketAddress remoteClient;
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+
+    /**
+     * Creates an adapter using {@code session}, which must have been
+     * acquired on behalf of the adapter. The session is released when the
+     * adapter is closed.
+     */
+    public SharedSessionProxyIo(NfsProxySession session, InetSocketAddress remoteClient, Inode inode, stateid4 stateid) {
+        this.session = session;
+        this.remoteClient = remoteClient;
+        fh = new nfs_fh4(inode.toNfsHandle());
+        this.stateid = new stateid4(stateid.other, SEQ_UP_TO_DATE);
+    }
+
+    @Override
+    public ReadResult read(ByteBuffer dst, long position) throws IOException {
+        int needToRead = dst.remaining();
+        COMPOUND4res compound4res = session.call("pNFS read",
+                b -> b.withPutfh(fh).withRead(needToRead, position, stateid));
+        READ4resok res = compound4res.resarray.get(2).opread.resok4;
+        dst.put(res.data);
+        return new ReadResult(needToRead - dst.remaining(), res.eof);
+    }
+
+    @Override
+    public VirtualFileSystem.WriteResult write(ByteBuffer src, long position) throws IOException {
+        COMPOUND4res compound4res = session.call("pNFS write",
+                b -> b.withPutfh(fh).withWrite(position, src, stateid));
+        WRITE4resok res = compound4res.resarray.get(2).opwrite.resok4;
+        return new VirtualFileSystem.WriteResult(VirtualFileSystem.StabilityLevel.fromStableHow(res.committed), res.count.value);
+    }
+
+    @Override
+    public stateid4 getStateId() {
+        return stateid;
+    }
+
+    @Override
+    public void close() {
+        if (isClosed.compareAndSet(false, true)) {
+            session.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("    OS=%s, cl=[%s], pool=[%s], shared session",
+                stateid,
+                remoteClient.getAddress().getHostAddress(),
+                session.getPoolAddress().getAddress().getHostAddress());
+    }
+}
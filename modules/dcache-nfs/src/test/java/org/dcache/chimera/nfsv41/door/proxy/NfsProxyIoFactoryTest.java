@@ -0,0 +1,199 @@
+package org.dcache.chimera.nfsv41.door.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dcache.nfs.v4.NFSv41DeviceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NfsProxyIoFactoryTest {
+
+    private static final InetSocketAddress POOL1 = new InetSocketAddress("127.0.0.2", 2049);
+    private static final InetSocketAddress POOL2 = new InetSocketAddress("127.0.0.3", 2049);
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    /** Pools to which session creation blocks until released. */
+    private final Map<InetSocketAddress, CountDownLatch> blocked = new ConcurrentHashMap<>();
+
+    /** Pools to which session creation fails. */
+    private final Map<InetSocketAddress, Boolean> failing = new ConcurrentHashMap<>();
+
+    private NfsProxyIoFactory factory;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        factory = new NfsProxyIoFactory(mock(NFSv41DeviceManager.class), true, 8) {
+            @Override
+            NfsProxySession createSession(InetSocketAddress poolAddress, long timeout, TimeUnit unit)
+                    throws IOException {
+                created.incrementAndGet();
+                CountDownLatch latch = blocked.get(poolAddress);
+                if (latch != null) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                if (failing.containsKey(poolAddress)) {
+                    throw new IOException("Connection refused");
+                }
+                NfsProxySession session = mock(NfsProxySession.class);
+                when(session.isValid()).thenReturn(true);
+                when(session.getPoolAddress()).thenReturn(poolAddress);
+                return session;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        factory.shutdown();
+    }
+
+    @Test
+    public void shouldShareSessionToSamePool() throws Exception {
+        NfsProxySession first = factory.acquireSession(POOL1, 1, TimeUnit.SECONDS);
+        NfsProxySession second = factory.acquireSession(POOL1, 1, TimeUnit.SECONDS);
+
+        assertSame(first, second);
+        assertEquals(1, created.get());
+        verify(first, times(2)).acquire();
+    }
+
+    @Test
+    public void shouldUseSessionPerPool() throws Exception {
+        NfsProxySession first = factory.acquireSession(POOL1, 1, TimeUnit.SECONDS);
+        NfsProxySession second = factory.acquireSession(POOL2, 1, TimeUnit.SECONDS);
+
+        assertNotSame(first, second);
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void shouldReplaceInvalidSession() throws Exception {
+        NfsProxySession first = factory.acquireSession(POOL1, 1, TimeUnit.SECONDS);
+        when(first.isValid()).thenReturn(false);
+
+        NfsProxySession second = factory.acquireSession(POOL1, 1, TimeUnit.SECONDS);
+
+        assertNotSame(first, second);
+        assertEquals(2, created.get());
+        verify(first).close();
+        verify(second, never()).close();
+    }
+
+    @Test
+    public void shouldRetryCreationAfterFailure() throws Exception {
+        failing.put(POOL1, true);
+        try {
+            factory.acquireSession(POOL1, 1, TimeUnit.SECONDS);
+            fail("Failed session creation was not reported");
+        } catch (IOException expected) {
+        }
+
+        failing.clear();
+        NfsProxySession session = factory.acquireSession(POOL1, 1, TimeUnit.SECONDS);
+
+        assertEquals(2, created.get());
+        verify(session).acquire();
+    }
+
+    @Test
+    public void shouldCreateSessionOnceForConcurrentRequests() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        blocked.put(POOL1, latch);
+
+        Future<NfsProxySession> first = executor.submit(() -> factory.acquireSession(POOL1, 10, TimeUnit.SECONDS));
+        Future<NfsProxySession> second = executor.submit(() -> factory.acquireSession(POOL1, 10, TimeUnit.SECONDS));
+        awaitCreated(1);
+        latch.countDown();
+
+        assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void shouldReportFailedCreationToWaitingRequests() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        blocked.put(POOL1, latch);
+        failing.put(POOL1, true);
+
+        Future<NfsProxySession> first = executor.submit(() -> factory.acquireSession(POOL1, 10, TimeUnit.SECONDS));
+        Future<NfsProxySession> second = executor.submit(() -> factory.acquireSession(POOL1, 10, TimeUnit.SECONDS));
+        awaitCreated(1);
+        latch.countDown();
+
+        for (Future<NfsProxySession> future : Arrays.asList(first, second)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Failed session creation was not reported");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotBlockOtherPoolsWhileCreatingSession() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        blocked.put(POOL1, latch);
+
+        Future<NfsProxySession> first = executor.submit(() -> factory.acquireSession(POOL1, 10, TimeUnit.SECONDS));
+        awaitCreated(1);
+
+        NfsProxySession second = factory.acquireSession(POOL2, 1, TimeUnit.SECONDS);
+        latch.countDown();
+
+        assertNotSame(first.get(10, TimeUnit.SECONDS), second);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldTimeOutWaitingForSessionCreatedByOtherRequest() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        blocked.put(POOL1, latch);
+
+        executor.submit(() -> factory.acquireSession(POOL1, 10, TimeUnit.SECONDS));
+        awaitCreated(1);
+
+        try {
+            factory.acquireSession(POOL1, 100, TimeUnit.MILLISECONDS);
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private void awaitCreated(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (created.get() < count) {
+            assertTrue("Session was not created", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
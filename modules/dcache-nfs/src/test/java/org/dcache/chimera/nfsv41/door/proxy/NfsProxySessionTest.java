@@ -0,0 +1,264 @@
+package org.dcache.chimera.nfsv41.door.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.status.DelayException;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.CREATE_SESSION4res;
+import org.dcache.nfs.v4.xdr.CREATE_SESSION4resok;
+import org.dcache.nfs.v4.xdr.EXCHANGE_ID4res;
+import org.dcache.nfs.v4.xdr.EXCHANGE_ID4resok;
+import org.dcache.nfs.v4.xdr.SEQUENCE4args;
+import org.dcache.nfs.v4.xdr.SEQUENCE4res;
+import org.dcache.nfs.v4.xdr.channel_attrs4;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.count4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.dcache.oncrpc4j.rpc.OncRpcSvc;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.dcache.oncrpc4j.rpc.RpcTransport;
+import org.dcache.oncrpc4j.xdr.XdrAble;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class NfsProxySessionTest {
+
+    private static final InetSocketAddress POOL = new InetSocketAddress("127.0.0.2", 2049);
+
+    private RpcCall client;
+
+    /** Number of slots the pool grants. */
+    private int grantedSlots = 64;
+
+    /** Status of the SEQUENCE operation in the next reply. */
+    private int sequenceStatus;
+
+    /** Status of the next compound. */
+    private int compoundStatus;
+
+    /** Whether the next compound is rejected before the SEQUENCE operation. */
+    private boolean isRejectingCompound;
+
+    /** Whether the next compound times out. */
+    private boolean isTimingOut;
+
+    /** Slot and sequence id of each SEQUENCE operation received by the pool. */
+    private final List<int[]> sequences = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(RpcCall.class);
+        doAnswer(invocation -> {
+            reply(invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(client).call(anyInt(), any(XdrAble.class), any(XdrAble.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void shouldUseSlotsGrantedByPool() throws Exception {
+        grantedSlots = 4;
+
+        NfsProxySession session = givenSession(64);
+
+        assertEquals(4, session.getSlotCount());
+    }
+
+    @Test
+    public void shouldNotUseMoreSlotsThanRequested() throws Exception {
+        NfsProxySession session = givenSession(8);
+
+        assertEquals(8, session.getSlotCount());
+    }
+
+    @Test
+    public void shouldIncrementSequenceOfSlotAfterSuccessfulCall() throws Exception {
+        NfsProxySession session = givenSession(8);
+
+        session.call("test", b -> b);
+        session.call("test", b -> b);
+
+        assertEquals(2, sequences.size());
+        assertEquals(sequences.get(0)[0], sequences.get(1)[0]);
+        assertEquals(sequences.get(0)[1] + 1, sequences.get(1)[1]);
+        assertEquals(0, slotsInUse(session));
+    }
+
+    @Test
+    public void shouldReturnSlotAfterErrorReply() throws Exception {
+        grantedSlots = 1;
+        NfsProxySession session = givenSession(8);
+        compoundStatus = nfsstat.NFSERR_IO;
+
+        try {
+            session.call("test", b -> b);
+            fail("IO error was not reported");
+        } catch (IOException expected) {
+        }
+
+        assertEquals(0, slotsInUse(session));
+        assertEquals(1, session.getSlotCount());
+        assertTrue(session.isValid());
+    }
+
+    @Test
+    public void shouldReuseSequenceOfSlotAfterCompoundWithoutResults() throws Exception {
+        grantedSlots = 1;
+        NfsProxySession session = givenSession(8);
+        isRejectingCompound = true;
+
+        try {
+            session.call("test", b -> b);
+            fail("Rejected compound was not reported");
+        } catch (IOException expected) {
+        }
+
+        isRejectingCompound = false;
+        session.call("test", b -> b);
+
+        assertEquals(2, sequences.size());
+        assertEquals(sequences.get(0)[1], sequences.get(1)[1]);
+        assertEquals(0, slotsInUse(session));
+    }
+
+    @Test
+    public void shouldRetireSlotWithMisorderedSequence() throws Exception {
+        grantedSlots = 2;
+        NfsProxySession session = givenSession(8);
+        sequenceStatus = nfsstat.NFSERR_SEQ_MISORDERED;
+        compoundStatus = nfsstat.NFSERR_SEQ_MISORDERED;
+
+        try {
+            session.call("test", b -> b);
+            fail("Misordered sequence was not reported");
+        } catch (IOException expected) {
+        }
+
+        assertEquals(1, session.getSlotCount());
+        assertEquals(0, slotsInUse(session));
+        assertTrue(session.isValid());
+    }
+
+    @Test
+    public void shouldInvalidateSessionWhenLastSlotIsRetired() throws Exception {
+        grantedSlots = 1;
+        NfsProxySession session = givenSession(8);
+        isTimingOut = true;
+
+        try {
+            session.call("test", b -> b);
+            fail("Timeout was not reported");
+        } catch (DelayException expected) {
+        }
+
+        assertEquals(0, session.getSlotCount());
+        assertFalse(session.isValid());
+    }
+
+    @Test
+    public void shouldInvalidateSessionLostByPool() throws Exception {
+        NfsProxySession session = givenSession(8);
+        sequenceStatus = nfsstat.NFSERR_BADSESSION;
+        compoundStatus = nfsstat.NFSERR_BADSESSION;
+
+        try {
+            session.call("test", b -> b);
+            fail("Lost session was not reported");
+        } catch (IOException expected) {
+        }
+
+        assertFalse(session.isValid());
+    }
+
+    @Test
+    public void shouldBeIdleOnlyWithoutUsers() throws Exception {
+        NfsProxySession session = givenSession(8);
+
+        session.acquire();
+        session.acquire();
+        session.release();
+
+        assertFalse(session.isIdle(0, TimeUnit.MILLISECONDS));
+
+        session.release();
+        Thread.sleep(10);
+
+        assertTrue(session.isIdle(0, TimeUnit.MILLISECONDS));
+    }
+
+    private NfsProxySession givenSession(int maxSlots) throws IOException {
+        return new NfsProxySession(POOL, mock(OncRpcSvc.class), mock(RpcTransport.class), client, maxSlots);
+    }
+
+    private static int slotsInUse(NfsProxySession session) {
+        // pool=[...], slots=<in use>/<usable>, ...
+        String slots = session.toString().replaceAll(".*slots=(\\d+)/.*", "$1");
+        return Integer.parseInt(slots);
+    }
+
+    private void reply(COMPOUND4args args, COMPOUND4res res) throws TimeoutException {
+        nfs_resop4 op = new nfs_resop4();
+        op.resop = args.argarray[0].argop;
+        res.status = nfsstat.NFS_OK;
+
+        switch (op.resop) {
+        case nfs_opnum4.OP_EXCHANGE_ID:
+            op.opexchange_id = new EXCHANGE_ID4res();
+            op.opexchange_id.eir_status = nfsstat.NFS_OK;
+            op.opexchange_id.eir_resok4 = new EXCHANGE_ID4resok();
+            op.opexchange_id.eir_resok4.eir_clientid = new clientid4(1L);
+            op.opexchange_id.eir_resok4.eir_sequenceid = new sequenceid4(1);
+            op.opexchange_id.eir_resok4.eir_flags = new uint32_t(nfs4_prot.EXCHGID4_FLAG_USE_PNFS_DS);
+            break;
+        case nfs_opnum4.OP_CREATE_SESSION:
+            int requested = args.argarray[0].opcreate_session.csa_fore_chan_attrs.ca_maxrequests.value;
+            op.opcreate_session = new CREATE_SESSION4res();
+            op.opcreate_session.csr_status = nfsstat.NFS_OK;
+            op.opcreate_session.csr_resok4 = new CREATE_SESSION4resok();
+            op.opcreate_session.csr_resok4.csr_sessionid = new sessionid4(new byte[nfs4_prot.NFS4_SESSIONID_SIZE]);
+            op.opcreate_session.csr_resok4.csr_fore_chan_attrs = new channel_attrs4();
+            op.opcreate_session.csr_resok4.csr_fore_chan_attrs.ca_maxrequests =
+                    new count4(Math.min(requested, grantedSlots));
+            break;
+        case nfs_opnum4.OP_SEQUENCE:
+            if (isTimingOut) {
+                throw new TimeoutException("Timed out");
+            }
+            SEQUENCE4args sequence = args.argarray[0].opsequence;
+            sequences.add(new int[] { sequence.sa_slotid.value, sequence.sa_sequenceid.value });
+            res.status = compoundStatus;
+            if (isRejectingCompound) {
+                res.status = nfsstat.NFSERR_MINOR_VERS_MISMATCH;
+                res.resarray = Collections.emptyList();
+                return;
+            }
+            op.opsequence = new SEQUENCE4res();
+            op.opsequence.sr_status = sequenceStatus;
+            break;
+        default:
+            break;
+        }
+        res.resarray = new ArrayList<>(Collections.singletonList(op));
+    }
+}
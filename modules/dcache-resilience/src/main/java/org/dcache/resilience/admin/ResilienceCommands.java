@@ -740,6 +740,8 @@ public final class ResilienceCommands implements CellCommandListener {
                                             + "maximum retries on failure %s\n",
                                       fileOperationMap.getMaxRunning(),
                                       fileOperationMap.getMaxRetries()));
+            info.append(String.format("operation queue partitions %s\n",
+                                      fileOperationMap.getPartitions()));
             info.append(String.format("sweep interval %s %s\n",
                                       fileOperationMap.getTimeout(),
                                       fileOperationMap.getTimeoutUnit()));
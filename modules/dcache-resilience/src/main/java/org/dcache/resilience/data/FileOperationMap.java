@@ -60,6 +60,7 @@ documents or software obtained from this server.
 package org.dcache.resilience.data;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Uninterruptibles;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.PnfsId;
 import java.util.ArrayList;
@@ -94,6 +95,8 @@ import org.dcache.resilience.util.StandardForegroundBackgroundAllocator;
 import org.dcache.util.RunnableModule;
 import org.dcache.vehicles.FileAttributes;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * <p>The main locus of operations for resilience.</p>
  *
@@ -127,6 +130,16 @@ import org.dcache.vehicles.FileAttributes;
  *      is balanced in proportion to the number of waiting operations on each
  *      queue.</p>
  *
+ * <p>The queues may be split into several partitions, each with its own
+ *      consumer thread.  An operation is assigned to a partition by the hash
+ *      of its pnfsid, so all the work on a given file is handled by the same
+ *      consumer.  This allows the post-processing and submission of tasks,
+ *      which becomes the bottleneck when a pool holding millions of replicas
+ *      is lost, to proceed in parallel.  The limit on the number of running
+ *      operations is global; each partition may use at most its share of it,
+ *      so that the slots freed by one partition remain available to the
+ *      others.</p>
+ *
  * <p>A periodic checkpointer, if on, writes out selected data from each
  *      operation entry.  In the case of crash and restart of this domain,
  *      the checkpoint file is reloaded into memory.</p>
@@ -219,12 +232,20 @@ public class FileOperationMap extends RunnableModule {
      *      removed or needs to be requeued.</p>
      */
     class TerminalOperationProcessor {
+        private final Partition partition;
         private Collection<FileOperation> toProcess = new ArrayList<>();
 
+        TerminalOperationProcessor(Partition partition) {
+            this.partition = partition;
+        }
+
         void processTerminated() {
             appendIncoming();
+
+            int running = partition.running.size();
             gatherTerminated();
             gatherCanceled();
+            releaseSlots(partition, running - partition.running.size());
 
             LOGGER.trace("Found {} terminated operations.", toProcess.size());
 
@@ -239,14 +260,14 @@ public class FileOperationMap extends RunnableModule {
         }
 
         private void appendIncoming() {
-            synchronized (incoming) {
+            synchronized (partition.incoming) {
                 while (true) {
                     try {
-                        FileOperation operation = incoming.remove();
+                        FileOperation operation = partition.incoming.remove();
                         if (operation.isBackground()) {
-                            background.addLast(operation);
+                            partition.background.addLast(operation);
                         } else {
-                            foreground.addLast(operation);
+                            partition.foreground.addLast(operation);
                         }
                     } catch (NoSuchElementException e) {
                         break;
@@ -288,18 +309,19 @@ public class FileOperationMap extends RunnableModule {
         private void gatherCanceled() {
             Collection<FileMatcher> filters = new ArrayList<>();
 
-            synchronized (cancelFilters) {
-                filters.addAll(cancelFilters);
-                cancelFilters.clear();
+            synchronized (partition.cancelFilters) {
+                filters.addAll(partition.cancelFilters);
+                partition.cancelFilters.clear();
             }
 
-            cancel(running, filters, toProcess);
-            cancel(foreground, filters, toProcess);
-            cancel(background, filters, toProcess);
+            cancel(partition.running, filters, toProcess);
+            cancel(partition.foreground, filters, toProcess);
+            cancel(partition.background, filters, toProcess);
         }
 
         private void gatherTerminated() {
-            for (Iterator<FileOperation> i = running.iterator(); i.hasNext(); ) {
+            for (Iterator<FileOperation> i = partition.running.iterator();
+                 i.hasNext(); ) {
                 FileOperation operation = i.next();
                 if (operation.getState() == FileOperation.RUNNING) {
                     continue;
@@ -423,7 +445,7 @@ public class FileOperationMap extends RunnableModule {
              *  it is about to be removed, thus incrementing the count
              *  on this object instead of adding a fresh instance
              */
-            synchronized (incoming) {
+            synchronized (partition.incoming) {
                 if (operation.getOpCount() > 0) {
                     operation.resetOperation();
                     restore(operation, retry);
@@ -442,15 +464,15 @@ public class FileOperationMap extends RunnableModule {
         private void restore(FileOperation operation, boolean retry) {
             if (operation.isBackground()) {
                 if (retry) {
-                    background.addFirst(operation);
+                    partition.background.addFirst(operation);
                 } else {
-                    background.addLast(operation);
+                    partition.background.addLast(operation);
                 }
             } else {
                 if (retry) {
-                    foreground.addFirst(operation);
+                    partition.foreground.addFirst(operation);
                 } else {
-                    foreground.addLast(operation);
+                    partition.foreground.addLast(operation);
                 }
             }
         }
@@ -469,43 +491,61 @@ public class FileOperationMap extends RunnableModule {
         final ForegroundBackgroundAllocator allocator
                         = new StandardForegroundBackgroundAllocator();
 
+        private final Partition partition;
+
         long fgAvailable;
         long bgAvailable;
 
+        WaitingOperationProcessor(Partition partition) {
+            this.partition = partition;
+        }
+
         void processWaiting() {
+            partition.starved = false;
+
             computeAvailable();
 
             LOGGER.trace("After computing available: {} foreground, "
                             + "{} background.",
                             fgAvailable, bgAvailable);
 
-            long remainder = promoteToRunning(foreground, fgAvailable);
-            promoteToRunning(background, bgAvailable + remainder);
+            long remainder = promoteToRunning(partition.foreground, fgAvailable);
+            promoteToRunning(partition.background, bgAvailable + remainder);
 
             reset();
         }
 
+        /**
+         * <p>The allocation is made against the share of the partition;
+         *      the global limit is enforced when each operation is
+         *      promoted.</p>
+         */
         private void computeAvailable() {
-            ForegroundBackgroundAllocation available = allocator.allocate(copyThreads,
-                                                                          running.size(),
-                                                                          foreground.size(),
-                                                                          background.size(),
-                                                                          maxAllocation);
+            int slots = getMaxRunningPerPartition();
+            ForegroundBackgroundAllocation available
+                            = allocator.allocate(slots,
+                                                 Math.min(partition.running.size(),
+                                                          slots),
+                                                 partition.foreground.size(),
+                                                 partition.background.size(),
+                                                 maxAllocation);
             fgAvailable = available.getForeground();
             bgAvailable = available.getBackground();
         }
 
         /**
          * <p>Dequeues up to the indicated number of operations and submits
-         *      them.</p>
+         *      them, as long as there are slots left.</p>
          */
         private long promoteToRunning(Queue<FileOperation> queue, long limit) {
             for (int i = 0; i < limit; i++) {
-                FileOperation operation = queue.poll();
-                if (operation == null) {
+                if (queue.isEmpty()) {
                     return limit - i;
                 }
-                submit(operation);
+                if (!reserveSlot(partition)) {
+                    return 0;
+                }
+                submit(queue.poll());
             }
             return 0;
         }
@@ -523,15 +563,146 @@ public class FileOperationMap extends RunnableModule {
                             operation.getRetried(),
                             operationHandler));
             operation.setState(FileOperation.RUNNING);
-            running.add(operation);
+            partition.running.add(operation);
             operation.submit();
         }
     }
 
+    /**
+     * <p>A shard of the operation queues, with its own consumer.</p>
+     *
+     * <p>The queues are used only by the consumer of the partition, so,
+     *      as before, only the incoming queue and the cancel filters need
+     *      to be synchronized.  The monitor of the partition is used to
+     *      wake up its consumer.</p>
+     */
+    final class Partition implements Runnable {
+        final int id;
+
+        /**
+         *  <p>The order for election to run is FIFO.  The operation is
+         *      removed from these waiting queues and added to running;
+         *      an attempt at fairness is made by appending it back to
+         *      these queues when it successfully terminates, if more work
+         *      is to be done, but to restoring it to the head of the
+         *      queue if there is a retriable failure.</p>
+         */
+        final Deque<FileOperation> foreground = new LinkedList<>();
+        final Deque<FileOperation> background = new LinkedList<>();
+        final Queue<FileOperation> running    = new LinkedList<>();
+
+        /**
+         *  <p>Queue of incoming/ready operations.  This buffer is
+         *       shared between the handler and consumer threads, to avoid
+         *       synchronizing the internal queues.  The incoming operations
+         *       are appended to the latter during the consumer scan.</p>
+         */
+        final Queue<FileOperation> incoming = new LinkedList<>();
+
+        /**
+         *  <p>List of filters for cancelling operations.  This buffer is
+         *       shared between the caller and the consumer thread.</p>
+         *       Processing of cancellation is done during the consumer scan,
+         *       as it would have to be atomic anyway.  This avoids once again any
+         *       extra locking on the internal queues.</p>
+         */
+        final Collection<FileMatcher> cancelFilters = new ArrayList<>();
+
+        /**
+         * <p>The consumer thread logic is encapsulated in these two processors.</p>
+         */
+        final TerminalOperationProcessor terminalOperationProcessor =
+                        new TerminalOperationProcessor(this);
+        final WaitingOperationProcessor waitingOperationProcessor =
+                        new WaitingOperationProcessor(this);
+
+        /**
+         *  <p>For reporting operations terminated or canceled while the
+         *      consumer thread is doing work outside the wait monitor.</p>
+         */
+        final AtomicInteger signalled = new AtomicInteger(0);
+
+        /**
+         *  <p>Set when waiting operations could not be promoted because
+         *      all the slots were taken by other partitions.  The consumer
+         *      is then woken up as soon as some slot is released.</p>
+         */
+        volatile boolean starved;
+
+        Partition(int id) {
+            this.id = id;
+        }
+
+        /**
+         * <p>The consumer loop.  See {@link FileOperationMap#run()}.</p>
+         */
+        public void run() {
+            try {
+                while (!Thread.interrupted()) {
+                    LOGGER.trace("Calling scan on partition {}.", id);
+
+                    signalled.set(0);
+
+                    scan();
+
+                    if (signalled.get() > 0) {
+                        /*
+                         *  Give the operations completed during the scan a chance
+                         *  to free slots immediately, if possible, by rescanning now.
+                         */
+                        LOGGER.trace("Scan of partition {} complete, received {} "
+                                                     + "signals; rechecking for "
+                                                     + "requeued operations ...",
+                                     id, signalled.get());
+                        continue;
+                    }
+
+                    if (Thread.interrupted()) {
+                        break;
+                    }
+
+                    LOGGER.trace("Scan of partition {} complete, waiting ...", id);
+                    await();
+                }
+            } catch (InterruptedException e) {
+                LOGGER.trace("Consumer of partition {} was interrupted.", id);
+            }
+        }
+
+        void scan() {
+            long start = System.currentTimeMillis();
+            terminalOperationProcessor.processTerminated();
+            waitingOperationProcessor.processWaiting();
+            long end = System.currentTimeMillis();
+            counters.recordFileOpSweep(end, end - start);
+        }
+
+        private synchronized void await() throws InterruptedException {
+            wait(timeoutUnit.toMillis(timeout));
+        }
+
+        private void clear() {
+            foreground.clear();
+            background.clear();
+            running.clear();
+            synchronized (cancelFilters) {
+                cancelFilters.clear();
+            }
+            synchronized (incoming) {
+                incoming.clear();
+            }
+        }
+
+        private synchronized void signal() {
+            signalled.incrementAndGet();
+            notifyAll();
+        }
+    }
+
     /**
      *  <p>Accessed mostly for retrieval of the operation.  Writes occur on
      *      the handler threads adding operations and removes occur
-     *      on the consumer thread.</p>
+     *      on the consumer threads.</p>
      *
      *  <p>Default sharding is probably OK for the present purposes,
      *      even with a large copyThreads value, so we have not specified the
@@ -539,38 +710,6 @@ public class FileOperationMap extends RunnableModule {
      */
     final Map<PnfsId, FileOperation> index = new ConcurrentHashMap<>();
 
-    /**
-     *  <p>These queues are entirely used by the consumer thread. Hence
-     *      there is no need for synchronization on any of them.</p>
-     *
-     *  <p>The order for election to run is FIFO.  The operation is
-     *      removed from these waiting queues and added to running;
-     *      an attempt at fairness is made by appending it back to
-     *      these queues when it successfully terminates, if more work
-     *      is to be done, but to restoring it to the head of the
-     *      queue if there is a retriable failure.</p>
-     */
-    final Deque<FileOperation> foreground = new LinkedList<>();
-    final Deque<FileOperation> background = new LinkedList<>();
-    final Queue<FileOperation> running    = new LinkedList<>();
-
-    /**
-     *  <p>Queue of incoming/ready operations.  This buffer is
-     *       shared between the handler and consumer threads, to avoid
-     *       synchronizing the internal queues.  The incoming operations
-     *       are appended to the latter during the consumer scan.</p>
-     */
-    final Queue<FileOperation> incoming = new LinkedList<>();
-
-    /**
-     *  <p>List of filters for cancelling operations.  This buffer is
-     *       shared between the caller and the consumer thread.</p>
-     *       Processing of cancellation is done during the consumer scan,
-     *       as it would have to be atomic anyway.  This avoids once again any
-     *       extra locking on the internal queues.</p>
-     */
-    final Collection<FileMatcher> cancelFilters = new ArrayList<>();
-
     /**
      * <p>For recovery.</p>
      */
@@ -578,18 +717,16 @@ public class FileOperationMap extends RunnableModule {
     final Checkpointer checkpointer = new Checkpointer();
 
     /**
-     * <p>The consumer thread logic is encapsulated in these two processors.</p>
+     *  <p>Number of operations running in all partitions.  Never
+     *      exceeds copyThreads.</p>
      */
-    final TerminalOperationProcessor terminalOperationProcessor =
-                    new TerminalOperationProcessor();
-    final WaitingOperationProcessor waitingOperationProcessor =
-                    new WaitingOperationProcessor();
+    final AtomicInteger runningOperations = new AtomicInteger(0);
 
     /**
-     *  <p>For reporting operations terminated or canceled while the
-     *      consumer thread is doing work outside the wait monitor.</p>
+     *  <p>Must be set before the consumer is started.</p>
      */
-    final AtomicInteger               signalled = new AtomicInteger(0);
+    @VisibleForTesting
+    Partition[] partitions = { new Partition(0) };
 
     /**
      *  <p>Maximum proportion to allocate to either foreground or
@@ -650,10 +787,12 @@ public class FileOperationMap extends RunnableModule {
      * <p>The actual scan is conducted by the consumer thread.</p>
      */
     public void cancel(FileMatcher filter) {
-        synchronized (cancelFilters) {
-            cancelFilters.add(filter);
+        for (Partition partition : partitions) {
+            synchronized (partition.cancelFilters) {
+                partition.cancelFilters.add(filter);
+            }
+            partition.signal();
         }
-        signalAll();
     }
 
     /**
@@ -714,6 +853,10 @@ public class FileOperationMap extends RunnableModule {
         return copyThreads;
     }
 
+    public int getPartitions() {
+        return partitions.length;
+    }
+
     public FileOperation getOperation(PnfsId pnfsId) {
         return index.get(pnfsId);
     }
@@ -797,46 +940,34 @@ public class FileOperationMap extends RunnableModule {
     }
 
     /**
-     * <p>The consumer thread. When notified or times out, iterates over
-     *      the queues to check the state of running tasks and
-     *      to submit waiting tasks if there are open slots.  Removes
-     *      completed operations.</p>
+     * <p>The consumer threads. When notified or times out, each
+     *      iterates over the queues of its partition to check the state of
+     *      running tasks and to submit waiting tasks if there are open slots.
+     *      Removes completed operations.  The first partition is consumed on
+     *      this thread; the others are given threads of their own, which
+     *      are stopped when this thread is interrupted.</p>
      *
      * <p>Note that since the scan takes place outside of the monitor, the
      *      signals sent by various update methods will not be caught before
-     *      the current thread is inside {@link #await}; for this reason, a
-     *      counter is used and reset to 0 before each scan.  No wait occurs if
-     *      the counter is non-zero after the scan.</p>
+     *      the consumer thread is waiting; for this reason, a counter is used
+     *      and reset to 0 before each scan.  No wait occurs if the counter is
+     *      non-zero after the scan.</p>
      */
     public void run() {
-        try {
-            while (!Thread.interrupted()) {
-                LOGGER.trace("Calling scan.");
-
-                signalled.set(0);
-
-                scan();
-
-                if (signalled.get() > 0) {
-                    /*
-                     *  Give the operations completed during the scan a chance
-                     *  to free slots immediately, if possible, by rescanning now.
-                     */
-                    LOGGER.trace("Scan complete, received {} signals; "
-                                    + "rechecking for requeued operations ...",
-                                    signalled.get());
-                    continue;
-                }
+        Thread[] consumers = new Thread[partitions.length - 1];
+        for (int i = 0; i < consumers.length; i++) {
+            consumers[i] = new Thread(partitions[i + 1],
+                                      Thread.currentThread().getName() + "-" + (i + 1));
+            consumers[i].start();
+        }
 
-                if (Thread.interrupted()) {
-                    break;
-                }
+        partitions[0].run();
 
-                LOGGER.trace("Scan complete, waiting ...");
-                await();
-            }
-        } catch (InterruptedException e) {
-            LOGGER.trace("Consumer was interrupted.");
+        for (Thread consumer : consumers) {
+            consumer.interrupt();
+        }
+        for (Thread consumer : consumers) {
+            Uninterruptibles.joinUninterruptibly(consumer);
         }
 
         LOGGER.info("Exiting file operation consumer.");
@@ -866,11 +997,9 @@ public class FileOperationMap extends RunnableModule {
      */
     @VisibleForTesting
     public void scan() {
-        long start = System.currentTimeMillis();
-        terminalOperationProcessor.processTerminated();
-        waitingOperationProcessor.processWaiting();
-        long end = System.currentTimeMillis();
-        counters.recordFileOpSweep(end, end - start);
+        for (Partition partition : partitions) {
+            partition.scan();
+        }
     }
 
     public void setCheckpointExpiry(long checkpointExpiry) {
@@ -914,6 +1043,17 @@ public class FileOperationMap extends RunnableModule {
         this.operationHandler = operationHandler;
     }
 
+    /**
+     * <p>Must be called before {@link #initialize()}.</p>
+     */
+    public void setPartitions(int count) {
+        checkArgument(count > 0, "There must be at least one partition.");
+        partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i);
+        }
+    }
+
     public void setPoolInfoMap(PoolInfoMap poolInfoMap) {
         this.poolInfoMap = poolInfoMap;
     }
@@ -982,7 +1122,7 @@ public class FileOperationMap extends RunnableModule {
         }
 
         if (operation.updateOperation(error)) {
-            signalAll();
+            partitionOf(pnfsId).signal();
         }
     }
 
@@ -1018,12 +1158,23 @@ public class FileOperationMap extends RunnableModule {
         }
 
         if (operation.voidOperation()) {
-            signalAll();
+            partitionOf(pnfsId).signal();
         }
     }
 
+    /**
+     * <p>All operations on a given pnfsid are handled by the same
+     *      partition.</p>
+     */
+    @VisibleForTesting
+    Partition partitionOf(PnfsId pnfsId) {
+        return partitions[Math.floorMod(pnfsId.hashCode(), partitions.length)];
+    }
+
     private boolean add(PnfsId pnfsId, FileOperation operation) {
-        synchronized (incoming) {
+        Partition partition = partitionOf(pnfsId);
+
+        synchronized (partition.incoming) {
             FileOperation present = index.get(pnfsId);
 
             if (present != null) {
@@ -1032,29 +1183,52 @@ public class FileOperationMap extends RunnableModule {
             }
 
             index.put(pnfsId, operation);
-            incoming.add(operation);
+            partition.incoming.add(operation);
         }
 
-        signalAll();
+        partition.signal();
 
         return true;
     }
 
-    private synchronized void await() throws InterruptedException {
-        wait(timeoutUnit.toMillis(timeout));
-    }
-
     private void clear() {
-        foreground.clear();
-        background.clear();
-        running.clear();
-        cancelFilters.clear();
-        synchronized (incoming) {
-            incoming.clear();
+        for (Partition partition : partitions) {
+            partition.clear();
         }
+        runningOperations.set(0);
         index.clear();
     }
 
+    /**
+     * <p>The share of copyThreads a single partition may use.  This keeps
+     *      a busy partition from holding on to all the slots, which it would
+     *      otherwise reclaim on each of its scans before the consumers of the
+     *      other partitions wake up.</p>
+     */
+    private int getMaxRunningPerPartition() {
+        return (copyThreads + partitions.length - 1) / partitions.length;
+    }
+
+    /**
+     * <p>Releases the slots of operations which have left the running
+     *      queue of the partition, and wakes up the partitions which were
+     *      waiting for them.</p>
+     */
+    private void releaseSlots(Partition partition, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        runningOperations.addAndGet(-count);
+
+        for (Partition other : partitions) {
+            if (other != partition && other.starved) {
+                other.starved = false;
+                other.signal();
+            }
+        }
+    }
+
     private void remove(PnfsId pnfsId, boolean failed) {
         FileOperation operation = index.remove(pnfsId);
 
@@ -1081,8 +1255,29 @@ public class FileOperationMap extends RunnableModule {
         history.add(operation.toHistoryString(), failed);
     }
 
-    private synchronized void signalAll() {
-        signalled.incrementAndGet();
-        notifyAll();
+    /**
+     * <p>Takes one of the copyThreads slots for an operation of the
+     *      partition.  If none is left, the partition is marked as starved
+     *      before checking again, so that a slot released concurrently
+     *      either is seen here or causes the partition to be signalled.</p>
+     */
+    private boolean reserveSlot(Partition partition) {
+        if (tryReserveSlot()) {
+            return true;
+        }
+        partition.starved = true;
+        return tryReserveSlot();
+    }
+
+    private boolean tryReserveSlot() {
+        while (true) {
+            int current = runningOperations.get();
+            if (current >= copyThreads) {
+                return false;
+            }
+            if (runningOperations.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
     }
 }
\ No newline at end of file
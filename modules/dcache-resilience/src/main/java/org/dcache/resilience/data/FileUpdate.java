@@ -111,75 +111,102 @@ public final class FileUpdate {
                                                NamespaceAccess namespace)
                     throws CacheException {
         try {
-            FileAttributes attributes = namespace.getRequiredAttributes(pnfsId);
-            if (attributes == null) {
-                throw new FileNotFoundCacheException(String.format("No attributes "
-                    + "returned for %s", pnfsId));
-            }
+            return checkAttributes(namespace.getRequiredAttributes(pnfsId),
+                                   pnfsId, pool, messageType);
+        } catch (FileNotFoundCacheException e) {
+            LOGGER.debug("{}; {} has likely been deleted from the namespace.",
+                         e.getMessage(),
+                         pnfsId);
+            return null;
+        }
+    }
 
-            LOGGER.trace("Got required attributes for {}.", pnfsId);
-
-            if (attributes.getLocations().isEmpty()) {
-                if (messageType == CLEAR_CACHE_LOCATION) {
-                    LOGGER.trace("ClearCacheLocationMessage for {}; "
-                                                 + "no current locations; "
-                                                 + "file probably deleted "
-                                                 + "from namespace.",
-                                 pnfsId);
-                    return null;
-                }
-
-                if (messageType != ADD_CACHE_LOCATION) {
-                    /*
-                     * Since the scan began or the broken file reported,
-                     * the file has been removed.
-                     */
-                    throw new FileNotFoundCacheException
-                                    (String.format("File no longer found: %s"
-                                                    , pnfsId));
-                }
+    /**
+     * @return as for {@link #getAttributes(PnfsId, String, MessageType,
+     * NamespaceAccess)}, but using attributes which have already been
+     * fetched (in bulk) from the namespace; <code>null</code> attributes
+     * mean that the file was not found.
+     */
+    public static FileAttributes getAttributes(PnfsId pnfsId, String pool,
+                                               MessageType messageType,
+                                               FileAttributes prefetched)
+                    throws CacheException {
+        try {
+            return checkAttributes(prefetched, pnfsId, pool, messageType);
+        } catch (FileNotFoundCacheException e) {
+            LOGGER.debug("{}; {} has likely been deleted from the namespace.",
+                         e.getMessage(),
+                         pnfsId);
+            return null;
+        }
+    }
 
-                /*
-                 *  May be due to a race between PnfsManager and resilience
-                 *  to process the message into/from the namespace.
-                 *
-                 *  We can assume here that this is a new file, so
-                 *  we just add the originating location to the attribute
-                 *  location list.
-                 */
-                LOGGER.trace("{} has no locations yet.", pnfsId);
-                Collection<String> singleLoc = new ArrayList<>();
+    private static FileAttributes checkAttributes(FileAttributes attributes,
+                                                  PnfsId pnfsId, String pool,
+                                                  MessageType messageType)
+                    throws CacheException {
+        if (attributes == null) {
+            throw new FileNotFoundCacheException(String.format("No attributes "
+                + "returned for %s", pnfsId));
+        }
 
+        LOGGER.trace("Got required attributes for {}.", pnfsId);
+
+        if (attributes.getLocations().isEmpty()) {
+            if (messageType == CLEAR_CACHE_LOCATION) {
+                LOGGER.trace("ClearCacheLocationMessage for {}; "
+                                             + "no current locations; "
+                                             + "file probably deleted "
+                                             + "from namespace.",
+                             pnfsId);
+                return null;
+            }
+
+            if (messageType != ADD_CACHE_LOCATION) {
                 /*
-                 *  Pool can now be <code>null</code>
-                 *  but only if message type is QOS_MODIFIED.
+                 * Since the scan began or the broken file reported,
+                 * the file has been removed.
                  */
-                if (pool == null ) {
-                   if (messageType != QOS_MODIFIED) {
-                       throw new CacheException(
-                                       CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
-                                       String.format("resilience File update for %s, "
-                                                                     + "messageType %s, "
-                                                                     + "has no pool location!",
-                                                     pnfsId, messageType));
-                   }
-                   return null;
-                }
-
-                singleLoc.add(pool);
-                attributes.setLocations(singleLoc);
+                throw new FileNotFoundCacheException
+                                (String.format("File no longer found: %s"
+                                                , pnfsId));
             }
 
-            LOGGER.debug("After call to namespace, {} has locations {}.",
-                         pnfsId,
-                         attributes.getLocations());
-            return attributes;
-        } catch (FileNotFoundCacheException e) {
-            LOGGER.debug("{}; {} has likely been deleted from the namespace.",
-                         e.getMessage(),
-                         pnfsId);
-            return null;
+            /*
+             *  May be due to a race between PnfsManager and resilience
+             *  to process the message into/from the namespace.
+             *
+             *  We can assume here that this is a new file, so
+             *  we just add the originating location to the attribute
+             *  location list.
+             */
+            LOGGER.trace("{} has no locations yet.", pnfsId);
+            Collection<String> singleLoc = new ArrayList<>();
+
+            /*
+             *  Pool can now be <code>null</code>
+             *  but only if message type is QOS_MODIFIED.
+             */
+            if (pool == null ) {
+               if (messageType != QOS_MODIFIED) {
+                   throw new CacheException(
+                                   CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                                   String.format("resilience File update for %s, "
+                                                                 + "messageType %s, "
+                                                                 + "has no pool location!",
+                                                 pnfsId, messageType));
+               }
+               return null;
+            }
+
+            singleLoc.add(pool);
+            attributes.setLocations(singleLoc);
         }
+
+        LOGGER.debug("After call to namespace, {} has locations {}.",
+                     pnfsId,
+                     attributes.getLocations());
+        return attributes;
     }
 
     public final PnfsId  pnfsId;
@@ -290,6 +317,18 @@ public final class FileUpdate {
         return attributes != null;
     }
 
+    /**
+     * <p>As for {@link #validateAttributes(NamespaceAccess)}, but with
+     *      attributes fetched as part of a batch.</p>
+     */
+    public boolean validateAttributes(FileAttributes prefetched)
+                    throws CacheException {
+        LOGGER.trace("validateAttributes (prefetched) for {}", this);
+        attributes = getAttributes(pnfsId, pool, type, prefetched);
+        LOGGER.trace("validateAttributes (prefetched), {}", attributes);
+        return attributes != null;
+    }
+
     public boolean validateForAction(Integer storageUnit,
                                      PoolInfoMap poolInfoMap,
                                      ReplicaVerifier verifier,
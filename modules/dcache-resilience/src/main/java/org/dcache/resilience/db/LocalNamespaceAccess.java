@@ -69,20 +69,31 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import diskCacheV111.namespace.NameSpaceProvider;
+import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.FileNotFoundCacheException;
 import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
 import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
 
 import org.dcache.auth.Subjects;
 import org.dcache.chimera.BackEndErrorChimeraFsException;
 import org.dcache.chimera.ChimeraFsException;
+import org.dcache.namespace.FileAttribute;
 import org.dcache.resilience.data.FileOperationMap;
 import org.dcache.resilience.data.FileUpdate;
 import org.dcache.resilience.data.MessageType;
@@ -100,7 +111,9 @@ import static org.dcache.util.SqlHelper.tryToClose;
  *
  * <p>The {@link #handlePnfsidsForPool} uses a callback to
  *      the {@link FileOperationHandler} to add
- *      an entry in the pnfsid operation tables for each pnfsid.</p>
+ *      an entry in the pnfsid operation tables for each pnfsid.
+ *      Pnfsids are handed over in batches, the required attributes
+ *      for each batch having been fetched with set-based queries.</p>
  *
  * <p>Class is not marked final so that a test version can be
  *      implemented by extension.</p>
@@ -124,6 +137,31 @@ public class LocalNamespaceAccess implements NamespaceAccess {
                                     + "AND n.inumber = n1.inumber "
                                     + "AND l1.ilocation NOT IN (%s))";
 
+    static final String SQL_GET_INODES_FOR_PNFSIDS
+                    = "SELECT n.inumber, n.ipnfsid, n.isize, n.iatime, "
+                                    + "n.iaccess_latency, n.iretention_policy, "
+                                    + "n.inlink, d.iparent, "
+                                    + "EXISTS (SELECT 1 FROM t_locationinfo t "
+                                    + "WHERE t.inumber = n.inumber "
+                                    + "AND t.itype = 2) AS itape "
+                                    + "FROM t_inodes n LEFT JOIN t_dirs d "
+                                    + "ON d.ichild = n.inumber "
+                                    + "WHERE n.ipnfsid IN (%s)";
+
+    static final String SQL_GET_LOCATIONS_FOR_INODES
+                    = "SELECT inumber, ilocation FROM t_locationinfo "
+                                    + "WHERE itype = 1 AND istate = 1 "
+                                    + "AND inumber IN (%s)";
+
+    /**
+     * <p>Attributes which files without tape locations inherit from
+     *      their parent directory.</p>
+     */
+    static final Set<FileAttribute> DIRECTORY_DERIVED_ATTRIBUTES
+                    = Collections.unmodifiableSet(
+                    EnumSet.of(FileAttribute.STORAGECLASS,
+                               FileAttribute.HSM));
+
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalNamespaceAccess.class);
 
     /**
@@ -149,6 +187,12 @@ public class LocalNamespaceAccess implements NamespaceAccess {
      */
     private int fetchSize;
 
+    /**
+     * <p>Number of pnfsids whose attributes are fetched together during
+     *      a pool scan.  A value of 1 or less disables batching.</p>
+     */
+    private int batchSize = 500;
+
     @Override
     public void printInaccessibleFiles(String location,
                                        PoolInfoMap poolInfoMap,
@@ -198,6 +242,40 @@ public class LocalNamespaceAccess implements NamespaceAccess {
                                            REQUIRED_ATTRIBUTES);
     }
 
+    /**
+     * <p>The basic inode attributes and the disk locations are fetched
+     *      for the whole collection using one query each.</p>
+     *
+     * <p>Storage class and HSM of files without tape locations are
+     *      derived from the parent directory, so these are fetched from
+     *      the namespace only once per directory.  Files for which this
+     *      does not hold (tape locations, hard links, or undefined
+     *      access latency or retention policy) are looked up individually.</p>
+     */
+    @Override
+    public Map<PnfsId, FileAttributes> getRequiredAttributes(Collection<PnfsId> pnfsIds)
+                    throws CacheException {
+        if (pnfsIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            Connection connection = getConnection();
+            try {
+                return getRequiredAttributes(connection, pnfsIds);
+            } catch (SQLException e) {
+                throw new ChimeraFsException(e.getMessage());
+            } finally {
+                tryToClose(connection);
+            }
+        } catch (ChimeraFsException e) {
+            throw new CacheException(CacheException.RESOURCE,
+                                     String.format("Could not get attributes "
+                                                                   + "for %s files",
+                                                   pnfsIds.size()), e);
+        }
+    }
+
     @Override
     public FileAttributes getRequiredAttributesForStaging(PnfsId pnfsId)
                     throws CacheException {
@@ -251,6 +329,11 @@ public class LocalNamespaceAccess implements NamespaceAccess {
         this.fetchSize = fetchSize;
     }
 
+    @Override
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public void setHandler(FileOperationHandler handler) {
         this.handler = handler;
     }
@@ -268,11 +351,162 @@ public class LocalNamespaceAccess implements NamespaceAccess {
         }
     }
 
+    private Map<PnfsId, FileAttributes> getRequiredAttributes(Connection connection,
+                                                              Collection<PnfsId> pnfsIds)
+                    throws SQLException, CacheException {
+        Map<PnfsId, FileAttributes> result = new HashMap<>();
+        Map<Long, FileAttributes> byInode = new HashMap<>();
+        Map<Long, List<FileAttributes>> byParent = new HashMap<>();
+        List<PnfsId> individual = new ArrayList<>();
+
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            statement = connection.prepareStatement(
+                            String.format(SQL_GET_INODES_FOR_PNFSIDS,
+                                          placeholders(pnfsIds.size())));
+            int i = 1;
+            for (PnfsId pnfsId : pnfsIds) {
+                statement.setString(i++, pnfsId.toString());
+            }
+
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                long inumber = resultSet.getLong("inumber");
+                if (byInode.containsKey(inumber)) {
+                    continue;
+                }
+
+                PnfsId pnfsId = new PnfsId(resultSet.getString("ipnfsid"));
+                FileAttributes attributes = new FileAttributes();
+                attributes.setPnfsId(pnfsId);
+                attributes.setSize(resultSet.getLong("isize"));
+                Timestamp atime = resultSet.getTimestamp("iatime");
+                if (atime != null) {
+                    attributes.setAccessTime(atime.getTime());
+                }
+                attributes.setLocations(new ArrayList<>());
+                byInode.put(inumber, attributes);
+
+                boolean inherits = !resultSet.getBoolean("itape")
+                                && resultSet.getInt("inlink") == 1;
+
+                int al = resultSet.getInt("iaccess_latency");
+                if (resultSet.wasNull()) {
+                    inherits = false;
+                } else {
+                    attributes.setAccessLatency(AccessLatency.getAccessLatency(al));
+                }
+
+                int rp = resultSet.getInt("iretention_policy");
+                if (resultSet.wasNull()) {
+                    inherits = false;
+                } else {
+                    attributes.setRetentionPolicy(RetentionPolicy.getRetentionPolicy(rp));
+                }
+
+                long parent = resultSet.getLong("iparent");
+                if (resultSet.wasNull()) {
+                    inherits = false;
+                }
+
+                if (inherits) {
+                    byParent.computeIfAbsent(parent, p -> new ArrayList<>())
+                            .add(attributes);
+                    result.put(pnfsId, attributes);
+                } else {
+                    individual.add(pnfsId);
+                }
+            }
+        } finally {
+            tryToClose(resultSet);
+            tryToClose(statement);
+        }
+
+        if (!byInode.isEmpty()) {
+            try {
+                statement = connection.prepareStatement(
+                                String.format(SQL_GET_LOCATIONS_FOR_INODES,
+                                              placeholders(byInode.size())));
+                int i = 1;
+                for (Long inumber : byInode.keySet()) {
+                    statement.setLong(i++, inumber);
+                }
+
+                resultSet = statement.executeQuery();
+
+                while (resultSet.next()) {
+                    byInode.get(resultSet.getLong("inumber")).getLocations()
+                           .add(resultSet.getString("ilocation"));
+                }
+            } finally {
+                tryToClose(resultSet);
+                tryToClose(statement);
+            }
+        }
+
+        for (List<FileAttributes> siblings : byParent.values()) {
+            FileAttributes inherited = getDirectoryDerivedAttributes(siblings);
+            if (inherited == null) {
+                for (FileAttributes attributes : siblings) {
+                    result.remove(attributes.getPnfsId());
+                    individual.add(attributes.getPnfsId());
+                }
+                continue;
+            }
+
+            for (FileAttributes attributes : siblings) {
+                attributes.setStorageClass(inherited.getStorageClass());
+                attributes.setHsm(inherited.getHsm());
+            }
+        }
+
+        for (PnfsId pnfsId : individual) {
+            try {
+                result.put(pnfsId, getRequiredAttributes(pnfsId));
+            } catch (FileNotFoundCacheException e) {
+                LOGGER.debug("{} has likely been deleted from the namespace.",
+                             pnfsId);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>Asks the namespace for the directory-derived attributes of a file
+     *      in the given list, trying the next one if a file has been
+     *      deleted in the meantime.</p>
+     *
+     * @return <code>null</code> if no file could be found.
+     */
+    private FileAttributes getDirectoryDerivedAttributes(List<FileAttributes> siblings)
+                    throws CacheException {
+        for (FileAttributes sibling : siblings) {
+            try {
+                return namespace.getFileAttributes(Subjects.ROOT,
+                                                   sibling.getPnfsId(),
+                                                   DIRECTORY_DERIVED_ATTRIBUTES);
+            } catch (FileNotFoundCacheException e) {
+                LOGGER.debug("{} has likely been deleted from the namespace.",
+                             sibling.getPnfsId());
+            }
+        }
+        return null;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
     /**
      * <p>The query processes all pnfsids for the given location which
-     *      have access latency = ONLINE.  These are sent one-by-one to the
-     *      {@link FileOperationHandler} to either create or update a
-     *      corresponding entry in the {@link FileOperationMap}.</p>
+     *      have access latency = ONLINE.  These are sent in batches of
+     *      {@link #batchSize} to the {@link FileOperationHandler} to
+     *      either create or update a corresponding entry in the
+     *      {@link FileOperationMap}.</p>
      */
     private void handleQuery(Connection connection, ScanSummary scan)
                     throws SQLException, CacheException {
@@ -281,7 +515,6 @@ public class LocalNamespaceAccess implements NamespaceAccess {
         String pool = scan.getPool();
         MessageType type = scan.getType();
         Integer group = scan.getGroup();
-        Integer storageUnit = scan.getStorageUnit();
         boolean full = scan.isForced();
 
         try {
@@ -294,25 +527,81 @@ public class LocalNamespaceAccess implements NamespaceAccess {
 
             resultSet = statement.executeQuery();
 
+            List<FileUpdate> batch = new ArrayList<>(Math.max(batchSize, 1));
+
             while (resultSet.next() && !scan.isCancelled()) {
                 PnfsId pnfsId = new PnfsId(resultSet.getString(1));
                 FileUpdate data = new FileUpdate(pnfsId, pool, type, group, full);
-                try {
-                    LOGGER.debug("checking {}, {}.", pool, pnfsId);
-                    if (handler.handleScannedLocation(data, storageUnit)) {
-                        scan.incrementCount();
-                    }
-                    LOGGER.debug("after checking {}, {}, count is {}.", pool, pnfsId, scan.getCount());
-                } catch (CacheException e) {
-                    LOGGER.debug("{}: {}", data, new ExceptionMessage(e));
+
+                if (batchSize <= 1) {
+                    handleScannedLocation(data, scan);
+                    continue;
                 }
+
+                batch.add(data);
+                if (batch.size() >= batchSize) {
+                    handleBatch(batch, scan);
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty() && !scan.isCancelled()) {
+                handleBatch(batch, scan);
             }
+
+            LOGGER.info("Scan {}.", scan);
         } finally {
             tryToClose(resultSet);
             tryToClose(statement);
         }
     }
 
+    private void handleScannedLocation(FileUpdate data, ScanSummary scan) {
+        try {
+            LOGGER.debug("checking {}, {}.", data.pool, data.pnfsId);
+            if (handler.handleScannedLocation(data, scan.getStorageUnit())) {
+                scan.incrementCount();
+            }
+            LOGGER.debug("after checking {}, {}, count is {}.", data.pool,
+                         data.pnfsId, scan.getCount());
+        } catch (CacheException e) {
+            LOGGER.debug("{}: {}", data, new ExceptionMessage(e));
+        }
+        scan.addScanned(1);
+    }
+
+    /**
+     * <p>Should the attributes of the batch not be obtainable together,
+     *      each file of the batch is checked individually, so that a single
+     *      bad entry does not abort the scan.</p>
+     */
+    private void handleBatch(List<FileUpdate> batch, ScanSummary scan) {
+        LOGGER.debug("checking batch of {} for {}.", batch.size(), scan.getPool());
+        List<PnfsId> pnfsIds = batch.stream()
+                                    .map(data -> data.pnfsId)
+                                    .collect(Collectors.toList());
+        Map<PnfsId, FileAttributes> attributes;
+        try {
+            attributes = getRequiredAttributes(pnfsIds);
+        } catch (CacheException e) {
+            LOGGER.warn("Could not get attributes of batch of {} for {}, "
+                                        + "checking files individually: {}.",
+                        batch.size(), scan.getPool(), new ExceptionMessage(e));
+            for (FileUpdate data : batch) {
+                if (scan.isCancelled()) {
+                    break;
+                }
+                handleScannedLocation(data, scan);
+            }
+            return;
+        }
+        scan.incrementCount(handler.handleScannedLocations(batch, attributes,
+                                                           scan.getStorageUnit()));
+        scan.addScanned(batch.size());
+        LOGGER.debug("after checking batch for {}, count is {}.", scan.getPool(),
+                     scan.getCount());
+    }
+
     /**
      * <p>Used by the inaccessible file query.</p>
      *
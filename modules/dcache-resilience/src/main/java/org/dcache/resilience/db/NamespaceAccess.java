@@ -62,9 +62,11 @@ package org.dcache.resilience.db;
 import javax.sql.DataSource;
 
 import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import diskCacheV111.namespace.NameSpaceProvider;
@@ -105,6 +107,15 @@ public interface NamespaceAccess {
      */
     FileAttributes getRequiredAttributes(PnfsId pnfsId) throws CacheException;
 
+    /**
+     * <p>Batched variant of {@link #getRequiredAttributes(PnfsId)}.</p>
+     *
+     * <p>Files which are no longer in the namespace are absent from
+     *    the returned map.</p>
+     */
+    Map<PnfsId, FileAttributes> getRequiredAttributes(Collection<PnfsId> pnfsIds)
+                    throws CacheException;
+
     /**
      * <p>Pass-through to namespace.</p>
      *
@@ -147,5 +158,7 @@ public interface NamespaceAccess {
 
     void setFetchSize(int fetchSize);
 
+    void setBatchSize(int batchSize);
+
     void setNamespace(NameSpaceProvider namespace);
 }
@@ -74,7 +74,11 @@ public final class ScanSummary {
     private final Integer         storageUnit;
     private final boolean         forced;
 
+    private final long started;
+
     private int     files;
+    private long    scanned;
+    private long    batches;
 
     private volatile boolean cancelled  = false;
 
@@ -89,12 +93,38 @@ public final class ScanSummary {
         this.storageUnit = storageUnit;
         this.forced = forced;
         files = 0;
+        started = System.currentTimeMillis();
+    }
+
+    public void addScanned(int batchSize) {
+        scanned += batchSize;
+        ++batches;
     }
 
     public int getCount() {
         return files;
     }
 
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getScanned() {
+        return scanned;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * @return the number of files examined per second since the scan began.
+     */
+    public double getThroughput() {
+        long elapsed = System.currentTimeMillis() - started;
+        return elapsed <= 0 ? 0.0 : scanned * 1000.0 / elapsed;
+    }
+
     public Integer getGroup() {
         return group;
     }
@@ -115,6 +145,10 @@ public final class ScanSummary {
         ++files;
     }
 
+    public void incrementCount(int count) {
+        files += count;
+    }
+
     public boolean isCancelled() {
         return cancelled;
     }
@@ -124,4 +158,11 @@ public final class ScanSummary {
     public void setCancelled(boolean cancelled) {
         this.cancelled = cancelled;
     }
+
+    @Override
+    public String toString() {
+        return String.format("%s: scanned %s files in %s batches, "
+                                             + "%s operations, %.1f files/s",
+                             pool, scanned, batches, files, getThroughput());
+    }
 }
@@ -82,6 +82,7 @@ import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -327,6 +328,45 @@ public class FileOperationHandler implements CellMessageSender {
             return false;
         }
 
+        return registerScannedLocation(data, storageUnit);
+    }
+
+    /**
+     * <p>The entry method for a batch of PnfsId operations from a pool
+     *      scan task.</p>
+     *
+     * <p>As for {@link #handleScannedLocation(FileUpdate, Integer)}, except
+     *      that the file attributes have already been fetched for the
+     *      entire batch in a single namespace query.  Updates for files
+     *      not present in the map of attributes are treated as deleted.</p>
+     *
+     * @return the number of new operations added to the map.
+     */
+    public int handleScannedLocations(Collection<FileUpdate> batch,
+                                      Map<PnfsId, FileAttributes> attributes,
+                                      Integer storageUnit) {
+        int added = 0;
+
+        for (FileUpdate data : batch) {
+            LOGGER.debug("handleScannedLocations {}", data);
+            try {
+                if (!data.validateAttributes(attributes.get(data.pnfsId))) {
+                    continue;
+                }
+
+                if (registerScannedLocation(data, storageUnit)) {
+                    ++added;
+                }
+            } catch (CacheException e) {
+                LOGGER.debug("{}: {}", data, new ExceptionMessage(e));
+            }
+        }
+
+        return added;
+    }
+
+    private boolean registerScannedLocation(FileUpdate data, Integer storageUnit)
+                    throws CacheException {
         data.verifyPoolGroup(poolInfoMap);
 
         /*
@@ -63,9 +63,13 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
@@ -118,19 +122,36 @@ public final class TestNamespaceAccess extends LocalNamespaceAccess {
         throw new FileNotFoundCacheException(pnfsId.toString());
     }
 
+    @Override
+    public Map<PnfsId, FileAttributes> getRequiredAttributes(Collection<PnfsId> pnfsIds) {
+        Map<PnfsId, FileAttributes> result = new HashMap<>();
+        for (PnfsId pnfsId : pnfsIds) {
+            FileAttributes attributes = fileAttributes.get(pnfsId);
+            if (attributes != null) {
+                result.put(pnfsId, attributes);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void handlePnfsidsForPool(ScanSummary scan)
                     throws CacheException {
+        List<FileUpdate> batch = new ArrayList<>();
         for (FileAttributes attributes : locationsToFiles.get(scan.getPool())) {
-            FileUpdate data = new FileUpdate(attributes.getPnfsId(),
-                                             scan.getPool(),
-                                             scan.getType(),
-                                             scan.getGroup(),
-                                             scan.isForced());
-            if (handler.handleScannedLocation(data, scan.getStorageUnit())) {
-                scan.incrementCount();
-            }
+            batch.add(new FileUpdate(attributes.getPnfsId(),
+                                     scan.getPool(),
+                                     scan.getType(),
+                                     scan.getGroup(),
+                                     scan.isForced()));
         }
+
+        Map<PnfsId, FileAttributes> attributes = getRequiredAttributes(
+                        batch.stream().map(data -> data.pnfsId)
+                             .collect(Collectors.toList()));
+        scan.incrementCount(handler.handleScannedLocations(batch, attributes,
+                                                           scan.getStorageUnit()));
+        scan.addScanned(batch.size());
     }
 
     @Override
@@ -0,0 +1,168 @@
+package org.dcache.resilience.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+
+import org.dcache.resilience.handlers.FileOperationHandler;
+import org.dcache.resilience.handlers.FileTaskCompletionHandler;
+import org.dcache.resilience.handlers.PoolTaskCompletionHandler;
+import org.dcache.resilience.util.OperationHistory;
+import org.dcache.resilience.util.OperationStatistics;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Simulates the loss of a pool holding many replicas: an operation is
+ * registered for each replica, as the pool scan would, and every task
+ * completes as soon as it is launched.  What is measured is thus the
+ * overhead of the file operation map itself, for one and for several
+ * partitions.
+ *
+ * Usage: FileOperationMapBenchmark [operations [partitions [copy-threads]]]
+ *
+ * The default of ten million operations needs a heap of several GB.
+ */
+public class FileOperationMapBenchmark
+{
+    private static final String POOL = "lost_pool";
+
+    private static class LostPoolInfoMap extends PoolInfoMap
+    {
+        @Override
+        public String getPool(Integer pool)
+        {
+            return POOL;
+        }
+    }
+
+    private static class CountingPoolTaskCompletionHandler extends PoolTaskCompletionHandler
+    {
+        private final CountDownLatch done;
+
+        CountingPoolTaskCompletionHandler(CountDownLatch done)
+        {
+            this.done = done;
+        }
+
+        @Override
+        public void childTerminated(String pool, PnfsId pnfsId)
+        {
+            done.countDown();
+        }
+
+        @Override
+        public void childTerminatedWithFailure(String pool, PnfsId pnfsId)
+        {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Completes each task on the thread that runs its remove step.
+     */
+    private static class InstantFileOperationHandler extends FileOperationHandler
+    {
+        private final FileOperationMap map;
+
+        InstantFileOperationHandler(FileOperationMap map)
+        {
+            this.map = map;
+        }
+
+        @Override
+        public Type handleVerification(FileAttributes attributes)
+        {
+            return Type.REMOVE;
+        }
+
+        @Override
+        public void handleRemoveOneCopy(FileAttributes attributes)
+        {
+            map.updateOperation(attributes.getPnfsId(), null);
+        }
+    }
+
+    private static void run(int operations, int partitions, int copyThreads, File statistics)
+            throws InterruptedException
+    {
+        CountDownLatch done = new CountDownLatch(operations);
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(16);
+
+        FileOperationMap map = new FileOperationMap();
+        InstantFileOperationHandler handler = new InstantFileOperationHandler(map);
+        handler.setTaskService(executor);
+        handler.setMigrationTaskService(executor);
+        handler.setLaunchDelay(0);
+
+        OperationStatistics counters = new OperationStatistics();
+        counters.setStatisticsPath(statistics.getPath());
+        counters.initialize();
+        counters.registerPool(POOL);
+
+        OperationHistory history = new OperationHistory();
+        history.setCapacity(1);
+        history.initialize();
+
+        map.setTimeout(1);
+        map.setTimeoutUnit(TimeUnit.SECONDS);
+        map.setPartitions(partitions);
+        map.setCopyThreads(copyThreads);
+        map.setCounters(counters);
+        map.setHistory(history);
+        map.setOperationHandler(handler);
+        map.setCompletionHandler(new FileTaskCompletionHandler());
+        map.setPoolTaskCompletionHandler(new CountingPoolTaskCompletionHandler(done));
+        map.setPoolInfoMap(new LostPoolInfoMap());
+        map.setCheckpointExpiry(Long.MAX_VALUE);
+        map.setCheckpointExpiryUnit(TimeUnit.MILLISECONDS);
+        map.setCheckpointFilePath(statistics.getPath() + ".checkpoint");
+        map.initialize();
+
+        FileAttributes attributes = FileAttributes.of()
+                .retentionPolicy(RetentionPolicy.REPLICA)
+                .size(1L)
+                .build();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            FileUpdate update = new FileUpdate(new PnfsId(String.format("%036X", i)), POOL,
+                    MessageType.POOL_STATUS_DOWN, 0, 0, 0, attributes);
+            update.setCount(1);
+            map.register(update);
+        }
+        long registered = System.nanoTime() - start;
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%2d partition(s): registered in %6.1f s, recovered in %6.1f s, %10.0f ops/s%n",
+                          partitions, registered / 1e9, elapsed / 1e9,
+                          operations / (elapsed / 1e9));
+
+        map.shutdown();
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException
+    {
+        int operations = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000_000;
+        int partitions = (args.length > 1) ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int copyThreads = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+
+        File statistics = File.createTempFile("resilience-statistics", null);
+        statistics.deleteOnExit();
+
+        System.out.println("Warm-up");
+        run(Math.min(operations, 100_000), 1, copyThreads, statistics);
+        run(Math.min(operations, 100_000), partitions, copyThreads, statistics);
+        System.out.println("Measurement");
+        run(operations, 1, copyThreads, statistics);
+        run(operations, partitions, copyThreads, statistics);
+    }
+}
@@ -398,6 +398,24 @@ public final class FileOperationMapTest extends TestBase {
         assertNull(fileOperationMap.getOperation(operation.getPnfsId()));
     }
 
+    @Test
+    public void shouldNotRunMoreThanCopyThreadsOverAllPartitions()
+                    throws CacheException, IOException {
+        givenPartitions(2);
+        givenANewPnfsId();
+        afterOperationAdded(1);
+        givenASecondPnfsId();
+        afterOperationAdded(1);
+        whenScanIsRun();
+        assertEquals(1, numberOfRunningOperations());
+        PnfsId first = aRunningOperation();
+        whenOperationSucceedsFor(first);
+        whenScanIsRun();
+        assertNull(fileOperationMap.getOperation(first));
+        assertEquals(1, numberOfRunningOperations());
+        assertNotEquals(first, aRunningOperation());
+    }
+
     @After
     public void tearDown() {
         if (checkpoint.exists()) {
@@ -440,12 +458,28 @@ public final class FileOperationMapTest extends TestBase {
                                          target);
     }
 
+    private PnfsId aRunningOperation() {
+        for (int i = 0; i < fileOperationMap.getPartitions(); ++i) {
+            FileOperation running = fileOperationMap.partitions[i].running.peek();
+            if (running != null) {
+                return running.getPnfsId();
+            }
+        }
+        return null;
+    }
+
     private void assertThatOperationIsNotRunning(PnfsId pnfsId) {
-        assertNotEquals(pnfsId, fileOperationMap.running.peek().getPnfsId());
+        assertNotEquals(pnfsId, fileOperationMap.partitionOf(pnfsId)
+                                                .running.peek().getPnfsId());
     }
 
     private void assertThatOperationIsRunning(PnfsId pnfsId) {
-        assertEquals(pnfsId, fileOperationMap.running.peek().getPnfsId());
+        assertEquals(pnfsId, fileOperationMap.partitionOf(pnfsId)
+                                             .running.peek().getPnfsId());
+    }
+
+    private void givenPartitions(int count) {
+        fileOperationMap.setPartitions(count);
     }
 
     private void givenANewPnfsId() throws CacheException {
@@ -478,6 +512,15 @@ public final class FileOperationMapTest extends TestBase {
         fileOperationMap.getOperation(operation.getPnfsId()).incrementCount();
     }
 
+    private int numberOfRunningOperations() {
+        int running = 0;
+        for (int i = 0; i < fileOperationMap.getPartitions(); ++i) {
+            running += fileOperationMap.partitions[i].running.size();
+        }
+        assertEquals(running, fileOperationMap.runningOperations.get());
+        return running;
+    }
+
     private void setMocks() {
         setShortExecutionMode(Mode.NOP);
         setLongExecutionMode(Mode.NOP);
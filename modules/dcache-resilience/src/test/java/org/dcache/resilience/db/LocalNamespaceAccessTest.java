@@ -0,0 +1,302 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.resilience.db;
+
+import com.google.common.io.Resources;
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.security.auth.Subject;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.StorageInfo;
+
+import org.dcache.chimera.FileSystemProvider;
+import org.dcache.chimera.FsFactory;
+import org.dcache.chimera.FsInode;
+import org.dcache.chimera.StorageGenericLocation;
+import org.dcache.chimera.namespace.ChimeraNameSpaceProvider;
+import org.dcache.chimera.namespace.ChimeraOsmStorageInfoExtractor;
+import org.dcache.chimera.posix.Stat;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.resilience.data.FileUpdate;
+import org.dcache.resilience.data.MessageType;
+import org.dcache.resilience.handlers.FileOperationHandler;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * <p>Tests the batched attribute lookup of {@link LocalNamespaceAccess}
+ *      against an embedded Chimera database.</p>
+ */
+public final class LocalNamespaceAccessTest {
+    private static final URL DB_TEST_PROPERTIES
+                    = Resources.getResource("org/dcache/chimera/chimera-test.properties");
+
+    private static final String POOL = "pool1";
+
+    /**
+     * <p>Namespace which fails to deliver the attributes of selected
+     *      files.</p>
+     */
+    private static class FailingNameSpaceProvider extends ChimeraNameSpaceProvider {
+        final Set<PnfsId> failing = new HashSet<>();
+
+        @Override
+        public FileAttributes getFileAttributes(Subject subject, PnfsId pnfsId,
+                                                Set<FileAttribute> attr)
+                        throws CacheException {
+            if (failing.contains(pnfsId)) {
+                throw new CacheException("Simulated failure for " + pnfsId);
+            }
+            return super.getFileAttributes(subject, pnfsId, attr);
+        }
+    }
+
+    private HikariDataSource dataSource;
+    private FileSystemProvider fs;
+    private FailingNameSpaceProvider namespace;
+    private FileOperationHandler handler;
+    private LocalNamespaceAccess access;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties dbProperties = new Properties();
+        try (InputStream input = Resources.asByteSource(DB_TEST_PROPERTIES).openStream()) {
+            dbProperties.load(input);
+        }
+
+        String url = dbProperties.getProperty("chimera.db.url");
+        String user = dbProperties.getProperty("chimera.db.user");
+        String password = dbProperties.getProperty("chimera.db.password");
+
+        dataSource = FsFactory.getDataSource(url, user, password);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            Database database = DatabaseFactory.getInstance()
+                                               .findCorrectDatabaseImplementation(new JdbcConnection(conn));
+            Liquibase liquibase = new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                                                new ClassLoaderResourceAccessor(),
+                                                database);
+            liquibase.update("");
+        }
+
+        fs = FsFactory.createFileSystem(url, user, password);
+
+        namespace = new FailingNameSpaceProvider();
+        namespace.setExtractor(new ChimeraOsmStorageInfoExtractor(StorageInfo.DEFAULT_ACCESS_LATENCY,
+                                                                  StorageInfo.DEFAULT_RETENTION_POLICY));
+        namespace.setInheritFileOwnership(true);
+        namespace.setVerifyAllLookups(true);
+        namespace.setAclEnabled(false);
+        namespace.setFileSystem(fs);
+
+        handler = mock(FileOperationHandler.class);
+
+        access = new LocalNamespaceAccess();
+        access.setConnectionPool(dataSource);
+        access.setNamespace(namespace);
+        access.setHandler(handler);
+        access.setFetchSize(100);
+        access.setBatchSize(10);
+
+        fs.mkdir("/pnfs");
+        givenDirectory("/pnfs/a", "alpha");
+        givenDirectory("/pnfs/b", "beta");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.createStatement().execute("SHUTDOWN;");
+        }
+        dataSource.close();
+        fs.close();
+    }
+
+    @Test
+    public void shouldFetchSameAttributesInBatchAsIndividually() throws Exception {
+        List<PnfsId> files = new ArrayList<>();
+        files.add(givenFile("/pnfs/a/1", 100, "pool1", "pool2"));
+        files.add(givenFile("/pnfs/a/2", 200, "pool1"));
+        files.add(givenFile("/pnfs/b/1", 300, "pool2", "pool3"));
+        files.add(givenFileOnTape("/pnfs/b/2", 400, "pool1"));
+
+        Map<PnfsId, FileAttributes> batch = access.getRequiredAttributes(files);
+
+        assertEquals(files.size(), batch.size());
+        for (PnfsId pnfsId : files) {
+            FileAttributes expected = access.getRequiredAttributes(pnfsId);
+            FileAttributes actual = batch.get(pnfsId);
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getAccessLatency(), actual.getAccessLatency());
+            assertEquals(expected.getRetentionPolicy(), actual.getRetentionPolicy());
+            assertEquals(new HashSet<>(expected.getLocations()),
+                         new HashSet<>(actual.getLocations()));
+            assertEquals(expected.getStorageClass(), actual.getStorageClass());
+            assertEquals(expected.getHsm(), actual.getHsm());
+        }
+    }
+
+    @Test
+    public void shouldOmitDeletedFilesFromBatch() throws Exception {
+        PnfsId kept = givenFile("/pnfs/a/1", 100, POOL);
+        PnfsId deleted = givenFile("/pnfs/a/2", 100, POOL);
+        fs.remove("/pnfs/a/2");
+
+        Map<PnfsId, FileAttributes> batch
+                        = access.getRequiredAttributes(List.of(kept, deleted));
+
+        assertTrue(batch.containsKey(kept));
+        assertFalse(batch.containsKey(deleted));
+    }
+
+    @Test
+    public void shouldCheckAllFilesOfScanInBatches() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            givenFile("/pnfs/a/" + i, i, POOL);
+        }
+
+        ScanSummary scan = whenPoolIsScanned();
+
+        assertEquals(25, scan.getScanned());
+        verify(handler, times(3)).handleScannedLocations(any(), any(), any());
+        verify(handler, never()).handleScannedLocation(any(), any());
+    }
+
+    @Test
+    public void shouldCheckFilesIndividuallyWhenBatchLookupFails() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            givenFile("/pnfs/a/" + i, i, POOL);
+        }
+        namespace.failing.add(givenFile("/pnfs/b/bad", 1, POOL));
+
+        ScanSummary scan = whenPoolIsScanned();
+
+        assertEquals(6, scan.getScanned());
+        verify(handler, never()).handleScannedLocations(any(), any(), any());
+        verify(handler, times(6)).handleScannedLocation(any(FileUpdate.class), any());
+    }
+
+    private ScanSummary whenPoolIsScanned() throws CacheException {
+        ScanSummary scan = new ScanSummary(POOL, MessageType.POOL_STATUS_DOWN,
+                                           0, ScanSummary.ALL_UNITS, true);
+        access.handlePnfsidsForPool(scan);
+        return scan;
+    }
+
+    private void givenDirectory(String path, String storageGroup) throws Exception {
+        FsInode dir = fs.mkdir(path);
+        byte[] sGroup = storageGroup.getBytes();
+        byte[] osmTemplate = "StoreName test".getBytes();
+        fs.createTag(dir, "sGroup");
+        fs.createTag(dir, "OSMTemplate");
+        fs.setTag(dir, "sGroup", sGroup, 0, sGroup.length);
+        fs.setTag(dir, "OSMTemplate", osmTemplate, 0, osmTemplate.length);
+    }
+
+    private PnfsId givenFile(String path, long size, String... pools) throws Exception {
+        FsInode inode = fs.createFile(path);
+        Stat stat = new Stat();
+        stat.setSize(size);
+        stat.setAccessLatency(AccessLatency.ONLINE);
+        stat.setRetentionPolicy(RetentionPolicy.REPLICA);
+        fs.setInodeAttributes(inode, 0, stat);
+        for (String pool : pools) {
+            fs.addInodeLocation(inode, StorageGenericLocation.DISK, pool);
+        }
+        return new PnfsId(inode.getId());
+    }
+
+    private PnfsId givenFileOnTape(String path, long size, String... pools) throws Exception {
+        PnfsId pnfsId = givenFile(path, size, pools);
+        fs.addInodeLocation(fs.path2inode(path), StorageGenericLocation.TAPE,
+                            "osm://test/?store=test&group=beta&bfid=" + pnfsId);
+        return pnfsId;
+    }
+}
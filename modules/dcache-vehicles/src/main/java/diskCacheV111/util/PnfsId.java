@@ -47,6 +47,27 @@ public class PnfsId implements Serializable, Comparable<PnfsId> {
         _a = BaseEncoding.base16().decode(expandedId.toUpperCase());
     }
 
+    private PnfsId(byte[] a) {
+        _a = a;
+    }
+
+    /**
+     * Returns the PnfsId with the given binary representation, as returned
+     * by {@link #toByteArray}.
+     */
+    public static PnfsId fromByteArray(byte[] bytes) {
+        checkArgument(bytes.length == PNFS_ID_SIZE / 2 || bytes.length == CHIMERA_ID_SIZE / 2,
+                "Illegal pnfsid length");
+        return new PnfsId(bytes.clone());
+    }
+
+    /**
+     * Returns the binary representation of this PnfsId.
+     */
+    public byte[] toByteArray() {
+        return _a.clone();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,361 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.StorageInfo;
+
+import dmg.cells.nucleus.MessageCodec;
+
+import org.dcache.acl.ACL;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+
+/**
+ * Compact encoding of FileAttributes for the compact message serializer.
+ * <p>
+ * The defined attributes are written as a bit mask followed by the value of
+ * each defined attribute. Most values are written in binary form; the ACL
+ * and storage info are written as nested objects.
+ * <p>
+ * The encoding relies on the ordinals of {@link FileAttribute} and
+ * {@link FileType}. Any change to those enums requires a new version of
+ * this codec.
+ */
+public class FileAttributesCodec implements MessageCodec<FileAttributes>
+{
+    private static final int ID = 1;
+    private static final int VERSION = 1;
+
+    private static final Set<FileAttribute> SUPPORTED =
+            EnumSet.complementOf(EnumSet.of(FileAttribute.SIMPLE_TYPE));
+
+    private static final FileAttribute[] ATTRIBUTES = FileAttribute.values();
+    private static final FileType[] FILE_TYPES = FileType.values();
+
+    @Override
+    public int getId()
+    {
+        return ID;
+    }
+
+    @Override
+    public Class<FileAttributes> getType()
+    {
+        return FileAttributes.class;
+    }
+
+    @Override
+    public int getVersion()
+    {
+        return VERSION;
+    }
+
+    @Override
+    public boolean canEncode(FileAttributes attributes)
+    {
+        return SUPPORTED.containsAll(attributes.getDefinedAttributes());
+    }
+
+    @Override
+    public void encode(FileAttributes attributes, ObjectOutput out) throws IOException
+    {
+        Set<FileAttribute> defined = attributes.getDefinedAttributes();
+        long mask = 0;
+        for (FileAttribute attribute : defined) {
+            mask |= 1L << attribute.ordinal();
+        }
+        out.writeLong(mask);
+
+        for (FileAttribute attribute : defined) {
+            switch (attribute) {
+            case ACCESS_LATENCY:
+                out.writeByte(attributes.getAccessLatency().getId());
+                break;
+            case ACCESS_TIME:
+                out.writeLong(attributes.getAccessTime());
+                break;
+            case ACL:
+                out.writeObject(attributes.getAcl());
+                break;
+            case CACHECLASS:
+                writeString(out, attributes.getCacheClass());
+                break;
+            case CHECKSUM:
+                writeChecksums(out, attributes.getChecksums());
+                break;
+            case CHANGE_TIME:
+                out.writeLong(attributes.getChangeTime());
+                break;
+            case CREATION_TIME:
+                out.writeLong(attributes.getCreationTime());
+                break;
+            case FLAGS:
+                writeMap(out, attributes.getFlags());
+                break;
+            case HSM:
+                writeString(out, attributes.getHsm());
+                break;
+            case LOCATIONS:
+                writeStrings(out, attributes.getLocations());
+                break;
+            case MODE:
+                out.writeInt(attributes.getMode());
+                break;
+            case MODIFICATION_TIME:
+                out.writeLong(attributes.getModificationTime());
+                break;
+            case OWNER:
+                out.writeInt(attributes.getOwner());
+                break;
+            case OWNER_GROUP:
+                out.writeInt(attributes.getGroup());
+                break;
+            case RETENTION_POLICY:
+                out.writeByte(attributes.getRetentionPolicy().getId());
+                break;
+            case SIZE:
+                out.writeLong(attributes.getSize());
+                break;
+            case STORAGECLASS:
+                writeString(out, attributes.getStorageClass());
+                break;
+            case STORAGEINFO:
+                out.writeObject(attributes.getStorageInfo());
+                break;
+            case TYPE:
+                out.writeByte(attributes.getFileType().ordinal());
+                break;
+            case PNFSID:
+                byte[] id = attributes.getPnfsId().toByteArray();
+                out.writeByte(id.length);
+                out.write(id);
+                break;
+            case NLINK:
+                out.writeInt(attributes.getNlink());
+                break;
+            case XATTR:
+                writeMap(out, attributes.getXattrs());
+                break;
+            default:
+                throw new IOException("Unsupported attribute: " + attribute);
+            }
+        }
+    }
+
+    @Override
+    public FileAttributes decode(ObjectInput in, int version) throws IOException, ClassNotFoundException
+    {
+        FileAttributes attributes = new FileAttributes();
+        long mask = in.readLong();
+        for (FileAttribute attribute : ATTRIBUTES) {
+            if ((mask & (1L << attribute.ordinal())) == 0) {
+                continue;
+            }
+            switch (attribute) {
+            case ACCESS_LATENCY:
+                attributes.setAccessLatency(AccessLatency.getAccessLatency(in.readByte()));
+                break;
+            case ACCESS_TIME:
+                attributes.setAccessTime(in.readLong());
+                break;
+            case ACL:
+                attributes.setAcl((ACL) in.readObject());
+                break;
+            case CACHECLASS:
+                attributes.setCacheClass(intern(readString(in)));
+                break;
+            case CHECKSUM:
+                attributes.setChecksums(readChecksums(in));
+                break;
+            case CHANGE_TIME:
+                attributes.setChangeTime(in.readLong());
+                break;
+            case CREATION_TIME:
+                attributes.setCreationTime(in.readLong());
+                break;
+            case FLAGS:
+                attributes.setFlags(readMap(in, true));
+                break;
+            case HSM:
+                attributes.setHsm(intern(readString(in)));
+                break;
+            case LOCATIONS:
+                attributes.setLocations(readStrings(in));
+                break;
+            case MODE:
+                attributes.setMode(in.readInt());
+                break;
+            case MODIFICATION_TIME:
+                attributes.setModificationTime(in.readLong());
+                break;
+            case OWNER:
+                attributes.setOwner(in.readInt());
+                break;
+            case OWNER_GROUP:
+                attributes.setGroup(in.readInt());
+                break;
+            case RETENTION_POLICY:
+                attributes.setRetentionPolicy(RetentionPolicy.getRetentionPolicy(in.readByte()));
+                break;
+            case SIZE:
+                attributes.setSize(in.readLong());
+                break;
+            case STORAGECLASS:
+                attributes.setStorageClass(intern(readString(in)));
+                break;
+            case STORAGEINFO:
+                attributes.setStorageInfo((StorageInfo) in.readObject());
+                break;
+            case TYPE:
+                attributes.setFileType(FILE_TYPES[in.readUnsignedByte()]);
+                break;
+            case PNFSID:
+                byte[] id = new byte[in.readUnsignedByte()];
+                in.readFully(id);
+                attributes.setPnfsId(PnfsId.fromByteArray(id));
+                break;
+            case NLINK:
+                attributes.setNlink(in.readInt());
+                break;
+            case XATTR:
+                attributes.setXattrs(readMap(in, false));
+                break;
+            default:
+                throw new IOException("Unsupported attribute: " + attribute);
+            }
+        }
+        return attributes;
+    }
+
+    private static String intern(String s)
+    {
+        return (s == null) ? null : s.intern();
+    }
+
+    private static void writeString(ObjectOutput out, String s) throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            writeUTF8(out, s);
+        }
+    }
+
+    private static String readString(ObjectInput in) throws IOException
+    {
+        return in.readBoolean() ? readUTF8(in) : null;
+    }
+
+    /**
+     * Writes the UTF-8 encoding of the string prefixed with its length.
+     * Unlike {@link ObjectOutput#writeUTF}, this is not limited to strings
+     * of 65535 encoded bytes.
+     */
+    private static void writeUTF8(ObjectOutput out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readUTF8(ObjectInput in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new StreamCorruptedException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(ObjectOutput out, Collection<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeUTF8(out, s);
+        }
+    }
+
+    private static Collection<String> readStrings(ObjectInput in) throws IOException
+    {
+        int size = in.readInt();
+        Collection<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readUTF8(in));
+        }
+        return strings;
+    }
+
+    private static void writeMap(ObjectOutput out, Map<String, String> map) throws IOException
+    {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeUTF8(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(ObjectInput in, boolean internKeys) throws IOException
+    {
+        int size = in.readInt();
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readUTF8(in);
+            map.put(internKeys ? key.intern() : key, readString(in));
+        }
+        return map;
+    }
+
+    private static void writeChecksums(ObjectOutput out, Set<Checksum> checksums) throws IOException
+    {
+        out.writeInt(checksums.size());
+        for (Checksum checksum : checksums) {
+            out.writeByte(checksum.getType().getType());
+            writeUTF8(out, checksum.getValue());
+        }
+    }
+
+    private static Set<Checksum> readChecksums(ObjectInput in) throws IOException
+    {
+        int size = in.readInt();
+        Set<Checksum> checksums = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            ChecksumType type = ChecksumType.getChecksumType(in.readByte());
+            checksums.add(new Checksum(type, readUTF8(in)));
+        }
+        return checksums;
+    }
+}
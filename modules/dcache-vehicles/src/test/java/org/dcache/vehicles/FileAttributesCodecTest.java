@@ -0,0 +1,185 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.GenericStorageInfo;
+
+import dmg.cells.nucleus.MsgSerializerCompact;
+import dmg.cells.nucleus.SerializationHandler;
+
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileAttributesCodecTest
+{
+    private static final PnfsId PNFSID = new PnfsId("0000D7F4B5E3E7B24E4FA3E64C2A9A4B0A5F");
+
+    static FileAttributes fullAttributes()
+    {
+        GenericStorageInfo info = new GenericStorageInfo("osm", "atlas:raw");
+        info.addLocation(URI.create("osm://osm/?store=atlas&group=raw&bfid=0000D7F4"));
+        info.setKey("path", "/pnfs/example.org/data/atlas/raw/file-1");
+
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(PNFSID);
+        attributes.setSize(3_221_225_472L);
+        attributes.setAccessTime(1_600_000_000_000L);
+        attributes.setChangeTime(1_600_000_001_000L);
+        attributes.setCreationTime(1_600_000_002_000L);
+        attributes.setModificationTime(1_600_000_003_000L);
+        attributes.setOwner(3750);
+        attributes.setGroup(1000);
+        attributes.setMode(0644);
+        attributes.setNlink(1);
+        attributes.setFileType(FileType.REGULAR);
+        attributes.setAccessLatency(AccessLatency.NEARLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.CUSTODIAL);
+        attributes.setStorageClass("atlas:raw");
+        attributes.setHsm("osm");
+        attributes.setCacheClass(null);
+        attributes.setChecksums(Set.of(new Checksum(ChecksumType.ADLER32, "4d3a2f1b")));
+        attributes.setLocations(List.of("pool-a", "pool-b"));
+        attributes.setFlags(Map.of("h", "yes"));
+        attributes.setXattrs(Map.of("user.project", "atlas"));
+        attributes.setStorageInfo(info);
+        return attributes;
+    }
+
+    @Test
+    public void shouldEncodeAllDefinedAttributes()
+    {
+        FileAttributes original = fullAttributes();
+
+        FileAttributes decoded = roundTrip(original);
+
+        assertThat(decoded.getDefinedAttributes(), equalTo(original.getDefinedAttributes()));
+        assertThat(decoded.getPnfsId(), equalTo(PNFSID));
+        assertThat(decoded.getSize(), equalTo(3_221_225_472L));
+        assertThat(decoded.getAccessTime(), equalTo(1_600_000_000_000L));
+        assertThat(decoded.getChangeTime(), equalTo(1_600_000_001_000L));
+        assertThat(decoded.getCreationTime(), equalTo(1_600_000_002_000L));
+        assertThat(decoded.getModificationTime(), equalTo(1_600_000_003_000L));
+        assertThat(decoded.getOwner(), equalTo(3750));
+        assertThat(decoded.getGroup(), equalTo(1000));
+        assertThat(decoded.getMode(), equalTo(0644));
+        assertThat(decoded.getNlink(), equalTo(1));
+        assertThat(decoded.getFileType(), equalTo(FileType.REGULAR));
+        assertThat(decoded.getAccessLatency(), equalTo(AccessLatency.NEARLINE));
+        assertThat(decoded.getRetentionPolicy(), equalTo(RetentionPolicy.CUSTODIAL));
+        assertThat(decoded.getStorageClass(), equalTo("atlas:raw"));
+        assertThat(decoded.getHsm(), equalTo("osm"));
+        assertThat(decoded.getCacheClass(), equalTo(null));
+        assertThat(decoded.getChecksums(), equalTo(original.getChecksums()));
+        assertThat(decoded.getLocations(), containsInAnyOrder("pool-a", "pool-b"));
+        assertThat(decoded.getFlags(), equalTo(Map.of("h", "yes")));
+        assertThat(decoded.getXattrs(), equalTo(Map.of("user.project", "atlas")));
+        assertThat(decoded.getStorageInfo(), equalTo(original.getStorageInfo()));
+    }
+
+    @Test
+    public void shouldEncodeEmptyAttributes()
+    {
+        FileAttributes decoded = roundTrip(new FileAttributes());
+
+        assertTrue(decoded.getDefinedAttributes().isEmpty());
+    }
+
+    @Test
+    public void shouldEncodeStringsLongerThan64KiB()
+    {
+        String value = "\u00e4".repeat(40_000);
+        String location = "pool-" + "x".repeat(70_000);
+        FileAttributes original = new FileAttributes();
+        original.setStorageClass(value);
+        original.setLocations(List.of(location));
+        original.setXattrs(Map.of(value, value));
+
+        FileAttributes decoded = roundTrip(original);
+
+        assertThat(decoded.getStorageClass(), equalTo(value));
+        assertThat(decoded.getLocations(), containsInAnyOrder(location));
+        assertThat(decoded.getXattrs(), equalTo(Map.of(value, value)));
+    }
+
+    @Test
+    public void shouldEncodeAttributesNestedInMessage()
+    {
+        PnfsGetFileAttributes message =
+                new PnfsGetFileAttributes(PNFSID, EnumSet.of(FileAttribute.SIZE, FileAttribute.LOCATIONS));
+        message.setFileAttributes(fullAttributes());
+
+        byte[] encoded = SerializationHandler.encode(message, SerializationHandler.Serializer.COMPACT);
+        PnfsGetFileAttributes decoded = (PnfsGetFileAttributes) SerializationHandler.decode(encoded);
+
+        assertThat(decoded.getPnfsId(), equalTo(PNFSID));
+        assertThat(decoded.getRequestedAttributes(), equalTo(message.getRequestedAttributes()));
+        assertThat(decoded.getFileAttributes().getSize(), equalTo(3_221_225_472L));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJavaSerialization()
+    {
+        PnfsGetFileAttributes message =
+                new PnfsGetFileAttributes(PNFSID, EnumSet.allOf(FileAttribute.class));
+        message.setFileAttributes(fullAttributes());
+
+        byte[] jos = SerializationHandler.encode(message, SerializationHandler.Serializer.JOS);
+        byte[] compact = SerializationHandler.encode(message, SerializationHandler.Serializer.COMPACT);
+
+        assertThat(compact.length, lessThan(jos.length));
+    }
+
+    @Test
+    public void shouldDistinguishCompactFromJavaSerialization()
+    {
+        byte[] jos = SerializationHandler.encode(fullAttributes(), SerializationHandler.Serializer.JOS);
+        byte[] compact = SerializationHandler.encode(fullAttributes(), SerializationHandler.Serializer.COMPACT);
+
+        assertTrue(MsgSerializerCompact.isCompactEncoded(compact));
+        assertFalse(MsgSerializerCompact.isCompactEncoded(jos));
+        assertTrue(SerializationHandler.isEncodedWith(jos, SerializationHandler.Serializer.JOS));
+        assertFalse(SerializationHandler.isEncodedWith(compact, SerializationHandler.Serializer.JOS));
+    }
+
+    private static FileAttributes roundTrip(FileAttributes attributes)
+    {
+        byte[] encoded = SerializationHandler.encode(attributes, SerializationHandler.Serializer.COMPACT);
+        return (FileAttributes) SerializationHandler.decode(encoded);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import java.io.Serializable;
+import java.util.EnumSet;
+
+import diskCacheV111.util.PnfsId;
+
+import dmg.cells.nucleus.SerializationHandler;
+import dmg.cells.nucleus.SerializationHandler.Serializer;
+
+import org.dcache.namespace.FileAttribute;
+
+/**
+ * Compares size and encode/decode time of the message serializers for
+ * typical namespace messages.
+ * <p>
+ * Run with:
+ * <pre>
+ *     java -cp ... org.dcache.vehicles.MessageSerializerBenchmark [iterations]
+ * </pre>
+ */
+public class MessageSerializerBenchmark
+{
+    private static final Serializer[] SERIALIZERS = { Serializer.JOS, Serializer.FST, Serializer.COMPACT };
+
+    private static void run(String name, Serializable message, int iterations)
+    {
+        for (Serializer serializer : SERIALIZERS) {
+            /* Warm up. */
+            for (int i = 0; i < iterations / 10; i++) {
+                SerializationHandler.decode(SerializationHandler.encode(message, serializer));
+            }
+
+            byte[] encoded = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                encoded = SerializationHandler.encode(message, serializer);
+            }
+            long encodeTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                SerializationHandler.decode(encoded);
+            }
+            long decodeTime = System.nanoTime() - start;
+
+            System.out.printf("%-32s %-14s %8d %12.2f %12.2f%n", name, serializer, encoded.length,
+                              encodeTime / 1000.0 / iterations, decodeTime / 1000.0 / iterations);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+
+        PnfsId pnfsId = new PnfsId("0000D7F4B5E3E7B24E4FA3E64C2A9A4B0A5F");
+
+        PnfsGetFileAttributes request = new PnfsGetFileAttributes(pnfsId, EnumSet.allOf(FileAttribute.class));
+        PnfsGetFileAttributes reply = new PnfsGetFileAttributes(pnfsId, EnumSet.allOf(FileAttribute.class));
+        reply.setFileAttributes(FileAttributesCodecTest.fullAttributes());
+        reply.setSucceeded();
+
+        System.out.printf("%-32s %-14s %8s %12s %12s%n", "message", "serializer", "bytes", "encode us", "decode us");
+        run("FileAttributes", FileAttributesCodecTest.fullAttributes(), iterations);
+        run("PnfsGetFileAttributes request", request, iterations);
+        run("PnfsGetFileAttributes reply", reply, iterations);
+    }
+}
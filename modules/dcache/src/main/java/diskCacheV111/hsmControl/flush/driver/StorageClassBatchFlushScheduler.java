@@ -0,0 +1,570 @@
+package diskCacheV111.hsmControl.flush.driver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.hsmControl.flush.HsmFlushControlCore;
+import diskCacheV111.hsmControl.flush.HsmFlushSchedulable;
+import diskCacheV111.pools.StorageClassFlushInfo;
+
+import dmg.cells.nucleus.CellAdapter;
+import dmg.util.CommandInterpreter;
+
+import org.dcache.util.Args;
+
+import static org.dcache.util.ByteUnit.MiB;
+
+/**
+ * Flush driver which writes each storage class to tape in large batches.
+ * <p>
+ * Without a central driver every pool flushes its storage classes on its own,
+ * so many small pools in front of a single tape system produce many small,
+ * interleaved flush sets per storage class. This driver instead sums up the
+ * pending precious files of each storage class over all configured pools. Once
+ * the sum reaches the batch size (in megabytes or files), or once the oldest
+ * pending file of the class exceeds the maximum age, the storage class is
+ * flushed on all pools holding files of that class at the same time. A new
+ * batch of a storage class is not started before all pools of the previous
+ * batch are done, and at most {@code max.classes} storage classes are flushed
+ * concurrently, which should be aligned with the number of tape drives.
+ * <p>
+ * Load with
+ * <pre>
+ *     load driver diskCacheV111.hsmControl.flush.driver.StorageClassBatchFlushScheduler \
+ *          [-batch.megabytes=&lt;n&gt;] [-batch.files=&lt;n&gt;] [-max.minutes=&lt;n&gt;] \
+ *          [-max.classes=&lt;n&gt;] [-flush.atonce=&lt;n&gt;]
+ * </pre>
+ * The same keys may be changed later with 'driver properties'.
+ */
+public class StorageClassBatchFlushScheduler implements HsmFlushSchedulable
+{
+    private static final Logger _log =
+            LoggerFactory.getLogger(StorageClassBatchFlushScheduler.class);
+
+    private static final String PARAMETER_BATCH_MEGABYTES = "batch.megabytes";
+    private static final String PARAMETER_BATCH_FILES = "batch.files";
+    private static final String PARAMETER_MAX_MINUTES = "max.minutes";
+    private static final String PARAMETER_MAX_CLASSES = "max.classes";
+    private static final String PARAMETER_FLUSH_ATONCE = "flush.atonce";
+    private static final String PARAMETER_PRINT_EVENTS = "print.events";
+    private static final String PARAMETER_PRINT_RULES = "print.rules";
+
+    private static final String[] PARAMETERS = {
+            PARAMETER_BATCH_MEGABYTES, PARAMETER_BATCH_FILES, PARAMETER_MAX_MINUTES,
+            PARAMETER_MAX_CLASSES, PARAMETER_FLUSH_ATONCE, PARAMETER_PRINT_EVENTS,
+            PARAMETER_PRINT_RULES
+    };
+
+    private final HsmFlushControlCore _core;
+    private final CommandInterpreter _interpreter;
+
+    /**
+     * Batches in progress by storage class.
+     */
+    private final Map<String, Batch> _batches = new TreeMap<>();
+
+    private long _batchMegabytes = 100L * 1024L;
+    private long _batchFiles;
+    private long _maxMinutes = 6L * 60L;
+    private int _maxClasses = 4;
+    private int _flushAtOnce;
+    private boolean _printEvents;
+    private boolean _printRules;
+    private boolean _suspended;
+
+    private long _batchesStarted;
+    private long _batchesCompleted;
+
+    /**
+     * The pending files of a storage class summed up over all pools.
+     */
+    private static class StorageClassSummary
+    {
+        private final String _name;
+        private final Map<String, HsmFlushControlCore.FlushInfo> _idle = new HashMap<>();
+        private long _bytes;
+        private long _files;
+        private long _oldest = Long.MAX_VALUE;
+        private boolean _flushing;
+
+        private StorageClassSummary(String name)
+        {
+            _name = name;
+        }
+
+        private void add(String pool, HsmFlushControlCore.FlushInfo info)
+        {
+            StorageClassFlushInfo flush = info.getStorageClassFlushInfo();
+            if (info.isFlushing()) {
+                _flushing = true;
+            }
+            if (flush == null || flush.getRequestCount() == 0) {
+                return;
+            }
+            _bytes += flush.getTotalPendingFileSize();
+            _files += flush.getRequestCount();
+            if (flush.getOldestFileTimestamp() > 0) {
+                _oldest = Math.min(_oldest, flush.getOldestFileTimestamp());
+            }
+            if (!info.isFlushing()) {
+                _idle.put(pool, info);
+            }
+        }
+    }
+
+    /**
+     * A storage class being flushed on a set of pools.
+     */
+    private static class Batch
+    {
+        private final String _name;
+        private final Set<String> _pools = new HashSet<>();
+        private final long _started = System.currentTimeMillis();
+        private final long _bytes;
+        private final long _files;
+
+        private Batch(String name, long bytes, long files)
+        {
+            _name = name;
+            _bytes = bytes;
+            _files = files;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _name + " bytes=" + _bytes + ";files=" + _files + ";pools=" + _pools
+                   + ";running=" + TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - _started) + "s";
+        }
+    }
+
+    public StorageClassBatchFlushScheduler(CellAdapter cell, HsmFlushControlCore core)
+    {
+        _log.info("StorageClassBatchFlushScheduler started");
+        _core = core;
+        _interpreter = new CommandInterpreter(this);
+    }
+
+    //--------------------------------------------------------------------------------------
+    //
+    //   call backs from the flush manager.
+    //
+    @Override
+    public void init()
+    {
+        Args args = _core.getDriverArgs();
+        Map<String, Object> properties = new HashMap<>();
+        for (String key : PARAMETERS) {
+            String value = args.getOpt(key);
+            if (value != null) {
+                properties.put(key, value);
+            }
+        }
+        propertiesUpdated(properties);
+        _log.info("init : {}", properties);
+    }
+
+    @Override
+    public void prepareUnload()
+    {
+        if (_printEvents) {
+            _log.info("EVENT : Preparing unload; abandoning batches {}", _batches.values());
+        }
+    }
+
+    @Override
+    public void configuredPoolAdded(String poolName)
+    {
+        if (_printEvents) {
+            _log.info("EVENT : Configured pool added : {}", poolName);
+        }
+    }
+
+    @Override
+    public void configuredPoolRemoved(String poolName)
+    {
+        if (_printEvents) {
+            _log.info("EVENT : Configured pool removed : {}", poolName);
+        }
+        Iterator<Batch> i = _batches.values().iterator();
+        while (i.hasNext()) {
+            Batch batch = i.next();
+            if (batch._pools.remove(poolName) && batch._pools.isEmpty()) {
+                completed(batch);
+                i.remove();
+            }
+        }
+    }
+
+    @Override
+    public void flushingDone(String poolName, String storageClassName,
+                             HsmFlushControlCore.FlushInfo flushInfo)
+    {
+        if (_printEvents) {
+            _log.info("EVENT : flushingDone : pool={};class={}", poolName, storageClassName);
+        }
+        Batch batch = _batches.get(storageClassName);
+        if (batch != null && batch._pools.remove(poolName) && batch._pools.isEmpty()) {
+            completed(batch);
+            _batches.remove(storageClassName);
+        }
+    }
+
+    @Override
+    public void poolFlushInfoUpdated(String poolName, HsmFlushControlCore.Pool pool)
+    {
+        if (_printEvents) {
+            _log.info("EVENT : poolFlushInfoUpdated : {}", poolName);
+        }
+    }
+
+    @Override
+    public void poolIoModeUpdated(String poolName, HsmFlushControlCore.Pool pool)
+    {
+        if (_printEvents) {
+            _log.info("EVENT : poolIoModeUpdated : {}", pool);
+        }
+    }
+
+    @Override
+    public void poolSetupUpdated()
+    {
+        if (_printEvents) {
+            _log.info("EVENT : Pool Setup updated");
+        }
+    }
+
+    @Override
+    public void reset()
+    {
+        if (_printEvents) {
+            _log.info("EVENT : reset");
+        }
+    }
+
+    @Override
+    public void timer()
+    {
+        if (_printEvents) {
+            _log.info("EVENT : timer");
+        }
+        removeFinishedPools();
+        if (!_suspended) {
+            processBatchRules(summarize(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Executes the external command with CommandInterpreter (using our ac_xx) commands.
+     */
+    @Override
+    public void command(Args args)
+    {
+        if (_printEvents) {
+            _log.info("EVENT : command : {}", args);
+        }
+        if (args.argc() == 0) {
+            return;
+        }
+        try {
+            Object reply = _interpreter.command(args);
+            if (reply == null) {
+                throw new Exception("Null pointer from command call");
+            }
+            _log.info("Command returns : {}", reply);
+        } catch (Exception ee) {
+            _log.warn("Command returns an exception ({}) : {}", ee.getClass().getName(), ee.toString());
+        }
+    }
+
+    @Override
+    public void propertiesUpdated(Map<String, Object> properties)
+    {
+        if (_printEvents) {
+            _log.info("EVENT : propertiesUpdated : {}", properties);
+        }
+        for (String key : new HashSet<>(properties.keySet())) {
+            try {
+                switch (key) {
+                case PARAMETER_BATCH_MEGABYTES:
+                    _batchMegabytes = handleLong(properties, key, 0, Long.MAX_VALUE / MiB.toBytes(1L));
+                    break;
+                case PARAMETER_BATCH_FILES:
+                    _batchFiles = handleLong(properties, key, 0, Integer.MAX_VALUE);
+                    break;
+                case PARAMETER_MAX_MINUTES:
+                    _maxMinutes = handleLong(properties, key, 0, TimeUnit.DAYS.toMinutes(365));
+                    break;
+                case PARAMETER_MAX_CLASSES:
+                    _maxClasses = (int) handleLong(properties, key, 1, Integer.MAX_VALUE);
+                    break;
+                case PARAMETER_FLUSH_ATONCE:
+                    _flushAtOnce = (int) handleLong(properties, key, 0, Integer.MAX_VALUE);
+                    break;
+                case PARAMETER_PRINT_EVENTS:
+                    _printEvents = handleBoolean(properties, key);
+                    break;
+                case PARAMETER_PRINT_RULES:
+                    _printRules = handleBoolean(properties, key);
+                    break;
+                default:
+                    //
+                    // remove the key to inform the requestor that we don't
+                    // support this property.
+                    //
+                    properties.remove(key);
+                }
+            } catch (IllegalArgumentException ee) {
+                _log.warn("Exception while setting {} : {}", key, ee.getMessage());
+            }
+        }
+        //
+        // do as it would have been a query
+        //
+        properties.put(PARAMETER_BATCH_MEGABYTES, String.valueOf(_batchMegabytes));
+        properties.put(PARAMETER_BATCH_FILES, String.valueOf(_batchFiles));
+        properties.put(PARAMETER_MAX_MINUTES, String.valueOf(_maxMinutes));
+        properties.put(PARAMETER_MAX_CLASSES, String.valueOf(_maxClasses));
+        properties.put(PARAMETER_FLUSH_ATONCE, String.valueOf(_flushAtOnce));
+        properties.put(PARAMETER_PRINT_EVENTS, String.valueOf(_printEvents));
+        properties.put(PARAMETER_PRINT_RULES, String.valueOf(_printRules));
+    }
+
+    //-----------------------------------------------------------------------------------------
+    //
+    // RULE ENGINE
+    //
+
+    /**
+     * Sums up the pending files of each storage class over all active pools.
+     */
+    private Map<String, StorageClassSummary> summarize()
+    {
+        Map<String, StorageClassSummary> summaries = new HashMap<>();
+        for (HsmFlushControlCore.Pool pool : _core.getConfiguredPools()) {
+            if (!pool.isActive()) {
+                continue;
+            }
+            for (String name : pool.getStorageClassNames()) {
+                HsmFlushControlCore.FlushInfo info = pool.getFlushInfoByStorageClass(name);
+                if (info != null) {
+                    summaries.computeIfAbsent(name, StorageClassSummary::new).add(pool.getName(), info);
+                }
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Removes pools from their batch if they are no longer flushing the
+     * storage class of that batch. Covers flush requests that failed or
+     * pools that went away, neither of which is reported by flushingDone.
+     */
+    private void removeFinishedPools()
+    {
+        Iterator<Batch> i = _batches.values().iterator();
+        while (i.hasNext()) {
+            Batch batch = i.next();
+            batch._pools.removeIf(name -> {
+                HsmFlushControlCore.Pool pool = _core.getPoolByName(name);
+                if (pool == null || !pool.isActive()) {
+                    return true;
+                }
+                HsmFlushControlCore.FlushInfo info = pool.getFlushInfoByStorageClass(batch._name);
+                return info == null || !info.isFlushing();
+            });
+            if (batch._pools.isEmpty()) {
+                completed(batch);
+                i.remove();
+            }
+        }
+    }
+
+    private void processBatchRules(Map<String, StorageClassSummary> summaries, long now)
+    {
+        List<StorageClassSummary> candidates = new ArrayList<>();
+        for (StorageClassSummary summary : summaries.values()) {
+            if (_batches.containsKey(summary._name) || summary._idle.isEmpty()) {
+                continue;
+            }
+            if (summary._flushing) {
+                //
+                // flushed outside of a batch; wait until that is done to
+                // avoid splitting the class into two partial batches.
+                //
+                if (_printRules) {
+                    _log.info("RULES : {} is already flushing", summary._name);
+                }
+                continue;
+            }
+            if (isDue(summary, now)) {
+                candidates.add(summary);
+            } else if (_printRules) {
+                _log.info("RULES : {} not due : bytes={};files={}", summary._name,
+                          summary._bytes, summary._files);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        candidates.sort(Comparator.comparingDouble((StorageClassSummary s) -> getMetric(s, now)).reversed());
+        for (StorageClassSummary summary : candidates) {
+            if (_batches.size() >= _maxClasses) {
+                if (_printRules) {
+                    _log.info("RULES : {} storage classes in progress; postponing {}",
+                              _batches.size(), summary._name);
+                }
+                continue;
+            }
+            startBatch(summary);
+        }
+    }
+
+    private boolean isDue(StorageClassSummary summary, long now)
+    {
+        return summary._bytes >= MiB.toBytes(_batchMegabytes)
+               || (_batchFiles > 0 && summary._files >= _batchFiles)
+               || (summary._oldest != Long.MAX_VALUE
+                   && now - summary._oldest >= TimeUnit.MINUTES.toMillis(_maxMinutes));
+    }
+
+    /**
+     * Returns how urgently a storage class needs to be flushed. Classes
+     * exceeding their limits the most go first.
+     */
+    private double getMetric(StorageClassSummary summary, long now)
+    {
+        double metric = (double) summary._bytes / Math.max(1L, MiB.toBytes(_batchMegabytes));
+        if (_batchFiles > 0) {
+            metric = Math.max(metric, (double) summary._files / _batchFiles);
+        }
+        if (summary._oldest != Long.MAX_VALUE) {
+            metric = Math.max(metric, (double) (now - summary._oldest)
+                                      / Math.max(1L, TimeUnit.MINUTES.toMillis(_maxMinutes)));
+        }
+        return metric;
+    }
+
+    private Batch startBatch(StorageClassSummary summary)
+    {
+        Batch batch = new Batch(summary._name, summary._bytes, summary._files);
+        for (Map.Entry<String, HsmFlushControlCore.FlushInfo> e : summary._idle.entrySet()) {
+            String poolName = e.getKey();
+            try {
+                e.getValue().flush(_flushAtOnce);
+                batch._pools.add(poolName);
+            } catch (Exception ee) {
+                _log.warn("Problem flushing {} on {} : {}", summary._name, poolName, ee.toString());
+            }
+        }
+        if (batch._pools.isEmpty()) {
+            return null;
+        }
+        _batches.put(batch._name, batch);
+        _batchesStarted++;
+        _log.info("Started batch {}", batch);
+        return batch;
+    }
+
+    private void completed(Batch batch)
+    {
+        _batchesCompleted++;
+        _log.info("Completed batch {}", batch);
+    }
+
+    private static long handleLong(Map<String, Object> properties, String key, long minValue, long maxValue)
+    {
+        Object obj = properties.get(key);
+        if (obj == null) {
+            throw new IllegalArgumentException("No Value for " + key);
+        }
+        long value = Long.parseLong(obj.toString());
+        if (value < minValue || value > maxValue) {
+            throw new IllegalArgumentException("Value for " + key + " not in range " + minValue + " <= n <= " + maxValue);
+        }
+        return value;
+    }
+
+    private static boolean handleBoolean(Map<String, Object> properties, String key)
+    {
+        Object obj = properties.get(key);
+        if (obj == null) {
+            throw new IllegalArgumentException("No Value for " + key);
+        }
+        switch (obj.toString()) {
+        case "true":
+            return true;
+        case "false":
+            return false;
+        default:
+            throw new IllegalArgumentException("Value for " + key + " must be boolean (true/false)");
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------
+    //
+    //              C O M M A N D S
+    //
+    public static final String hh_suspend = "# do not start new batches, running batches continue";
+    public String ac_suspend(Args args)
+    {
+        _suspended = true;
+        return "";
+    }
+
+    public static final String hh_resume = "# resume starting batches";
+    public String ac_resume(Args args)
+    {
+        _suspended = false;
+        return "";
+    }
+
+    public static final String hh_flush_class = "<storageClass> # start a batch regardless of its size and age";
+    public String ac_flush_class_$_1(Args args)
+    {
+        String name = args.argv(0);
+        if (_batches.containsKey(name)) {
+            throw new IllegalArgumentException("Batch in progress : " + name);
+        }
+        StorageClassSummary summary = summarize().get(name);
+        if (summary == null || summary._idle.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to flush : " + name);
+        }
+        Batch batch = startBatch(summary);
+        return batch == null ? "Failed to flush " + name : batch.toString();
+    }
+
+    public static final String hh_ls_batches = "# list batches in progress and pending storage classes";
+    public String ac_ls_batches(Args args)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Batches started   : ").append(_batchesStarted).append('\n');
+        sb.append("Batches completed : ").append(_batchesCompleted).append('\n');
+        for (Batch batch : _batches.values()) {
+            sb.append("  active  ").append(batch).append('\n');
+        }
+        long now = System.currentTimeMillis();
+        for (StorageClassSummary summary : new TreeMap<>(summarize()).values()) {
+            if (!_batches.containsKey(summary._name)) {
+                sb.append("  pending ").append(summary._name)
+                        .append(" bytes=").append(summary._bytes)
+                        .append(";files=").append(summary._files)
+                        .append(";metric=").append(String.format("%.2f", getMetric(summary, now)))
+                        .append('\n');
+            }
+        }
+        _log.info(sb.toString());
+        return sb.toString();
+    }
+}
@@ -12,8 +12,12 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
@@ -45,7 +49,32 @@ public class CostModuleV1
 
     private static final long serialVersionUID = -267023006449629909L;
 
+    /**
+     * Maximum number of pool removals remembered for computing deltas.
+     */
+    private static final int MAX_REMOVALS = 10000;
+
     private final Map<String, Entry> _hash = new HashMap<>() ;
+
+    /**
+     * Incremented whenever an entry is added, replaced or removed. Entries
+     * and removals are stamped with the version, allowing the changes
+     * since some version to be determined.
+     */
+    private long _version;
+
+    /**
+     * Versions at which pools were removed, in order of removal. Pools
+     * that are added again are dropped from this map.
+     */
+    private final Map<String, Long> _removals = new LinkedHashMap<>();
+
+    /**
+     * Changes since versions older than this cannot be determined, as the
+     * removal records have been discarded.
+     */
+    private long _oldestDeltaVersion;
+
     private boolean _cachedPercentileCostCutIsValid;
     private double _cachedPercentileCostCut;
     private double _cachedPercentileFraction;
@@ -58,14 +87,16 @@ public class CostModuleV1
        private static final long serialVersionUID = -6380756950554320179L;
 
        private final long timestamp;
+       private final long _version;
        private final PoolCostInfo _info;
        private double _fakeCpu = -1.0;
        private final ImmutableMap<String,String> _tagMap;
        private final CellAddressCore _address;
 
-       public Entry(CellAddressCore address, PoolCostInfo info, Map<String,String> tagMap)
+       public Entry(CellAddressCore address, PoolCostInfo info, Map<String,String> tagMap, long version)
        {
            timestamp = System.currentTimeMillis();
+           _version = version;
            _address = address;
            _info = info;
            _tagMap =
@@ -117,9 +148,117 @@ public class CostModuleV1
         }
 
         if (shouldRemovePool) {
-            _hash.remove(poolName);
+            if (_hash.remove(poolName) != null) {
+                recordRemoval(poolName, ++_version);
+            }
         } else if (newInfo != null) {
-            _hash.put(poolName, new Entry(poolAddress, newInfo, msg.getTagMap()));
+            _hash.put(poolName, new Entry(poolAddress, newInfo, msg.getTagMap(), ++_version));
+            _removals.remove(poolName);
+        }
+    }
+
+    private void recordRemoval(String poolName, long version)
+    {
+        _removals.remove(poolName);
+        _removals.put(poolName, version);
+        if (_removals.size() > MAX_REMOVALS) {
+            Iterator<Long> oldest = _removals.values().iterator();
+            _oldestDeltaVersion = oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Returns the current version of the cost module.
+     */
+    public synchronized long getVersion()
+    {
+        return _version;
+    }
+
+    /**
+     * Returns the changes since the given version.
+     *
+     * @param since a version previously returned by {@link #getVersion}
+     * @return the changes, or null if they cannot be determined
+     */
+    @Nullable
+    public synchronized Delta getDelta(long since)
+    {
+        if (since < _oldestDeltaVersion || since > _version) {
+            return null;
+        }
+        Map<String, Entry> updated = new HashMap<>();
+        for (Map.Entry<String, Entry> e : _hash.entrySet()) {
+            if (e.getValue()._version > since) {
+                updated.put(e.getKey(), e.getValue());
+            }
+        }
+        Map<String, Long> removed = new HashMap<>();
+        for (Map.Entry<String, Long> e : _removals.entrySet()) {
+            if (e.getValue() > since) {
+                removed.put(e.getKey(), e.getValue());
+            }
+        }
+        return new Delta(updated, removed);
+    }
+
+    /**
+     * Returns a copy of this cost module with the given changes applied.
+     * An entry is only replaced or removed by a change stamped with a newer
+     * version, thus changes may be applied more than once and deltas
+     * may overlap.
+     */
+    public synchronized CostModuleV1 apply(Delta delta)
+    {
+        CostModuleV1 copy = new CostModuleV1();
+        copy._hash.putAll(_hash);
+        copy._version = _version;
+        delta._updated.forEach((pool, entry) -> {
+            Entry current = copy._hash.get(pool);
+            if (current == null || current._version < entry._version) {
+                copy._hash.put(pool, entry);
+            }
+        });
+        delta._removed.forEach((pool, version) -> {
+            Entry current = copy._hash.get(pool);
+            if (current != null && current._version < version) {
+                copy._hash.remove(pool);
+            }
+        });
+        return copy;
+    }
+
+    /**
+     * Changes of a cost module since some version.
+     */
+    public static class Delta implements Serializable
+    {
+        private static final long serialVersionUID = 7306358934613045116L;
+
+        private final Map<String, Entry> _updated;
+        private final Map<String, Long> _removed;
+
+        private Delta(Map<String, Entry> updated, Map<String, Long> removed)
+        {
+            _updated = updated;
+            _removed = removed;
+        }
+
+        /**
+         * Returns the names of pools for which new information was received.
+         */
+        public Set<String> getUpdatedPools()
+        {
+            return Collections.unmodifiableSet(_updated.keySet());
+        }
+
+        /**
+         * Returns the names of pools that were removed.
+         */
+        public Set<String> getRemovedPools()
+        {
+            return Collections.unmodifiableSet(_removed.keySet());
         }
     }
 
@@ -63,6 +63,8 @@ import org.dcache.alarms.PredefinedAlarm;
 import org.dcache.cells.CellStub;
 import org.dcache.poolmanager.PoolInfo;
 import org.dcache.poolmanager.PoolLinkGroupInfo;
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PoolMonitorVersion;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.poolmanager.SelectedPool;
 import org.dcache.poolmanager.SerializablePoolMonitor;
@@ -89,6 +91,7 @@ public class PoolManagerV5
     private CostModule   _costModule  ;
     private CellStub _poolStatusTopic;
     private CellStub _poolMonitorTopic;
+    private CellStub _poolMonitorDeltaTopic;
     private PnfsHandler _pnfsHandler;
 
     private RequestContainerV5 _requestContainer ;
@@ -105,6 +108,8 @@ public class PoolManagerV5
     private long _poolMonitorUpdatePeriod;
     private TimeUnit _poolMonitorUpdatePeriodUnit;
     private double _poolMonitorMaxUpdatesPerSecond;
+    private long _poolMonitorDeltaPeriod;
+    private TimeUnit _poolMonitorDeltaPeriodUnit = TimeUnit.SECONDS;
 
     private Args _args;
 
@@ -174,6 +179,25 @@ public class PoolManagerV5
         _poolMonitorMaxUpdatesPerSecond = maxUpdatesPerSecond;
     }
 
+    /**
+     * Sets the topic on which pool monitor deltas are published. Deltas
+     * are not published if not set.
+     */
+    public void setPoolMonitorDeltaTopic(CellStub stub)
+    {
+        _poolMonitorDeltaTopic = stub;
+    }
+
+    public void setPoolMonitorDeltaPeriod(long period)
+    {
+        _poolMonitorDeltaPeriod = period;
+    }
+
+    public void setPoolMonitorDeltaPeriodUnit(TimeUnit unit)
+    {
+        _poolMonitorDeltaPeriodUnit = unit;
+    }
+
     public void init()
     {
         String watchdogParam = _args.getOpt("watchdog");
@@ -296,37 +320,79 @@ public class PoolManagerV5
         }
     }
 
+    /**
+     * Publishes the pool monitor.
+     *
+     * <p>Snapshots of the pool monitor are published periodically and
+     * whenever the pool monitor changed structurally. If a delta topic is
+     * configured, the changes since the previously published delta are in
+     * addition published at a shorter period. Subscribers that missed a
+     * delta request the changes since their version from pool manager.
+     */
     private class PoolMonitorThread extends Thread
     {
         private boolean isChanged;
 
         private final RateLimiter limiter = RateLimiter.create(_poolMonitorMaxUpdatesPerSecond);
 
+        private PoolMonitorVersion lastDelta;
+
         @Override
         public void run()
         {
             try {
+                long nextSnapshot = 0;
+                boolean isSnapshotDue = true;
                 limiter.acquire();
                 while (!Thread.interrupted()) {
-                    if (_log.isDebugEnabled()) { // For RT 9250.
-                        if (_poolMonitor.getPoolSelectionUnit().getLinkGroups().isEmpty()) {
-                            _log.debug("notifying with PoolMonitor that has empty linkgroups");
+                    long now = System.currentTimeMillis();
+                    if (isSnapshotDue || now >= nextSnapshot) {
+                        if (_log.isDebugEnabled()) { // For RT 9250.
+                            if (_poolMonitor.getPoolSelectionUnit().getLinkGroups().isEmpty()) {
+                                _log.debug("notifying with PoolMonitor that has empty linkgroups");
+                            }
                         }
+                        _poolMonitorTopic.notify(_poolMonitor);
+                        nextSnapshot = now + _poolMonitorUpdatePeriodUnit.toMillis(_poolMonitorUpdatePeriod);
                     }
-                    _poolMonitorTopic.notify(_poolMonitor);
-                    waitUntilNextUpdate();
+                    publishDelta();
+                    isSnapshotDue = waitUntilNextUpdate(nextSnapshot - now);
                     limiter.acquire();
                 }
             } catch (InterruptedException ignored) {
             }
         }
 
-        protected synchronized void waitUntilNextUpdate() throws InterruptedException
+        private void publishDelta()
+        {
+            if (_poolMonitorDeltaTopic != null && _poolMonitor instanceof PoolMonitorV5) {
+                PoolMonitorDelta delta = ((PoolMonitorV5) _poolMonitor).getDelta(lastDelta);
+                _poolMonitorDeltaTopic.notify(delta);
+                lastDelta = delta.getVersion();
+            }
+        }
+
+        /**
+         * Waits until the next snapshot or delta is due or the pool monitor
+         * changed.
+         *
+         * @param snapshotDelay milliseconds until the next snapshot is due
+         * @return true if the pool monitor changed
+         */
+        protected synchronized boolean waitUntilNextUpdate(long snapshotDelay) throws InterruptedException
         {
             if (!isChanged) {
-                _poolMonitorUpdatePeriodUnit.timedWait(this, _poolMonitorUpdatePeriod);
+                long delay = snapshotDelay;
+                if (_poolMonitorDeltaTopic != null && _poolMonitorDeltaPeriod > 0) {
+                    delay = Math.min(delay, _poolMonitorDeltaPeriodUnit.toMillis(_poolMonitorDeltaPeriod));
+                }
+                if (delay > 0) {
+                    wait(delay);
+                }
             }
+            boolean changed = isChanged;
             isChanged = false;
+            return changed;
         }
 
         public synchronized void onChange()
@@ -353,12 +419,24 @@ public class PoolManagerV5
             // set pool mode
             //
             pool.setReadOnly((msg.getPoolMode() & PoolManagerPoolModeMessage.WRITE) == 0);
+            selectionUnitModified();
         }
 
         msg.setSucceeded();
         return msg;
     }
 
+    /**
+     * Makes a change of a pool that bypassed the write lock of the pool
+     * selection unit part of the next pool monitor delta.
+     */
+    private void selectionUnitModified()
+    {
+        if (_selectionUnit instanceof PoolSelectionUnitV2) {
+            ((PoolSelectionUnitV2) _selectionUnit).markModified();
+        }
+    }
+
     private void runWatchdogSequence(long deathDetectedTimer)
     {
         for (String name : _selectionUnit.getDefinedPools(false)) {
@@ -366,6 +444,7 @@ public class PoolManagerV5
             if (pool != null) {
                 if (pool.getActive() > deathDetectedTimer
                     && pool.setSerialId(0L)) {
+                    selectionUnitModified();
                     _requestContainer.poolStatusChanged(name, PoolStatusChangedMessage.DOWN);
                     sendPoolStatusRelay(name, PoolStatusChangedMessage.DOWN,
                                         null, 666, "DEAD");
@@ -713,7 +792,11 @@ public class PoolManagerV5
     public PoolManagerGetPoolMonitor
         messageArrived(PoolManagerGetPoolMonitor msg)
     {
-        msg.setPoolMonitor(_poolMonitor);
+        if (msg.isDeltaRequested() && _poolMonitor instanceof PoolMonitorV5) {
+            msg.setPoolMonitorDelta(((PoolMonitorV5) _poolMonitor).getDelta(msg.getKnownVersion()));
+        } else {
+            msg.setPoolMonitor(_poolMonitor);
+        }
         msg.setSucceeded();
         return msg;
     }
@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -42,6 +43,8 @@ import org.dcache.poolmanager.CostException;
 import org.dcache.poolmanager.Partition;
 import org.dcache.poolmanager.PartitionManager;
 import org.dcache.poolmanager.PoolInfo;
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PoolMonitorVersion;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.poolmanager.SelectedPool;
 import org.dcache.poolmanager.SerializablePoolMonitor;
@@ -69,6 +72,12 @@ public class PoolMonitorV5
      */
     private boolean _enableLinkFallback;
 
+    /**
+     * Identifies this incarnation of the pool monitor in versions handed
+     * out by {@link #getDelta}.
+     */
+    private final transient String _epoch = UUID.randomUUID().toString();
+
     @Override
     public PoolSelectionUnit getPoolSelectionUnit()
     {
@@ -107,6 +116,79 @@ public class PoolMonitorV5
         _partitionManager = partitionManager;
     }
 
+    /**
+     * Returns the current version of the pool monitor, or null if versions
+     * are not supported by the pool selection unit or cost module.
+     */
+    @Nullable
+    public PoolMonitorVersion getVersion()
+    {
+        if (!(_selectionUnit instanceof PoolSelectionUnitV2) || !(_costModule instanceof CostModuleV1)) {
+            return null;
+        }
+        return new PoolMonitorVersion(_epoch,
+                                      ((PoolSelectionUnitV2) _selectionUnit).getModificationCount(),
+                                      ((CostModuleV1) _costModule).getVersion());
+    }
+
+    /**
+     * Returns the changes since the given version.
+     *
+     * <p>A snapshot is returned if {@code since} is null, belongs to another
+     * epoch, or if the changes since that version cannot be determined.
+     */
+    public PoolMonitorDelta getDelta(@Nullable PoolMonitorVersion since)
+    {
+        /* Versions are read before the state, so a change racing with this
+         * call is at worst included in the next delta too.
+         */
+        PoolMonitorVersion version = getVersion();
+        if (version == null) {
+            throw new IllegalStateException("Pool monitor does not support deltas.");
+        }
+        if (since == null || !since.isAtMost(version)) {
+            return PoolMonitorDelta.snapshot(version, this);
+        }
+        CostModuleV1.Delta costs = ((CostModuleV1) _costModule).getDelta(since.getCostModuleVersion());
+        if (costs == null) {
+            return PoolMonitorDelta.snapshot(version, this);
+        }
+        PoolSelectionUnit selectionUnit =
+                (since.getSelectionUnitVersion() < version.getSelectionUnitVersion()) ? _selectionUnit : null;
+        return PoolMonitorDelta.delta(since, version, selectionUnit, _partitionManager, costs);
+    }
+
+    /**
+     * Returns a new pool monitor with the given changes applied.
+     *
+     * <p>The heartbeat of pools for which new cost information is included
+     * in the delta is refreshed in the pool selection unit, as the selection
+     * unit is only part of the delta if it was modified.
+     *
+     * @param current the version of this pool monitor
+     * @param delta changes relative to a version no newer than {@code current}
+     */
+    public PoolMonitorV5 apply(PoolMonitorVersion current, PoolMonitorDelta delta)
+    {
+        PoolMonitorVersion version = delta.getVersion();
+        PoolMonitorV5 monitor = new PoolMonitorV5();
+        monitor._enableLinkFallback = _enableLinkFallback;
+        monitor._partitionManager = delta.getPartitionManager();
+        monitor._selectionUnit =
+                (delta.getSelectionUnit() != null
+                 && current.getSelectionUnitVersion() < version.getSelectionUnitVersion())
+                ? delta.getSelectionUnit()
+                : _selectionUnit;
+        monitor._costModule = ((CostModuleV1) _costModule).apply(delta.getCosts());
+        for (String name : delta.getCosts().getUpdatedPools()) {
+            PoolSelectionUnit.SelectionPool pool = monitor._selectionUnit.getPool(name);
+            if (pool != null) {
+                pool.setActive(true);
+            }
+        }
+        return monitor;
+    }
+
     @Override
     public PoolSelector getPoolSelector(FileAttributes fileAttributes,
                                         ProtocolInfo protocolInfo,
@@ -95,6 +95,12 @@ public class PoolSelectionUnitV2
 
     private final NetHandler _netHandler = new NetHandler();
 
+    /**
+     * Number of times the write lock was released, i.e. an upper bound
+     * of the number of modifications.
+     */
+    private transient volatile long _modificationCount;
+
     @Override
     public Map<String, SelectionLink> getLinks() {
         rlock();
@@ -2486,9 +2492,29 @@ public class PoolSelectionUnitV2
 
     protected void wunlock()
     {
+        _modificationCount++;
         _psuWriteLock.unlock();
     }
 
+    /**
+     * Returns a counter that increases whenever this pool selection unit
+     * is modified.
+     */
+    public long getModificationCount()
+    {
+        return _modificationCount;
+    }
+
+    /**
+     * Records a modification of a pool made without holding the write
+     * lock, such as a change of its mode by pool manager.
+     */
+    public void markModified()
+    {
+        wlock();
+        wunlock();
+    }
+
     protected void rlock()
     {
         _psuReadLock.lock();
@@ -193,8 +193,18 @@ public class RequestContainerV5
 
     private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("MM.dd HH:mm:ss");
 
-    private final Map<UOID, PoolRequestHandler> _messageHash = new HashMap<>();
-    private final Map<String, PoolRequestHandler> _handlerHash = new HashMap<>();
+    /**
+     * Handlers waiting for a reply from a pool, keyed by the UOID of the
+     * request sent to the pool.
+     */
+    private final Map<UOID, PoolRequestHandler> _messageHash = new ConcurrentHashMap<>();
+
+    /**
+     * Active handlers keyed by their canonical name. Iteration is weakly
+     * consistent, i.e. listings neither block nor are blocked by handlers
+     * being added or removed.
+     */
+    private final Map<String, PoolRequestHandler> _handlerHash = new ConcurrentHashMap<>();
 
     private CellStub _billing;
     private CellStub _poolStub;
@@ -340,17 +350,10 @@ public class RequestContainerV5
 
     public void messageArrived(CellMessage envelope, Object message)
     {
-        UOID uoid = envelope.getLastUOID();
-        PoolRequestHandler handler;
-
-        synchronized (_messageHash) {
-            handler = _messageHash.remove(uoid);
-            if (handler == null) {
-                return;
-            }
+        PoolRequestHandler handler = _messageHash.remove(envelope.getLastUOID());
+        if (handler != null) {
+            handler.mailForYou(message);
         }
-
-        handler.mailForYou(message);
     }
 
     @Override
@@ -359,12 +362,7 @@ public class RequestContainerV5
         while (!Thread.interrupted()) {
             try {
                 Thread.sleep(_ticketInterval);
-
-                List<PoolRequestHandler> list;
-                synchronized (_handlerHash) {
-                    list = new ArrayList<>(_handlerHash.values());
-                }
-                list.forEach(PoolRequestHandler::checkExpiredRequests);
+                _handlerHash.values().forEach(PoolRequestHandler::checkExpiredRequests);
             } catch (InterruptedException e) {
                 break;
             } catch (Throwable t) {
@@ -380,12 +378,7 @@ public class RequestContainerV5
     public void poolStatusChanged(String poolName, int poolStatus) {
         _log.info("Restore Manager : got 'poolRestarted' for {}", poolName);
         try {
-            List<PoolRequestHandler> list;
-            synchronized (_handlerHash) {
-                list = new ArrayList<>(_handlerHash.values());
-            }
-
-            for (PoolRequestHandler rph : list) {
+            for (PoolRequestHandler rph : _handlerHash.values()) {
                 switch (poolStatus) {
                 case PoolStatusChangedMessage.UP:
                     /*
@@ -608,26 +601,15 @@ public class RequestContainerV5
     {
         boolean forceAll = args.hasOption("force-all");
         if (args.argv(0).equals("*")) {
-            List<PoolRequestHandler> all;
-            //
-            // Remember : we are not allowed to call 'retry' as long
-            // as we  are holding the _handlerHash lock.
-            //
-            synchronized (_handlerHash) {
-                all = new ArrayList<>(_handlerHash.values());
-            }
-            all.stream()
+            _handlerHash.values().stream()
                     .filter(h -> forceAll || h._currentRc != 0)
                     .forEach(PoolRequestHandler::retry);
         } else {
-            PoolRequestHandler rph;
-            synchronized (_handlerHash) {
-                rph = _handlerHash.get(args.argv(0));
-                if (rph == null) {
-                    throw new
-                            IllegalArgumentException("Not found : " + args
-                                    .argv(0));
-                }
+            PoolRequestHandler rph = _handlerHash.get(args.argv(0));
+            if (rph == null) {
+                throw new
+                        IllegalArgumentException("Not found : " + args
+                                .argv(0));
             }
             rph.retry();
         }
@@ -660,10 +642,7 @@ public class RequestContainerV5
         {
             checkCommand(errorNumber >= 0, "Error number must be >= 0");
 
-            PoolRequestHandler rph;
-            synchronized (_handlerHash) {
-                rph = _handlerHash.get(id);
-            }
+            PoolRequestHandler rph = _handlerHash.get(id);
 
             checkCommand(rph != null, "Not found : %s", id);
 
@@ -680,15 +659,7 @@ public class RequestContainerV5
         boolean isLongListing = args.hasOption("l");
 
         if (!args.hasOption("w")) {
-            List<PoolRequestHandler> allRequestHandlers;
-            synchronized (_handlerHash) {
-                allRequestHandlers = new ArrayList<>(_handlerHash.values());
-            }
-
-            for (PoolRequestHandler h : allRequestHandlers) {
-                if (h == null) {
-                    continue;
-                }
+            for (PoolRequestHandler h : _handlerHash.values()) {
                 String line = h.toString();
                 if ((pattern == null) || pattern.matcher(line).matches()) {
                     sb.append(line).append("\n");
@@ -702,18 +673,10 @@ public class RequestContainerV5
                 }
             }
         } else {
-            Map<UOID, PoolRequestHandler>  allPendingRequestHandlers   = new HashMap<>();
-            synchronized (_messageHash) {
-                allPendingRequestHandlers.putAll(_messageHash);
-            }
-
-            for (Map.Entry<UOID, PoolRequestHandler> requestHandler : allPendingRequestHandlers.entrySet()) {
+            for (Map.Entry<UOID, PoolRequestHandler> requestHandler : _messageHash.entrySet()) {
                 UOID uoid = requestHandler.getKey();
                 PoolRequestHandler h = requestHandler.getValue();
 
-                if (h == null) {
-                    continue;
-                }
                 String line = uoid.toString() + " " + h.toString();
                 if ((pattern == null) || pattern.matcher(line).matches()) {
                     sb.append(line).append("\n");
@@ -730,24 +693,14 @@ public class RequestContainerV5
     }
 
     public List<RestoreHandlerInfo> getRestoreHandlerInfo() {
-        List<RestoreHandlerInfo> requests;
-        synchronized (_handlerHash) {
-            requests = _handlerHash.values().stream()
-                    .map(PoolRequestHandler::getRestoreHandlerInfo)
-                    .collect(toList());
-        }
-        return requests;
+        return _handlerHash.values().stream()
+                .map(PoolRequestHandler::getRestoreHandlerInfo)
+                .collect(toList());
     }
 
     public static final String hh_xrc_ls = " # lists pending requests (binary)";
     public Object ac_xrc_ls(Args args) {
-
-        List<PoolRequestHandler> all;
-        synchronized (_handlerHash) {
-            all = new ArrayList<>(_handlerHash.values());
-        }
-
-        return all.stream()
+        return _handlerHash.values().stream()
                 .map(PoolRequestHandler::getRestoreHandlerInfo)
                 .toArray(RestoreHandlerInfo[]::new);
     }
@@ -792,17 +745,20 @@ public class RequestContainerV5
         String canonicalName = pnfsId + "@" + netName + "-" + protocolName + (enforceP2P ? "-p2p" : "")
                         + (poolGroup == null ? "" : ("-pg-" + poolGroup));
 
-        PoolRequestHandler handler;
-
         _log.info("Adding request for : {}", canonicalName);
-        synchronized (_handlerHash) {
+
+        /* A handler that completed after we looked it up no longer accepts
+         * requests. It removes itself from _handlerHash, so retrying creates
+         * a new handler.
+         */
+        PoolRequestHandler handler;
+        do {
             handler = _handlerHash.computeIfAbsent(canonicalName, n ->
                     new PoolRequestHandler(pnfsId,
                             poolGroup,
                             n,
                             allowedStates));
-            handler.addRequest(envelope);
-        }
+        } while (!handler.addRequest(envelope));
     }
 
     // replicate a file
@@ -842,7 +798,17 @@ public class RequestContainerV5
 
         protected final PnfsId _pnfsId;
         protected final String _poolGroup;
+        /**
+         * Requests waiting for this handler. Guarded by the handler's monitor.
+         */
         protected final List<CellMessage> _messages = new ArrayList<>();
+
+        /**
+         * Set once the handler has removed itself from _handlerHash, after
+         * which no further requests are accepted. Guarded by the handler's
+         * monitor.
+         */
+        private boolean _isCompleted;
         protected int _retryCounter;
         private final CDC _cdc = new CDC();
 
@@ -940,10 +906,16 @@ public class RequestContainerV5
         // the following methods can be called from outside
         // at any time.
         //...........................................................
-        //
-        // add request is assumed to be synchronized by a higher level.
-        //
-        public void addRequest(CellMessage message) {
+        /**
+         * Adds a request to this handler.
+         *
+         * @return false if the handler has completed and no longer accepts
+         * requests, true otherwise
+         */
+        public synchronized boolean addRequest(CellMessage message) {
+            if (_isCompleted) {
+                return false;
+            }
 
             PoolMgrSelectReadPoolMsg request =
                     (PoolMgrSelectReadPoolMsg)message.getMessageObject();
@@ -953,7 +925,7 @@ public class RequestContainerV5
                 request.setFailed(CacheException.PERMISSION_DENIED, "Pool manager state not allowed");
                 message.revertDirection();
                 sendMessage(message);
-                return;
+                return true;
             }
 
             _messages.add(message);
@@ -963,7 +935,7 @@ public class RequestContainerV5
                     addWithInfinity(System.currentTimeMillis(), message.getTtl()));
 
             if (_poolSelector != null) {
-                return;
+                return true;
             }
 
             _linkGroup = request.getLinkGroup();
@@ -1010,12 +982,15 @@ public class RequestContainerV5
             }
 
             startStateEngine();
+            return true;
         }
 
-        public List<CellMessage> getMessages() {
-            synchronized (_handlerHash) {
-                return new ArrayList<>(_messages);
-            }
+        public synchronized List<CellMessage> getMessages() {
+            return new ArrayList<>(_messages);
+        }
+
+        private synchronized int getMessageCount() {
+            return _messages.size();
         }
 
         public String getPoolCandidate()
@@ -1046,7 +1021,7 @@ public class RequestContainerV5
 	public RestoreHandlerInfo getRestoreHandlerInfo() {
             return new RestoreHandlerInfo(
                     _name,
-                    _messages.size(),
+                    getMessageCount(),
                     _retryCounter,
                     _started,
                     getPoolCandidateState(),
@@ -1057,7 +1032,7 @@ public class RequestContainerV5
 
         @Override
         public String toString() {
-            return _name + " m=" + _messages.size() + " r=" +
+            return _name + " m=" + getMessageCount() + " r=" +
                     _retryCounter + " [" + getPoolCandidateState() + "] [" + _status + "] " +
                     "{" + _currentRc + "," + _currentRm + "}";
         }
@@ -1101,9 +1076,7 @@ public class RequestContainerV5
         //
         private void clearSteering() {
             if (_waitingFor != null) {
-                synchronized (_messageHash) {
-                    _messageHash.remove(_waitingFor);
-                }
+                _messageHash.remove(_waitingFor);
                 _waitingFor = null;
             }
         }
@@ -1124,18 +1097,17 @@ public class RequestContainerV5
                         new CellPath(pool.address()),
                         new PoolFetchFileMessage(pool.name(), _fileAttributes)
                     );
-            synchronized (_messageHash) {
-                if (_maxRestore >= 0 && _messageHash.size() >= _maxRestore) {
-                    throw new MissingResourceCacheException("Stage attempts exceed limit "
-                            + _maxRestore);
-                }
-                if (_waitingFor != null) {
-                    _messageHash.remove(_waitingFor);
-                }
-                _waitingFor = cellMessage.getUOID();
-                _messageHash.put(_waitingFor, this);
-                sendMessage(cellMessage);
+            /* The limit is checked without locking, thus concurrent handlers
+             * may exceed it by a few requests.
+             */
+            if (_maxRestore >= 0 && _messageHash.size() >= _maxRestore) {
+                throw new MissingResourceCacheException("Stage attempts exceed limit "
+                        + _maxRestore);
             }
+            clearSteering();
+            _waitingFor = cellMessage.getUOID();
+            _messageHash.put(_waitingFor, this);
+            sendMessage(cellMessage);
         }
 
         private void sendPool2PoolRequest(SelectedPool sourcePool, SelectedPool destPool)
@@ -1148,14 +1120,10 @@ public class RequestContainerV5
             CellMessage cellMessage =
                     new CellMessage(new CellPath(destPool.address()), pool2pool);
 
-            synchronized (_messageHash) {
-                if (_waitingFor != null) {
-                    _messageHash.remove(_waitingFor);
-                }
-                _waitingFor = cellMessage.getUOID();
-                _messageHash.put(_waitingFor, this);
-                sendMessage(cellMessage);
-            }
+            clearSteering();
+            _waitingFor = cellMessage.getUOID();
+            _messageHash.put(_waitingFor, this);
+            sendMessage(cellMessage);
         }
 
         private void retryRequest()
@@ -1185,10 +1153,7 @@ public class RequestContainerV5
          */
         private void expireRequests()
         {
-            /* Access to _messages is controlled by a lock on
-             * _handlerHash.
-             */
-            synchronized (_handlerHash) {
+            synchronized (this) {
                 long now = System.currentTimeMillis();
 
                 if (now < _nextTtlTimeout) {
@@ -1213,13 +1178,17 @@ public class RequestContainerV5
 
         private boolean answerRequests(int limit)
         {
-            Iterator<CellMessage> messages = _messages.iterator();
-            for (int i = 0; i < limit && messages.hasNext(); i++) {
-                CellMessage message =  messages.next();
-                answerRequest(message);
-                messages.remove();
+            List<CellMessage> answered;
+            boolean hasMore;
+            synchronized (this) {
+                int count = Math.min(limit, _messages.size());
+                List<CellMessage> head = _messages.subList(0, count);
+                answered = new ArrayList<>(head);
+                head.clear();
+                hasMore = !_messages.isEmpty();
             }
-            return messages.hasNext();
+            answered.forEach(this::answerRequest);
+            return hasMore;
         }
 
         private void answerRequest(CellMessage message)
@@ -1347,7 +1316,7 @@ public class RequestContainerV5
             /* Staging is allowed if just one of the requests has
              * permission to stage.
              */
-            for (CellMessage envelope: _messages) {
+            for (CellMessage envelope: getMessages()) {
                 try {
                     PoolMgrSelectReadPoolMsg msg =
                         (PoolMgrSelectReadPoolMsg) envelope.getMessageObject();
@@ -1759,13 +1728,10 @@ public class RequestContainerV5
 
             case ST_DONE:
                 clearSteering();
-                //
-                // it is essential that we are not within any other
-                // lock when trying to get the handlerHash lock.
-                //
-                synchronized (_handlerHash) {
-                    _handlerHash.remove(_name);
+                synchronized (this) {
+                    _isCompleted = true;
                 }
+                _handlerHash.remove(_name, this);
 
                 int limit = _currentRc == 0 ? MAX_REQUEST_CLUMPING
                         : Integer.MAX_VALUE;
@@ -1939,13 +1905,9 @@ public class RequestContainerV5
                         long now = System.currentTimeMillis();
 
                         // Determine which pools to query
-                        List<PoolRequestHandler> list;
-                        synchronized (_handlerHash) {
-                            list = new ArrayList<>(_handlerHash.values());
-                        }
                         Multimap<CellAddressCore, PoolRequestHandler> p2pRequests = ArrayListMultimap.create();
                         Multimap<CellAddressCore, PoolRequestHandler> stageRequests = ArrayListMultimap.create();
-                        for (PoolRequestHandler handler : list) {
+                        for (PoolRequestHandler handler : _handlerHash.values()) {
                             if (oneShot || handler._started < now - _checkFilePingTimer) {
                                 SelectedPool pool;
                                 switch (handler._state) {
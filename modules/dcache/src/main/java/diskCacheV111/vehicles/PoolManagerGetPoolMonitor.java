@@ -1,5 +1,9 @@
 package diskCacheV111.vehicles;
 
+import javax.annotation.Nullable;
+
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PoolMonitorVersion;
 import org.dcache.poolmanager.SerializablePoolMonitor;
 
 public class PoolManagerGetPoolMonitor extends PoolManagerMessage
@@ -8,10 +12,26 @@ public class PoolManagerGetPoolMonitor extends PoolManagerMessage
 
     private SerializablePoolMonitor _poolMonitor;
 
+    private boolean _isDeltaRequested;
+    private PoolMonitorVersion _knownVersion;
+    private PoolMonitorDelta _delta;
+
     public PoolManagerGetPoolMonitor()
     {
     }
 
+    /**
+     * Requests the changes since a version of the pool monitor. Pool manager
+     * replies with a delta, which is a snapshot if the version is null or
+     * too old. Versions of pool manager not supporting deltas reply with a
+     * pool monitor instead.
+     */
+    public PoolManagerGetPoolMonitor(@Nullable PoolMonitorVersion knownVersion)
+    {
+        _isDeltaRequested = true;
+        _knownVersion = knownVersion;
+    }
+
     public void setPoolMonitor(SerializablePoolMonitor poolMonitor)
     {
         _poolMonitor = poolMonitor;
@@ -21,7 +41,26 @@ public class PoolManagerGetPoolMonitor extends PoolManagerMessage
     {
         return _poolMonitor;
     }
-}
 
+    public boolean isDeltaRequested()
+    {
+        return _isDeltaRequested;
+    }
+
+    @Nullable
+    public PoolMonitorVersion getKnownVersion()
+    {
+        return _knownVersion;
+    }
 
+    public void setPoolMonitorDelta(PoolMonitorDelta delta)
+    {
+        _delta = delta;
+    }
 
+    @Nullable
+    public PoolMonitorDelta getPoolMonitorDelta()
+    {
+        return _delta;
+    }
+}
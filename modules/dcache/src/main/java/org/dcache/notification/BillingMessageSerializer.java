@@ -1,85 +1,86 @@
 package org.dcache.notification;
 
 import org.apache.kafka.common.serialization.Serializer;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.net.InetSocketAddress;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Map;
 
 import diskCacheV111.vehicles.IpProtocolInfo;
 import diskCacheV111.vehicles.MoverInfoMessage;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 public class BillingMessageSerializer implements Serializer<MoverInfoMessage> {
 
-    static JSONObject transform(MoverInfoMessage data) {
-        JSONObject o = new JSONObject();
-        o.put("version", "1.0");
-        o.put("msgType", data.getMessageType());
-        o.put("date", DateTimeFormatter.ISO_OFFSET_DATE_TIME
-                        .format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(data.getTimestamp()), ZoneId.systemDefault())));
-        o.put("queuingTime", data.getTimeQueued());
-        o.put("cellName", data.getCellAddress().getCellName());
-        o.put("cellType", data.getCellType());
-        o.put("cellDomain", data.getCellAddress().getCellDomainName());
+    /**
+     * Writes the fields of a mover info message. The fields describing the
+     * file and the subject are omitted unless {@code includeFile} is true.
+     */
+    static void write(JsonWriter w, MoverInfoMessage data, boolean includeFile) {
+        w.field("version", "1.0");
+        w.field("msgType", data.getMessageType());
+        w.dateField("date", data.getTimestamp());
+        w.field("queuingTime", data.getTimeQueued());
+        w.field("cellName", data.getCellAddress().getCellName());
+        w.field("cellType", data.getCellType());
+        w.field("cellDomain", data.getCellAddress().getCellDomainName());
 
         if (!Double.isNaN(data.getMeanReadBandwidth())) {
-            o.put("meanReadBandwidth", data.getMeanReadBandwidth());
+            w.field("meanReadBandwidth", data.getMeanReadBandwidth());
         }
 
         if (!Double.isNaN(data.getMeanWriteBandwidth())) {
-            o.put("meanWriteBandwidth", data.getMeanWriteBandwidth());
+            w.field("meanWriteBandwidth", data.getMeanWriteBandwidth());
         }
 
-        data.getReadIdle().ifPresent(d -> o.put("readIdle", d.toString()));
-        data.getWriteIdle().ifPresent(d -> o.put("writeIdle", d.toString()));
-        data.getReadActive().ifPresent(d -> o.put("readActive", d.toString()));
-        data.getWriteActive().ifPresent(d -> o.put("writeActive", d.toString()));
+        data.getReadIdle().ifPresent(d -> w.field("readIdle", d));
+        data.getWriteIdle().ifPresent(d -> w.field("writeIdle", d));
+        data.getReadActive().ifPresent(d -> w.field("readActive", d));
+        data.getWriteActive().ifPresent(d -> w.field("writeActive", d));
 
-        JSONObject status = new JSONObject();
-        status.put("code", data.getResultCode());
-        status.put("msg", data.getMessage());
-        o.put("status", status);
+        w.beginObject("status");
+        w.field("code", data.getResultCode());
+        w.field("msg", data.getMessage());
+        w.endObject();
 
-        o.put("session", data.getTransaction());
+        w.field("session", data.getTransaction());
 
-        JSONArray subject = new JSONArray();
-        data.getSubject().getPrincipals().forEach(s -> subject.put(s));
-        o.put("subject", subject);
+        if (includeFile) {
+            w.beginArray("subject");
+            data.getSubject().getPrincipals().forEach(w::value);
+            w.endArray();
 
-        o.put("pnfsid", data.getPnfsId());
-        o.put("billingPath", data.getBillingPath());
-        o.put("fileSize", data.getFileSize());
-        o.put("storageInfo", data.getStorageInfo().getStorageClass() + "@" + data.getStorageInfo().getHsm());
-        o.put("transferSize", data.getDataTransferred());
-        o.put("transferTime", data.getConnectionTime());
-        o.put("isWrite", data.isFileCreated() ? "write" : "read");
+            w.field("pnfsid", data.getPnfsId());
+            w.field("billingPath", data.getBillingPath());
+            w.field("fileSize", data.getFileSize());
+            w.field("storageInfo", data.getStorageInfo().getStorageClass(), '@', data.getStorageInfo().getHsm());
+        }
+        w.field("transferSize", data.getDataTransferred());
+        w.field("transferTime", data.getConnectionTime());
+        w.field("isWrite", data.isFileCreated() ? "write" : "read");
 
         InetSocketAddress remoteHost = ((IpProtocolInfo)data.getProtocolInfo()).getSocketAddress();
 
-        JSONObject protocolInfo = new JSONObject();
-        protocolInfo.put("protocol", data.getProtocolInfo().getProtocol());
-        protocolInfo.put("versionMajor", data.getProtocolInfo().getMajorVersion());
-        protocolInfo.put("versionMinor", data.getProtocolInfo().getMinorVersion());
-        protocolInfo.put("port", remoteHost.getPort());
-        protocolInfo.put("host", remoteHost.getAddress().getHostAddress());
-        o.put("protocolInfo", protocolInfo);
-
-        o.put("initiator", data.getInitiator());
-        o.put("isP2p", data.isP2P());
-        o.put("transferPath", data.getTransferPath());
-        return o;
+        w.beginObject("protocolInfo");
+        w.field("protocol", data.getProtocolInfo().getProtocol());
+        w.field("versionMajor", data.getProtocolInfo().getMajorVersion());
+        w.field("versionMinor", data.getProtocolInfo().getMinorVersion());
+        w.field("port", remoteHost.getPort());
+        w.field("host", remoteHost.getAddress().getHostAddress());
+        w.endObject();
+
+        if (includeFile) {
+            w.field("initiator", data.getInitiator());
+        }
+        w.field("isP2p", data.isP2P());
+        w.field("transferPath", data.getTransferPath());
     }
 
     @Override
     public byte[] serialize(String topic, MoverInfoMessage data) {
-        return transform(data).toString().getBytes(UTF_8);
+        JsonWriter w = JsonWriter.get();
+        w.beginObject();
+        write(w, data, true);
+        w.endObject();
+        return w.toByteArray();
     }
 
     @Override
@@ -90,9 +91,3 @@ public class BillingMessageSerializer implements Serializer<MoverInfoMessage> {
     public void close() {
     }
 }
-
-
-
-
-
-
@@ -0,0 +1,419 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.notification;
+
+import javax.annotation.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Streaming writer of JSON documents into a reusable, per-thread byte buffer.
+ *
+ * <p>Values are formatted as {@link org.json.JSONObject} formats them: strings
+ * are escaped the same way, numbers use the same representation, and fields
+ * with a null value are omitted. Documents written with this class thus parse
+ * to the same values as documents built with JSONObject, without building a
+ * tree of objects per document. Unlike JSONObject, fields are written in the
+ * order in which they are added.
+ */
+final class JsonWriter
+{
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Buffers growing beyond this size are not kept for reuse.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<JsonWriter> WRITERS =
+            ThreadLocal.withInitial(JsonWriter::new);
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(US_ASCII);
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    /**
+     * The formatted date of the most recently formatted second.
+     */
+    private static final class Second
+    {
+        final long epochSecond;
+        final byte[] dateTime;
+        final byte[] offset;
+
+        Second(long epochSecond, byte[] dateTime, byte[] offset)
+        {
+            this.epochSecond = epochSecond;
+            this.dateTime = dateTime;
+            this.offset = offset;
+        }
+    }
+
+    private static volatile Second lastSecond = new Second(Long.MIN_VALUE, null, null);
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int count;
+    private boolean needsComma;
+
+    private JsonWriter()
+    {
+    }
+
+    /**
+     * Returns the empty writer of the calling thread.
+     */
+    static JsonWriter get()
+    {
+        JsonWriter writer = WRITERS.get();
+        writer.count = 0;
+        writer.needsComma = false;
+        return writer;
+    }
+
+    /**
+     * Returns the document written so far.
+     */
+    byte[] toByteArray()
+    {
+        byte[] bytes = Arrays.copyOf(buf, count);
+        if (buf.length > MAX_RETAINED_CAPACITY) {
+            buf = new byte[INITIAL_CAPACITY];
+        }
+        return bytes;
+    }
+
+    JsonWriter beginObject()
+    {
+        separate();
+        write('{');
+        needsComma = false;
+        return this;
+    }
+
+    JsonWriter beginObject(String name)
+    {
+        name(name);
+        write('{');
+        needsComma = false;
+        return this;
+    }
+
+    JsonWriter endObject()
+    {
+        write('}');
+        needsComma = true;
+        return this;
+    }
+
+    JsonWriter beginArray(String name)
+    {
+        name(name);
+        write('[');
+        needsComma = false;
+        return this;
+    }
+
+    JsonWriter endArray()
+    {
+        write(']');
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes an array element, formatted as a string.
+     */
+    JsonWriter value(Object value)
+    {
+        separate();
+        quote(String.valueOf(value));
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a field with the string representation of {@code value}, or
+     * nothing if {@code value} is null.
+     */
+    JsonWriter field(String name, @Nullable Object value)
+    {
+        if (value != null) {
+            name(name);
+            quote(value.toString());
+            needsComma = true;
+        }
+        return this;
+    }
+
+    /**
+     * Writes a string field with the value {@code first + separator + second}.
+     */
+    JsonWriter field(String name, @Nullable Object first, char separator, @Nullable Object second)
+    {
+        name(name);
+        write('"');
+        escape(String.valueOf(first));
+        escape(separator, (char) 0);
+        escape(String.valueOf(second));
+        write('"');
+        needsComma = true;
+        return this;
+    }
+
+    JsonWriter field(String name, long value)
+    {
+        name(name);
+        writeAscii(Long.toString(value));
+        needsComma = true;
+        return this;
+    }
+
+    JsonWriter field(String name, double value)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON does not allow non-finite numbers.");
+        }
+        name(name);
+        String s = Double.toString(value);
+        int end = s.length();
+        if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+            while (s.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (s.charAt(end - 1) == '.') {
+                end--;
+            }
+        }
+        for (int i = 0; i < end; i++) {
+            write(s.charAt(i));
+        }
+        needsComma = true;
+        return this;
+    }
+
+    JsonWriter field(String name, boolean value)
+    {
+        name(name);
+        writeAscii(value ? "true" : "false");
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a field with the time formatted as an ISO 8601 date with offset
+     * in the default time zone, as DateTimeFormatter.ISO_OFFSET_DATE_TIME
+     * formats it.
+     */
+    JsonWriter dateField(String name, long timestamp)
+    {
+        long epochSecond = Math.floorDiv(timestamp, 1000L);
+        int millis = (int) Math.floorMod(timestamp, 1000L);
+
+        Second second = lastSecond;
+        if (second.epochSecond != epochSecond) {
+            second = format(epochSecond);
+            if (second == null) {
+                return field(name, DateTimeFormatter.ISO_OFFSET_DATE_TIME
+                        .format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZONE)));
+            }
+            lastSecond = second;
+        }
+
+        name(name);
+        write('"');
+        write(second.dateTime);
+        if (millis != 0) {
+            write('.');
+            int digits = 3;
+            int value = millis;
+            while (value % 10 == 0) {
+                value /= 10;
+                digits--;
+            }
+            for (int divisor = (digits == 3) ? 100 : (digits == 2) ? 10 : 1; divisor > 0; divisor /= 10) {
+                write((char) ('0' + (value / divisor) % 10));
+            }
+        }
+        write(second.offset);
+        write('"');
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Formats a second, or returns null if its year does not have four
+     * digits.
+     */
+    @Nullable
+    private static Second format(long epochSecond)
+    {
+        ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZONE);
+        if (time.getYear() < 0 || time.getYear() > 9999) {
+            return null;
+        }
+        String s = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(time);
+        /* yyyy-MM-ddTHH:mm:ss is followed by the offset */
+        return new Second(epochSecond, s.substring(0, 19).getBytes(US_ASCII),
+                          s.substring(19).getBytes(US_ASCII));
+    }
+
+    private void name(String name)
+    {
+        separate();
+        quote(name);
+        write(':');
+    }
+
+    private void separate()
+    {
+        if (needsComma) {
+            write(',');
+        }
+    }
+
+    private void quote(String s)
+    {
+        write('"');
+        escape(s);
+        write('"');
+    }
+
+    private void escape(String s)
+    {
+        char previous = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+                c = s.charAt(i);
+            } else {
+                escape(c, previous);
+            }
+            previous = c;
+        }
+    }
+
+    private void escape(char c, char previous)
+    {
+        switch (c) {
+        case '\\':
+        case '"':
+            write('\\');
+            write(c);
+            break;
+        case '/':
+            if (previous == '<') {
+                write('\\');
+            }
+            write(c);
+            break;
+        case '\b':
+            writeAscii("\\b");
+            break;
+        case '\t':
+            writeAscii("\\t");
+            break;
+        case '\n':
+            writeAscii("\\n");
+            break;
+        case '\f':
+            writeAscii("\\f");
+            break;
+        case '\r':
+            writeAscii("\\r");
+            break;
+        default:
+            if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                write('\\');
+                write('u');
+                write(HEX[(c >> 12) & 0xf]);
+                write(HEX[(c >> 8) & 0xf]);
+                write(HEX[(c >> 4) & 0xf]);
+                write(HEX[c & 0xf]);
+            } else if (Character.isSurrogate(c)) {
+                /* Unpaired surrogates are replaced, as String#getBytes does. */
+                write('?');
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    private void writeCodePoint(int c)
+    {
+        if (c < 0x80) {
+            write((byte) c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buf[count++] = (byte) (0xc0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (c < 0x10000) {
+            ensureCapacity(3);
+            buf[count++] = (byte) (0xe0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        } else {
+            ensureCapacity(4);
+            buf[count++] = (byte) (0xf0 | (c >> 18));
+            buf[count++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void writeAscii(String s)
+    {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void write(char c)
+    {
+        write((byte) c);
+    }
+
+    private void write(byte b)
+    {
+        ensureCapacity(1);
+        buf[count++] = b;
+    }
+
+    private void write(byte[] bytes)
+    {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensureCapacity(int n)
+    {
+        if (count + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+        }
+    }
+}
@@ -18,57 +18,46 @@
 package org.dcache.notification;
 
 import org.apache.kafka.common.serialization.Serializer;
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Date;
+
 import java.util.Map;
 
 import diskCacheV111.vehicles.RemoveFileInfoMessage;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 
 public class RemoveFileInfoMessageSerializer implements Serializer<RemoveFileInfoMessage> {
 
     @Override
     public byte[] serialize(String topic, RemoveFileInfoMessage data) {
 
-        JSONObject o = new JSONObject();
-        o.put("version", "1.0");
-        o.put("msgType", data.getMessageType());
-        o.put("date", DateTimeFormatter.ISO_OFFSET_DATE_TIME
-                .format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(data.getTimestamp()), ZoneId.systemDefault())));
-        o.put("queuingTime", data.getTimeQueued());
-        o.put("transaction", data.getTransaction());
-        o.put("cellName", data.getCellAddress().getCellName());
-        o.put("cellType", data.getCellType());
-        o.put("cellDomain", data.getCellAddress().getCellDomainName());
-
-        JSONObject status = new JSONObject();
-        status.put("code", data.getResultCode());
-        status.put("msg", data.getMessage());
-
-        o.put("status", status);
-
-        o.put("session", data.getTransaction());
-
-        JSONArray subject = new JSONArray();
-        data.getSubject().getPrincipals().forEach(s -> subject.put(s));
-        o.put("subject", subject);
-
-        o.put("pnfsid", data.getPnfsId());
-        o.put("billingPath", data.getBillingPath());
-        o.put("fileSize", data.getFileSize());
-        o.put("storageInfo", data.getStorageInfo().getStorageClass() + "@" + data.getStorageInfo().getHsm());
-
-
-        return o.toString().getBytes(UTF_8);
-
+        JsonWriter w = JsonWriter.get();
+        w.beginObject();
+        w.field("version", "1.0");
+        w.field("msgType", data.getMessageType());
+        w.dateField("date", data.getTimestamp());
+        w.field("queuingTime", data.getTimeQueued());
+        w.field("transaction", data.getTransaction());
+        w.field("cellName", data.getCellAddress().getCellName());
+        w.field("cellType", data.getCellType());
+        w.field("cellDomain", data.getCellAddress().getCellDomainName());
+
+        w.beginObject("status");
+        w.field("code", data.getResultCode());
+        w.field("msg", data.getMessage());
+        w.endObject();
+
+        w.field("session", data.getTransaction());
+
+        w.beginArray("subject");
+        data.getSubject().getPrincipals().forEach(w::value);
+        w.endArray();
+
+        w.field("pnfsid", data.getPnfsId());
+        w.field("billingPath", data.getBillingPath());
+        w.field("fileSize", data.getFileSize());
+        w.field("storageInfo", data.getStorageInfo().getStorageClass(), '@', data.getStorageInfo().getHsm());
+        w.endObject();
+
+        return w.toByteArray();
     }
 
     @Override
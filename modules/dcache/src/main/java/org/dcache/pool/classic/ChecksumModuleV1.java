@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,6 +83,8 @@ public class ChecksumModuleV1
     private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumModuleV1.class);
     private static final Map<ChecksumType,String> CHECKSUM_NAMES = ImmutableMap.of(ADLER32, "adler32", MD5_TYPE, "md5");
     private static final long MILLISECONDS_IN_SECOND = 1000;
+    private static final int DEFAULT_BUFFER_SIZE = KiB.toBytes(64);
+    private static final int SCRUB_BUFFER_SIZE = MiB.toBytes(1);
 
     /**
      * The policy implemented by a ChecksumModule is determined by these policy flags.
@@ -116,6 +119,15 @@ public class ChecksumModuleV1
 
     private double _throughputLimit = Double.POSITIVE_INFINITY;
     private long _scrubPeriod = TimeUnit.HOURS.toMillis(24L);
+    private int _scrubThreads = 1;
+    private boolean _scrubYieldsToMovers;
+
+    /**
+     * Token bucket shared by all scrubber threads; null if there is no
+     * throughput limit.
+     */
+    @GuardedBy("this")
+    private RateLimiter _scrubRateLimiter;
     private EnumSet<ChecksumType> _defaultChecksumType = EnumSet.of(ADLER32);
 
     private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
@@ -140,6 +152,21 @@ public class ChecksumModuleV1
         return _throughputLimit;
     }
 
+    public synchronized int getScrubThreads()
+    {
+        return _scrubThreads;
+    }
+
+    public synchronized boolean isScrubYieldingToMovers()
+    {
+        return _scrubYieldsToMovers;
+    }
+
+    private synchronized RateLimiter getScrubRateLimiter()
+    {
+        return _scrubRateLimiter;
+    }
+
     @Override
     public synchronized void printSetup(PrintWriter pw)
     {
@@ -148,7 +175,9 @@ public class ChecksumModuleV1
             pw.print("csm set policy -scrub=on");
             pw.print(" -limit=" +
                     (Double.isInfinite(_throughputLimit) ? "off" : BYTES.toMiB(_throughputLimit)));
-            pw.println(" -period=" + TimeUnit.MILLISECONDS.toHours(_scrubPeriod));
+            pw.print(" -period=" + TimeUnit.MILLISECONDS.toHours(_scrubPeriod));
+            pw.print(" -threads=" + _scrubThreads);
+            pw.println(" -yield=" + (_scrubYieldsToMovers ? "on" : "off"));
         } else {
             pw.println("csm set policy -scrub=off");
         }
@@ -216,6 +245,8 @@ public class ChecksumModuleV1
                 sb.append("             limit  = ").append(BYTES.toMiB(_throughputLimit)).append(" MiB/s\n");
             }
             sb.append("             period = ").append(TimeUnit.MILLISECONDS.toHours(_scrubPeriod)).append(" hours\n");
+            sb.append("            threads = ").append(_scrubThreads).append("\n");
+            sb.append("              yield = ").append(_scrubYieldsToMovers ? "on" : "off").append("\n");
         }
         return sb.toString();
     }
@@ -255,6 +286,20 @@ public class ChecksumModuleV1
                 metaVar = "hours")
         Integer period;
 
+        @Option(name = "threads",
+                category = "Scrubber options",
+                usage = "Number of files verified concurrently.  The " +
+                        "throughput limit is shared by all threads.",
+                metaVar = "count")
+        Integer threads;
+
+        @Option(name = "yield",
+                category = "Scrubber options",
+                usage = "Slow down scrubbing while movers are active on the pool.",
+                values = { "", "on", "off" },
+                valueSpec = "on|off")
+        String yield;
+
         @Option(name = "onread",
                 category = "Transfer options",
                 usage = "Not implemented.",
@@ -354,12 +399,39 @@ public class ChecksumModuleV1
                 if (limit != null) {
                     if (limit.equals("off")) {
                         _throughputLimit = Double.POSITIVE_INFINITY;
+                        _scrubRateLimiter = null;
                     } else {
                         double value = MiB.toBytes(Double.parseDouble(limit));
                         if (value <= 0) {
                             throw new IllegalArgumentException("Throughput limit must be > 0");
                         }
                         _throughputLimit = value;
+                        if (_scrubRateLimiter == null) {
+                            _scrubRateLimiter = RateLimiter.create(value);
+                        } else {
+                            _scrubRateLimiter.setRate(value);
+                        }
+                    }
+                }
+
+                if (threads != null) {
+                    if (threads <= 0) {
+                        throw new IllegalArgumentException("Scrubber threads must be > 0");
+                    }
+                    _scrubThreads = threads;
+                }
+
+                if (yield != null) {
+                    switch (yield) {
+                    case "on":
+                    case "":
+                        _scrubYieldsToMovers = true;
+                        break;
+                    case "off":
+                        _scrubYieldsToMovers = false;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid value: " + yield);
                     }
                 }
 
@@ -508,19 +580,26 @@ public class ChecksumModuleV1
             throws NoSuchAlgorithmException, IOException, InterruptedException, CacheException
     {
         try (RepositoryChannel channel = handle.createChannel()) {
-            return verifyChecksum(channel, handle.getChecksums(), Double.POSITIVE_INFINITY);
+            return verifyChecksum(channel, handle.getChecksums(), null, DEFAULT_BUFFER_SIZE);
         }
     }
 
+    /**
+     * Verify the checksum of a replica on behalf of the scrubber.  The
+     * replica is read sequentially in large blocks and the throughput is
+     * limited by a token bucket shared with all other scrubber threads.
+     */
     public Iterable<Checksum> verifyChecksumWithThroughputLimit(ReplicaDescriptor handle)
             throws IOException, InterruptedException, NoSuchAlgorithmException, CacheException
     {
         try (RepositoryChannel channel = handle.createChannel()) {
-            return verifyChecksum(channel, handle.getChecksums(), getThroughputLimit());
+            return verifyChecksum(channel, handle.getChecksums(), getScrubRateLimiter(),
+                                  SCRUB_BUFFER_SIZE);
         }
     }
 
-    private Iterable<Checksum> verifyChecksum(RepositoryChannel channel, Iterable<Checksum> expectedChecksums, double throughputLimit)
+    private Iterable<Checksum> verifyChecksum(RepositoryChannel channel, Iterable<Checksum> expectedChecksums,
+                                              RateLimiter rateLimiter, int bufferSize)
             throws NoSuchAlgorithmException, IOException, InterruptedException, CacheException
     {
         checkArgument(!Iterables.isEmpty(expectedChecksums), "No expected checksums");
@@ -530,7 +609,7 @@ public class ChecksumModuleV1
                 .map(ChecksumType::createMessageDigest)
                 .collect(Collectors.toList());
 
-        Set<Checksum> actualChecksums = computeChecksums(channel, digests, throughputLimit);
+        Set<Checksum> actualChecksums = computeChecksums(channel, digests, rateLimiter, bufferSize);
         compareChecksums(expectedChecksums, actualChecksums);
         return actualChecksums;
     }
@@ -550,7 +629,7 @@ public class ChecksumModuleV1
     private Set<Checksum> computeChecksums(RepositoryChannel channel, Collection<MessageDigest> digests) throws IOException,
         InterruptedException
     {
-        return computeChecksums(channel, digests, Double.POSITIVE_INFINITY);
+        return computeChecksums(channel, digests, null, DEFAULT_BUFFER_SIZE);
     }
 
     /**
@@ -558,18 +637,20 @@ public class ChecksumModuleV1
      * checksum.
      * @param file              the file to compute a checksum for.
      * @param digests           the digests to update with the file's content
-     * @param throughputLimit   a limit on how many bytes/second that may be
-     *                          checksummed.
+     * @param rateLimiter       token bucket limiting how many bytes/second
+     *                          may be checksummed, or null if unlimited.
+     * @param bufferSize        size of the blocks read from the file.
      * @return                  the computed checksum.
      * @throws IOException
      * @throws InterruptedException
      */
-    private Set<Checksum> computeChecksums(RepositoryChannel channel, Collection<MessageDigest> digests, double throughputLimit)
+    private Set<Checksum> computeChecksums(RepositoryChannel channel, Collection<MessageDigest> digests,
+                                           RateLimiter rateLimiter, int bufferSize)
         throws IOException, InterruptedException
     {
         long start = System.currentTimeMillis();
         long pos = 0L;
-        ByteBuffer buffer = ByteBuffer.allocate(KiB.toBytes(64));
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
 
         int rc;
         while ((rc = channel.read(buffer, pos)) > 0) {
@@ -580,12 +661,8 @@ public class ChecksumModuleV1
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
-            long adjust
-                    = throughputAdjustment(throughputLimit,
-                                           pos,
-                                           System.currentTimeMillis() - start);
-            if (adjust > 0) {
-                Thread.sleep(adjust);
+            if (rateLimiter != null) {
+                rateLimiter.acquire(rc);
             }
         }
 
@@ -598,45 +675,12 @@ public class ChecksumModuleV1
                             : ", throughput " +
                               throughputAsString(pos, System.currentTimeMillis() - start) +
                               " MiB/s" +
-                              (Double.isInfinite(throughputLimit)
+                              (rateLimiter == null
                                ? ""
-                               : " (limit " + BYTES.toMiB(throughputLimit) + " MiB/s)"));
+                               : " (limit " + BYTES.toMiB(rateLimiter.getRate()) + " MiB/s)"));
         return checksums;
     }
 
-    /**
-     * Compute how much to sleep for current throughput not to exceed
-     * <code>throughputLimit</code> given how many bytes read/written for a
-     * certain amount of time.
-     * <h3>Formula</h3>
-     * <p><code>throughputLimit = numBytes/(elapsedTime + adjust)</code>
-     * <p>gives:<p>
-     * <code>adjust = numBytes/throughputLimit - elapsedTime</code>
-     *
-     * @param throughputLimit  max throughput (bytes/second). Must not be <= 0.
-     * @param numBytes         no. of bytes read/written for <code>elapsedTime
-     *                         </code> milliseconds. If 0, adjust will be 0.
-     * @param elapsedTime      elapsed time (milliseconds) when <code>numBytes
-     *                         </code> bytes were read/written.
-     * @return                 how much to sleep (milliseconds) for throughput
-     *                         not to exceed <code>throughputLimit</code>.
-     *                         Guaranteed to be >= 0.
-     */
-    private long throughputAdjustment(double throughputLimit, long numBytes,
-                                      long elapsedTime)
-    {
-        assert throughputLimit > 0 && numBytes >= 0 && elapsedTime >= 0;
-        /**
-         * Adjust is < 0 when numBytes/elapsedTime < throughputLimit
-         * (-elapsedTime when throughputLimit is ∞). Adjust is 0 when numBytes
-         * is 0.
-         */
-        long desiredDuration = (long) Math.ceil(MILLISECONDS_IN_SECOND *
-                                                (numBytes / throughputLimit));
-        long adjust = desiredDuration - elapsedTime;
-        return Math.max(0, adjust);
-    }
-
     /**
      * Return the string representation of throughput given the amount of bytes
      * read/written over a certain time period.
@@ -1,6 +1,7 @@
 package org.dcache.pool.classic;
 
-import com.google.common.collect.Iterables;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileCorruptedCacheException;
 import diskCacheV111.util.FileNotInCacheException;
@@ -17,13 +18,21 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.dcache.alarms.AlarmMarkerFactory;
 import org.dcache.alarms.PredefinedAlarm;
 import org.dcache.pool.repository.ReplicaDescriptor;
@@ -50,6 +59,7 @@ public class ChecksumScanner
 
     private Repository _repository;
     private ChecksumModuleV1 _csm;
+    private IoQueueManager _ioQueueManager;
     private String poolName;
 
     private File _scrubberStateFile;
@@ -90,6 +100,11 @@ public class ChecksumScanner
         _csm = csm;
     }
 
+    public void setIoQueueManager(IoQueueManager ioQueueManager)
+    {
+        _ioQueueManager = ioQueueManager;
+    }
+
     public void setScrubberStateFile(File path)
     {
         _scrubberStateFile = path;
@@ -231,16 +246,40 @@ public class ChecksumScanner
         private final long CHECKPOINT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
         private final long FAILURE_RATELIMIT_DELAY =
             TimeUnit.SECONDS.toMillis(10);
+        private final long YIELD_DELAY = TimeUnit.SECONDS.toMillis(1);
 
-        private volatile int _badCount;
-        private volatile int _numFiles;
-        private volatile int _totalCount;
-        private volatile int _unableCount;
+        /**
+         * The repository is scrubbed one bucket at a time, files being
+         * assigned to buckets by the hash of their pnfs id.  Within a
+         * bucket files are verified in pnfs id order, so that the position
+         * reached is a bucket and a pnfs id within it.
+         */
+        private static final int BUCKETS = 256;
+
+        private final AtomicInteger _badCount = new AtomicInteger();
+        private final AtomicInteger _totalCount = new AtomicInteger();
+        private final AtomicInteger _unableCount = new AtomicInteger();
+        private volatile int _bucket;
+        private volatile boolean _isYielding;
 
-        private PnfsId _lastFileChecked;
+        /**
+         * First pnfs id in the current bucket that may not have been
+         * verified yet, or null if the bucket has not been started.
+         */
+        private PnfsId _resumeFrom;
+
+        /** True if an old-format state file recorded an unfinished scrub. */
+        private boolean _isPartial;
         private long _lastCheckpoint;
         private long _lastStart;
 
+        /** Files currently being verified. */
+        private final ConcurrentSkipListSet<PnfsId> _inFlight =
+            new ConcurrentSkipListSet<>();
+
+        /** First failure of a scrubber thread that aborts the run. */
+        private final AtomicReference<Exception> _failure = new AtomicReference<>();
+
         public Scrubber()
         {
             super("Scrubber");
@@ -248,15 +287,17 @@ public class ChecksumScanner
 
         /**
          * Save scrubber state to <code>_scrubberStateFile</code>. The format is
-         * the start time of the last scrub (<code>_lastStart</code>) separated
-         * by a whitespace followed by the pnfs id of the file last checked
-         * (<code>_lastFileChecked</code>). If there's no last checked file,
-         * write a dash instead.
+         * the start time of the last scrub (<code>_lastStart</code>), the
+         * bucket being scrubbed (<code>_bucket</code>) and the pnfs id of the
+         * first file in that bucket that may not yet have been checked
+         * (<code>_resumeFrom</code>), separated by whitespace.  If the bucket
+         * has not been started, write a dash instead of the pnfs id.
          */
         private void saveState()
         {
-            String line = _lastStart + " " +
-                          ((_lastFileChecked == null) ? "-" : _lastFileChecked);
+            PnfsId cursor = getCursor();
+            String line = _lastStart + " " + _bucket + " " +
+                          ((cursor == null) ? "-" : cursor);
             try {
                 Files.write(_scrubberStateFile.toPath(), line.getBytes(Charset.defaultCharset()));
             } catch (IOException e) {
@@ -267,10 +308,11 @@ public class ChecksumScanner
         /**
          * Read the saved state information from disk written by <code>
          * saveState()</code>. The following fields are initialized:<code>
-         * _lastFileChecked</code> - the pnfs id of the file that was last
-         * checksummed; <code>_lastStart</code> - time when the last scrub
-         * started, if there's no saved state it's initialized to the current
-         * time.
+         * _bucket</code> and <code>_resumeFrom</code> - the position from
+         * where to continue scrubbing; <code>_lastStart</code> - time when
+         * the last scrub started, if there's no saved state it's initialized
+         * to the current time.  A state file written by an earlier version,
+         * without a bucket, resumes scrubbing with the first bucket.
          */
         private void initializeFromSavedState()
         {
@@ -290,7 +332,7 @@ public class ChecksumScanner
             }
 
             String[] fields = line.split(" ");
-            if (fields.length != 2) {
+            if (fields.length != 2 && fields.length != 3) {
                 _log.error("scrubber saved state in {} has an invalid format: {}",
                           _scrubberStateFile, line);
                 return;
@@ -304,13 +346,36 @@ public class ChecksumScanner
                 return;
             }
 
-            if (PnfsId.isValid(fields[1])) {
-                _log.debug("Resuming scrubbing from the first file with a pnfs id greater than {}",
-                           fields[1]);
-                _lastFileChecked = new PnfsId(fields[1]);
-            } else if (!fields[1].equals("-")) {
+            if (fields.length == 2) {
+                if (!fields[1].equals("-")) {
+                    _log.info("Scrubber state in {} predates bucketed scrubbing; " +
+                              "resuming with the first bucket", _scrubberStateFile);
+                    _bucket = 0;
+                    _resumeFrom = null;
+                    _isPartial = true;
+                }
+                return;
+            }
+
+            try {
+                int bucket = Integer.parseInt(fields[1]);
+                if (bucket < 0 || bucket >= BUCKETS) {
+                    throw new NumberFormatException("bucket out of range: " + bucket);
+                }
+                _bucket = bucket;
+            } catch (NumberFormatException e) {
+                _log.error("Failed to read the scrubber bucket from {}: {}",
+                          _scrubberStateFile, e.getMessage());
+                return;
+            }
+
+            if (PnfsId.isValid(fields[2])) {
+                _log.debug("Resuming scrubbing of bucket {} from pnfs id {}",
+                           _bucket, fields[2]);
+                _resumeFrom = new PnfsId(fields[2]);
+            } else if (!fields[2].equals("-")) {
                 _log.error("Last checked pnfs id within {} has an invalid format: {}",
-                           _scrubberStateFile, fields[1]);
+                           _scrubberStateFile, fields[2]);
             }
         }
 
@@ -321,7 +386,18 @@ public class ChecksumScanner
 
         private boolean isResuming()
         {
-            return (_lastFileChecked != null);
+            return _isPartial || _bucket > 0 || _resumeFrom != null;
+        }
+
+        /**
+         * Return the position from which scrubbing of the current bucket may
+         * safely resume: every file of the bucket sorting before the returned
+         * pnfs id has been verified.
+         */
+        private PnfsId getCursor()
+        {
+            PnfsId first = _inFlight.isEmpty() ? null : _inFlight.first();
+            return (first == null) ? _resumeFrom : first;
         }
 
         private void waitUntil(long t) throws InterruptedException
@@ -364,15 +440,16 @@ public class ChecksumScanner
                     }
 
                     try {
-                        PnfsId[] toScan = getFilesToVerify();
-                        _numFiles = toScan.length;
-                        _badCount = 0;
-                        _totalCount = 0;
-                        _unableCount = 0;
-                        scanFiles(toScan);
-                        if (_badCount > 0) {
+                        if (_bucket == 0 && _resumeFrom == null) {
+                            _badCount.set(0);
+                            _totalCount.set(0);
+                            _unableCount.set(0);
+                        }
+                        _isPartial = false;
+                        scanBuckets();
+                        if (_badCount.get() > 0) {
                             _log.warn("Finished scrubbing. Found {} bad files of {}",
-                                       _badCount, _numFiles);
+                                       _badCount.get(), _totalCount.get());
                         }
                         isFinished = true;
                     } catch (IOException e) {
@@ -396,34 +473,31 @@ public class ChecksumScanner
         }
 
         /**
-         * Return array of pnfs id's that has not yet been verified. Any files
-         * added to the pool after this array has been generated will be
-         * included the next time the array is generated.
-         * @return array of pnfs id's that needs to be verified. No check is
-         *         done on in which state the files are in.
+         * Collects the pnfs ids of the current bucket that have not yet been
+         * verified, in a pass over the repository.  Only the pnfs ids of a
+         * single bucket are held at a time.  Any files added to the pool
+         * after the bucket has been collected will be included in the next
+         * scrub.
+         * @return sorted list of pnfs id's of the current bucket that needs
+         *         to be verified. No check is done on in which state the
+         *         files are in.
          */
-        private PnfsId[] getFilesToVerify()
+        private List<PnfsId> getFilesToVerify()
         {
-            PnfsId[] repcopy = Iterables.toArray(_repository, PnfsId.class);
-            Arrays.sort(repcopy);
-
-            if (!isResuming()) {
-                return repcopy;
+            List<PnfsId> files = new ArrayList<>();
+            for (PnfsId id : _repository) {
+                if (bucketOf(id) == _bucket &&
+                    (_resumeFrom == null || id.compareTo(_resumeFrom) >= 0)) {
+                    files.add(id);
+                }
             }
+            Collections.sort(files);
+            return files;
+        }
 
-            int index = Arrays.binarySearch(repcopy, _lastFileChecked);
-            if (index >= 0) {
-                /**
-                 * Found. 0 <= index <= repcopy.length - 1
-                 */
-                return Arrays.copyOfRange(repcopy, index + 1, repcopy.length);
-            } else {
-                /**
-                 * Not found. insertionPoint == -index - 1
-                 * where: 0 <= insertionPoint <= repcopy.length
-                 */
-                return Arrays.copyOfRange(repcopy, -index - 1, repcopy.length);
-            }
+        private int bucketOf(PnfsId id)
+        {
+            return Math.floorMod(id.hashCode(), BUCKETS);
         }
 
         /**
@@ -438,48 +512,128 @@ public class ChecksumScanner
             }
         }
 
-        private void scanFiles(PnfsId[] repository)
+        private void scanBuckets()
                 throws InterruptedException, NoSuchAlgorithmException, IOException
         {
-            for (PnfsId id : repository) {
-                try {
-                    if (_repository.getState(id) == ReplicaState.CACHED ||
-                        _repository.getState(id) == ReplicaState.PRECIOUS) {
-                        ReplicaDescriptor handle =
-                            _repository.openEntry(id, EnumSet.of(OpenFlags.NOATIME));
+            int threads = _csm.getScrubThreads();
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setNameFormat("scrubber-%d").build());
+            try {
+                while (_bucket < BUCKETS) {
+                    scanFiles(getFilesToVerify(), executor, threads);
+                    _resumeFrom = null;
+                    _bucket++;
+                    checkpointIfNeeded();
+                }
+                _bucket = 0;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private void scanFiles(List<PnfsId> files, ExecutorService executor, int threads)
+                throws InterruptedException, NoSuchAlgorithmException, IOException
+        {
+            Semaphore permits = new Semaphore(threads);
+            _failure.set(null);
+            try {
+                for (PnfsId id : files) {
+                    throwIfFailed();
+                    yieldToMovers();
+                    permits.acquire();
+                    _inFlight.add(id);
+                    _resumeFrom = id;
+                    executor.execute(() -> {
                         try {
-                            _csm.verifyChecksumWithThroughputLimit(handle);
+                            verify(id);
+                        } catch (Exception e) {
+                            _failure.compareAndSet(null, e);
                         } finally {
-                            handle.close();
+                            _inFlight.remove(id);
+                            permits.release();
                         }
+                    });
+                    checkpointIfNeeded();
+                }
+                permits.acquire(threads);
+                permits.release(threads);
+            } finally {
+                _resumeFrom = getCursor();
+                _inFlight.clear();
+            }
+            throwIfFailed();
+        }
+
+        private void throwIfFailed()
+                throws InterruptedException, NoSuchAlgorithmException, IOException
+        {
+            Exception e = _failure.get();
+            if (e != null) {
+                Throwables.throwIfInstanceOf(e, InterruptedException.class);
+                Throwables.throwIfInstanceOf(e, NoSuchAlgorithmException.class);
+                Throwables.throwIfInstanceOf(e, IOException.class);
+                Throwables.throwIfUnchecked(e);
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * If so configured, pause briefly before each file while movers are
+         * active on the pool, so that client transfers take priority over
+         * scrubbing.
+         */
+        private void yieldToMovers() throws InterruptedException
+        {
+            if (_ioQueueManager != null && _csm.isScrubYieldingToMovers()) {
+                _isYielding = _ioQueueManager.queues().stream()
+                        .mapToInt(MoverRequestScheduler::getActiveJobs)
+                        .sum() > 0;
+                if (_isYielding) {
+                    Thread.sleep(YIELD_DELAY);
+                }
+            } else {
+                _isYielding = false;
+            }
+        }
+
+        private void verify(PnfsId id)
+                throws InterruptedException, NoSuchAlgorithmException, IOException
+        {
+            try {
+                if (_repository.getState(id) == ReplicaState.CACHED ||
+                    _repository.getState(id) == ReplicaState.PRECIOUS) {
+                    ReplicaDescriptor handle =
+                        _repository.openEntry(id, EnumSet.of(OpenFlags.NOATIME));
+                    try {
+                        _csm.verifyChecksumWithThroughputLimit(handle);
+                    } finally {
+                        handle.close();
                     }
-                } catch (FileCorruptedCacheException e) {
-                    _badCount++;
-                    invalidateCacheEntryAndSendAlarm(id, e);
-                } catch (IOException e) {
-                    _unableCount++;
-                    throw new IOException("Unable to read " + id + ": " + messageOrClassName(e), e);
-                } catch (FileNotInCacheException e) {
-                    /* It was removed before we could get it. No problem.
-                     */
-                } catch (CacheException e) {
-                    _log.warn("Scrubber unable to verify {}: {}", id, e.getMessage());
-                    _unableCount++;
                 }
-                _lastFileChecked = id;
-                _totalCount++;
-                checkpointIfNeeded();
+            } catch (FileCorruptedCacheException e) {
+                _badCount.incrementAndGet();
+                invalidateCacheEntryAndSendAlarm(id, e);
+            } catch (IOException e) {
+                _unableCount.incrementAndGet();
+                throw new IOException("Unable to read " + id + ": " + messageOrClassName(e), e);
+            } catch (FileNotInCacheException e) {
+                /* It was removed before we could get it. No problem.
+                 */
+            } catch (CacheException e) {
+                _log.warn("Scrubber unable to verify {}: {}", id, e.getMessage());
+                _unableCount.incrementAndGet();
             }
-            _lastFileChecked = null;
+            _totalCount.incrementAndGet();
         }
 
         @Override
         public String toString()
         {
             return super.toString() + " processed "
-                + _totalCount + " of " + _numFiles + " files: "
-                + _badCount + " corrupt, "
-                + _unableCount + " unable to check";
+                + _totalCount + " files (bucket " + (_bucket + 1) + " of " + BUCKETS
+                + (_isYielding ? ", yielding to movers" : "") + "): "
+                + _badCount.get() + " corrupt, "
+                + _unableCount.get() + " unable to check";
         }
     }
 
@@ -0,0 +1,381 @@
+package org.dcache.pool.classic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import diskCacheV111.util.PnfsId;
+
+/**
+ * Index of PNFS ids ordered by last access time.
+ * <p>
+ * The index is meant for pools with tens of millions of replicas and
+ * therefore avoids per-entry objects: ids are stored packed in a byte
+ * array, and access times, the hash table and the ordering are kept in
+ * primitive arrays indexed by a dense slot number. An entry costs roughly
+ * 50 bytes of heap.
+ * <p>
+ * Ordering is maintained by a binary min-heap of slots, so that adding,
+ * removing and touching an entry are O(log n) and the least recently used
+ * entry is found in constant time. The access time of the least recently
+ * used entry may be read without locking.
+ * <p>
+ * The class is thread safe.
+ */
+class CompactLruIndex
+{
+    /** Maximum length of the binary representation of a PnfsId. */
+    private static final int KEY_SIZE = 18;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /* Per entry data indexed by slot. Slots [0, size) are in use. */
+    private byte[] keys;
+    private byte[] lengths;
+    private int[] hashes;
+    private long[] times;
+
+    /* Position of each slot in the heap. */
+    private int[] heapIndex;
+
+    /* Min-heap of slots ordered by access time. */
+    private int[] heap;
+
+    /* Open addressing hash table of slot + 1. Zero marks an empty bucket. */
+    private int[] table;
+
+    private int size;
+
+    private volatile long oldestTime;
+
+    CompactLruIndex()
+    {
+        this(INITIAL_CAPACITY);
+    }
+
+    CompactLruIndex(int capacity)
+    {
+        allocate(Math.max(capacity, 16));
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new byte[capacity * KEY_SIZE];
+        lengths = new byte[capacity];
+        hashes = new int[capacity];
+        times = new long[capacity];
+        heapIndex = new int[capacity];
+        heap = new int[capacity];
+        table = new int[Integer.highestOneBit(capacity - 1) << 2];
+    }
+
+    /**
+     * Adds an id to the index unless it is already present.
+     *
+     * @return true if the id was added, false if it was already in the index
+     */
+    public synchronized boolean add(PnfsId id, long time)
+    {
+        byte[] key = id.toByteArray();
+        int hash = id.hashCode();
+        int bucket = find(key, hash);
+        if (bucket >= 0) {
+            return false;
+        }
+
+        if (size == times.length) {
+            grow();
+            bucket = find(key, hash);
+        }
+
+        int slot = size++;
+        System.arraycopy(key, 0, keys, slot * KEY_SIZE, key.length);
+        lengths[slot] = (byte) key.length;
+        hashes[slot] = hash;
+        times[slot] = time;
+        table[~bucket] = slot + 1;
+        heap[slot] = slot;
+        heapIndex[slot] = slot;
+        siftUp(slot);
+        updateOldestTime();
+        return true;
+    }
+
+    /**
+     * Removes an id from the index.
+     *
+     * @return true if the id was removed, false if it was not in the index
+     */
+    public synchronized boolean remove(PnfsId id)
+    {
+        int bucket = find(id.toByteArray(), id.hashCode());
+        if (bucket < 0) {
+            return false;
+        }
+
+        int slot = table[bucket] - 1;
+        deleteBucket(bucket);
+
+        size--;
+        int position = heapIndex[slot];
+        if (position != size) {
+            int moved = heap[size];
+            heap[position] = moved;
+            heapIndex[moved] = position;
+            siftDown(position);
+            siftUp(heapIndex[moved]);
+        }
+
+        if (slot != size) {
+            relocate(size, slot);
+        }
+        updateOldestTime();
+        return true;
+    }
+
+    /**
+     * Updates the access time of an id in the index.
+     *
+     * @return true if the id is in the index, false otherwise
+     */
+    public synchronized boolean touch(PnfsId id, long time)
+    {
+        int bucket = find(id.toByteArray(), id.hashCode());
+        if (bucket < 0) {
+            return false;
+        }
+
+        int slot = table[bucket] - 1;
+        long previous = times[slot];
+        times[slot] = time;
+        if (time < previous) {
+            siftUp(heapIndex[slot]);
+        } else {
+            siftDown(heapIndex[slot]);
+        }
+        updateOldestTime();
+        return true;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the access time of the least recently used entry, or zero if
+     * the index is empty.
+     */
+    public long getOldestTime()
+    {
+        return oldestTime;
+    }
+
+    /**
+     * Returns up to {@code count} ids in order of increasing access time,
+     * skipping any id in {@code exclude}.
+     * <p>
+     * The heap is explored best-first, so the cost is proportional to the
+     * number of ids returned or skipped rather than to the size of the index.
+     */
+    public synchronized List<PnfsId> getEldest(int count, Set<PnfsId> exclude)
+    {
+        List<PnfsId> result = new ArrayList<>(Math.min(count, size));
+        if (size == 0 || count <= 0) {
+            return result;
+        }
+
+        PriorityQueue<Integer> candidates =
+                new PriorityQueue<>(Comparator.comparingLong(position -> times[heap[position]]));
+        candidates.add(0);
+        while (result.size() < count && !candidates.isEmpty()) {
+            int position = candidates.poll();
+            PnfsId id = getId(heap[position]);
+            if (!exclude.contains(id)) {
+                result.add(id);
+            }
+            int child = 2 * position + 1;
+            if (child < size) {
+                candidates.add(child);
+            }
+            if (child + 1 < size) {
+                candidates.add(child + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all ids in order of increasing access time.
+     */
+    public synchronized List<PnfsId> values()
+    {
+        return getEldest(size, Set.of());
+    }
+
+    /**
+     * Returns the access times of all entries in no particular order.
+     */
+    public synchronized long[] getAccessTimes()
+    {
+        return Arrays.copyOf(times, size);
+    }
+
+    private PnfsId getId(int slot)
+    {
+        int offset = slot * KEY_SIZE;
+        return PnfsId.fromByteArray(Arrays.copyOfRange(keys, offset, offset + lengths[slot]));
+    }
+
+    private void updateOldestTime()
+    {
+        oldestTime = (size == 0) ? 0 : times[heap[0]];
+    }
+
+    private static int mix(int hash)
+    {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the bucket holding the given key, or the bitwise complement of
+     * the empty bucket at which the key would be inserted.
+     */
+    private int find(byte[] key, int hash)
+    {
+        int mask = table.length - 1;
+        int bucket = mix(hash) & mask;
+        while (true) {
+            int entry = table[bucket];
+            if (entry == 0) {
+                return ~bucket;
+            }
+            int slot = entry - 1;
+            if (hashes[slot] == hash && lengths[slot] == key.length &&
+                    Arrays.equals(keys, slot * KEY_SIZE, slot * KEY_SIZE + key.length,
+                                  key, 0, key.length)) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the bucket holding the given slot.
+     */
+    private int findSlot(int slot)
+    {
+        int mask = table.length - 1;
+        int bucket = mix(hashes[slot]) & mask;
+        while (table[bucket] != slot + 1) {
+            bucket = (bucket + 1) & mask;
+        }
+        return bucket;
+    }
+
+    /**
+     * Empties a bucket, shifting back subsequent entries of the probe
+     * sequence so that lookups remain correct without tombstones.
+     */
+    private void deleteBucket(int bucket)
+    {
+        int mask = table.length - 1;
+        int hole = bucket;
+        int next = bucket;
+        table[hole] = 0;
+        while (true) {
+            next = (next + 1) & mask;
+            int entry = table[next];
+            if (entry == 0) {
+                return;
+            }
+            int home = mix(hashes[entry - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = entry;
+                table[next] = 0;
+                hole = next;
+            }
+        }
+    }
+
+    /**
+     * Moves the entry in slot {@code from} to the unused slot {@code to}.
+     */
+    private void relocate(int from, int to)
+    {
+        System.arraycopy(keys, from * KEY_SIZE, keys, to * KEY_SIZE, KEY_SIZE);
+        lengths[to] = lengths[from];
+        hashes[to] = hashes[from];
+        times[to] = times[from];
+        heapIndex[to] = heapIndex[from];
+        heap[heapIndex[to]] = to;
+        table[findSlot(from)] = to + 1;
+    }
+
+    private void siftUp(int position)
+    {
+        int slot = heap[position];
+        long time = times[slot];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentSlot = heap[parent];
+            if (times[parentSlot] <= time) {
+                break;
+            }
+            heap[position] = parentSlot;
+            heapIndex[parentSlot] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        heapIndex[slot] = position;
+    }
+
+    private void siftDown(int position)
+    {
+        int slot = heap[position];
+        long time = times[slot];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int childSlot = heap[child];
+            int right = child + 1;
+            if (right < size && times[heap[right]] < times[childSlot]) {
+                child = right;
+                childSlot = heap[right];
+            }
+            if (time <= times[childSlot]) {
+                break;
+            }
+            heap[position] = childSlot;
+            heapIndex[childSlot] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapIndex[slot] = position;
+    }
+
+    private void grow()
+    {
+        int capacity = times.length * 2;
+        keys = Arrays.copyOf(keys, capacity * KEY_SIZE);
+        lengths = Arrays.copyOf(lengths, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        times = Arrays.copyOf(times, capacity);
+        heapIndex = Arrays.copyOf(heapIndex, capacity);
+        heap = Arrays.copyOf(heap, capacity);
+
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int bucket = mix(hashes[slot]) & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = slot + 1;
+        }
+    }
+}
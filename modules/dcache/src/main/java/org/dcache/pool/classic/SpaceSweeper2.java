@@ -10,12 +10,9 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import diskCacheV111.util.CacheException;
@@ -47,8 +44,6 @@ import org.dcache.pool.repository.StickyChangeEvent;
 import org.dcache.util.histograms.CountingHistogram;
 import org.dcache.vehicles.FileAttributes;
 
-import static java.util.Comparator.naturalOrder;
-
 public class SpaceSweeper2
     implements Runnable, CellCommandListener, StateChangeListener, CellSetupProvider,
                 SpaceSweeperPolicy, PoolDataBeanProvider<SweeperData>
@@ -58,7 +53,23 @@ public class SpaceSweeper2
     private static final DateTimeFormatter ISO8601_FORMAT =
             DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
 
-    private final LruQueue<PnfsId> _queue = new LruQueue<>();
+    /**
+     * Lower and upper bound on the number of replicas selected for
+     * each round of deletion when reclaiming space.
+     */
+    private static final int MIN_BATCH_SIZE = 64;
+    private static final int MAX_BATCH_SIZE = 100_000;
+
+    /**
+     * Removable replicas ordered by last access time. The index has its
+     * own lock, so repository events do not contend on the sweeper.
+     */
+    private final CompactLruIndex _index = new CompactLruIndex();
+
+    /**
+     * True while the sweeper thread waits for new removable replicas.
+     */
+    private volatile boolean _isWaiting;
 
     private Repository _repository;
 
@@ -127,21 +138,13 @@ public class SpaceSweeper2
         return _margin;
     }
 
-    /**
-     * Returns the pnfsid of the eldest removable entry.
-     */
-    private synchronized PnfsId getEldest()
-    {
-        return _queue.getLeastRecentlyUsedElement();
-    }
-
     /**
      * Returns the last access time of the eldest removable entry.
      */
     @Override
     public long getLru()
     {
-        return _queue.getTimeOfLeastRecentlyUsedElement();
+        return _index.getOldestTime();
     }
 
     /**
@@ -149,28 +152,32 @@ public class SpaceSweeper2
      *
      * @throws IllegalArgumentException if entry is precious or not cached
      */
-    private synchronized void add(CacheEntry entry)
+    private void add(CacheEntry entry)
     {
         if (!isRemovable(entry)) {
             throw new IllegalArgumentException("Cannot add a precious or un-cached file to the sweeper queue.");
         }
 
         PnfsId id = entry.getPnfsId();
-        if (_queue.add(id, entry.getLastAccessTime())) {
+        if (_index.add(id, entry.getLastAccessTime())) {
             _log.debug("Added {} to sweeper", id);
             /* The sweeper thread may be waiting for more files to
              * delete.
              */
-            notifyAll();
+            if (_isWaiting) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
         }
     }
 
     /** Remove entry from the queue.
      */
-    private synchronized boolean remove(CacheEntry entry)
+    private boolean remove(CacheEntry entry)
     {
         PnfsId id = entry.getPnfsId();
-        if (_queue.remove(id)) {
+        if (_index.remove(id)) {
             _log.debug("Removed {} from sweeper", id);
             return true;
         }
@@ -178,7 +185,7 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void stateChanged(StateChangeEvent event)
+    public void stateChanged(StateChangeEvent event)
     {
         CacheEntry entry = event.getNewEntry();
         switch (event.getNewState()) {
@@ -198,7 +205,7 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void stickyChanged(StickyChangeEvent event)
+    public void stickyChanged(StickyChangeEvent event)
     {
         CacheEntry entry = event.getNewEntry();
         if (isRemovable(entry)) {
@@ -209,12 +216,10 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void accessTimeChanged(EntryChangeEvent event)
+    public void accessTimeChanged(EntryChangeEvent event)
     {
         CacheEntry entry = event.getNewEntry();
-        if (remove(entry)) {
-            add(entry);
-        }
+        _index.touch(entry.getPnfsId(), entry.getLastAccessTime());
     }
 
     @AffectsSetup
@@ -303,10 +308,7 @@ public class SpaceSweeper2
                 throws CacheException, InterruptedException
         {
             StringBuilder sb = new StringBuilder();
-            List<PnfsId> list;
-            synchronized (SpaceSweeper2.this) {
-                list = _queue.values();
-            }
+            List<PnfsId> list = _index.values();
             int i = 0;
             for (PnfsId id : list) {
                 try {
@@ -348,32 +350,23 @@ public class SpaceSweeper2
         info.setLabel("Space Sweeper v2");
         info.setMargin(_margin);
 
-        List<PnfsId> list;
+        long[] accessTimes = _index.getAccessTimes();
+        info.setLruQueueSize(accessTimes.length);
+        info.setLruTimestamp(System.currentTimeMillis() - getLru());
 
-        synchronized (this) {
-            list = _queue.values();
-            info.setLruQueueSize(_queue.values().size());
-            info.setLruTimestamp(System.currentTimeMillis() - getLru());
-        }
-
-        List<Double> fileLifetime = new ArrayList<>();
+        List<Double> fileLifetime = new ArrayList<>(accessTimes.length);
         long now = System.currentTimeMillis();
 
-        for (PnfsId id : list) {
-            Long lastAccess = _queue.timeStamps.get(id);
-            if (lastAccess == null) {
-                continue;
-            }
+        for (long lastAccess : accessTimes) {
             long lvalue = now - lastAccess;
             if (lvalue < 0L) {
                 now = System.currentTimeMillis();
                 lvalue = now - lastAccess;
                 if (lvalue < 0L) {
-                    _log.warn("repository last access time for {}"
-                                              + " is later than current "
-                                              + "system time - now {}, "
+                    _log.warn("repository last access time is later than "
+                                              + "current system time - now {}, "
                                               + "last access {}",
-                              id, now, lastAccess);
+                              now, lastAccess);
                 }
             }
             fileLifetime.add((double)lvalue);
@@ -428,15 +421,40 @@ public class SpaceSweeper2
     {
         _log.debug("Sweeper tries to reclaim {} bytes.", amount);
 
-        /* We copy the entries into a tmp list to avoid
-         * ConcurrentModificationException.
+        /* Files are selected in batches of the least recently used
+         * entries. Entries we have already tried are excluded from
+         * later batches, as files that are in use or not removable
+         * stay in the index.
          */
-        List<PnfsId> tmpList = _queue.values();
+        Set<PnfsId> visited = new HashSet<>();
+        long deleted = 0;
+        while (deleted < amount) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            List<PnfsId> batch = _index.getEldest(getBatchSize(amount - deleted), visited);
+            if (batch.isEmpty()) {
+                break;
+            }
+            _log.debug("Sweeper selected {} files to reclaim {} bytes.",
+                       batch.size(), amount - deleted);
+            deleted += reclaim(batch, amount - deleted, visited, why);
+        }
 
-        /* Delete the files.
-         */
+        return deleted;
+    }
+
+    /**
+     * Deletes the files in {@code batch} until {@code amount} bytes have
+     * been reclaimed. Returns the number of bytes reclaimed.
+     */
+    private long reclaim(List<PnfsId> batch, long amount, Set<PnfsId> visited,
+                         String why)
+        throws InterruptedException
+    {
         long deleted = 0;
-        for (PnfsId id: tmpList) {
+        for (PnfsId id: batch) {
+            visited.add(id);
             try {
                 CacheEntry entry = _repository.getEntry(id);
 
@@ -470,6 +488,24 @@ public class SpaceSweeper2
         return deleted;
     }
 
+    /**
+     * Returns the number of files to select for reclaiming {@code deficit}
+     * bytes. The estimate is based on the average size of removable
+     * files, with some headroom for files that turn out to be in use.
+     */
+    private int getBatchSize(long deficit)
+    {
+        int queued = _index.size();
+        long removable = _account.getRemovable();
+        if (queued == 0 || removable <= deficit) {
+            return Math.max(queued, MIN_BATCH_SIZE);
+        }
+        long averageSize = Math.max(removable / queued, 1);
+        long files = deficit / averageSize + 1;
+        long batch = files + files / 4;
+        return (int) Math.max(MIN_BATCH_SIZE, Math.min(batch, MAX_BATCH_SIZE));
+    }
+
     private synchronized long getMarginalBytes()
     {
         double reclaim = _repository.getSpaceRecord().getTotalSpace() * _margin;
@@ -514,7 +550,12 @@ public class SpaceSweeper2
                         /*
                          * will be waked up if new entry added into list
                          */
-                        wait(10000);
+                        _isWaiting = true;
+                        try {
+                            wait(10000);
+                        } finally {
+                            _isWaiting = false;
+                        }
                     }
                 }
             }
@@ -525,67 +566,4 @@ public class SpaceSweeper2
             _repository.removeListener(this);
         }
     }
-
-    /**
-     * Queue of keys ordered by a timestamp.
-     */
-    private static class LruQueue<T extends Comparable<T>>
-    {
-        /**
-         * Tracks the time stamp of each element in the queue.
-         */
-        private final Map<T, Long> timeStamps = new HashMap<>();
-
-        /**
-         * Elements sorted by access time and value.
-         * <p>
-         * The comparator uses {@code timeStamps} to look up the time of keys. A compound comparator is used
-         * to ensure consistency with equals (otherwise two keys with the same time would be collapsed to
-         * a single element in the set).
-         * <p>
-         * Any element inserted into this set must have its access time recorded in {@code timeStamps}
-         * before being inserted into the set. The time must not change while the key is in the set.
-         */
-        private final SortedSet<T> queue =
-                new TreeSet<>(Comparator.<T, Long>comparing(k -> timeStamps.getOrDefault(k, 0L)).thenComparing(naturalOrder()));
-
-        public synchronized boolean add(T key, long time)
-        {
-            if (timeStamps.putIfAbsent(key, time) == null) {
-                queue.add(key);
-                return true;
-            }
-            return false;
-        }
-
-        public synchronized boolean remove(T key)
-        {
-            if (queue.remove(key)) {
-                timeStamps.remove(key);
-                return true;
-            }
-            return false;
-        }
-
-        public synchronized T getLeastRecentlyUsedElement()
-        {
-            if (queue.isEmpty()) {
-                return null;
-            }
-            return queue.first();
-        }
-
-        public synchronized long getTimeOfLeastRecentlyUsedElement()
-        {
-            if (queue.isEmpty()) {
-                return 0;
-            }
-            return timeStamps.get(queue.first());
-        }
-
-        public synchronized List<T> values()
-        {
-            return new ArrayList<>(queue);
-        }
-    }
 }
@@ -114,6 +114,10 @@ public class Job
 
     private Future<?> _refreshTask;
 
+    /** Batch to which new tasks are added, and the number of tasks added so far. */
+    private TaskBatch _batch;
+    private int _batchTasks;
+
     public Job(MigrationContext context, JobDefinition definition)
     {
         _context = context;
@@ -267,6 +271,9 @@ public class Job
             }
 
             pw.println("Concurrency: " + _concurrency);
+            if (_definition.batchSize > 1) {
+                pw.println("Batch size : " + _definition.batchSize);
+            }
             pw.println("Running tasks:");
             List<Task> tasks = new ArrayList<>(_running.values());
             Collections.sort(tasks, (t1, t2) -> Long.compare(t1.getId(), t2.getId()));
@@ -557,7 +564,8 @@ public class Job
                     Task task = new Task(_taskParameters, this, _context.getPoolName(),
                                          entry.getPnfsId(),
                                          getTargetState(entry), getTargetStickyRecords(entry),
-                                         getPins(entry), entry.getFileAttributes(), entry.getLastAccessTime());
+                                         getPins(entry), entry.getFileAttributes(), entry.getLastAccessTime(),
+                                         nextBatch());
                     _running.put(pnfsId, task);
                     _statistics.addAttempt();
                     task.run();
@@ -588,6 +596,24 @@ public class Job
         }
     }
 
+    /**
+     * Returns the batch of the next task, or null if the job does not
+     * copy files in batches.
+     */
+    @GuardedBy("_lock")
+    private TaskBatch nextBatch()
+    {
+        if (_definition.batchSize <= 1) {
+            return null;
+        }
+        if (_batch == null || _batchTasks >= _definition.batchSize) {
+            _batch = new TaskBatch();
+            _batchTasks = 0;
+        }
+        _batchTasks++;
+        return _batch;
+    }
+
     private ReplicaState getTargetState(CacheEntry entry)
     {
         switch (_definition.targetMode.state) {
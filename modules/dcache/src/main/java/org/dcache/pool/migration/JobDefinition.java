@@ -108,6 +108,11 @@ public class JobDefinition
      */
     public final int replicas;
 
+    /**
+     * Number of files to copy to the same target pool as a batch.
+     */
+    public final int batchSize;
+
     public JobDefinition(Predicate<CacheEntry> filter,
                          CacheEntryMode sourceMode,
                          CacheEntryMode targetMode,
@@ -125,7 +130,8 @@ public class JobDefinition
                          boolean maintainAtime,
                          Expression pauseWhen,
                          Expression stopWhen,
-                         boolean forceSourceMode)
+                         boolean forceSourceMode,
+                         int batchSize)
     {
         this.filter = filter;
         this.sourceMode = sourceMode;
@@ -145,5 +151,6 @@ public class JobDefinition
         this.pauseWhen = pauseWhen;
         this.stopWhen = stopWhen;
         this.forceSourceMode = forceSourceMode;
+        this.batchSize = batchSize;
     }
 }
@@ -370,6 +370,18 @@ public class MigrationModule
                 usage="Specifies how many concurrent transfers to perform.")
         int concurrency = 1;
 
+        @Option(name="batch", metaVar="files",
+                category="Transfer options",
+                usage="Copy up to this many files to the same target pool as a batch. " +
+                      "The target pool requests all files of a batch from this pool at " +
+                      "once, but downloads them one after the other over a single " +
+                      "connection, hiding the per-file setup of small files behind the " +
+                      "transfer of the previous file. A batch only fills if the " +
+                      "concurrency is at least the batch size. Keep batches small " +
+                      "enough to be transferred within the connect timeout of the " +
+                      "movers of this pool.")
+        int batch = 1;
+
         @Option(name="order", valueSpec="[-]size|[-]lru",
                 category="Transfer options",
                 usage = "Sort transfer queue. By default transfers are placed in " +
@@ -803,6 +815,10 @@ public class MigrationModule
                 throw new IllegalArgumentException("Number of replicas must be positive.");
             }
 
+            if (batch < 1) {
+                throw new IllegalArgumentException("Batch size must be positive.");
+            }
+
             Collection<Pattern> excluded = createPatterns(exclude);
             excluded.add(Pattern.compile(Pattern.quote(_context.getPoolName())));
             Collection<Pattern> included = createPatterns(include);
@@ -854,7 +870,8 @@ public class MigrationModule
                             maintainAtime,
                             createLifetimePredicate(pauseWhen),
                             createLifetimePredicate(stopWhen),
-                            forceSourceMode);
+                            forceSourceMode,
+                            batch);
 
             if (definition.targetMode.state == CacheEntryMode.State.DELETE
                     || definition.targetMode.state == CacheEntryMode.State.REMOVABLE) {
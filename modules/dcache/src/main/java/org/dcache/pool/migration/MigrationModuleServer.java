@@ -189,6 +189,7 @@ public class MigrationModuleServer
         private final boolean _forceSourceMode;
         private final Long _atime;
         private final boolean _isMetaOnly;
+        private final UUID _batch;
         private Integer _companion;
         private Future<?> _updateTask;
 
@@ -204,6 +205,7 @@ public class MigrationModuleServer
             _forceSourceMode = message.isForceSourceMode();
             _atime = message.getAtime();
             _isMetaOnly = message.isMetaOnly();
+            _batch = message.getBatch();
 
             if (_targetState != PRECIOUS && _targetState != CACHED) {
                 throw new IllegalArgumentException("State must be either CACHED or PRECIOUS");
@@ -237,7 +239,7 @@ public class MigrationModuleServer
                 _companion = _p2p.newCompanion(_pool, _fileAttributes,
                                                _targetState, _stickyRecords,
                                                this, _forceSourceMode,
-                                               _atime);
+                                               _atime, _batch);
             } else {
                 _updateTask = _executor.submit(this);
             }
@@ -28,6 +28,7 @@ public class PoolMigrationCopyReplicaMessage extends PoolMigrationMessage
     private final boolean _forceSourceMode;
     private final Long _atime;
     private final boolean _isMetaOnly;
+    private UUID _batch;
 
     public PoolMigrationCopyReplicaMessage(UUID uuid, String pool,
                                            FileAttributes fileAttributes,
@@ -86,4 +87,23 @@ public class PoolMigrationCopyReplicaMessage extends PoolMigrationMessage
     {
         return _atime;
     }
+
+    /**
+     * Sets the batch of the copy request. The replicas of a batch are
+     * copied from the source pool over a single connection.
+     */
+    public void setBatch(@Nullable UUID batch)
+    {
+        _batch = batch;
+    }
+
+    /**
+     * Returns the batch of the copy request. null if the replica is not
+     * copied as part of a batch.
+     */
+    @Nullable
+    public UUID getBatch()
+    {
+        return _batch;
+    }
 }
@@ -2,11 +2,14 @@ package org.dcache.pool.migration;
 
 import statemap.TransitionUndefinedException;
 
+import javax.annotation.Nullable;
+
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
@@ -70,6 +73,7 @@ public class Task
     private final List<StickyRecord> _pinsToMove;
     private final FileAttributes _fileAttributes;
     private final long _atime;
+    private final TaskBatch _batch;
 
     private ScheduledFuture<?> _timerTask;
     private Deque<String> _locations = new ArrayDeque<>(0);
@@ -85,7 +89,8 @@ public class Task
                 List<StickyRecord> targetStickyRecords,
                 List<StickyRecord> pinsToMove,
                 FileAttributes fileAttributes,
-                long atime)
+                long atime,
+                @Nullable TaskBatch batch)
     {
         _parameters = parameters;
         _pnfsId = pnfsId;
@@ -99,6 +104,7 @@ public class Task
         _callbackHandler = callbackHandler;
         _source = source;
         _atime = atime;
+        _batch = batch;
     }
 
     public boolean getMustMovePins()
@@ -169,7 +175,8 @@ public class Task
 
     /**
      * Returns a pool from the pool list using the pool selection
-     * strategy.
+     * strategy. Tasks of a batch prefer the pool selected by the
+     * batch, as long as the selection strategy accepts that pool.
      */
     private CellPath selectPool()
         throws NoSuchElementException
@@ -178,13 +185,25 @@ public class Task
                 _parameters.poolList.getPools().stream()
                         .filter(pool -> !_replicas.contains(pool.getName()))
                         .collect(toList());
-        PoolManagerPoolInformation pool = _parameters.selectionStrategy.select(pools);
+        PoolManagerPoolInformation pool = null;
+        if (_batch != null) {
+            pool = _batch.getTarget()
+                    .flatMap(target -> pools.stream().filter(p -> p.getName().equals(target)).findFirst())
+                    .map(target -> _parameters.selectionStrategy.select(Collections.singletonList(target)))
+                    .orElse(null);
+        }
+        if (pool == null) {
+            pool = _parameters.selectionStrategy.select(pools);
+        }
         if (pool == null) {
             if (pools.isEmpty()) {
                 throw new NoSuchElementException("No pools available.");
             }
             throw new NoSuchElementException("All target pools are full.");
         }
+        if (_batch != null) {
+            _batch.setTarget(pool.getName());
+        }
         return new CellPath(pool.getName());
     }
 
@@ -304,6 +323,9 @@ public class Task
                                                     _parameters.forceSourceMode,
                                                     _parameters.maintainAtime ? _atime : null,
                                                     _parameters.isMetaOnly);
+        if (_batch != null) {
+            copyReplicaMessage.setBatch(_batch.getId());
+        }
         CellStub.addCallback(_parameters.pool.send(_target, copyReplicaMessage),
                              new Callback<>("copy_"), _parameters.executor);
     }
@@ -0,0 +1,38 @@
+package org.dcache.pool.migration;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A group of tasks of a migration job that copy their replicas to the same
+ * target pool.
+ *
+ * The first task of the batch selects the target pool as usual. Subsequent
+ * tasks of the batch prefer that pool as long as it is eligible for them.
+ * The copy requests of the batch carry the ID of the batch, allowing the
+ * target pool to transfer the replicas of the batch one after the other
+ * over a single connection to the source pool.
+ */
+public class TaskBatch
+{
+    private final UUID _id = UUID.randomUUID();
+    private String _target;
+
+    public UUID getId()
+    {
+        return _id;
+    }
+
+    /**
+     * Returns the pool most recently selected by a task of the batch.
+     */
+    public synchronized Optional<String> getTarget()
+    {
+        return Optional.ofNullable(_target);
+    }
+
+    public synchronized void setTarget(String pool)
+    {
+        _target = pool;
+    }
+}
@@ -5,7 +5,6 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import dmg.cells.nucleus.CDC;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHeaders;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
@@ -13,11 +12,11 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.protocol.HTTP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
@@ -35,6 +34,7 @@ import java.util.List;
 import java.util.OptionalLong;
 import java.util.Set;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -71,7 +71,6 @@ import org.dcache.pool.repository.StickyRecord;
 import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.FireAndForgetTask;
-import org.dcache.util.Version;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsGetFileAttributes;
 
@@ -84,6 +83,14 @@ import static org.dcache.util.ByteUnit.KiB;
  *
  * The companion will submit an HTTP download request to the source
  * pool, wait for the reply and then download the file through HTTP.
+ * The download uses an HTTP client shared by all companions of the pool,
+ * so that connections to a source pool are kept alive and reused by
+ * subsequent transfers from the same pool.
+ *
+ * Companions of a batch download their files on the sequential executor
+ * of the batch rather than on a thread of their own. Their delivery
+ * requests are sent right away, thus while one file of the batch is
+ * downloaded the source pool prepares the transfers of the next files.
  *
  * The code is driven by a state machine, Companion.sm. Most of the
  * logic is encapsulated in the state machine.
@@ -103,8 +110,6 @@ class Companion
     private static final long CONNECT_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
     private static final long READ_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
 
-    private static final String USER_AGENT = "dCache/" + Version.of(Companion.class).getVersion();
-
     private final InetAddress _address;
     private final Repository _repository;
     private final ChecksumModule _checksumModule;
@@ -119,6 +124,8 @@ class Companion
     private final CellStub _pool;
     private final boolean _forceSourceMode;
     private final PnfsId _pnfsId;
+    private final CloseableHttpClient _client;
+    private final Executor _transferExecutor;
 
     /** State machine driving the transfer. */
     private final CompanionContext _fsm;
@@ -166,6 +173,9 @@ class Companion
      * @param callback    Callback to which success or failure is reported
      * @param forceSourceMode Ignores disabled state of pools
      * @param atime       Last access time for the new replica
+     * @param client      HTTP client used to download the file
+     * @param transferExecutor Executor on which the file is downloaded,
+     *                    or null to download the file on a new thread
      */
     Companion(ScheduledExecutorService executor,
               InetAddress address,
@@ -182,7 +192,9 @@ class Companion
               CacheFileAvailable callback,
               boolean forceSourceMode,
               Long atime,
-              Supplier<SSLContext> getContextIfNeeded) {
+              Supplier<SSLContext> getContextIfNeeded,
+              CloseableHttpClient client,
+              @Nullable Executor transferExecutor) {
         _fsm = new CompanionContext(this);
 
         _executor = executor;
@@ -198,6 +210,8 @@ class Companion
         _fileAttributes = requireNonNull(fileAttributes, "File attributes is missing.");
 
         _sslContext = getContextIfNeeded.get();
+        _client = requireNonNull(client);
+        _transferExecutor = transferExecutor;
 
 
         if (!_fileAttributes.isDefined(FileAttribute.PNFSID)) {
@@ -294,6 +308,13 @@ class Companion
     {
         ReplicaDescriptor handle;
         synchronized (this) {
+            /* A transfer queued on the executor of a batch may have been
+             * cancelled before it got its turn.
+             */
+            if (_fsm.getState() == CompanionContext.FSM.Cancelling) {
+                _fsm.transferEnded(new InterruptedException("Transfer was cancelled"));
+                return;
+            }
             try {
                 handle = createReplicaEntry();
             } catch (FileInCacheException e) {
@@ -341,17 +362,22 @@ class Companion
         RepositoryChannel channel = handle.createChannel();
         try {
             HttpGet get = new HttpGet(uri);
-            get.addHeader(HttpHeaders.CONNECTION, HTTP.CONN_CLOSE);
+            /* Waiting for a connection of a limited pool is not bounded,
+             * as the transfers holding the connections may well take
+             * longer than the connect timeout.
+             */
             get.setConfig(RequestConfig.custom()
+                                  .setConnectionRequestTimeout(0)
                                   .setConnectTimeout((int) CONNECT_TIMEOUT)
                                   .setSocketTimeout((int) READ_TIMEOUT)
                                   .build());
             setRequest(get);
 
-            try (CloseableHttpClient client = HttpClients.custom()
-                    .setSSLContext(_sslContext)
-                    .setUserAgent(USER_AGENT).build();
-                 CloseableHttpResponse response = client.execute(get)) {
+            /* The connection is returned to the pool of the shared client
+             * once the content has been read to the end, and closed if the
+             * response is closed before that.
+             */
+            try (CloseableHttpResponse response = _client.execute(get)) {
                 StatusLine statusLine = response.getStatusLine();
                 if (statusLine.getStatusCode() >= 300) {
                     throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
@@ -573,11 +599,16 @@ class Companion
     }
 
     /**
-     * Starts a thread that transfers the file from the source pool.
+     * Starts a thread that transfers the file from the source pool, or
+     * queues the transfer on the executor of the batch.
      */
     void beginTransfer(final String uri)
     {
         final CDC cdc = new CDC();
+        if (_transferExecutor != null) {
+            _transferExecutor.execute(() -> cdc.execute(() -> transfer(uri)));
+            return;
+        }
         new Thread("P2P Transfer - " + _pnfsId + " " + _sourcePoolName) {
             @Override
             public void run()
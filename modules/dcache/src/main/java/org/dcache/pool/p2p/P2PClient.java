@@ -2,6 +2,14 @@
 
 package org.dcache.pool.p2p;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
@@ -11,8 +19,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import diskCacheV111.util.CacheException;
@@ -34,6 +47,8 @@ import org.dcache.pool.classic.ChecksumModule;
 import org.dcache.pool.repository.ReplicaState;
 import org.dcache.pool.repository.Repository;
 import org.dcache.pool.repository.StickyRecord;
+import org.dcache.util.SequentialExecutor;
+import org.dcache.util.Version;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.pool.p2p.json.P2PData;
 
@@ -51,7 +66,16 @@ public class P2PClient
     implements CellMessageReceiver, CellCommandListener, CellSetupProvider, CellInfoProvider,
                 PoolDataBeanProvider<P2PData>
 {
+    private static final Logger _log = LoggerFactory.getLogger(P2PClient.class);
+
+    private static final String USER_AGENT = "dCache/" + Version.of(P2PClient.class).getVersion();
+
     private final Map<Integer, Companion> _companions = new HashMap<>();
+
+    /**
+     * Batches with active companions, by batch ID.
+     */
+    private final Map<UUID, Batch> _batches = new HashMap<>();
     private ScheduledExecutorService _executor;
     private Repository _repository;
     private ChecksumModule _checksumModule;
@@ -63,6 +87,22 @@ public class P2PClient
 
     private SSLContext _sslContext;
 
+    private int _maxConnectionsPerSource = -1;
+    private long _connectionIdleTimeout = 60;
+    private TimeUnit _connectionIdleTimeoutUnit = TimeUnit.SECONDS;
+
+    /**
+     * HTTP client shared by all companions. Connections to source pools are
+     * kept alive between transfers, avoiding a TCP and TLS handshake per file
+     * when many files are copied from the same pool.
+     */
+    private CloseableHttpClient _httpClient;
+
+    /**
+     * Threads downloading the files of batches.
+     */
+    private ExecutorService _batchTransferExecutor;
+
     // TODO: cross zone behaves as ALYWAYS as long as we can't distinct zones
     private Supplier<SSLContext> getContextIfNeeded = () -> {
 
@@ -103,12 +143,67 @@ public class P2PClient
     public synchronized void setSslContext(SSLContext sslContext)
     {
         _sslContext = sslContext;
+        closeHttpClient();
     }
 
     public synchronized void setTlsMode(TlsMode p2pTlslMode)
     {
         _p2pTlsMode = p2pTlslMode;
+        closeHttpClient();
+    }
 
+    public synchronized void setMaxConnectionsPerSource(int maxConnections)
+    {
+        _maxConnectionsPerSource = maxConnections;
+        closeHttpClient();
+    }
+
+    public synchronized void setConnectionIdleTimeout(long timeout)
+    {
+        _connectionIdleTimeout = timeout;
+        closeHttpClient();
+    }
+
+    public synchronized void setConnectionIdleTimeoutUnit(TimeUnit unit)
+    {
+        _connectionIdleTimeoutUnit = unit;
+        closeHttpClient();
+    }
+
+    private synchronized CloseableHttpClient getHttpClient()
+    {
+        if (_httpClient == null) {
+            /* The number of concurrent transfers is limited by the p2p
+             * queue, hence there is no limit on the total number of
+             * connections, nor by default on the number of connections
+             * to a single source.
+             */
+            _httpClient = HttpClients.custom()
+                    .setSSLContext(getContextIfNeeded.get())
+                    .setUserAgent(USER_AGENT)
+                    .setMaxConnPerRoute(_maxConnectionsPerSource < 0 ? Integer.MAX_VALUE : _maxConnectionsPerSource)
+                    .setMaxConnTotal(Integer.MAX_VALUE)
+                    .evictIdleConnections(_connectionIdleTimeout, _connectionIdleTimeoutUnit)
+                    .evictExpiredConnections()
+                    .build();
+        }
+        return _httpClient;
+    }
+
+    /**
+     * Closes the shared HTTP client, if any. The next transfer creates a new
+     * client using the current settings.
+     */
+    private synchronized void closeHttpClient()
+    {
+        if (_httpClient != null) {
+            try {
+                _httpClient.close();
+            } catch (IOException e) {
+                _log.warn("Failed to close HTTP client: {}", e.toString());
+            }
+            _httpClient = null;
+        }
     }
 
     public synchronized void messageArrived(DoorTransferFinishedMessage message)
@@ -176,6 +271,55 @@ public class P2PClient
         }
     }
 
+    /**
+     * Companions copying the files of a batch of a migration job from the
+     * same source pool. All companions of the batch request their files
+     * from the source right away, but the files are downloaded one after
+     * the other. The downloads therefore use a single connection to the
+     * source, while the source prepares the next files of the batch during
+     * the download of the current one.
+     */
+    private static class Batch
+    {
+        private final Executor _transfers;
+        private int _companions;
+
+        Batch(Executor executor)
+        {
+            _transfers = new SequentialExecutor(executor);
+        }
+    }
+
+    /**
+     * Adds a companion to a batch, creating the batch if needed.
+     */
+    private synchronized Executor joinBatch(UUID id)
+    {
+        Batch batch = _batches.get(id);
+        if (batch == null) {
+            if (_batchTransferExecutor == null) {
+                _batchTransferExecutor = Executors.newCachedThreadPool(
+                        new ThreadFactoryBuilder().setNameFormat("p2p-batch-transfer-%d").build());
+            }
+            batch = new Batch(_batchTransferExecutor);
+            _batches.put(id, batch);
+        }
+        batch._companions++;
+        return batch._transfers;
+    }
+
+    /**
+     * Removes a companion from a batch. The batch is dropped once it has
+     * no companions left.
+     */
+    private synchronized void leaveBatch(UUID id)
+    {
+        Batch batch = _batches.get(id);
+        if (batch != null && --batch._companions == 0) {
+            _batches.remove(id);
+        }
+    }
+
     /**
      * Small wrapper for the real callback. Will remove the companion
      * from the <code>_companions</code> map.
@@ -183,11 +327,13 @@ public class P2PClient
     private class Callback implements CacheFileAvailable
     {
         private final CacheFileAvailable _callback;
+        private final UUID _batch;
         private int _id;
 
-        Callback(CacheFileAvailable callback)
+        Callback(CacheFileAvailable callback, UUID batch)
         {
             _callback = callback;
+            _batch = batch;
             _id = -1;
         }
 
@@ -214,6 +360,9 @@ public class P2PClient
                     _callback.cacheFileAvailable(pnfsId, t);
                 }
                 removeCompanion(getId());
+                if (_batch != null) {
+                    leaveBatch(_batch);
+                }
 
                 /* In case of a successfull transfer, there is no
                  * reason to keep other companions on the same file
@@ -236,6 +385,27 @@ public class P2PClient
                                          boolean forceSourceMode,
                                          Long atime)
         throws IOException, CacheException, InterruptedException, IllegalStateException
+    {
+        return newCompanion(sourcePoolName, fileAttributes, targetState, stickyRecords,
+                            callback, forceSourceMode, atime, null);
+    }
+
+    /**
+     * Starts a new companion. Companions with the same batch ID download
+     * their files one after the other, see {@link Batch}.
+     *
+     * @param batch ID of the batch of the transfer, or null if the file is
+     *              not transferred as part of a batch
+     */
+    public synchronized int newCompanion(String sourcePoolName,
+                                         FileAttributes fileAttributes,
+                                         ReplicaState targetState,
+                                         List<StickyRecord> stickyRecords,
+                                         CacheFileAvailable callback,
+                                         boolean forceSourceMode,
+                                         Long atime,
+                                         @Nullable UUID batch)
+        throws IOException, CacheException, InterruptedException, IllegalStateException
     {
         if (getCellEndpoint() == null) {
             throw new IllegalStateException("Endpoint not initialized");
@@ -262,21 +432,32 @@ public class P2PClient
 
 
 
-        Callback cb = new Callback(callback);
-
-        Companion companion =
-                new Companion(_executor, _interface, _repository,
-                        _checksumModule,
-                        _pnfs, _pool,
-                        fileAttributes,
-                        sourcePoolName,
-                        getCellName(),
-                        getCellDomainName(),
-                        targetState, stickyRecords,
-                        cb, forceSourceMode,
-                        atime,
-                        getContextIfNeeded
-                        );
+        Callback cb = new Callback(callback, batch);
+        Executor transferExecutor = (batch == null) ? null : joinBatch(batch);
+
+        Companion companion;
+        try {
+            companion =
+                    new Companion(_executor, _interface, _repository,
+                            _checksumModule,
+                            _pnfs, _pool,
+                            fileAttributes,
+                            sourcePoolName,
+                            getCellName(),
+                            getCellDomainName(),
+                            targetState, stickyRecords,
+                            cb, forceSourceMode,
+                            atime,
+                            getContextIfNeeded,
+                            getHttpClient(),
+                            transferExecutor
+                            );
+        } catch (RuntimeException e) {
+            if (batch != null) {
+                leaveBatch(batch);
+            }
+            throw e;
+        }
 
         int id = addCompanion(companion);
         cb.setId(id);
@@ -306,6 +487,11 @@ public class P2PClient
         while (!_companions.isEmpty()) {
             wait();
         }
+        closeHttpClient();
+        if (_batchTransferExecutor != null) {
+            _batchTransferExecutor.shutdown();
+            _batchTransferExecutor = null;
+        }
     }
 
     @Override
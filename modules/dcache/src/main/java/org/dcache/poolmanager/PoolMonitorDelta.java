@@ -0,0 +1,133 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.poolmanager;
+
+import javax.annotation.Nullable;
+
+import java.io.Serializable;
+
+import diskCacheV111.poolManager.CostModuleV1;
+import diskCacheV111.poolManager.PoolSelectionUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Changes of the pool monitor of pool manager since some version.
+ *
+ * <p>A delta either is a complete snapshot of the pool monitor, or it holds
+ * the pool cost information received since the base version, the names of
+ * pools removed since then, the pool selection unit if it was modified since
+ * then, and the partition manager. Applying a delta to a pool monitor of a
+ * version no older than the base version yields the pool monitor of the
+ * version of the delta.
+ */
+public class PoolMonitorDelta implements Serializable
+{
+    private static final long serialVersionUID = 1935626441342717425L;
+
+    private final PoolMonitorVersion base;
+    private final PoolMonitorVersion version;
+    private final SerializablePoolMonitor snapshot;
+    private final PoolSelectionUnit selectionUnit;
+    private final PartitionManager partitionManager;
+    private final CostModuleV1.Delta costs;
+
+    private PoolMonitorDelta(PoolMonitorVersion base, PoolMonitorVersion version,
+                             SerializablePoolMonitor snapshot, PoolSelectionUnit selectionUnit,
+                             PartitionManager partitionManager, CostModuleV1.Delta costs)
+    {
+        this.base = base;
+        this.version = requireNonNull(version);
+        this.snapshot = snapshot;
+        this.selectionUnit = selectionUnit;
+        this.partitionManager = partitionManager;
+        this.costs = costs;
+    }
+
+    public static PoolMonitorDelta snapshot(PoolMonitorVersion version, SerializablePoolMonitor monitor)
+    {
+        return new PoolMonitorDelta(null, version, requireNonNull(monitor), null, null, null);
+    }
+
+    public static PoolMonitorDelta delta(PoolMonitorVersion base, PoolMonitorVersion version,
+                                         @Nullable PoolSelectionUnit selectionUnit,
+                                         PartitionManager partitionManager,
+                                         CostModuleV1.Delta costs)
+    {
+        return new PoolMonitorDelta(requireNonNull(base), version, null, selectionUnit,
+                                    requireNonNull(partitionManager), requireNonNull(costs));
+    }
+
+    public boolean isSnapshot()
+    {
+        return snapshot != null;
+    }
+
+    /**
+     * Returns the version the changes are relative to, or null for a snapshot.
+     */
+    @Nullable
+    public PoolMonitorVersion getBase()
+    {
+        return base;
+    }
+
+    public PoolMonitorVersion getVersion()
+    {
+        return version;
+    }
+
+    public SerializablePoolMonitor getSnapshot()
+    {
+        checkState(snapshot != null, "Delta is not a snapshot.");
+        return snapshot;
+    }
+
+    /**
+     * Returns the pool selection unit if modified since the base version,
+     * or null otherwise.
+     */
+    @Nullable
+    public PoolSelectionUnit getSelectionUnit()
+    {
+        return selectionUnit;
+    }
+
+    public PartitionManager getPartitionManager()
+    {
+        return partitionManager;
+    }
+
+    public CostModuleV1.Delta getCosts()
+    {
+        return costs;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (isSnapshot()) {
+            return "snapshot " + version;
+        }
+        return "delta " + base + " -> " + version + " [pools updated=" + costs.getUpdatedPools().size()
+               + ", removed=" + costs.getRemovedPools().size()
+               + ", psu " + (selectionUnit == null ? "unchanged" : "changed") + ']';
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.poolmanager;
+
+import java.io.Serializable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Version of the pool monitor of a pool manager instance.
+ *
+ * <p>The version consists of the version of the pool selection unit and the
+ * version of the cost module, both of which only increase. Versions of
+ * different pool manager instances, or of different incarnations of the same
+ * instance, have a different epoch and cannot be compared.
+ */
+public class PoolMonitorVersion implements Serializable
+{
+    private static final long serialVersionUID = -4781537392040367412L;
+
+    private final String epoch;
+    private final long selectionUnitVersion;
+    private final long costModuleVersion;
+
+    public PoolMonitorVersion(String epoch, long selectionUnitVersion, long costModuleVersion)
+    {
+        this.epoch = requireNonNull(epoch);
+        this.selectionUnitVersion = selectionUnitVersion;
+        this.costModuleVersion = costModuleVersion;
+    }
+
+    public String getEpoch()
+    {
+        return epoch;
+    }
+
+    public long getSelectionUnitVersion()
+    {
+        return selectionUnitVersion;
+    }
+
+    public long getCostModuleVersion()
+    {
+        return costModuleVersion;
+    }
+
+    /**
+     * Returns true if this version has the same epoch as {@code other} and
+     * neither of its components is newer.
+     */
+    public boolean isAtMost(PoolMonitorVersion other)
+    {
+        return epoch.equals(other.epoch)
+               && selectionUnitVersion <= other.selectionUnitVersion
+               && costModuleVersion <= other.costModuleVersion;
+    }
+
+    /**
+     * Returns the component-wise maximum of this and another version with
+     * the same epoch.
+     */
+    public PoolMonitorVersion max(PoolMonitorVersion other)
+    {
+        if (!epoch.equals(other.epoch)) {
+            throw new IllegalArgumentException("Versions of different epochs cannot be combined.");
+        }
+        return new PoolMonitorVersion(epoch,
+                                      Math.max(selectionUnitVersion, other.selectionUnitVersion),
+                                      Math.max(costModuleVersion, other.costModuleVersion));
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        PoolMonitorVersion version = (PoolMonitorVersion) o;
+        return selectionUnitVersion == version.selectionUnitVersion
+               && costModuleVersion == version.costModuleVersion
+               && epoch.equals(version.epoch);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return epoch.hashCode() ^ Long.hashCode(selectionUnitVersion) ^ Long.hashCode(costModuleVersion);
+    }
+
+    @Override
+    public String toString()
+    {
+        return epoch + ':' + selectionUnitVersion + ':' + costModuleVersion;
+    }
+}
@@ -20,6 +20,7 @@
 package org.dcache.poolmanager;
 
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
@@ -29,9 +30,12 @@ import org.springframework.remoting.RemoteProxyFailureException;
 import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.poolManager.CostModule;
+import diskCacheV111.poolManager.PoolMonitorV5;
 import diskCacheV111.poolManager.PoolSelectionUnit;
 import diskCacheV111.pools.PoolCostInfo;
 import diskCacheV111.util.CacheException;
@@ -49,6 +53,7 @@ import dmg.cells.nucleus.NoRouteToCellException;
 
 import org.dcache.cells.AbstractMessageCallback;
 import org.dcache.cells.CellStub;
+import org.dcache.util.CDCScheduledExecutorServiceDecorator;
 import org.dcache.util.TimeUtils;
 import org.dcache.vehicles.FileAttributes;
 
@@ -57,6 +62,13 @@ import static org.dcache.util.MathUtils.subWithInfinity;
 
 /**
  * PoolMonitor that delegates to a PoolMonitor obtained from pool manager.
+ *
+ * <p>The pool monitor is either received as a complete snapshot, or it is
+ * kept up to date by applying deltas published by pool manager. If a delta
+ * cannot be applied because an earlier delta was missed, the changes since
+ * the local version are requested from pool manager. The same request is
+ * made if no update was received for a while, e.g. because pool manager does
+ * not publish deltas.
  */
 public class RemotePoolMonitor
         implements PoolMonitor, CellLifeCycleAware, CellMessageReceiver, CellInfoProvider
@@ -69,12 +81,38 @@ public class RemotePoolMonitor
     private long refreshCount;
     private CellAddressCore previousMonitorSource;
 
+    /** Version of the pool monitor, or null if unknown. */
+    private PoolMonitorVersion version;
+    private long deltaCount;
+    private long snapshotCount;
+    private boolean isRequestingDelta;
+
+    /** Time an update was last received from pool manager. */
+    private long lastUpdateTime;
+    private long refreshPeriod = 1;
+    private TimeUnit refreshPeriodUnit = TimeUnit.MINUTES;
+    private ScheduledExecutorService refreshExecutor;
+
     @Required
     public void setPoolManagerStub(CellStub stub)
     {
         poolManagerStub = stub;
     }
 
+    /**
+     * Sets the time after which pool manager is asked for changes if
+     * no update was received.
+     */
+    public void setRefreshPeriod(long period)
+    {
+        refreshPeriod = period;
+    }
+
+    public void setRefreshPeriodUnit(TimeUnit unit)
+    {
+        refreshPeriodUnit = unit;
+    }
+
     @Override
     public void getInfo(PrintWriter pw)
     {
@@ -85,35 +123,83 @@ public class RemotePoolMonitor
         }
         pw.println("refresh count = " + refreshCount);
         pw.println("active refresh target = " + poolManagerStub);
+        synchronized (this) {
+            pw.println("version = " + (version == null ? "unknown" : version));
+            pw.println("snapshots received = " + snapshotCount);
+            pw.println("deltas applied = " + deltaCount);
+        }
     }
 
 
     @Override
     public synchronized void afterStart()
     {
-        CellStub.addCallback(poolManagerStub.send(new PoolManagerGetPoolMonitor(), CellEndpoint.SendFlag.RETRY_ON_NO_ROUTE_TO_CELL),
+        requestDelta();
+        refreshExecutor = new CDCScheduledExecutorServiceDecorator<>(
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("pool-monitor-refresh").setDaemon(true).build()));
+        refreshExecutor.scheduleWithFixedDelay(this::refreshIfStale, refreshPeriod, refreshPeriod,
+                                               refreshPeriodUnit);
+    }
+
+    @Override
+    public synchronized void beforeStop()
+    {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    private synchronized void refreshIfStale()
+    {
+        if (lastUpdateTime < System.currentTimeMillis() - refreshPeriodUnit.toMillis(refreshPeriod)) {
+            LOGGER.debug("No pool monitor update received since {}; requesting changes from pool manager.",
+                         lastUpdateTime);
+            requestDelta();
+        }
+    }
+
+    /**
+     * Requests the changes since the local version from pool manager.
+     */
+    private synchronized void requestDelta()
+    {
+        if (isRequestingDelta) {
+            return;
+        }
+        isRequestingDelta = true;
+        CellStub.addCallback(poolManagerStub.send(new PoolManagerGetPoolMonitor(version),
+                                                  CellEndpoint.SendFlag.RETRY_ON_NO_ROUTE_TO_CELL),
                              new AbstractMessageCallback<PoolManagerGetPoolMonitor>()
                              {
                                  @Override
                                  public void success(PoolManagerGetPoolMonitor message)
                                  {
-                                     acceptMonitor(message.getPoolMonitor());
+                                     requestCompleted();
+                                     acceptReply(message);
                                  }
 
                                  @Override
                                  public void timeout(String message)
                                  {
-                                     afterStart();
+                                     requestCompleted();
+                                     requestDelta();
                                  }
 
                                  @Override
                                  public void failure(int rc, Object error)
                                  {
+                                     requestCompleted();
                                  }
                              },
                              MoreExecutors.directExecutor());
     }
 
+    private synchronized void requestCompleted()
+    {
+        isRequestingDelta = false;
+    }
+
     @Override
     public PoolSelectionUnit getPoolSelectionUnit()
     {
@@ -162,7 +248,11 @@ public class RemotePoolMonitor
 
     public void refresh() throws CacheException, InterruptedException, NoRouteToCellException
     {
-        acceptMonitor(poolManagerStub.sendAndWait(new PoolManagerGetPoolMonitor()).getPoolMonitor());
+        PoolMonitorVersion known;
+        synchronized (this) {
+            known = version;
+        }
+        acceptReply(poolManagerStub.sendAndWait(new PoolManagerGetPoolMonitor(known)));
     }
 
     public synchronized long getRefreshCount()
@@ -184,12 +274,58 @@ public class RemotePoolMonitor
             }
             previousMonitorSource = envelope.getSourceAddress();
         }
-        acceptMonitor(monitor);
+        acceptMonitor(monitor, null);
+    }
+
+    public void messageArrived(PoolMonitorDelta delta)
+    {
+        if (!acceptDelta(delta)) {
+            LOGGER.debug("Cannot apply {} to version {}; requesting changes from pool manager.", delta, version);
+            requestDelta();
+        }
+    }
+
+    private void acceptReply(PoolManagerGetPoolMonitor message)
+    {
+        PoolMonitorDelta delta = message.getPoolMonitorDelta();
+        if (delta == null) {
+            /* Pool manager does not support deltas. */
+            acceptMonitor(message.getPoolMonitor(), null);
+        } else if (!acceptDelta(delta)) {
+            LOGGER.debug("Ignoring outdated {}.", delta);
+        }
+    }
+
+    /**
+     * Applies a delta to the local pool monitor.
+     *
+     * @return false if the delta is relative to a version newer than or
+     * unrelated to the local version, true otherwise
+     */
+    private synchronized boolean acceptDelta(PoolMonitorDelta delta)
+    {
+        if (delta.isSnapshot()) {
+            lastUpdateTime = System.currentTimeMillis();
+            snapshotCount++;
+            acceptMonitor(delta.getSnapshot(), delta.getVersion());
+            return true;
+        }
+        if (version == null || !(poolMonitor instanceof PoolMonitorV5) || !delta.getBase().isAtMost(version)) {
+            return false;
+        }
+        lastUpdateTime = System.currentTimeMillis();
+        if (!delta.getVersion().isAtMost(version)) {
+            deltaCount++;
+            acceptMonitor(((PoolMonitorV5) poolMonitor).apply(version, delta), version.max(delta.getVersion()));
+        }
+        return true;
     }
 
-    private synchronized void acceptMonitor(SerializablePoolMonitor monitor)
+    private synchronized void acceptMonitor(SerializablePoolMonitor monitor, PoolMonitorVersion version)
     {
         poolMonitor = monitor;
+        lastUpdateTime = System.currentTimeMillis();
+        this.version = version;
         lastRefreshTime = System.currentTimeMillis();
         refreshCount++;
         notifyAll();
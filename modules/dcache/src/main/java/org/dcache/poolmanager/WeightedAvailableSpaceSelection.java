@@ -1,10 +1,13 @@
 package org.dcache.poolmanager;
 
 import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 import java.io.Serializable;
-import java.security.SecureRandom;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import diskCacheV111.pools.PoolCostInfo;
 
@@ -55,22 +58,63 @@ import static java.util.concurrent.TimeUnit.DAYS;
  * Note that setting both factors to zero causes pool selection to
  * become random. This it the same behaviour as with the classic
  * partition.
+ *
+ * The part of the weight that does not depend on the file size is
+ * computed once per cost report of a pool and kept until the pool
+ * reports its cost again. Selecting a pool thus only has to check
+ * whether the file fits and draw a weighted sample from the cached
+ * weights. Weights are kept in logarithmic form, which avoids overflow
+ * and underflow for extreme cost factors and loads.
  */
 public class WeightedAvailableSpaceSelection implements Serializable
 {
     private static final long serialVersionUID = 6196398425106858164L;
 
-    /* SecureRandom is a higher quality source for randomness than
-     * Random.
-     */
-    protected static final SecureRandom RANDOM = new SecureRandom();
-
     static final double SECONDS_IN_WEEK = DAYS.toSeconds(7);
     static final double LOG2 = Math.log(2);
 
     private final double performanceCostFactor;
     private final double spaceCostFactor;
 
+    /**
+     * Weights by cost information of a pool. Pool manager replaces rather
+     * than updates the cost information of a pool whenever the pool reports
+     * its cost, so a cached weight stays valid until it is garbage collected
+     * with the cost information it was computed from. Keys are compared by
+     * identity.
+     */
+    private transient volatile LoadingCache<PoolCostInfo, Weight> weights;
+
+    /**
+     * The file size independent part of the weighted available space of
+     * a pool.
+     */
+    private static class Weight
+    {
+        /**
+         * Files of this size or larger cannot be written to the pool
+         * without eating into the gap.
+         */
+        final long capacity;
+
+        /**
+         * Natural logarithm of the weighted available space, or negative
+         * infinity if no space is available.
+         */
+        final double logWeight;
+
+        Weight(long capacity, double logWeight)
+        {
+            this.capacity = capacity;
+            this.logWeight = logWeight;
+        }
+
+        boolean canHold(long filesize)
+        {
+            return filesize < capacity && logWeight != Double.NEGATIVE_INFINITY;
+        }
+    }
+
     public WeightedAvailableSpaceSelection(double performanceCostFactor, double spaceCostFactor)
     {
         this.performanceCostFactor = performanceCostFactor;
@@ -79,7 +123,7 @@ public class WeightedAvailableSpaceSelection implements Serializable
 
     protected double random()
     {
-        return RANDOM.nextDouble();
+        return ThreadLocalRandom.current().nextDouble();
     }
 
     /**
@@ -224,14 +268,34 @@ public class WeightedAvailableSpaceSelection implements Serializable
         return writers;
     }
 
-    protected double getWeightedAvailable(PoolCostInfo info, double available, double load)
+    private double getLoad(PoolCostInfo info)
     {
-        return (available == 0) ? 0 : (Math.pow(available, spaceCostFactor) / Math.pow(2.0, load));
+        return performanceCostFactor * info.getMoverCostFactor() * getWriters(info);
     }
 
-    private double getLoad(PoolCostInfo info)
+    private LoadingCache<PoolCostInfo, Weight> weights()
     {
-        return performanceCostFactor * info.getMoverCostFactor() * getWriters(info);
+        LoadingCache<PoolCostInfo, Weight> cache = weights;
+        if (cache == null) {
+            cache = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(this::computeWeight));
+            weights = cache;
+        }
+        return cache;
+    }
+
+    private Weight computeWeight(PoolCostInfo info)
+    {
+        PoolCostInfo.PoolSpaceInfo space = info.getSpaceInfo();
+        long capacity = space.getFreeSpace() + space.getRemovableSpace() - space.getGap();
+
+        /* The weighted available space is available^scf / 2^load, i.e. its
+         * logarithm is scf * log(available) - load * log(2).
+         */
+        double available = space.getFreeSpace() + getAvailableRemovable(space);
+        double logWeight = (available > 0)
+                ? spaceCostFactor * Math.log(available) - getLoad(info) * LOG2
+                : Double.NEGATIVE_INFINITY;
+        return new Weight(capacity, logWeight);
     }
 
     /**
@@ -242,51 +306,47 @@ public class WeightedAvailableSpaceSelection implements Serializable
     public <P> P selectByAvailableSpace(List<P> pools, long filesize,
                                         Function<P, PoolCostInfo> getCost)
     {
+        LoadingCache<PoolCostInfo, Weight> weights = weights();
         int length = pools.size();
-        double[] available = new double[length];
+        double[] cumulative = new double[length];
 
-        /* Calculate available space adjusted by space cost factor. Determine the smallest
-         * load of all pools able to hold the file.
+        /* Determine the largest weight of all pools able to hold the file.
          */
-        double minLoad = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
         for (int i = 0; i < length; i++) {
-            PoolCostInfo info = getCost.apply(pools.get(i));
-            double free = getAvailable(info.getSpaceInfo(), filesize);
-            if (free > 0) {
-                available[i] = free;
-                minLoad = Math.min(minLoad, getLoad(info));
-            }
+            Weight weight = weights.getUnchecked(getCost.apply(pools.get(i)));
+            double logWeight = weight.canHold(filesize) ? weight.logWeight : Double.NEGATIVE_INFINITY;
+            cumulative[i] = logWeight;
+            max = Math.max(max, logWeight);
         }
 
-        if (minLoad == Double.POSITIVE_INFINITY) {
+        if (max == Double.NEGATIVE_INFINITY) {
             return null;
         }
 
-        /* Weight available space by normalized load. Load is normalized to ensure that at least
-         * for one pool we maintain enough precision to not reduce available space to zero.
+        /* Weights are normalized by the largest weight to ensure that at least for one pool
+         * we maintain enough precision to not reduce the weight to zero.
          */
         double sum = 0.0;
         for (int i = 0; i < length; i++) {
-            PoolCostInfo info = getCost.apply(pools.get(i));
-            double normalizedLoad = getLoad(info) - minLoad;
-            double weightedAvailable = getWeightedAvailable(info, available[i], normalizedLoad);
-            sum += weightedAvailable;
-            available[i] = sum;
+            sum += Math.exp(cumulative[i] - max);
+            cumulative[i] = sum;
         }
 
-        /* Randomly choose one of the pools.
+        /* Randomly choose one of the pools by binary search for the first cumulative weight
+         * above the threshold.
          */
         double threshold = random() * sum;
-        for (int i = 0; i < length; i++) {
-            if (threshold < available[i]) {
-                return pools.get(i);
+        int low = 0;
+        int high = length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (threshold < cumulative[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
-
-        if (sum == Double.POSITIVE_INFINITY) {
-            throw new IllegalStateException("WASS overflow: Configured space cost factor (" + spaceCostFactor + ") is too large.");
-        }
-
-        throw new RuntimeException("Unreachable statement.");
+        return pools.get(low);
     }
 }
@@ -11,22 +11,21 @@ import org.stringtemplate.v4.STGroup;
 import org.stringtemplate.v4.compiler.STException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import diskCacheV111.cells.DateRenderer;
@@ -47,12 +46,11 @@ import dmg.util.Formats;
 import dmg.util.Replaceable;
 
 import org.dcache.cells.CellStub;
+import org.dcache.services.billing.text.BillingLogWriter;
 import org.dcache.services.billing.text.StringTemplateInfoMessageVisitor;
 import org.dcache.util.Args;
 import org.dcache.util.Slf4jSTErrorListener;
 
-import static java.nio.file.StandardOpenOption.*;
-
 /**
  * This class is responsible for the processing of messages from other
  * domains regarding transfers and pool usage.
@@ -71,19 +69,23 @@ public final class BillingCell
         new SimpleDateFormat ("MM.dd HH:mm:ss");
     private final SimpleDateFormat _fileNameFormat =
         new SimpleDateFormat("yyyy.MM.dd");
-    private final SimpleDateFormat _directoryNameFormat =
-        new SimpleDateFormat("yyyy" + File.separator + "MM");
 
     private final STGroup _templateGroup = new STGroup('$', '$');
     private final Map<String,String> _formats = new HashMap<>();
 
+    /**
+     * Compiled templates by message type. Messages are rendered by copies
+     * of these, which share the compiled template.
+     */
+    private final Map<String,ST> _templates = new HashMap<>();
+
     private final Map<String,int[]> _map = Maps.newHashMap();
     private final Map<String,long[]> _poolStatistics = Maps.newHashMap();
     private final Map<String,Map<String,long[]>> _poolStorageMap = Maps.newHashMap();
 
     private int _requests;
     private int _failed;
-    private Path _currentDbFile;
+    private BillingLogWriter _writer;
 
     /*
      * Injected
@@ -92,6 +94,10 @@ public final class BillingCell
     private Path _logsDir;
     private boolean _enableText;
     private boolean _flatTextDir;
+    private long _textFlushPeriod;
+    private TimeUnit _textFlushPeriodUnit;
+    private int _textBufferSize;
+    private int _textMaxQueueSize;
 
     public BillingCell()
     {
@@ -111,6 +117,13 @@ public final class BillingCell
                 String format = Formats.replaceKeywords(String.valueOf(e.getValue()), replaceable);
                 String clazz = CaseFormat.LOWER_HYPHEN.to(CaseFormat.UPPER_CAMEL, key.substring(FORMAT_PREFIX.length()));
                 _formats.put(clazz, format);
+                if (!Strings.isNullOrEmpty(format)) {
+                    try {
+                        _templates.put(clazz, new ST(_templateGroup, format));
+                    } catch (STException ex) {
+                        _log.error("Unable to compile format '{}'.", format);
+                    }
+                }
             }
         }
     }
@@ -133,27 +146,31 @@ public final class BillingCell
             pw.format("%20s : %6d / %d\n",
                       entry.getKey(), values[0], values[1]);
         }
+        if (_writer != null) {
+            _writer.getInfo(pw);
+        }
     }
 
     @PostConstruct
     public void start() throws CommandThrowableException
     {
         if (_enableText) {
-            String ext = getFilenameExtension(new Date());
-            appendHeaders(getBillingPath(ext));
-            appendHeaders(getErrorPath(ext));
+            _writer = new BillingLogWriter(_logsDir, _flatTextDir, this::getFormatHeaders,
+                                           _textFlushPeriodUnit.toMillis(_textFlushPeriod),
+                                           _textBufferSize, _textMaxQueueSize);
+            try {
+                _writer.start();
+            } catch (IOException e) {
+                throw new CommandThrowableException("Failed to write to billing file: " + e, e);
+            }
         }
     }
 
-    protected void appendHeaders(Path path) throws CommandThrowableException
+    @PreDestroy
+    public void stop() throws InterruptedException
     {
-        try {
-            String headers = getFormatHeaders();
-            Files.write(path, headers.getBytes(StandardCharsets.UTF_8),
-                    StandardOpenOption.APPEND, StandardOpenOption.WRITE);
-        } catch (NoSuchFileException ignored) {
-        } catch (IOException e) {
-            throw new CommandThrowableException("Failed to write to billing file " + path + ": " + e, e);
+        if (_writer != null) {
+            _writer.stop();
         }
     }
 
@@ -179,10 +196,10 @@ public final class BillingCell
         if (_enableText) {
             String output = getFormattedMessage(info);
             if (!output.isEmpty()) {
-                String ext = getFilenameExtension(new Date(info.getTimestamp()));
-                log(getBillingPath(ext), output);
-                if (info.getResultCode() != 0) {
-                    log(getErrorPath(ext), output);
+                try {
+                    _writer.write(info.getTimestamp(), output, info.getResultCode() != 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
             }
         }
@@ -201,14 +218,14 @@ public final class BillingCell
     }
 
     private String getFormattedMessage(InfoMessage msg) {
-        String format = _formats.get(msg.getClass().getSimpleName());
-        if (!Strings.isNullOrEmpty(format)) {
+        ST compiled = _templates.get(msg.getClass().getSimpleName());
+        if (compiled != null) {
             try {
-                ST template = new ST(_templateGroup, format);
+                ST template = new ST(compiled);
                 msg.accept(new StringTemplateInfoMessageVisitor(template));
                 return template.render();
             } catch (STException e) {
-                _log.error("Unable to render format '{}'.", format);
+                _log.error("Unable to render format '{}'.", _formats.get(msg.getClass().getSimpleName()));
             }
         }
         return "";
@@ -318,44 +335,6 @@ public final class BillingCell
         }
     }
 
-    private String getFilenameExtension(Date dateOfEvent)
-    {
-        if (_flatTextDir) {
-            _currentDbFile = _logsDir;
-            return _fileNameFormat.format(dateOfEvent);
-        } else {
-            Date now = new Date();
-            _currentDbFile = _logsDir.resolve(_directoryNameFormat.format(now));
-            try {
-                Files.createDirectories(_currentDbFile);
-            } catch (IOException e) {
-                _log.error("Failed to create directory {}: {}", _currentDbFile, e.toString());
-            }
-            return _fileNameFormat.format(now);
-        }
-    }
-
-    private void log(Path path, String output)
-    {
-        byte[] outputBytes = (output + "\n").getBytes(StandardCharsets.UTF_8);
-        try {
-            try {
-                Files.write(path, outputBytes, WRITE, APPEND);
-            } catch (NoSuchFileException f) {
-                String outputWithHeader = getFormatHeaders() + output + '\n';
-                try {
-                    Files.write(path, outputWithHeader.getBytes(StandardCharsets.UTF_8),
-                            WRITE, CREATE_NEW);
-                } catch (FileAlreadyExistsException e) {
-                    // Lost the race, so try appending again
-                    Files.write(path, outputBytes, WRITE, APPEND);
-                }
-            }
-        } catch (IOException e) {
-            _log.warn("Can't write billing [{}] : {}", path, e.toString());
-        }
-    }
-
     private String getFormatHeaders()
     {
         return _formats.entrySet().stream()
@@ -363,16 +342,6 @@ public final class BillingCell
                 .collect(Collectors.joining());
     }
 
-    protected Path getBillingPath(String ext)
-    {
-        return _currentDbFile.resolve("billing-" + ext);
-    }
-
-    private Path getErrorPath(String ext)
-    {
-        return _currentDbFile.resolve("billing-error-" + ext);
-    }
-
     private void doStatistics(InfoMessage info) {
         if (info instanceof WarningPnfsFileInfoMessage) {
             return;
@@ -457,4 +426,24 @@ public final class BillingCell
         _enableText = enableText;
     }
 
+    @Required
+    public void setTextFlushPeriod(long period) {
+        _textFlushPeriod = period;
+    }
+
+    @Required
+    public void setTextFlushPeriodUnit(TimeUnit unit) {
+        _textFlushPeriodUnit = unit;
+    }
+
+    @Required
+    public void setTextBufferSize(int size) {
+        _textBufferSize = size;
+    }
+
+    @Required
+    public void setTextMaxQueueSize(int size) {
+        _textMaxQueueSize = size;
+    }
+
 }
@@ -0,0 +1,379 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.services.billing.text;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes billing records to the daily billing text files.
+ *
+ * <p>Records are queued and written by a single thread. The files of the
+ * current day stay open; records are buffered and written to the files in
+ * groups, when the buffer of a file is full and at least once per flush
+ * period. Every write appends complete lines, thus several billing instances
+ * may append to the same file.
+ *
+ * <p>Records are written to billing-yyyy.MM.dd and, for failed requests,
+ * to billing-error-yyyy.MM.dd. Unless the directory is flat, the files are
+ * in a yyyy/MM sub-directory and the day is that on which the record is
+ * written rather than that of the event. The file name and directory are
+ * determined once per day. A new file starts with the headers.
+ */
+public class BillingLogWriter
+{
+    private static final Logger _log = LoggerFactory.getLogger(BillingLogWriter.class);
+
+    private static final DateTimeFormatter FILE_NAME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy.MM.dd");
+    private static final DateTimeFormatter DIRECTORY_NAME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy" + File.separator + "MM");
+
+    /**
+     * Records written in one go before checking whether files are to be
+     * flushed.
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Files not written to for this long are closed.
+     */
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private static class Record
+    {
+        final long timestamp;
+        final byte[] line;
+        final boolean isError;
+
+        Record(long timestamp, byte[] line, boolean isError)
+        {
+            this.timestamp = timestamp;
+            this.line = line;
+            this.isError = isError;
+        }
+    }
+
+    private static final Record STOP = new Record(0, new byte[0], false);
+
+    /**
+     * Paths of the billing files for one day.
+     */
+    private static class Period
+    {
+        final long start;
+        final long end;
+        final Path billingPath;
+        final Path errorPath;
+
+        Period(long start, long end, Path billingPath, Path errorPath)
+        {
+            this.start = start;
+            this.end = end;
+            this.billingPath = billingPath;
+            this.errorPath = errorPath;
+        }
+
+        boolean contains(long time)
+        {
+            return start <= time && time < end;
+        }
+    }
+
+    private static class Output
+    {
+        final OutputStream out;
+        long lastWritten;
+
+        Output(OutputStream out)
+        {
+            this.out = out;
+        }
+    }
+
+    private final Path _dir;
+    private final boolean _isFlat;
+    private final Supplier<String> _headers;
+    private final long _flushPeriod;
+    private final int _bufferSize;
+    private final ZoneId _zone = ZoneId.systemDefault();
+    private final BlockingQueue<Record> _queue;
+    private final Thread _thread;
+
+    /* Accessed by the writer thread only. */
+    private final Map<Path,Output> _outputs = new HashMap<>();
+    private Period _period;
+    private boolean _isDirty;
+
+    private final LongAdder _records = new LongAdder();
+    private final LongAdder _bytes = new LongAdder();
+    private final LongAdder _flushes = new LongAdder();
+    private final LongAdder _errors = new LongAdder();
+    private final long _started = System.currentTimeMillis();
+
+    /**
+     * @param dir the directory of the billing files
+     * @param isFlat whether the files are in {@code dir} rather than in
+     * a yyyy/MM sub-directory
+     * @param headers provides the headers of new files
+     * @param flushPeriod the maximum time in milliseconds records stay buffered
+     * @param bufferSize the size of the buffer of each file
+     * @param maxQueueSize the number of records queued for writing before
+     * {@link #write} blocks
+     */
+    public BillingLogWriter(Path dir, boolean isFlat, Supplier<String> headers,
+                            long flushPeriod, int bufferSize, int maxQueueSize)
+    {
+        _dir = dir;
+        _isFlat = isFlat;
+        _headers = headers;
+        _flushPeriod = flushPeriod;
+        _bufferSize = bufferSize;
+        _queue = new LinkedBlockingQueue<>(maxQueueSize);
+        _thread = new Thread(this::run, "billing-writer");
+    }
+
+    /**
+     * Appends the headers to the billing files of today if they exist and
+     * starts writing records.
+     */
+    public void start() throws IOException
+    {
+        Period period = getPeriod(System.currentTimeMillis());
+        appendHeaders(period.billingPath);
+        appendHeaders(period.errorPath);
+        _thread.start();
+    }
+
+    /**
+     * Writes all queued records, closes the files and stops the writer.
+     */
+    public void stop() throws InterruptedException
+    {
+        _queue.put(STOP);
+        _thread.join();
+    }
+
+    /**
+     * Queues a record for writing. Blocks if the queue is full.
+     *
+     * @param timestamp the time of the event
+     * @param line the record without line terminator
+     * @param isError whether the record is also written to the error file
+     */
+    public void write(long timestamp, String line, boolean isError) throws InterruptedException
+    {
+        _queue.put(new Record(timestamp, (line + '\n').getBytes(StandardCharsets.UTF_8), isError));
+    }
+
+    public void getInfo(PrintWriter pw)
+    {
+        long records = _records.sum();
+        long flushes = _flushes.sum();
+        double seconds = Math.max(1, System.currentTimeMillis() - _started) / 1000.0;
+        pw.format("%20s : %d (%.1f/s)\n", "Records written", records, records / seconds);
+        pw.format("%20s : %d (%.1f/s)\n", "Bytes written", _bytes.sum(), _bytes.sum() / seconds);
+        pw.format("%20s : %d (%.1f records/flush)\n", "Flushes", flushes,
+                  (flushes == 0) ? 0.0 : (double) records / flushes);
+        pw.format("%20s : %d\n", "Write errors", _errors.sum());
+        pw.format("%20s : %d\n", "Queued records", _queue.size());
+    }
+
+    private void run()
+    {
+        List<Record> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        long nextFlush = System.currentTimeMillis() + _flushPeriod;
+        boolean isStopped = false;
+        while (!isStopped) {
+            try {
+                long delay = Math.max(0, nextFlush - System.currentTimeMillis());
+                Record first = _queue.poll(delay, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    _queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    for (Record record : batch) {
+                        if (record == STOP) {
+                            isStopped = true;
+                            break;
+                        }
+                        append(record);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                isStopped = true;
+            }
+
+            long now = System.currentTimeMillis();
+            if (isStopped || now >= nextFlush) {
+                flush(now);
+                nextFlush = now + _flushPeriod;
+            }
+        }
+
+        for (Record record; (record = _queue.poll()) != null; ) {
+            if (record != STOP) {
+                append(record);
+            }
+        }
+        _outputs.keySet().forEach(this::close);
+        _outputs.clear();
+    }
+
+    private void append(Record record)
+    {
+        Period period = getPeriod(_isFlat ? record.timestamp : System.currentTimeMillis());
+        append(period.billingPath, record.line);
+        if (record.isError) {
+            append(period.errorPath, record.line);
+        }
+        _records.increment();
+    }
+
+    private void append(Path path, byte[] line)
+    {
+        try {
+            Output output = _outputs.get(path);
+            if (output == null) {
+                output = open(path);
+                _outputs.put(path, output);
+            }
+            output.out.write(line);
+            output.lastWritten = System.currentTimeMillis();
+            _bytes.add(line.length);
+            _isDirty = true;
+        } catch (IOException e) {
+            _log.warn("Can't write billing [{}] : {}", path, e.toString());
+            _errors.increment();
+            close(path);
+            _outputs.remove(path);
+        }
+    }
+
+    private Output open(Path path) throws IOException
+    {
+        OutputStream out;
+        try {
+            out = new BufferedOutputStream(Files.newOutputStream(path, WRITE, CREATE_NEW), _bufferSize);
+            out.write(_headers.get().getBytes(StandardCharsets.UTF_8));
+        } catch (FileAlreadyExistsException e) {
+            out = new BufferedOutputStream(Files.newOutputStream(path, WRITE, APPEND), _bufferSize);
+        }
+        return new Output(out);
+    }
+
+    private void flush(long now)
+    {
+        Iterator<Map.Entry<Path,Output>> iterator = _outputs.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path,Output> entry = iterator.next();
+            try {
+                entry.getValue().out.flush();
+            } catch (IOException e) {
+                _log.warn("Can't write billing [{}] : {}", entry.getKey(), e.toString());
+                _errors.increment();
+                close(entry.getKey());
+                iterator.remove();
+                continue;
+            }
+            if (now - entry.getValue().lastWritten > IDLE_TIMEOUT) {
+                close(entry.getKey());
+                iterator.remove();
+            }
+        }
+        if (_isDirty) {
+            _flushes.increment();
+            _isDirty = false;
+        }
+    }
+
+    private void close(Path path)
+    {
+        Output output = _outputs.get(path);
+        if (output != null) {
+            try {
+                output.out.close();
+            } catch (IOException e) {
+                _log.warn("Can't write billing [{}] : {}", path, e.toString());
+                _errors.increment();
+            }
+        }
+    }
+
+    private Period getPeriod(long time)
+    {
+        Period period = _period;
+        if (period == null || !period.contains(time)) {
+            LocalDate day = Instant.ofEpochMilli(time).atZone(_zone).toLocalDate();
+            Path dir = _dir;
+            if (!_isFlat) {
+                dir = _dir.resolve(DIRECTORY_NAME_FORMAT.format(day));
+                try {
+                    Files.createDirectories(dir);
+                } catch (IOException e) {
+                    _log.error("Failed to create directory {}: {}", dir, e.toString());
+                }
+            }
+            String ext = FILE_NAME_FORMAT.format(day);
+            period = new Period(day.atStartOfDay(_zone).toInstant().toEpochMilli(),
+                                day.plusDays(1).atStartOfDay(_zone).toInstant().toEpochMilli(),
+                                dir.resolve("billing-" + ext),
+                                dir.resolve("billing-error-" + ext));
+            _period = period;
+        }
+        return period;
+    }
+
+    private void appendHeaders(Path path) throws IOException
+    {
+        try {
+            Files.write(path, _headers.get().getBytes(StandardCharsets.UTF_8), WRITE, APPEND);
+        } catch (NoSuchFileException ignored) {
+        }
+    }
+}
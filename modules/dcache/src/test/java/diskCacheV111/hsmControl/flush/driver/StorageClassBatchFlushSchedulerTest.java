@@ -0,0 +1,363 @@
+package diskCacheV111.hsmControl.flush.driver;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import diskCacheV111.hsmControl.flush.HsmFlushControlCore;
+import diskCacheV111.pools.PoolCellInfo;
+import diskCacheV111.pools.StorageClassFlushInfo;
+
+import org.dcache.util.Args;
+
+import static org.dcache.util.ByteUnit.MiB;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class StorageClassBatchFlushSchedulerTest
+{
+    private static final String TAPE1 = "atlas:raw@osm";
+    private static final String TAPE2 = "cms:raw@osm";
+
+    private FakeCore core;
+    private StorageClassBatchFlushScheduler scheduler;
+
+    @Before
+    public void setup()
+    {
+        core = new FakeCore("-batch.megabytes=1000 -max.minutes=60 -max.classes=1");
+        scheduler = new StorageClassBatchFlushScheduler(null, core);
+    }
+
+    @Test
+    public void shouldNotFlushSmallRecentClass()
+    {
+        core.pool("pool1").pending(TAPE1, 10, 400);
+        core.pool("pool2").pending(TAPE1, 10, 400);
+        scheduler.init();
+
+        scheduler.timer();
+
+        assertThat(core.flushes(), is(0));
+    }
+
+    @Test
+    public void shouldFlushClassOnAllPoolsWhenBatchSizeReached()
+    {
+        core.pool("pool1").pending(TAPE1, 10, 400);
+        core.pool("pool2").pending(TAPE1, 10, 400);
+        core.pool("pool3").pending(TAPE1, 10, 400);
+        core.pool("pool4");
+        scheduler.init();
+
+        scheduler.timer();
+
+        assertThat(core.pool("pool1").info(TAPE1).flushes, is(1));
+        assertThat(core.pool("pool2").info(TAPE1).flushes, is(1));
+        assertThat(core.pool("pool3").info(TAPE1).flushes, is(1));
+        assertThat(core.flushes(), is(3));
+    }
+
+    @Test
+    public void shouldFlushClassWhenOldestFileExceedsMaximumAge()
+    {
+        core.pool("pool1").pending(TAPE1, 1, 1);
+        core.pool("pool2").pending(TAPE1, 1, 1).oldest(System.currentTimeMillis() - 61 * 60_000L);
+        scheduler.init();
+
+        scheduler.timer();
+
+        assertThat(core.flushes(), is(2));
+    }
+
+    @Test
+    public void shouldNotStartNextBatchOfClassBeforePreviousIsDone()
+    {
+        core.pool("pool1").pending(TAPE1, 10, 600);
+        core.pool("pool2").pending(TAPE1, 10, 600);
+        scheduler.init();
+        scheduler.timer();
+
+        core.pool("pool1").info(TAPE1).done();
+        scheduler.flushingDone("pool1", TAPE1, core.pool("pool1").info(TAPE1));
+        core.pool("pool1").pending(TAPE1, 10, 2000);
+        scheduler.timer();
+
+        assertThat(core.pool("pool1").info(TAPE1).flushes, is(1));
+
+        core.pool("pool2").info(TAPE1).done();
+        scheduler.flushingDone("pool2", TAPE1, core.pool("pool2").info(TAPE1));
+        scheduler.timer();
+
+        assertThat(core.pool("pool1").info(TAPE1).flushes, is(2));
+    }
+
+    @Test
+    public void shouldCompleteBatchWhenFlushFailed()
+    {
+        core.pool("pool1").pending(TAPE1, 10, 2000);
+        scheduler.init();
+        scheduler.timer();
+
+        /* a failed flush clears the flushing state without flushingDone */
+        core.pool("pool1").info(TAPE1).done();
+        scheduler.timer();
+
+        assertThat(core.pool("pool1").info(TAPE1).flushes, is(2));
+    }
+
+    @Test
+    public void shouldLimitConcurrentClassesAndPreferFullestClass()
+    {
+        core.pool("pool1").pending(TAPE1, 10, 1500).pending(TAPE2, 10, 3000);
+        scheduler.init();
+
+        scheduler.timer();
+
+        assertThat(core.pool("pool1").info(TAPE1).flushes, is(0));
+        assertThat(core.pool("pool1").info(TAPE2).flushes, is(1));
+
+        core.pool("pool1").pending(TAPE2, 0, 0).info(TAPE2).done();
+        scheduler.flushingDone("pool1", TAPE2, core.pool("pool1").info(TAPE2));
+        scheduler.timer();
+
+        assertThat(core.pool("pool1").info(TAPE1).flushes, is(1));
+    }
+
+    @Test
+    public void shouldNotStartBatchesWhenSuspended()
+    {
+        core.pool("pool1").pending(TAPE1, 10, 2000);
+        scheduler.init();
+
+        scheduler.ac_suspend(new Args(""));
+        scheduler.timer();
+
+        assertThat(core.flushes(), is(0));
+
+        scheduler.ac_resume(new Args(""));
+        scheduler.timer();
+
+        assertThat(core.flushes(), is(1));
+    }
+
+    @Test
+    public void shouldReportChangedProperties()
+    {
+        scheduler.init();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("batch.megabytes", "5");
+        properties.put("unsupported", "x");
+
+        scheduler.propertiesUpdated(properties);
+
+        assertThat(properties.get("batch.megabytes"), is("5"));
+        assertThat(properties.get("max.classes"), is("1"));
+        assertThat(properties.containsKey("unsupported"), is(false));
+    }
+
+    private static class FakeFlushInfo implements HsmFlushControlCore.FlushInfo
+    {
+        private final String name;
+        private final StorageClassFlushInfo info;
+        private boolean flushing;
+        private int flushes;
+
+        FakeFlushInfo(String name)
+        {
+            this.name = name;
+            String[] parts = name.split("@");
+            info = new StorageClassFlushInfo(parts[1], parts[0]);
+        }
+
+        FakeFlushInfo oldest(long timestamp)
+        {
+            info.setOldestFileTimestamp(timestamp);
+            return this;
+        }
+
+        void done()
+        {
+            flushing = false;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public boolean isFlushing()
+        {
+            return flushing;
+        }
+
+        @Override
+        public StorageClassFlushInfo getStorageClassFlushInfo()
+        {
+            return info;
+        }
+
+        @Override
+        public void flush(int count)
+        {
+            flushing = true;
+            flushes++;
+        }
+    }
+
+    private static class FakePool implements HsmFlushControlCore.Pool
+    {
+        private final String name;
+        private final Map<String, FakeFlushInfo> infos = new TreeMap<>();
+
+        FakePool(String name)
+        {
+            this.name = name;
+        }
+
+        FakeFlushInfo info(String storageClass)
+        {
+            return infos.computeIfAbsent(storageClass, FakeFlushInfo::new);
+        }
+
+        FakePool pending(String storageClass, int files, long megabytes)
+        {
+            FakeFlushInfo info = info(storageClass);
+            info.info.setRequestCount(files);
+            info.info.setTotalPendingFileSize(MiB.toBytes(megabytes));
+            info.info.setOldestFileTimestamp(System.currentTimeMillis());
+            return this;
+        }
+
+        FakeFlushInfo oldest(long timestamp)
+        {
+            return infos.values().iterator().next().oldest(timestamp);
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public PoolCellInfo getCellInfo()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isActive()
+        {
+            return true;
+        }
+
+        @Override
+        public List<HsmFlushControlCore.FlushInfoDetails> getFlushInfos()
+        {
+            return new ArrayList<>(infos.values());
+        }
+
+        @Override
+        public boolean isReadOnly()
+        {
+            return false;
+        }
+
+        @Override
+        public HsmFlushControlCore.FlushInfo getFlushInfoByStorageClass(String storageClass)
+        {
+            return infos.get(storageClass);
+        }
+
+        @Override
+        public Set<String> getStorageClassNames()
+        {
+            return new TreeSet<>(infos.keySet());
+        }
+
+        @Override
+        public void queryMode()
+        {
+        }
+
+        @Override
+        public void setReadOnly(boolean rdOnly)
+        {
+        }
+
+        @Override
+        public void setDriverHandle(HsmFlushControlCore.DriverHandle handle)
+        {
+        }
+
+        @Override
+        public HsmFlushControlCore.DriverHandle getDriverHandle()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isPoolIoModeKnown()
+        {
+            return true;
+        }
+    }
+
+    private static class FakeCore implements HsmFlushControlCore
+    {
+        private final Args args;
+        private final Map<String, FakePool> pools = new TreeMap<>();
+
+        FakeCore(String args)
+        {
+            this.args = new Args(args);
+        }
+
+        FakePool pool(String name)
+        {
+            return pools.computeIfAbsent(name, FakePool::new);
+        }
+
+        int flushes()
+        {
+            return pools.values().stream()
+                    .flatMap(p -> p.infos.values().stream())
+                    .mapToInt(i -> i.flushes)
+                    .sum();
+        }
+
+        @Override
+        public Args getDriverArgs()
+        {
+            return args;
+        }
+
+        @Override
+        public HsmFlushControlCore.Pool getPoolByName(String poolName)
+        {
+            return pools.get(poolName);
+        }
+
+        @Override
+        public Set<String> getConfiguredPoolNames()
+        {
+            return pools.keySet();
+        }
+
+        @Override
+        public List<HsmFlushControlCore.Pool> getConfiguredPools()
+        {
+            return new ArrayList<>(pools.values());
+        }
+    }
+}
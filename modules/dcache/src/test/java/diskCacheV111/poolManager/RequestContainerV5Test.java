@@ -55,6 +55,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.IntFunction;
 import java.util.stream.Collectors;
@@ -3248,6 +3249,92 @@ public class RequestContainerV5Test
         then(endpoint).shouldHaveNoMoreInteractions();
     }
 
+    @Test
+    public void shouldAnswerAllConcurrentRequestsWhileListing() throws Exception
+    {
+        int files = 200;
+        int doorsPerFile = 5;
+        int deliveryThreads = 4;
+
+        executor.shutdownNow();
+        executor = Executors.newFixedThreadPool(8);
+
+        given(aPartitionManager().withDefault(aPartition()));
+        given(aPoolSelectionUnit().withNetUnit("all-net", "192.168.1.1")
+                .withProtocolUnit("HTTP", "http/1"));
+        given(aPoolMonitor().thatReturns(aPoolSelectorThat()
+                .onReadSelects("pool1@dCacheDomain")));
+        given(aContainer("PoolManager@dCacheDomain").thatDoesNotSendHitMessages());
+
+        /* Requests for the same file from different doors are handled by a
+         * single handler, so handlers complete while requests for the same
+         * file keep arriving.
+         */
+        List<CellMessage> envelopes = new ArrayList<>();
+        for (int door = 0; door < doorsPerFile; door++) {
+            for (int file = 0; file < files; file++) {
+                CellMessage envelope = aReadRequestFrom("door-" + door + "@dCacheDomain")
+                        .forFile(String.format("0000%032X", file))
+                        .withPath("/public/test-" + file)
+                        .withFileAttributes(attributes().size(10, KiB).storageInfo(aStorageInfo()))
+                        .withProtocolInfo(aProtocolInfo().withProtocol("http")
+                                .withMajorVersion(1).withIPAddress("192.168.1.1"))
+                        .buildEnvelope();
+                envelope.nextDestination();
+                envelopes.add(envelope);
+            }
+        }
+
+        ExecutorService doors = Executors.newFixedThreadPool(deliveryThreads + 1);
+        try {
+            AtomicBoolean isDelivering = new AtomicBoolean(true);
+            Future<?> listing = doors.submit(() -> {
+                while (isDelivering.get()) {
+                    doAdminCommand("rc ls -l");
+                    doAdminCommand("rc ls -w");
+                    container.getRestoreHandlerInfo();
+                }
+                return null;
+            });
+
+            List<Future<?>> deliveries = new ArrayList<>();
+            for (int i = 0; i < deliveryThreads; i++) {
+                List<CellMessage> share = envelopes.subList(i * envelopes.size() / deliveryThreads,
+                        (i + 1) * envelopes.size() / deliveryThreads);
+                deliveries.add(doors.submit(() -> {
+                    for (CellMessage envelope : share) {
+                        container.messageArrived(envelope,
+                                (PoolMgrSelectReadPoolMsg) envelope.getMessageObject());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> delivery : deliveries) {
+                delivery.get(30, TimeUnit.SECONDS);
+            }
+            isDelivering.set(false);
+            listing.get(30, TimeUnit.SECONDS);
+        } finally {
+            doors.shutdownNow();
+        }
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!doAdminCommand("rc ls").isEmpty()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Requests still pending: " + doAdminCommand("rc ls"));
+            }
+            Thread.sleep(10);
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+
+        List<PoolMgrSelectReadPoolMsg> allReplies = allRepliesSentWith(endpoint);
+        assertThat(allReplies.size(), equalTo(files * doorsPerFile));
+        for (CellMessage envelope : envelopes) {
+            then((PoolMgrSelectReadPoolMsg) envelope.getMessageObject()).should().setSucceeded();
+        }
+    }
+
     private void given(ContainerBuilder builder)
     {
         container = builder.build();
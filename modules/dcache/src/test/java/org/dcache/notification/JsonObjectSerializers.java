@@ -0,0 +1,219 @@
+package org.dcache.notification;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+import diskCacheV111.vehicles.DoorRequestInfoMessage;
+import diskCacheV111.vehicles.IpProtocolInfo;
+import diskCacheV111.vehicles.MoverInfoMessage;
+import diskCacheV111.vehicles.RemoveFileInfoMessage;
+import diskCacheV111.vehicles.StorageInfo;
+import diskCacheV111.vehicles.StorageInfoMessage;
+
+/**
+ * The serializers of event notifications as they were before they were
+ * replaced by streaming encoders. These build a JSONObject per message and
+ * serve as reference for the output of the streaming encoders.
+ */
+class JsonObjectSerializers
+{
+    private static final String[] REDUNDANT_MOVER_DATA_KEYS
+                    = {
+                        "subject",
+                        "pnfsid",
+                        "fileSize",
+                        "initiator",
+                        "billingPath",
+                        "storageInfo"
+                      };
+
+    private JsonObjectSerializers()
+    {
+    }
+
+    private static String date(long timestamp)
+    {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME
+                .format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+    }
+
+    static JSONObject transform(MoverInfoMessage data)
+    {
+        JSONObject o = new JSONObject();
+        o.put("version", "1.0");
+        o.put("msgType", data.getMessageType());
+        o.put("date", date(data.getTimestamp()));
+        o.put("queuingTime", data.getTimeQueued());
+        o.put("cellName", data.getCellAddress().getCellName());
+        o.put("cellType", data.getCellType());
+        o.put("cellDomain", data.getCellAddress().getCellDomainName());
+
+        if (!Double.isNaN(data.getMeanReadBandwidth())) {
+            o.put("meanReadBandwidth", data.getMeanReadBandwidth());
+        }
+
+        if (!Double.isNaN(data.getMeanWriteBandwidth())) {
+            o.put("meanWriteBandwidth", data.getMeanWriteBandwidth());
+        }
+
+        data.getReadIdle().ifPresent(d -> o.put("readIdle", d.toString()));
+        data.getWriteIdle().ifPresent(d -> o.put("writeIdle", d.toString()));
+        data.getReadActive().ifPresent(d -> o.put("readActive", d.toString()));
+        data.getWriteActive().ifPresent(d -> o.put("writeActive", d.toString()));
+
+        JSONObject status = new JSONObject();
+        status.put("code", data.getResultCode());
+        status.put("msg", data.getMessage());
+        o.put("status", status);
+
+        o.put("session", data.getTransaction());
+
+        JSONArray subject = new JSONArray();
+        data.getSubject().getPrincipals().forEach(s -> subject.put(s));
+        o.put("subject", subject);
+
+        o.put("pnfsid", data.getPnfsId());
+        o.put("billingPath", data.getBillingPath());
+        o.put("fileSize", data.getFileSize());
+        o.put("storageInfo", data.getStorageInfo().getStorageClass() + "@" + data.getStorageInfo().getHsm());
+        o.put("transferSize", data.getDataTransferred());
+        o.put("transferTime", data.getConnectionTime());
+        o.put("isWrite", data.isFileCreated() ? "write" : "read");
+
+        InetSocketAddress remoteHost = ((IpProtocolInfo)data.getProtocolInfo()).getSocketAddress();
+
+        JSONObject protocolInfo = new JSONObject();
+        protocolInfo.put("protocol", data.getProtocolInfo().getProtocol());
+        protocolInfo.put("versionMajor", data.getProtocolInfo().getMajorVersion());
+        protocolInfo.put("versionMinor", data.getProtocolInfo().getMinorVersion());
+        protocolInfo.put("port", remoteHost.getPort());
+        protocolInfo.put("host", remoteHost.getAddress().getHostAddress());
+        o.put("protocolInfo", protocolInfo);
+
+        o.put("initiator", data.getInitiator());
+        o.put("isP2p", data.isP2P());
+        o.put("transferPath", data.getTransferPath());
+        return o;
+    }
+
+    static String serialize(MoverInfoMessage data)
+    {
+        return transform(data).toString();
+    }
+
+    static String serialize(DoorRequestInfoMessage data)
+    {
+        JSONObject o = new JSONObject();
+        o.put("VERSION", "1.0");
+        o.put("msgType", data.getMessageType());
+        o.put("date", date(data.getTimestamp()));
+        o.put("queuingTime", data.getTimeQueued());
+        o.put("cellName", data.getCellAddress().getCellName());
+        o.put("cellType", data.getCellType());
+        o.put("cellDomain", data.getCellAddress().getCellDomainName());
+
+        JSONObject status = new JSONObject();
+        status.put("code", data.getResultCode());
+        status.put("msg", data.getMessage());
+        o.put("status", status);
+
+        o.put("session", data.getTransaction());
+        o.put("sessionDuration", data.getTransactionDuration());
+        o.put("transferPath", data.getTransferPath());
+
+        JSONArray subject = new JSONArray();
+        data.getSubject().getPrincipals().forEach(s -> subject.put(s));
+        o.put("subject", subject);
+        o.put("client", data.getClient());
+        o.put("clientChain", data.getClientChain());
+        o.put("mappedUID", data.getUid());
+        o.put("mappedGID", data.getGid());
+        o.put("owner", data.getOwner());
+        o.put("pnfsid", data.getPnfsId());
+        o.put("billingPath", data.getBillingPath());
+        o.put("fileSize", data.getFileSize());
+        StorageInfo info = data.getStorageInfo();
+        if (info != null) {
+            o.put("storageInfo", info.getStorageClass() + "@" + info.getHsm());
+        }
+
+        MoverInfoMessage moverInfoMessage = data.getMoverInfo();
+
+        if (moverInfoMessage != null) {
+            JSONObject moverInfo = transform(moverInfoMessage);
+            Arrays.stream(REDUNDANT_MOVER_DATA_KEYS).forEach(moverInfo::remove);
+            o.put("moverInfo", moverInfo);
+        }
+
+        return o.toString();
+    }
+
+    static String serialize(RemoveFileInfoMessage data)
+    {
+        JSONObject o = new JSONObject();
+        o.put("version", "1.0");
+        o.put("msgType", data.getMessageType());
+        o.put("date", date(data.getTimestamp()));
+        o.put("queuingTime", data.getTimeQueued());
+        o.put("transaction", data.getTransaction());
+        o.put("cellName", data.getCellAddress().getCellName());
+        o.put("cellType", data.getCellType());
+        o.put("cellDomain", data.getCellAddress().getCellDomainName());
+
+        JSONObject status = new JSONObject();
+        status.put("code", data.getResultCode());
+        status.put("msg", data.getMessage());
+
+        o.put("status", status);
+
+        o.put("session", data.getTransaction());
+
+        JSONArray subject = new JSONArray();
+        data.getSubject().getPrincipals().forEach(s -> subject.put(s));
+        o.put("subject", subject);
+
+        o.put("pnfsid", data.getPnfsId());
+        o.put("billingPath", data.getBillingPath());
+        o.put("fileSize", data.getFileSize());
+        o.put("storageInfo", data.getStorageInfo().getStorageClass() + "@" + data.getStorageInfo().getHsm());
+
+        return o.toString();
+    }
+
+    static String serialize(StorageInfoMessage data)
+    {
+        JSONObject o = new JSONObject();
+        o.put("version", "1.0");
+        o.put("msgType", data.getMessageType());
+        o.put("date", date(data.getTimestamp()));
+        o.put("queuingTime", data.getTimeQueued());
+        o.put("transaction", data.getTransaction());
+        o.put("cellName", data.getCellAddress().getCellName());
+        o.put("cellType", data.getCellType());
+        o.put("cellDomain", data.getCellAddress().getCellDomainName());
+
+        JSONObject status = new JSONObject();
+        status.put("code", data.getResultCode());
+        status.put("msg", data.getMessage());
+
+        o.put("status", status);
+
+        o.put("session", data.getTransaction());
+
+        o.put("pnfsid", data.getPnfsId());
+        o.put("billingPath", data.getBillingPath());
+        o.put("fileSize", data.getFileSize());
+        o.put("storageInfo", data.getStorageInfo().getStorageClass() + "@" + data.getStorageInfo().getHsm());
+
+        o.put("transferTime", data.getTransferTime());
+
+        return o.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package org.dcache.notification;
+
+import javax.security.auth.Subject;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.function.Function;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.DoorRequestInfoMessage;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.MoverInfoMessage;
+
+import dmg.cells.nucleus.CellAddressCore;
+
+import org.dcache.auth.GidPrincipal;
+import org.dcache.auth.UidPrincipal;
+import org.dcache.auth.UserNamePrincipal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Microbenchmark of the Kafka serializers of mover and door request info
+ * messages.
+ * <p>
+ * Compares the streaming encoders with the previous serializers, which
+ * built a JSONObject per message. Reports messages per second and the bytes
+ * allocated per message by the serializing thread.
+ * <p>
+ * Run with:
+ * <pre>
+ *     java -cp ... org.dcache.notification.NotificationSerializerBenchmark [messages]
+ * </pre>
+ */
+public class NotificationSerializerBenchmark
+{
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    private static MoverInfoMessage moverInfo(Subject subject)
+    {
+        MoverInfoMessage message = new MoverInfoMessage(new CellAddressCore("pool1", "poolDomain"),
+                new PnfsId("0000B706DD4045F346F2B90F882B706DA807"));
+        message.setSubject(subject);
+        message.setBillingPath("/data/atlas/atlasdatadisk/rucio/data18_13TeV/4f/2a/DAOD_PHYS.24345670._000123.pool.root.1");
+        message.setFileSize(2_345_678_901L);
+        message.setStorageInfo(new GenericStorageInfo("osm", "atlas:default"));
+        message.setTransferAttributes(2_345_678_901L, 23_456,
+                new DCapProtocolInfo("Xrootd", 5, 0, new InetSocketAddress("192.168.1.2", 1094)));
+        message.setInitiator("door:Xrootd-atlas@xrootdDomain:AAXcJ0PNOXA");
+        message.setMeanReadBandwidth(1.234e8);
+        message.setReadIdle(Duration.ofMillis(1500));
+        message.setReadActive(Duration.ofMillis(21_956));
+        message.setResult(0, "");
+        return message;
+    }
+
+    private static <T> void run(String name, Function<T,byte[]> serializer, T message, int messages)
+    {
+        long threadId = Thread.currentThread().getId();
+        long allocated = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            sink += serializer.apply(message).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = THREADS.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.printf("%-32s %12.0f msg/s %10d bytes/msg%n", name,
+                          messages / (elapsed / 1e9), allocated / messages);
+    }
+
+    public static void main(String[] args)
+    {
+        int messages = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UidPrincipal(1000));
+        subject.getPrincipals().add(new GidPrincipal(100, true));
+        subject.getPrincipals().add(new UserNamePrincipal("alice"));
+
+        MoverInfoMessage mover = moverInfo(subject);
+        DoorRequestInfoMessage door = new DoorRequestInfoMessage(new CellAddressCore("Xrootd-atlas", "xrootdDomain"), "request");
+        door.setSubject(subject);
+        door.setPnfsId(mover.getPnfsId());
+        door.setBillingPath(mover.getBillingPath());
+        door.setFileSize(mover.getFileSize());
+        door.setStorageInfo(mover.getStorageInfo());
+        door.setClient("192.168.1.2");
+        door.setClientChain("192.168.1.2");
+        door.setTransactionDuration(25_000);
+        door.setMoverInfo(mover);
+        door.setResult(0, "");
+
+        BillingMessageSerializer moverSerializer = new BillingMessageSerializer();
+        DoorRequestMessageSerializer doorSerializer = new DoorRequestMessageSerializer();
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println(round < 2 ? "Warm-up" : "Measurement");
+            run("mover, JSONObject", (MoverInfoMessage m) -> JsonObjectSerializers.serialize(m).getBytes(UTF_8),
+                mover, messages);
+            run("mover, streaming", (MoverInfoMessage m) -> moverSerializer.serialize("billing", m),
+                mover, messages);
+            run("door request, JSONObject", (DoorRequestInfoMessage m) -> JsonObjectSerializers.serialize(m).getBytes(UTF_8),
+                door, messages);
+            run("door request, streaming", (DoorRequestInfoMessage m) -> doorSerializer.serialize("billing", m),
+                door, messages);
+        }
+        System.out.println(sink == 0 ? "" : "done");
+    }
+}
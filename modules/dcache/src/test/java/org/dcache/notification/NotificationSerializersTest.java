@@ -0,0 +1,158 @@
+package org.dcache.notification;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.security.auth.Subject;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.DoorRequestInfoMessage;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.MoverInfoMessage;
+import diskCacheV111.vehicles.RemoveFileInfoMessage;
+import diskCacheV111.vehicles.StorageInfoMessage;
+
+import dmg.cells.nucleus.CellAddressCore;
+
+import org.dcache.auth.GidPrincipal;
+import org.dcache.auth.UidPrincipal;
+import org.dcache.auth.UserNamePrincipal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationSerializersTest
+{
+    private static final PnfsId PNFSID = new PnfsId("0000B706DD4045F346F2B90F882B706DA807");
+    private static final String PATH = "/data/<atlas>/d\u00e9j\u00e0 vu/\"quoted\"\\file\u2028\u0001";
+
+    private Subject subject;
+
+    @Before
+    public void setup()
+    {
+        subject = new Subject();
+        subject.getPrincipals().add(new UidPrincipal(1000));
+        subject.getPrincipals().add(new GidPrincipal(100, true));
+        subject.getPrincipals().add(new UserNamePrincipal("alice"));
+    }
+
+    private MoverInfoMessage moverInfo()
+    {
+        MoverInfoMessage message = new MoverInfoMessage(new CellAddressCore("pool1", "poolDomain"), PNFSID);
+        message.setSubject(subject);
+        message.setBillingPath(PATH);
+        message.setTransferPath(PATH + "/transfer");
+        message.setFileSize(1234567890123L);
+        message.setStorageInfo(new GenericStorageInfo("osm", "atlas:default"));
+        message.setTransferAttributes(1234567890123L, 4711,
+                new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("192.168.1.2", 22125)));
+        message.setFileCreated(true);
+        message.setInitiator("door:DCap-gsi@dcapDomain:1");
+        message.setP2P(false);
+        message.setMeanReadBandwidth(1.5e7);
+        message.setMeanWriteBandwidth(2.0);
+        message.setReadIdle(Duration.ofMillis(1500));
+        message.setReadActive(Duration.ofSeconds(3));
+        message.setResult(0, "");
+        message.setTimeQueued(17);
+        return message;
+    }
+
+    private static void assertSameJson(String expected, byte[] actual)
+    {
+        JSONObject expectedObject = new JSONObject(expected);
+        JSONObject actualObject = new JSONObject(new String(actual, UTF_8));
+        assertTrue("Expected " + expectedObject + " but got " + actualObject,
+                   expectedObject.similar(actualObject));
+    }
+
+    @Test
+    public void shouldSerializeMoverInfoAsBefore()
+    {
+        MoverInfoMessage message = moverInfo();
+
+        assertSameJson(JsonObjectSerializers.serialize(message),
+                       new BillingMessageSerializer().serialize("billing", message));
+    }
+
+    @Test
+    public void shouldSerializeMoverInfoWithoutOptionalFieldsAsBefore()
+    {
+        MoverInfoMessage message = new MoverInfoMessage(new CellAddressCore("pool1", "poolDomain"), PNFSID);
+        message.setSubject(new Subject());
+        message.setStorageInfo(new GenericStorageInfo("osm", "atlas:default"));
+        message.setTransferAttributes(0, 0,
+                new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("192.168.1.2", 22125)));
+        message.setResult(666, "Mover failed: \"/pool\" is <full>");
+
+        assertSameJson(JsonObjectSerializers.serialize(message),
+                       new BillingMessageSerializer().serialize("billing", message));
+    }
+
+    @Test
+    public void shouldSerializeDoorRequestInfoAsBefore()
+    {
+        DoorRequestInfoMessage message = new DoorRequestInfoMessage(
+                new CellAddressCore("DCap-gsi", "dcapDomain"), "request");
+        message.setSubject(subject);
+        message.setPnfsId(PNFSID);
+        message.setBillingPath(PATH);
+        message.setFileSize(42);
+        message.setStorageInfo(new GenericStorageInfo("osm", "atlas:default"));
+        message.setClient("192.168.1.2");
+        message.setClientChain("192.168.1.2,10.0.0.1");
+        message.setTransactionDuration(1234);
+        message.setMoverInfo(moverInfo());
+        message.setResult(0, "");
+
+        assertSameJson(JsonObjectSerializers.serialize(message),
+                       new DoorRequestMessageSerializer().serialize("billing", message));
+    }
+
+    @Test
+    public void shouldSerializeDoorRequestInfoWithoutMoverAsBefore()
+    {
+        DoorRequestInfoMessage message = new DoorRequestInfoMessage(
+                new CellAddressCore("WebDAV", "webdavDomain"), "request");
+        message.setSubject(new Subject());
+        message.setResult(2, "No such file");
+
+        assertSameJson(JsonObjectSerializers.serialize(message),
+                       new DoorRequestMessageSerializer().serialize("billing", message));
+    }
+
+    @Test
+    public void shouldSerializeRemoveFileInfoAsBefore()
+    {
+        RemoveFileInfoMessage message = new RemoveFileInfoMessage(
+                new CellAddressCore("pool1", "poolDomain"), PNFSID);
+        message.setSubject(subject);
+        message.setBillingPath(PATH);
+        message.setFileSize(1);
+        message.setStorageInfo(new GenericStorageInfo("osm", "atlas:default"));
+
+        assertSameJson(JsonObjectSerializers.serialize(message),
+                       new RemoveFileInfoMessageSerializer().serialize("billing", message));
+    }
+
+    @Test
+    public void shouldSerializeStorageInfoAsBefore()
+    {
+        StorageInfoMessage message = new StorageInfoMessage(
+                new CellAddressCore("pool1", "poolDomain"), PNFSID, true);
+        message.setBillingPath(PATH);
+        message.setFileSize(1);
+        message.setStorageInfo(new GenericStorageInfo("osm", "atlas:default"));
+        message.setTransferTime(98765);
+        message.setResult(0, "");
+
+        assertSameJson(JsonObjectSerializers.serialize(message),
+                       new StorageInfoMessageSerializer().serialize("billing", message));
+    }
+}
@@ -0,0 +1,214 @@
+package org.dcache.pool.classic;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.pool.repository.ReplicaDescriptor;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.Repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChecksumScannerTest
+{
+    private static final int FILES = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<PnfsId> ids = new ArrayList<>();
+    private Repository repository;
+    private ChecksumModuleV1 csm;
+    private File stateFile;
+
+    /** Files verified by the current scanner, in the order verified. */
+    private final List<PnfsId> verified = new CopyOnWriteArrayList<>();
+
+    /** Number of verified files after which the scrubber blocks. */
+    private volatile int blockAfter = Integer.MAX_VALUE;
+    private volatile PnfsId blocked;
+    private final CountDownLatch isBlocked = new CountDownLatch(1);
+
+    private ChecksumScanner scanner;
+
+    private static PnfsId id(int i)
+    {
+        return new PnfsId(String.format("0000%032X", i));
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        for (int i = 0; i < FILES; i++) {
+            ids.add(id(i));
+        }
+
+        stateFile = new File(folder.getRoot(), "scrubber.state");
+
+        repository = mock(Repository.class);
+        when(repository.iterator()).thenAnswer(invocation -> ids.iterator());
+        when(repository.getState(any(PnfsId.class))).thenAnswer(invocation -> {
+            PnfsId id = (PnfsId) invocation.getArguments()[0];
+            if (verified.size() >= blockAfter) {
+                blocked = id;
+                isBlocked.countDown();
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            return ReplicaState.CACHED;
+        });
+        when(repository.openEntry(any(PnfsId.class), any())).thenAnswer(invocation -> {
+            verified.add((PnfsId) invocation.getArguments()[0]);
+            return mock(ReplicaDescriptor.class);
+        });
+
+        csm = mock(ChecksumModuleV1.class);
+        when(csm.isScrubEnabled()).thenReturn(true);
+        when(csm.getScrubThreads()).thenReturn(1);
+        when(csm.getScrubPeriod()).thenReturn(TimeUnit.DAYS.toMillis(1));
+    }
+
+    @Test
+    public void shouldVerifyAllFilesOnFirstStart() throws Exception
+    {
+        givenScannerStarted();
+
+        awaitVerified(FILES);
+        whenScannerStopped();
+
+        assertEquals(new HashSet<>(ids), new HashSet<>(verified));
+        assertEquals(FILES, verified.size());
+    }
+
+    @Test
+    public void shouldSaveCompletedScrub() throws Exception
+    {
+        givenScannerStarted();
+
+        awaitVerified(FILES);
+        whenScannerStopped();
+
+        String[] state = readState();
+        assertEquals(3, state.length);
+        assertEquals("0", state[1]);
+        assertEquals("-", state[2]);
+    }
+
+    @Test
+    public void shouldSaveFirstUnverifiedFileWhenStopped() throws Exception
+    {
+        blockAfter = FILES / 3;
+        givenScannerStarted();
+
+        assertTrue(isBlocked.await(1, TimeUnit.MINUTES));
+        whenScannerStopped();
+
+        String[] state = readState();
+        assertEquals(3, state.length);
+        assertEquals(blocked.toString(), state[2]);
+        assertFalse(verified.contains(blocked));
+    }
+
+    @Test
+    public void shouldResumeFromSavedState() throws Exception
+    {
+        blockAfter = FILES / 3;
+        givenScannerStarted();
+        assertTrue(isBlocked.await(1, TimeUnit.MINUTES));
+        whenScannerStopped();
+        List<PnfsId> verifiedBeforeRestart = new ArrayList<>(verified);
+
+        verified.clear();
+        blockAfter = Integer.MAX_VALUE;
+        givenScannerStarted();
+        awaitVerified(FILES - verifiedBeforeRestart.size());
+        whenScannerStopped();
+
+        Set<PnfsId> all = new HashSet<>(verifiedBeforeRestart);
+        all.addAll(verified);
+        assertEquals(new HashSet<>(ids), all);
+        assertEquals(FILES, verifiedBeforeRestart.size() + verified.size());
+        assertTrue(verified.contains(blocked));
+    }
+
+    @Test
+    public void shouldRescrubWholePoolForOldStateFormat() throws Exception
+    {
+        Files.write(stateFile.toPath(), (System.currentTimeMillis() + " " + id(FILES / 2))
+                .getBytes(Charset.defaultCharset()));
+
+        givenScannerStarted();
+        awaitVerified(FILES);
+        whenScannerStopped();
+
+        assertEquals(new HashSet<>(ids), new HashSet<>(verified));
+    }
+
+    @Test
+    public void shouldNotScrubBeforePeriodHasPassedSinceCompletedScrub() throws Exception
+    {
+        Files.write(stateFile.toPath(), (System.currentTimeMillis() + " 0 -")
+                .getBytes(Charset.defaultCharset()));
+
+        givenScannerStarted();
+        Thread.sleep(500);
+        whenScannerStopped();
+
+        assertTrue(verified.isEmpty());
+    }
+
+    private void givenScannerStarted()
+    {
+        scanner = new ChecksumScanner();
+        scanner.setRepository(repository);
+        scanner.setChecksumModule(csm);
+        scanner.setScrubberStateFile(stateFile);
+        scanner.setPoolName("pool");
+        scanner.afterStart();
+    }
+
+    private void whenScannerStopped() throws Exception
+    {
+        scanner.beforeStop();
+        ChecksumScanner.CsmStatusCommand status = scanner.new CsmStatusCommand();
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (status.call().contains("Scrubber Active")) {
+            assertTrue("Scrubber did not stop", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitVerified(int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (verified.size() < count) {
+            assertTrue("Scrubber verified only " + verified.size() + " of " + count + " files",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private String[] readState() throws Exception
+    {
+        return Files.readAllLines(stateFile.toPath(), Charset.defaultCharset()).get(0).split(" ");
+    }
+}
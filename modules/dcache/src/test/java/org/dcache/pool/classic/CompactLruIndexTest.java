@@ -0,0 +1,150 @@
+package org.dcache.pool.classic;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import diskCacheV111.util.PnfsId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactLruIndexTest
+{
+    private CompactLruIndex index;
+
+    @Before
+    public void setUp()
+    {
+        index = new CompactLruIndex(16);
+    }
+
+    private static PnfsId id(int i)
+    {
+        return new PnfsId(String.format("0000%032X", i));
+    }
+
+    @Test
+    public void shouldBeEmptyInitially()
+    {
+        assertEquals(0, index.size());
+        assertEquals(0, index.getOldestTime());
+        assertTrue(index.values().isEmpty());
+    }
+
+    @Test
+    public void shouldNotAddTwice()
+    {
+        assertTrue(index.add(id(1), 100));
+        assertFalse(index.add(id(1), 50));
+
+        assertEquals(1, index.size());
+        assertEquals(100, index.getOldestTime());
+    }
+
+    @Test
+    public void shouldOrderByAccessTime()
+    {
+        index.add(id(1), 300);
+        index.add(id(2), 100);
+        index.add(id(3), 200);
+
+        assertEquals(List.of(id(2), id(3), id(1)), index.values());
+        assertEquals(100, index.getOldestTime());
+    }
+
+    @Test
+    public void shouldReorderOnTouch()
+    {
+        index.add(id(1), 100);
+        index.add(id(2), 200);
+
+        assertTrue(index.touch(id(1), 300));
+        assertFalse(index.touch(id(3), 300));
+
+        assertEquals(List.of(id(2), id(1)), index.values());
+        assertEquals(200, index.getOldestTime());
+    }
+
+    @Test
+    public void shouldRemoveEntries()
+    {
+        index.add(id(1), 100);
+        index.add(id(2), 200);
+
+        assertTrue(index.remove(id(1)));
+        assertFalse(index.remove(id(1)));
+
+        assertEquals(List.of(id(2)), index.values());
+        assertEquals(200, index.getOldestTime());
+    }
+
+    @Test
+    public void shouldSupportPnfsStyleIds()
+    {
+        PnfsId pnfsId = new PnfsId("000100000000000000001060");
+        index.add(pnfsId, 100);
+        index.add(id(1), 200);
+
+        assertEquals(List.of(pnfsId, id(1)), index.values());
+        assertTrue(index.remove(pnfsId));
+    }
+
+    @Test
+    public void shouldSkipExcludedEntries()
+    {
+        for (int i = 0; i < 10; i++) {
+            index.add(id(i), 1000 - i);
+        }
+
+        List<PnfsId> eldest = index.getEldest(3, Set.of(id(9), id(7)));
+
+        assertEquals(List.of(id(8), id(6), id(5)), eldest);
+    }
+
+    @Test
+    public void shouldAgreeWithReferenceUnderRandomUpdates()
+    {
+        Random random = new Random(42);
+        Map<PnfsId, Long> reference = new HashMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+            PnfsId id = id(random.nextInt(2000));
+            long time = random.nextInt(1_000_000);
+            switch (random.nextInt(3)) {
+            case 0:
+                assertEquals(reference.putIfAbsent(id, time) == null, index.add(id, time));
+                break;
+            case 1:
+                assertEquals(reference.remove(id) != null, index.remove(id));
+                break;
+            default:
+                assertEquals(reference.replace(id, time) != null, index.touch(id, time));
+                break;
+            }
+        }
+
+        assertEquals(reference.size(), index.size());
+        assertEquals((long) reference.values().stream().min(Long::compare).orElse(0L),
+                     index.getOldestTime());
+
+        List<Long> expected = reference.values().stream().sorted().collect(Collectors.toList());
+        List<Long> actual = new ArrayList<>();
+        for (PnfsId id : index.values()) {
+            actual.add(reference.get(id));
+        }
+        assertEquals(expected, actual);
+
+        List<Long> eldest = index.getEldest(10, Set.of()).stream()
+                .map(reference::get).collect(Collectors.toList());
+        assertEquals(expected.subList(0, 10), eldest);
+    }
+}
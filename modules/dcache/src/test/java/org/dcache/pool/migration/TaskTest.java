@@ -0,0 +1,159 @@
+package org.dcache.pool.migration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import diskCacheV111.pools.PoolCostInfo;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.PoolManagerPoolInformation;
+
+import dmg.cells.nucleus.CellPath;
+
+import org.dcache.cells.CellStub;
+import org.dcache.pool.classic.IoQueueManager;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.dcache.util.ByteUnit.GiB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskTest
+{
+    /** Targets of copy requests sent by tasks. */
+    private final List<String> targets = new CopyOnWriteArrayList<>();
+
+    /** Copy requests sent by tasks. */
+    private final List<PoolMigrationCopyReplicaMessage> requests = new CopyOnWriteArrayList<>();
+
+    private final List<PoolManagerPoolInformation> pools = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+    private TaskParameters parameters;
+
+    @Before
+    public void setUp()
+    {
+        executor = new ScheduledThreadPoolExecutor(1);
+
+        CellStub pool = mock(CellStub.class);
+        when(pool.getTimeoutInMillis()).thenReturn(60_000L);
+        when(pool.send(any(CellPath.class), any(PoolMigrationCopyReplicaMessage.class)))
+                .thenAnswer(invocation -> {
+                    CellPath target = invocation.getArgument(0);
+                    targets.add(target.getDestinationAddress().getCellName());
+                    requests.add(invocation.getArgument(1));
+                    return SettableFuture.create();
+                });
+
+        RefreshablePoolList poolList = mock(RefreshablePoolList.class);
+        when(poolList.isValid()).thenReturn(true);
+        when(poolList.getOfflinePools()).thenReturn(ImmutableList.of());
+        when(poolList.getPools()).thenAnswer(invocation -> ImmutableList.copyOf(pools));
+
+        parameters = new TaskParameters(pool, mock(CellStub.class), mock(CellStub.class), executor,
+                                        new RandomPoolSelectionStrategy(), poolList,
+                                        false, false, false, false, false, 1);
+
+        givenPool("pool1", 10);
+        givenPool("pool2", 10);
+        givenPool("pool3", 10);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldCopyFilesOfBatchToSameTarget()
+    {
+        TaskBatch batch = new TaskBatch();
+
+        for (int i = 0; i < 20; i++) {
+            givenTask(i, batch).run();
+        }
+
+        assertEquals(20, requests.size());
+        assertEquals(1, targets.stream().distinct().count());
+        assertEquals(targets.get(0), batch.getTarget().get());
+        for (PoolMigrationCopyReplicaMessage request : requests) {
+            assertEquals(batch.getId(), request.getBatch());
+        }
+    }
+
+    @Test
+    public void shouldSelectNewTargetWhenBatchTargetIsFull()
+    {
+        TaskBatch batch = new TaskBatch();
+        givenTask(0, batch).run();
+        String full = targets.get(0);
+        givenPool(full, 0);
+
+        givenTask(1, batch).run();
+        givenTask(2, batch).run();
+
+        assertNotEquals(full, targets.get(1));
+        assertEquals(targets.get(1), targets.get(2));
+        assertEquals(targets.get(1), batch.getTarget().get());
+    }
+
+    @Test
+    public void shouldSelectNewTargetWhenBatchTargetIsGone()
+    {
+        TaskBatch batch = new TaskBatch();
+        batch.setTarget("pool4");
+
+        givenTask(0, batch).run();
+
+        assertNotEquals("pool4", targets.get(0));
+        assertEquals(targets.get(0), batch.getTarget().get());
+    }
+
+    @Test
+    public void shouldNotTagCopiesWithoutBatch()
+    {
+        givenTask(0, null).run();
+
+        assertEquals(1, requests.size());
+        assertNull(requests.get(0).getBatch());
+    }
+
+    private Task givenTask(int i, TaskBatch batch)
+    {
+        PnfsId pnfsId = new PnfsId(String.format("0000%020X", i));
+        FileAttributes attributes = FileAttributes.ofPnfsId(pnfsId);
+        attributes.setLocations(Collections.emptyList());
+        return new Task(parameters, mock(TaskCompletionHandler.class), "source", pnfsId,
+                        ReplicaState.CACHED, Collections.emptyList(), Collections.emptyList(),
+                        attributes, 0, batch);
+    }
+
+    /**
+     * Adds a pool, or replaces the pool with the same name, with the given
+     * amount of free space. A pool without free space is full.
+     */
+    private void givenPool(String name, long freeSpace)
+    {
+        PoolCostInfo cost = new PoolCostInfo(name, IoQueueManager.DEFAULT_QUEUE);
+        cost.setSpaceUsage(GiB.toBytes(100L), GiB.toBytes(freeSpace), 0, 0);
+        cost.getSpaceInfo().setParameter(0.5, GiB.toBytes(1L));
+        pools.removeIf(pool -> pool.getName().equals(name));
+        pools.add(new PoolManagerPoolInformation(name, cost));
+    }
+}
@@ -0,0 +1,339 @@
+package org.dcache.pool.p2p;
+
+import com.google.common.util.concurrent.Futures;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.HttpDoorUrlInfoMessage;
+import diskCacheV111.vehicles.HttpProtocolInfo;
+import diskCacheV111.vehicles.PoolDeliverFileMessage;
+
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellEndpoint;
+import dmg.cells.nucleus.CellPath;
+
+import org.dcache.cells.CellStub;
+import org.dcache.pool.classic.ChecksumModule;
+import org.dcache.pool.movers.ChecksumChannel;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.ReplicaDescriptor;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.Repository;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class P2PClientTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Content of the files served by the source pool. */
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+    /** Delivery requests sent to the source pool. */
+    private final List<PoolDeliverFileMessage> deliveries = new CopyOnWriteArrayList<>();
+
+    /** Files requested from the source pool over HTTP. */
+    private final List<String> downloads = new CopyOnWriteArrayList<>();
+
+    /** Client ports of the HTTP requests received by the source pool. */
+    private final Set<Integer> ports = ConcurrentHashMap.newKeySet();
+
+    /** Downloads blocked until released. */
+    private final Map<String, CountDownLatch> blocked = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+    private final AtomicInteger maxActiveDownloads = new AtomicInteger();
+
+    /** Outcome of each transfer, by file. */
+    private final Map<PnfsId, Optional<Throwable>> results = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ScheduledExecutorService executor;
+    private P2PClient client;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::serve);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        executor = Executors.newScheduledThreadPool(2);
+
+        CellStub pool = mock(CellStub.class);
+        when(pool.getTimeoutInMillis()).thenReturn(60_000L);
+        when(pool.send(any(CellPath.class), any(PoolDeliverFileMessage.class)))
+                .thenAnswer(invocation -> {
+                    PoolDeliverFileMessage request = invocation.getArgument(1);
+                    deliveries.add(request);
+                    return Futures.immediateFuture(request);
+                });
+
+        Repository repository = mock(Repository.class);
+        when(repository.getState(any(PnfsId.class))).thenReturn(ReplicaState.NEW);
+        when(repository.createEntry(any(FileAttributes.class), any(ReplicaState.class), any(ReplicaState.class),
+                                    anyList(), anySet(), any()))
+                .thenAnswer(invocation -> replica(invocation.getArgument(0)));
+
+        client = new P2PClient();
+        client.setCellAddress(new CellAddressCore("destination", "domain"));
+        client.setCellEndpoint(mock(CellEndpoint.class));
+        client.setExecutor(executor);
+        client.setRepository(repository);
+        client.setChecksumModule(mock(ChecksumModule.class));
+        client.setPnfs(mock(CellStub.class));
+        client.setPool(pool);
+        client.setTlsMode(TlsMode.NEVER);
+    }
+
+    @After
+    public void tearDown()
+    {
+        client.shutdown();
+        executor.shutdownNow();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldRequestAllFilesOfBatchUpFront() throws Exception
+    {
+        UUID batch = UUID.randomUUID();
+
+        for (int i = 0; i < 5; i++) {
+            givenCompanion(givenFile(i), batch);
+        }
+
+        assertEquals(5, deliveries.size());
+        assertTrue(downloads.isEmpty());
+    }
+
+    @Test
+    public void shouldDownloadFilesOfBatchOneAfterOtherOverSingleConnection() throws Exception
+    {
+        UUID batch = UUID.randomUUID();
+        List<PnfsId> pnfsIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            PnfsId pnfsId = givenFile(i);
+            givenCompanion(pnfsId, batch);
+            pnfsIds.add(pnfsId);
+        }
+
+        redirectAll();
+        awaitResults(5);
+
+        for (PnfsId pnfsId : pnfsIds) {
+            assertFalse(results.get(pnfsId).isPresent());
+            assertArrayEquals(files.get(pnfsId.toString()), Files.readAllBytes(replicaPath(pnfsId)));
+        }
+        assertEquals(1, maxActiveDownloads.get());
+        assertEquals(1, ports.size());
+    }
+
+    @Test
+    public void shouldReportFailuresPerFileOfBatch() throws Exception
+    {
+        UUID batch = UUID.randomUUID();
+        PnfsId first = givenFile(0);
+        PnfsId missing = new PnfsId("000000000000000000000042");
+        PnfsId last = givenFile(2);
+        givenCompanion(first, batch);
+        givenCompanion(missing, batch);
+        givenCompanion(last, batch);
+
+        redirectAll();
+        awaitResults(3);
+
+        assertFalse(results.get(first).isPresent());
+        assertTrue(results.get(missing).isPresent());
+        assertFalse(results.get(last).isPresent());
+    }
+
+    @Test
+    public void shouldNotDownloadFileOfBatchCancelledWhileQueued() throws Exception
+    {
+        UUID batch = UUID.randomUUID();
+        PnfsId first = givenFile(0);
+        PnfsId cancelled = givenFile(1);
+        PnfsId last = givenFile(2);
+        CountDownLatch latch = new CountDownLatch(1);
+        blocked.put(first.toString(), latch);
+        givenCompanion(first, batch);
+        int id = givenCompanion(cancelled, batch);
+        givenCompanion(last, batch);
+
+        redirectAll();
+        awaitDownloads(1);
+        assertTrue(client.cancel(id));
+        latch.countDown();
+        awaitResults(3);
+
+        assertFalse(results.get(first).isPresent());
+        assertTrue(results.get(cancelled).isPresent());
+        assertFalse(results.get(last).isPresent());
+        assertFalse(downloads.contains(cancelled.toString()));
+    }
+
+    private PnfsId givenFile(int i)
+    {
+        PnfsId pnfsId = new PnfsId(String.format("0000%020X", i));
+        files.put(pnfsId.toString(), ("content of file " + i).getBytes(StandardCharsets.US_ASCII));
+        return pnfsId;
+    }
+
+    private int givenCompanion(PnfsId pnfsId, UUID batch) throws Exception
+    {
+        byte[] content = files.get(pnfsId.toString());
+        FileAttributes attributes = FileAttributes.ofPnfsId(pnfsId);
+        attributes.setStorageInfo(new GenericStorageInfo());
+        attributes.setChecksums(Collections.emptySet());
+        attributes.setSize(content == null ? 0 : content.length);
+        attributes.setAccessLatency(AccessLatency.ONLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+        attributes.setStorageClass("test:disk");
+        attributes.setCacheClass(null);
+        attributes.setHsm("osm");
+        return client.newCompanion("source", attributes, ReplicaState.CACHED, Collections.emptyList(),
+                                   (pnfsId1, t) -> results.put(pnfsId1, Optional.ofNullable(t)),
+                                   false, null, batch);
+    }
+
+    /**
+     * Redirects all companions to the HTTP server of the source pool, like
+     * the source pool does once the movers have been started.
+     */
+    private void redirectAll()
+    {
+        for (PoolDeliverFileMessage delivery : deliveries) {
+            HttpProtocolInfo protocolInfo = (HttpProtocolInfo) delivery.getProtocolInfo();
+            String pnfsId = delivery.getPnfsId().toString();
+            HttpDoorUrlInfoMessage message = new HttpDoorUrlInfoMessage(pnfsId,
+                    "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                    + server.getAddress().getPort() + "/" + pnfsId);
+            message.setId(protocolInfo.getSessionId());
+            client.messageArrived(message);
+        }
+    }
+
+    private ReplicaDescriptor replica(FileAttributes attributes) throws Exception
+    {
+        Path path = replicaPath(attributes.getPnfsId());
+        ReplicaDescriptor descriptor = mock(ReplicaDescriptor.class);
+        when(descriptor.getChecksums()).thenReturn(Collections.emptyList());
+        when(descriptor.createChannel()).thenAnswer(invocation ->
+                new ChecksumChannel(new FileRepositoryChannel(path, EnumSet.of(CREATE, READ, WRITE)),
+                                    EnumSet.of(ChecksumType.ADLER32)));
+        return descriptor;
+    }
+
+    private Path replicaPath(PnfsId pnfsId)
+    {
+        return folder.getRoot().toPath().resolve(pnfsId.toString());
+    }
+
+    private void serve(HttpExchange exchange) throws IOException
+    {
+        try {
+            String name = exchange.getRequestURI().getPath().substring(1);
+            downloads.add(name);
+            ports.add(exchange.getRemoteAddress().getPort());
+
+            /* A download is active from receiving the request until the
+             * response is sent, as the client cannot send the next request of
+             * a batch before having received the response to the current one.
+             */
+            maxActiveDownloads.accumulateAndGet(activeDownloads.incrementAndGet(), Math::max);
+            try {
+                CountDownLatch latch = blocked.get(name);
+                if (latch != null) {
+                    latch.await(10, TimeUnit.SECONDS);
+                }
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                activeDownloads.decrementAndGet();
+            }
+
+            byte[] content = files.get(name);
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void awaitDownloads(int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (downloads.size() < count) {
+            assertTrue("File was not downloaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitResults(int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (results.size() < count) {
+            assertTrue("Transfer did not complete", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.dcache.poolmanager;
+
+import com.google.common.util.concurrent.Futures;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.poolManager.CostModuleV1;
+import diskCacheV111.poolManager.PoolMonitorV5;
+import diskCacheV111.poolManager.PoolSelectionUnitV2;
+import diskCacheV111.pools.PoolCostInfo;
+import diskCacheV111.pools.PoolV2Mode;
+import diskCacheV111.vehicles.PoolManagerGetPoolMonitor;
+import diskCacheV111.vehicles.PoolManagerPoolUpMessage;
+
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellEndpoint;
+import dmg.cells.nucleus.CellMessage;
+
+import org.dcache.cells.CellStub;
+import org.dcache.pool.classic.IoQueueManager;
+import org.dcache.tests.poolmanager.PoolMonitorHelper;
+
+import static org.dcache.util.ByteUnit.GiB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RemotePoolMonitorTest
+{
+    private CostModuleV1 costModule;
+    private PoolMonitorV5 poolManagerMonitor;
+
+    /** Versions known by the subscriber in requests sent to pool manager. */
+    private final List<PoolMonitorVersion> requests = new CopyOnWriteArrayList<>();
+    private boolean isSupportingDeltas = true;
+
+    private RemotePoolMonitor monitor;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        PoolSelectionUnitV2 selectionUnit = new PoolSelectionUnitV2();
+        costModule = new CostModuleV1();
+        poolManagerMonitor = new PoolMonitorV5();
+        poolManagerMonitor.setPoolSelectionUnit(selectionUnit);
+        poolManagerMonitor.setCostModule(costModule);
+        poolManagerMonitor.setPartitionManager(new PartitionManager());
+        PoolMonitorHelper.prepareSelectionUnit(selectionUnit, selectionUnit,
+                                               Arrays.asList("pool1", "pool2", "pool3"));
+        poolUp("pool1", 10);
+        poolUp("pool2", 10);
+        poolUp("pool3", 10);
+
+        CellStub stub = mock(CellStub.class);
+        when(stub.getTimeoutInMillis()).thenReturn(1000L);
+        when(stub.send(any(PoolManagerGetPoolMonitor.class), any(CellEndpoint.SendFlag.class)))
+                .thenAnswer(invocation -> Futures.immediateFuture(
+                        reply(invocation.getArgument(0))));
+
+        monitor = new RemotePoolMonitor();
+        monitor.setPoolManagerStub(stub);
+    }
+
+    @After
+    public void tearDown()
+    {
+        monitor.beforeStop();
+    }
+
+    @Test
+    public void shouldReceiveSnapshotOnStart()
+    {
+        monitor.afterStart();
+
+        assertEquals(1, requests.size());
+        assertNull(requests.get(0));
+        assertEquals(GiB.toBytes(10L), freeSpace("pool1"));
+    }
+
+    @Test
+    public void shouldApplyPublishedDeltas() throws Exception
+    {
+        monitor.afterStart();
+        PoolMonitorVersion published = poolManagerMonitor.getVersion();
+
+        poolUp("pool1", 20);
+        poolDown("pool2");
+        monitor.messageArrived(copy(poolManagerMonitor.getDelta(published)));
+
+        assertEquals(1, requests.size());
+        assertEquals(GiB.toBytes(20L), freeSpace("pool1"));
+        assertNull(monitor.getCostModule().getPoolCostInfo("pool2"));
+    }
+
+    @Test
+    public void shouldRecoverFromMissedDelta() throws Exception
+    {
+        monitor.afterStart();
+        PoolMonitorVersion received = poolManagerMonitor.getVersion();
+
+        poolUp("pool1", 20);
+        poolDown("pool2");
+        PoolMonitorVersion missed = poolManagerMonitor.getVersion();
+        poolUp("pool3", 30);
+        monitor.messageArrived(copy(poolManagerMonitor.getDelta(missed)));
+
+        assertEquals(2, requests.size());
+        assertEquals(received, requests.get(1));
+        assertEquals(GiB.toBytes(20L), freeSpace("pool1"));
+        assertNull(monitor.getCostModule().getPoolCostInfo("pool2"));
+        assertEquals(GiB.toBytes(30L), freeSpace("pool3"));
+    }
+
+    @Test
+    public void shouldRecoverFromRestartOfPoolManager() throws Exception
+    {
+        monitor.afterStart();
+
+        PoolMonitorV5 restarted = new PoolMonitorV5();
+        restarted.setPoolSelectionUnit(poolManagerMonitor.getPoolSelectionUnit());
+        restarted.setCostModule(costModule);
+        restarted.setPartitionManager(new PartitionManager());
+        PoolMonitorVersion published = restarted.getVersion();
+        poolManagerMonitor = restarted;
+        poolUp("pool1", 20);
+        monitor.messageArrived(copy(poolManagerMonitor.getDelta(published)));
+
+        assertEquals(2, requests.size());
+        assertEquals(GiB.toBytes(20L), freeSpace("pool1"));
+    }
+
+    @Test
+    public void shouldRefreshIfNoUpdatesArrive() throws Exception
+    {
+        isSupportingDeltas = false;
+        monitor.setRefreshPeriod(50);
+        monitor.setRefreshPeriodUnit(TimeUnit.MILLISECONDS);
+        monitor.afterStart();
+
+        poolUp("pool1", 20);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (freeSpace("pool1") != GiB.toBytes(20L)) {
+            assertTrue("Pool monitor was not refreshed", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertTrue(requests.size() > 1);
+    }
+
+    @Test
+    public void shouldNotRefreshWhileDeltasArrive() throws Exception
+    {
+        monitor.setRefreshPeriod(200);
+        monitor.setRefreshPeriodUnit(TimeUnit.MILLISECONDS);
+        monitor.afterStart();
+
+        for (int i = 0; i < 10; i++) {
+            PoolMonitorVersion published = poolManagerMonitor.getVersion();
+            poolUp("pool1", 10 + i);
+            monitor.messageArrived(copy(poolManagerMonitor.getDelta(published)));
+            Thread.sleep(50);
+        }
+
+        assertEquals(1, requests.size());
+    }
+
+    private PoolManagerGetPoolMonitor reply(PoolManagerGetPoolMonitor request) throws Exception
+    {
+        requests.add(request.getKnownVersion());
+        synchronized (this) {
+            if (isSupportingDeltas) {
+                request.setPoolMonitorDelta(poolManagerMonitor.getDelta(request.getKnownVersion()));
+            } else {
+                request.setPoolMonitor(poolManagerMonitor);
+            }
+            return copy(request);
+        }
+    }
+
+    private long freeSpace(String pool)
+    {
+        return monitor.getCostModule().getPoolCostInfo(pool).getSpaceInfo().getFreeSpace();
+    }
+
+    private synchronized void poolUp(String pool, long freeSpace)
+    {
+        PoolCostInfo cost = new PoolCostInfo(pool, IoQueueManager.DEFAULT_QUEUE);
+        cost.setSpaceUsage(GiB.toBytes(100L), GiB.toBytes(freeSpace), 0, 0);
+        costModule.messageArrived(envelope(pool),
+                new PoolManagerPoolUpMessage(pool, System.currentTimeMillis(),
+                                             new PoolV2Mode(PoolV2Mode.ENABLED), cost));
+    }
+
+    private synchronized void poolDown(String pool)
+    {
+        costModule.messageArrived(envelope(pool),
+                new PoolManagerPoolUpMessage(pool, System.currentTimeMillis(),
+                                             new PoolV2Mode(PoolV2Mode.DISABLED)));
+    }
+
+    private static CellMessage envelope(String pool)
+    {
+        CellMessage envelope = new CellMessage(new CellAddressCore("irrelevant"), null);
+        envelope.addSourceAddress(new CellAddressCore(pool, "domain"));
+        return envelope;
+    }
+
+    /**
+     * Returns a copy as received by another cell.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T object) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.dcache.poolmanager;
+
+import com.google.common.base.Functions;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import diskCacheV111.pools.PoolCostInfo;
+
+import org.dcache.pool.classic.IoQueueManager;
+
+/**
+ * Microbenchmark of write pool selection by weighted available space.
+ * <p>
+ * Compares the cached, logarithmic weights of WeightedAvailableSpaceSelection
+ * with the previous algorithm, which computed all weights for every
+ * selection and drew from a shared SecureRandom. Pools have random space
+ * usage, removable space ages and numbers of writers. Each thread selects a
+ * pool for a 1 GiB file from the same pool group.
+ * <p>
+ * Run with:
+ * <pre>
+ *     java -cp ... org.dcache.poolmanager.WeightedAvailableSpaceSelectionBenchmark [selections]
+ * </pre>
+ */
+public class WeightedAvailableSpaceSelectionBenchmark
+{
+    private static final int[] POOL_GROUP_SIZES = { 10, 100, 1_000 };
+    private static final int[] THREADS = { 1, 8 };
+    private static final long FILE_SIZE = 1L << 30;
+
+    /**
+     * The selection algorithm before weights were cached.
+     */
+    private static class UncachedSelection extends WeightedAvailableSpaceSelection
+    {
+        private static final SecureRandom RANDOM = new SecureRandom();
+
+        private final double performanceCostFactor;
+        private final double spaceCostFactor;
+
+        UncachedSelection(double performanceCostFactor, double spaceCostFactor)
+        {
+            super(performanceCostFactor, spaceCostFactor);
+            this.performanceCostFactor = performanceCostFactor;
+            this.spaceCostFactor = spaceCostFactor;
+        }
+
+        private double getLoad(PoolCostInfo info)
+        {
+            return performanceCostFactor * info.getMoverCostFactor() * getWriters(info);
+        }
+
+        PoolCostInfo select(List<PoolCostInfo> pools, long filesize)
+        {
+            int length = pools.size();
+            double[] available = new double[length];
+            double minLoad = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < length; i++) {
+                PoolCostInfo info = pools.get(i);
+                double free = getAvailable(info.getSpaceInfo(), filesize);
+                if (free > 0) {
+                    available[i] = free;
+                    minLoad = Math.min(minLoad, getLoad(info));
+                }
+            }
+            if (minLoad == Double.POSITIVE_INFINITY) {
+                return null;
+            }
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                PoolCostInfo info = pools.get(i);
+                double load = getLoad(info) - minLoad;
+                sum += (available[i] == 0) ? 0 : Math.pow(available[i], spaceCostFactor) / Math.pow(2.0, load);
+                available[i] = sum;
+            }
+            double threshold = RANDOM.nextDouble() * sum;
+            for (int i = 0; i < length; i++) {
+                if (threshold < available[i]) {
+                    return pools.get(i);
+                }
+            }
+            return null;
+        }
+    }
+
+    private interface Selector
+    {
+        PoolCostInfo select(List<PoolCostInfo> pools);
+    }
+
+    private static List<PoolCostInfo> createPools(int size)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<PoolCostInfo> pools = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long total = 100L << 40;
+            long free = (long) (random.nextDouble() * total / 2);
+            long removable = (long) (random.nextDouble() * (total - free));
+            PoolCostInfo info = new PoolCostInfo("pool" + i, IoQueueManager.DEFAULT_QUEUE);
+            info.setSpaceUsage(total, free, total - free - removable, removable,
+                               random.nextInt(30 * 24 * 3600));
+            info.getSpaceInfo().setParameter(0.7, 4L << 30);
+            info.setMoverCostFactor(0.5);
+            int writers = random.nextInt(50);
+            info.addExtendedMoverQueueSizes("movers", writers, 100, 0, 0, writers);
+            pools.add(info);
+        }
+        return pools;
+    }
+
+    private static double run(Selector selector, List<PoolCostInfo> pools, int threads, int selections)
+            throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < selections; i++) {
+                        if (selector.select(pools) == null) {
+                            throw new IllegalStateException("No pool selected");
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return threads * (double) selections / (elapsed / 1e9);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int selections = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+
+        UncachedSelection uncached = new UncachedSelection(1.0, 1.0);
+        WeightedAvailableSpaceSelection cached = new WeightedAvailableSpaceSelection(1.0, 1.0);
+        Selector before = pools -> uncached.select(pools, FILE_SIZE);
+        Selector after = pools -> cached.selectByAvailableSpace(pools, FILE_SIZE, Functions.identity());
+
+        /* Warm up both implementations. */
+        List<PoolCostInfo> warmup = createPools(100);
+        run(before, warmup, 1, selections);
+        run(after, warmup, 1, selections);
+
+        System.out.printf("%8s %8s %20s %20s%n", "pools", "threads", "uncached select/s", "cached select/s");
+        for (int size : POOL_GROUP_SIZES) {
+            List<PoolCostInfo> pools = createPools(size);
+            int n = Math.max(selections / (size / 10), 1_000);
+            for (int threads : THREADS) {
+                double a = run(before, pools, threads, n);
+                double b = run(after, pools, threads, n);
+                System.out.printf("%8d %8d %20.0f %20.0f%n", size, threads, a, b);
+            }
+        }
+    }
+}
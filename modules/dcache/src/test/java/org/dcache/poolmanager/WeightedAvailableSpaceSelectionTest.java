@@ -136,4 +136,50 @@ public class WeightedAvailableSpaceSelectionTest
                                             Functions.<PoolCostInfo>identity());
         assertThat(selected, is(info));
     }
+
+    @Test
+    public void testSelectionIsProportionalToWeightedAvailableSpace()
+    {
+        PoolCostInfo small = new PoolCostInfo("pool1", IoQueueManager.DEFAULT_QUEUE);
+        small.setSpaceUsage(100000000, 1000000, 0, 0);
+        small.getSpaceInfo().setParameter(0, 1000);
+        PoolCostInfo large = new PoolCostInfo("pool2", IoQueueManager.DEFAULT_QUEUE);
+        large.setSpaceUsage(100000000, 3000000, 0, 0);
+        large.getSpaceInfo().setParameter(0, 1000);
+
+        assertThat(selectWithRandom(0.24, small, large), is(small));
+        assertThat(selectWithRandom(0.26, small, large), is(large));
+        assertThat(selectWithRandom(0.99, small, large), is(large));
+    }
+
+    @Test
+    public void testLargeSpaceCostFactorDoesNotOverflow()
+    {
+        WeightedAvailableSpaceSelection skewed = new WeightedAvailableSpaceSelection(1.0, 100.0);
+        PoolCostInfo small = new PoolCostInfo("pool1", IoQueueManager.DEFAULT_QUEUE);
+        small.setSpaceUsage(100000000000L, 1000000000, 0, 0);
+        small.getSpaceInfo().setParameter(0, 1000);
+        PoolCostInfo large = new PoolCostInfo("pool2", IoQueueManager.DEFAULT_QUEUE);
+        large.setSpaceUsage(100000000000L, 2000000000, 0, 0);
+        large.getSpaceInfo().setParameter(0, 1000);
+
+        PoolCostInfo selected =
+                skewed.selectByAvailableSpace(asList(small, large), 1000,
+                                              Functions.<PoolCostInfo>identity());
+        assertThat(selected, is(large));
+    }
+
+    private static PoolCostInfo selectWithRandom(double random, PoolCostInfo... pools)
+    {
+        WeightedAvailableSpaceSelection selection = new WeightedAvailableSpaceSelection(1.0, 1.0)
+        {
+            @Override
+            protected double random()
+            {
+                return random;
+            }
+        };
+        return selection.selectByAvailableSpace(asList(pools), 1000,
+                                                Functions.<PoolCostInfo>identity());
+    }
 }
@@ -0,0 +1,145 @@
+package org.dcache.services.billing.text;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class BillingLogWriterTest
+{
+    private static final String HEADERS = "## header\n";
+
+    private Path dir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        dir = Files.createTempDirectory("billing");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static long timestampOf(LocalDate day)
+    {
+        return day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String ext(LocalDate day)
+    {
+        return day.format(DateTimeFormatter.ofPattern("yyyy.MM.dd"));
+    }
+
+    private static List<String> lines(Path path) throws IOException
+    {
+        return Files.readAllLines(path, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldWriteRecordsWithHeadersToNewFile() throws Exception
+    {
+        LocalDate day = LocalDate.of(2021, 3, 14);
+        BillingLogWriter writer = new BillingLogWriter(dir, true, () -> HEADERS, 1000, 4096, 100);
+        writer.start();
+
+        writer.write(timestampOf(day), "first", false);
+        writer.write(timestampOf(day), "second", true);
+        writer.stop();
+
+        assertThat(lines(dir.resolve("billing-" + ext(day))),
+                   is(Arrays.asList("## header", "first", "second")));
+        assertThat(lines(dir.resolve("billing-error-" + ext(day))),
+                   is(Arrays.asList("## header", "second")));
+    }
+
+    @Test
+    public void shouldAppendToExistingFileWithoutHeaders() throws Exception
+    {
+        LocalDate day = LocalDate.of(2021, 3, 14);
+        Path billing = dir.resolve("billing-" + ext(day));
+        Files.write(billing, Collections.singletonList("existing"), StandardCharsets.UTF_8);
+        BillingLogWriter writer = new BillingLogWriter(dir, true, () -> HEADERS, 1000, 4096, 100);
+        writer.start();
+
+        writer.write(timestampOf(day), "new", false);
+        writer.stop();
+
+        assertThat(lines(billing), is(Arrays.asList("existing", "new")));
+    }
+
+    @Test
+    public void shouldRotateFlatFilesByDateOfEvent() throws Exception
+    {
+        LocalDate day = LocalDate.of(2021, 3, 14);
+        LocalDate nextDay = day.plusDays(1);
+        BillingLogWriter writer = new BillingLogWriter(dir, true, () -> HEADERS, 1000, 4096, 100);
+        writer.start();
+
+        writer.write(timestampOf(day), "one", false);
+        writer.write(timestampOf(nextDay), "two", false);
+        writer.write(timestampOf(day), "three", false);
+        writer.stop();
+
+        assertThat(lines(dir.resolve("billing-" + ext(day))),
+                   is(Arrays.asList("## header", "one", "three")));
+        assertThat(lines(dir.resolve("billing-" + ext(nextDay))),
+                   is(Arrays.asList("## header", "two")));
+    }
+
+    @Test
+    public void shouldWriteToMonthlyDirectoryOfToday() throws Exception
+    {
+        BillingLogWriter writer = new BillingLogWriter(dir, false, () -> HEADERS, 1000, 4096, 100);
+        writer.start();
+
+        writer.write(timestampOf(LocalDate.of(2021, 3, 14)), "record", false);
+        writer.stop();
+
+        LocalDate today = LocalDate.now();
+        Path billing = dir.resolve(today.format(DateTimeFormatter.ofPattern("yyyy")))
+                .resolve(today.format(DateTimeFormatter.ofPattern("MM")))
+                .resolve("billing-" + ext(today));
+        assertThat(lines(billing), is(Arrays.asList("## header", "record")));
+    }
+
+    @Test
+    public void shouldFlushWithinFlushPeriod() throws Exception
+    {
+        LocalDate day = LocalDate.of(2021, 3, 14);
+        Path billing = dir.resolve("billing-" + ext(day));
+        BillingLogWriter writer = new BillingLogWriter(dir, true, () -> HEADERS, 10, 1 << 20, 100);
+        writer.start();
+        try {
+            writer.write(timestampOf(day), "record", false);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!(Files.exists(billing) && lines(billing).size() == 2)
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(lines(billing), is(Arrays.asList("## header", "record")));
+        } finally {
+            writer.stop();
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 import diskCacheV111.poolManager.CostModuleV1;
 import diskCacheV111.pools.PoolCostInfo;
@@ -240,6 +242,52 @@ public class CostModuleTest {
         assertPercentileCost( FRACTION_JUST_BELOW_ONE, perfCost [2]);
     }
 
+    @Test
+    public void testDeltaContainsChangesSinceVersion() {
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS), buildPoolUpMessageWithCost( POOL_NAME, 100, 20, 30, 50));
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS_2), buildPoolUpMessageWithCost( POOL_NAME_2, 100, 20, 30, 50));
+        long version = _costModule.getVersion();
+
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS_2), buildPoolUpMessageWithCost( POOL_NAME_2, 100, 40, 30, 30));
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS), buildEmptyPoolUpMessage( POOL_NAME, PoolV2Mode.DISABLED));
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS_3), buildPoolUpMessageWithCost( POOL_NAME_3, 100, 20, 30, 50));
+
+        CostModuleV1.Delta delta = _costModule.getDelta(version);
+
+        assertNotNull("delta since recent version", delta);
+        assertEquals(new HashSet<>(Arrays.asList(POOL_NAME_2, POOL_NAME_3)), delta.getUpdatedPools());
+        assertEquals(Collections.singleton(POOL_NAME), delta.getRemovedPools());
+        assertTrue("empty delta since current version",
+                   _costModule.getDelta(_costModule.getVersion()).getUpdatedPools().isEmpty());
+        assertNull("delta since future version", _costModule.getDelta(_costModule.getVersion() + 1));
+    }
+
+    @Test
+    public void testApplyingDeltaReproducesCostModule() {
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS), buildPoolUpMessageWithCost( POOL_NAME, 100, 20, 30, 50));
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS_2), buildPoolUpMessageWithCost( POOL_NAME_2, 100, 20, 30, 50));
+        CostModuleV1 copy = new CostModuleV1().apply(_costModule.getDelta(0));
+        long version = _costModule.getVersion();
+
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS), buildEmptyPoolUpMessage( POOL_NAME, PoolV2Mode.DISABLED));
+        _costModule.messageArrived(
+                buildEnvelope(POOL_ADDRESS_2), buildPoolUpMessageWithCost( POOL_NAME_2, 100, 60, 30, 10));
+        CostModuleV1.Delta delta = _costModule.getDelta(version);
+        copy = copy.apply(delta).apply(delta);
+
+        assertNull("removed pool", copy.getPoolCostInfo(POOL_NAME));
+        assertPoolSpaceInfo("updated pool", copy.getPoolCostInfo(POOL_NAME_2).getSpaceInfo(),
+                            100, 60, 10, 30);
+    }
+
     /*
      *  SUPPORT METHODS FOR BUILDING MESSAGES AND ASSERTING
      */
@@ -0,0 +1,260 @@
+package org.dcache.tests.poolmanager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import diskCacheV111.poolManager.CostModuleV1;
+import diskCacheV111.poolManager.PoolManagerV5;
+import diskCacheV111.poolManager.PoolMonitorV5;
+import diskCacheV111.poolManager.PoolSelectionUnitV2;
+import diskCacheV111.pools.PoolCostInfo;
+import diskCacheV111.pools.PoolV2Mode;
+import diskCacheV111.vehicles.PoolManagerPoolModeMessage;
+import diskCacheV111.vehicles.PoolManagerPoolUpMessage;
+
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellMessage;
+import dmg.util.CommandInterpreter;
+
+import org.dcache.pool.classic.IoQueueManager;
+import org.dcache.poolmanager.PartitionManager;
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PoolMonitorVersion;
+
+import static org.dcache.util.ByteUnit.GiB;
+import static org.junit.Assert.*;
+
+public class PoolMonitorDeltaTest
+{
+    private static final int MAX_REMOVALS = 10000;
+
+    private PoolSelectionUnitV2 _selectionUnit;
+    private CostModuleV1 _costModule;
+    private PoolMonitorV5 _poolMonitor;
+    private final List<String> _pools = Arrays.asList("pool1", "pool2", "pool3");
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _selectionUnit = new PoolSelectionUnitV2();
+        _costModule = new CostModuleV1();
+        _poolMonitor = new PoolMonitorV5();
+        _poolMonitor.setPoolSelectionUnit(_selectionUnit);
+        _poolMonitor.setCostModule(_costModule);
+        _poolMonitor.setPartitionManager(new PartitionManager());
+        PoolMonitorHelper.prepareSelectionUnit(_selectionUnit, _selectionUnit, _pools);
+        for (String pool : _pools) {
+            poolUp(pool, 10);
+        }
+    }
+
+    @Test
+    public void testSnapshotIfVersionIsUnknown()
+    {
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+        PoolMonitorVersion otherEpoch = new PoolMonitorVersion("other",
+                version.getSelectionUnitVersion(), version.getCostModuleVersion());
+        PoolMonitorVersion future = new PoolMonitorVersion(version.getEpoch(),
+                version.getSelectionUnitVersion(), version.getCostModuleVersion() + 1);
+
+        assertTrue("no version", _poolMonitor.getDelta(null).isSnapshot());
+        assertTrue("other epoch", _poolMonitor.getDelta(otherEpoch).isSnapshot());
+        assertTrue("future version", _poolMonitor.getDelta(future).isSnapshot());
+        assertEquals(version, _poolMonitor.getDelta(null).getVersion());
+    }
+
+    @Test
+    public void testDeltaWithoutSelectionUnitIfUnmodified()
+    {
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+
+        poolUp("pool2", 20);
+        PoolMonitorDelta delta = _poolMonitor.getDelta(version);
+
+        assertFalse(delta.isSnapshot());
+        assertEquals(version, delta.getBase());
+        assertEquals(_poolMonitor.getVersion(), delta.getVersion());
+        assertNull(delta.getSelectionUnit());
+        assertEquals(Collections.singleton("pool2"), delta.getCosts().getUpdatedPools());
+        assertTrue(delta.getCosts().getRemovedPools().isEmpty());
+    }
+
+    @Test
+    public void testDeltaWithSelectionUnitIfModified() throws Exception
+    {
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+
+        new CommandInterpreter(_selectionUnit).command("psu set pool pool1 rdonly");
+        PoolMonitorDelta delta = _poolMonitor.getDelta(version);
+
+        assertFalse(delta.isSnapshot());
+        assertNotNull(delta.getSelectionUnit());
+        assertTrue(delta.getCosts().getUpdatedPools().isEmpty());
+    }
+
+    @Test
+    public void testPoolModeChangeIsIncludedInDelta() throws Exception
+    {
+        PoolManagerV5 poolManager = new PoolManagerV5();
+        poolManager.setPoolSelectionUnit(_selectionUnit);
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+
+        poolManager.messageArrived(new PoolManagerPoolModeMessage("pool1", PoolManagerPoolModeMessage.READ));
+        PoolMonitorDelta delta = _poolMonitor.getDelta(version);
+
+        assertTrue(version.getSelectionUnitVersion() < delta.getVersion().getSelectionUnitVersion());
+        assertNotNull(delta.getSelectionUnit());
+        assertTrue(delta.getSelectionUnit().getPool("pool1").isReadOnly());
+    }
+
+    @Test
+    public void testApplyingDeltaUpdatesCostsAndRemovesPools() throws Exception
+    {
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+        PoolMonitorV5 remote = copy(_poolMonitor);
+
+        poolUp("pool2", 20);
+        poolDown("pool3");
+        PoolMonitorDelta delta = copy(_poolMonitor.getDelta(version));
+        PoolMonitorV5 updated = remote.apply(version, delta);
+
+        assertEquals(GiB.toBytes(20L), freeSpace(updated, "pool2"));
+        assertEquals(GiB.toBytes(10L), freeSpace(updated, "pool1"));
+        assertNull(updated.getCostModule().getPoolCostInfo("pool3"));
+        assertEquals(Collections.singleton("pool3"), delta.getCosts().getRemovedPools());
+    }
+
+    @Test
+    public void testApplyingSelectionUnitChange() throws Exception
+    {
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+        PoolMonitorV5 remote = copy(_poolMonitor);
+
+        new CommandInterpreter(_selectionUnit).command("psu set pool pool1 rdonly");
+        PoolMonitorV5 updated = remote.apply(version, copy(_poolMonitor.getDelta(version)));
+
+        assertTrue(updated.getPoolSelectionUnit().getPool("pool1").isReadOnly());
+        assertFalse(remote.getPoolSelectionUnit().getPool("pool1").isReadOnly());
+    }
+
+    @Test
+    public void testApplyingOlderDeltaKeepsNewerChanges() throws Exception
+    {
+        PoolMonitorVersion base = _poolMonitor.getVersion();
+        PoolMonitorV5 remote = copy(_poolMonitor);
+
+        poolUp("pool2", 20);
+        poolDown("pool3");
+        PoolMonitorDelta older = copy(_poolMonitor.getDelta(base));
+        poolUp("pool2", 30);
+        poolUp("pool3", 40);
+        PoolMonitorDelta newer = copy(_poolMonitor.getDelta(base));
+
+        PoolMonitorV5 updated = remote.apply(base, newer).apply(newer.getVersion(), older);
+
+        assertEquals(GiB.toBytes(30L), freeSpace(updated, "pool2"));
+        assertEquals(GiB.toBytes(40L), freeSpace(updated, "pool3"));
+    }
+
+    @Test
+    public void testApplyingOverlappingDeltas() throws Exception
+    {
+        PoolMonitorVersion base = _poolMonitor.getVersion();
+        PoolMonitorV5 remote = copy(_poolMonitor);
+
+        poolUp("pool1", 20);
+        PoolMonitorVersion middle = _poolMonitor.getVersion();
+        PoolMonitorDelta first = copy(_poolMonitor.getDelta(base));
+        poolUp("pool2", 30);
+        poolDown("pool3");
+        PoolMonitorDelta second = copy(_poolMonitor.getDelta(base));
+
+        PoolMonitorV5 updated = remote.apply(base, first).apply(middle, second);
+
+        assertEquals(GiB.toBytes(20L), freeSpace(updated, "pool1"));
+        assertEquals(GiB.toBytes(30L), freeSpace(updated, "pool2"));
+        assertNull(updated.getCostModule().getPoolCostInfo("pool3"));
+    }
+
+    @Test
+    public void testSnapshotIfRemovalsSinceVersionAreNoLongerKnown()
+    {
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+
+        for (int i = 0; i <= MAX_REMOVALS; i++) {
+            poolUp("transient" + i, 10);
+            poolDown("transient" + i);
+        }
+
+        assertTrue(_poolMonitor.getDelta(version).isSnapshot());
+        assertFalse(_poolMonitor.getDelta(_poolMonitor.getVersion()).isSnapshot());
+    }
+
+    @Test
+    public void testDeltaWithinRemovalLog()
+    {
+        for (int i = 0; i < 10; i++) {
+            poolUp("transient" + i, 10);
+        }
+        PoolMonitorVersion version = _poolMonitor.getVersion();
+
+        for (int i = 0; i < 10; i++) {
+            poolDown("transient" + i);
+        }
+        PoolMonitorDelta delta = _poolMonitor.getDelta(version);
+
+        assertFalse(delta.isSnapshot());
+        assertEquals(10, delta.getCosts().getRemovedPools().size());
+    }
+
+    private void poolUp(String pool, long freeSpace)
+    {
+        PoolCostInfo cost = new PoolCostInfo(pool, IoQueueManager.DEFAULT_QUEUE);
+        cost.setSpaceUsage(GiB.toBytes(100L), GiB.toBytes(freeSpace), 0, 0);
+        _costModule.messageArrived(envelope(pool),
+                new PoolManagerPoolUpMessage(pool, System.currentTimeMillis(),
+                                             new PoolV2Mode(PoolV2Mode.ENABLED), cost));
+    }
+
+    private void poolDown(String pool)
+    {
+        _costModule.messageArrived(envelope(pool),
+                new PoolManagerPoolUpMessage(pool, System.currentTimeMillis(),
+                                             new PoolV2Mode(PoolV2Mode.DISABLED)));
+    }
+
+    private static CellMessage envelope(String pool)
+    {
+        CellMessage envelope = new CellMessage(new CellAddressCore("irrelevant"), null);
+        envelope.addSourceAddress(new CellAddressCore(pool, "domain"));
+        return envelope;
+    }
+
+    private static long freeSpace(PoolMonitorV5 monitor, String pool)
+    {
+        return monitor.getCostModule().getPoolCostInfo(pool).getSpaceInfo().getFreeSpace();
+    }
+
+    /**
+     * Returns a copy as received by another cell.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copy(T object) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.gplazma.oidc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.KeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.dcache.gplazma.util.JsonWebToken;
+
+/**
+ * The public keys an OpenID-Connect provider publishes at its
+ * {@literal jwks_uri} endpoint to allow verifying the signature of the JWTs
+ * it issues.  The format is described in RFC 7517.  Only RSA signing keys
+ * are supported; other keys are ignored.
+ */
+public class JsonWebKeySet
+{
+    private static final Logger LOG = LoggerFactory.getLogger(JsonWebKeySet.class);
+
+    private final Map<String,PublicKey> keysById = new HashMap<>();
+    private final List<PublicKey> keys = new ArrayList<>();
+    private final Instant created = Instant.now();
+
+    public JsonWebKeySet(JsonNode document)
+    {
+        JsonNode keys = document.get("keys");
+        if (keys == null || !keys.isArray()) {
+            LOG.warn("JWKS document has no array of keys");
+            return;
+        }
+
+        for (JsonNode key : keys) {
+            try {
+                addKey(key);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Bad public key: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void addKey(JsonNode details)
+    {
+        if (details.has("use") && !getString(details, "use").equals("sig")) {
+            return;
+        }
+
+        String kty = getString(details, "kty");
+        if (!kty.equals("RSA")) {
+            LOG.debug("Ignoring key of unsupported type {}", kty);
+            return;
+        }
+
+        PublicKey key = buildRSAPublicKey(details);
+        keys.add(key);
+        if (details.has("kid")) {
+            keysById.put(getString(details, "kid"), key);
+        }
+    }
+
+    private static String getString(JsonNode details, String name)
+    {
+        JsonNode value = details.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing attribute " + name);
+        }
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException("Attribute not textual " + name);
+        }
+        return value.asText();
+    }
+
+    private static PublicKey buildRSAPublicKey(JsonNode details)
+    {
+        try {
+            byte[] e = Base64.getUrlDecoder().decode(getString(details, "e"));
+            byte[] n = Base64.getUrlDecoder().decode(getString(details, "n"));
+            KeySpec keySpec = new RSAPublicKeySpec(new BigInteger(1, n), new BigInteger(1, e));
+            return KeyFactory.getInstance("RSA").generatePublic(keySpec);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Unable to build RSA public key: " + e.toString());
+        }
+    }
+
+    /**
+     * Returns the key that should have been used to sign the token.  If
+     * the token identifies the key then this is the key with that
+     * identifier, otherwise it is any key that verifies the signature.
+     */
+    public Optional<PublicKey> findKey(JsonWebToken token)
+    {
+        String kid = token.getKeyIdentifier();
+        return kid == null
+                ? keys.stream().filter(token::isSignedBy).findAny()
+                : Optional.ofNullable(keysById.get(kid));
+    }
+
+    public boolean isOlderThan(Duration age)
+    {
+        return created.plus(age).isBefore(Instant.now());
+    }
+
+    public int size()
+    {
+        return keys.size();
+    }
+}
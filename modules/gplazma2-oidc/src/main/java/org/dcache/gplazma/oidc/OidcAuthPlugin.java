@@ -8,7 +8,9 @@ import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.net.InternetDomainName;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -20,7 +22,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.Principal;
+import java.security.PublicKey;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -82,6 +86,23 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
     private final static String ACCESS_TOKEN_CACHE_REFRESH_UNIT = "gplazma.oidc.access-token-cache.refresh.unit";
     private final static String ACCESS_TOKEN_CACHE_EXPIRE = "gplazma.oidc.access-token-cache.expire";
     private final static String ACCESS_TOKEN_CACHE_EXPIRE_UNIT = "gplazma.oidc.access-token-cache.expire.unit";
+    private final static String OFFLINE_VALIDATION = "gplazma.oidc.offline-validation";
+    private final static String OFFLINE_VALIDATION_REQUIRED_CLAIMS = "gplazma.oidc.offline-validation.required-claims";
+    private final static String AUDIENCE_TARGETS = "gplazma.oidc.audience-targets";
+    private final static String JWKS_CACHE_REFRESH = "gplazma.oidc.jwks-cache";
+    private final static String JWKS_CACHE_REFRESH_UNIT = "gplazma.oidc.jwks-cache.unit";
+
+    /**
+     * Tolerated difference between our clock and that of the OP when
+     * checking the validity period of a JWT.
+     */
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    /**
+     * Minimum age of the cached JWKS of an OP before a JWT signed with an
+     * unknown key triggers fetching the JWKS again.
+     */
+    private static final Duration JWKS_MIN_REFRESH_INTERVAL = Duration.ofMinutes(1);
 
     /**
      * A mapping from "eduperson_assurance" claim to the corresponding LoA.
@@ -125,10 +146,14 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
 
     private final Map<URI,IdentityProvider> providersByIssuer;
     private final LoadingCache<IdentityProvider, JsonNode> discoveryCache;
+    private final LoadingCache<IdentityProvider, JsonWebKeySet> jwksCache;
     private final LoadingCache<String,List<LookupResult>> userInfoCache;
     private final Random random = new Random();
     private final JsonHttpClient jsonHttpClient;
     private final Duration slowLookupThreshold;
+    private final boolean isOfflineValidationEnabled;
+    private final Set<String> offlineRequiredClaims;
+    private final Set<String> audienceTargets;
 
     public OidcAuthPlugin(Properties properties)
     {
@@ -157,6 +182,13 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
     }
 
 
+    private static Set<String> asSet(Properties properties, String key)
+    {
+        String value = properties.getProperty(key);
+        checkArgument(value != null, "Missing " + key + " property");
+        return ImmutableSet.copyOf(Splitter.on(' ').omitEmptyStrings().trimResults().split(value));
+    }
+
     @Override
     public void stop()
     {
@@ -185,6 +217,11 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
                 TimeUnit.valueOf(properties.getProperty(ACCESS_TOKEN_CACHE_REFRESH_UNIT)),
                 asInt(properties, ACCESS_TOKEN_CACHE_EXPIRE),
                 TimeUnit.valueOf(properties.getProperty(ACCESS_TOKEN_CACHE_EXPIRE_UNIT)));
+        jwksCache = createJwksCache(asInt(properties, JWKS_CACHE_REFRESH),
+                TimeUnit.valueOf(properties.getProperty(JWKS_CACHE_REFRESH_UNIT)));
+        isOfflineValidationEnabled = Boolean.parseBoolean(properties.getProperty(OFFLINE_VALIDATION));
+        offlineRequiredClaims = asSet(properties, OFFLINE_VALIDATION_REQUIRED_CLAIMS);
+        audienceTargets = asSet(properties, AUDIENCE_TARGETS);
     }
 
     private static Set<IdentityProvider> buildHosts(Properties properties)
@@ -258,6 +295,51 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
                                  );
     }
 
+    private LoadingCache<IdentityProvider, JsonWebKeySet> createJwksCache(int refresh, TimeUnit refreshUnits)
+    {
+        return CacheBuilder.newBuilder()
+                           .maximumSize(100)
+                           .refreshAfterWrite(refresh, refreshUnits)
+                           .build(
+                                   new CacheLoader<IdentityProvider, JsonWebKeySet>() {
+                                       @Override
+                                       public JsonWebKeySet load(IdentityProvider provider)
+                                               throws OidcException, IOException, ExecutionException
+                                       {
+                                           JsonNode discoveryDoc = discoveryCache.get(provider);
+                                           JsonNode jwksUri = discoveryDoc.get("jwks_uri");
+                                           if (jwksUri == null || !jwksUri.isTextual()) {
+                                               throw new OidcException(provider.getName(),
+                                                       "Discovery Document does not contain jwks url");
+                                           }
+                                           LOG.debug("Fetching JWKS for {}", provider.getName());
+                                           URI uri;
+                                           try {
+                                               uri = new URI(jwksUri.asText());
+                                           } catch (URISyntaxException e) {
+                                               throw new OidcException(provider.getName(),
+                                                       "Bad jwks url: " + e.getMessage());
+                                           }
+                                           JsonNode jwks = jsonHttpClient.doGet(uri);
+                                           if (jwks == null) {
+                                               throw new OidcException(provider.getName(),
+                                                       "Empty reply from " + uri);
+                                           }
+                                           return new JsonWebKeySet(jwks);
+                                       }
+
+                                       @Override
+                                       public ListenableFuture<JsonWebKeySet> reload(final IdentityProvider provider,
+                                               JsonWebKeySet value)
+                                       {
+                                           ListenableFutureTask<JsonWebKeySet> task = ListenableFutureTask.create(() -> load(provider));
+                                           executor.execute(task);
+                                           return task;
+                                       }
+                                   }
+                                 );
+    }
+
     private LoadingCache<String,List<LookupResult>> createUserInfoCache(int size,
             int refresh, TimeUnit refreshUnits, int expire, TimeUnit expireUnits)
     {
@@ -346,22 +428,29 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
 
         List<LookupResult> allResults;
 
-        try {
-            allResults = userInfoCache.get(token);
-        } catch (ExecutionException e) {
-            Throwable cause = e.getCause();
-            Throwables.throwIfInstanceOf(cause, AuthenticationException.class);
-            Throwables.throwIfUnchecked(cause);
-            if (cause instanceof InterruptedException) {
-                throw new AuthenticationException("Shutting down");
+        Optional<LookupResult> offlineResult = isOfflineValidationEnabled
+                ? validateJwtOffline(token)
+                : Optional.empty();
+        if (offlineResult.isPresent()) {
+            allResults = Collections.singletonList(offlineResult.get());
+        } else {
+            try {
+                allResults = userInfoCache.get(token);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                Throwables.throwIfInstanceOf(cause, AuthenticationException.class);
+                Throwables.throwIfUnchecked(cause);
+                if (cause instanceof InterruptedException) {
+                    throw new AuthenticationException("Shutting down");
+                }
+                throw new RuntimeException("Unexpected exception", e);
             }
-            throw new RuntimeException("Unexpected exception", e);
-        }
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Doing user-info lookup against {} OPs took {}",
-                    allResults.size(),
-                    TimeUtils.describe(userinfoLookupTiming.elapsed()).orElse("no time"));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Doing user-info lookup against {} OPs took {}",
+                        allResults.size(),
+                        TimeUtils.describe(userinfoLookupTiming.elapsed()).orElse("no time"));
+            }
         }
 
         List<LookupResult> successfulResults = allResults.stream().filter(LookupResult::isSuccess).collect(Collectors.toList());
@@ -423,6 +512,123 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
         }
     }
 
+    /**
+     * Validate a JWT without contacting the OP that issued it.  The token's
+     * signature is verified against the OP's published keys and its claims
+     * are checked locally.  If the token cannot be validated this way (for
+     * example, it is not a JWT or is signed with an unknown key) then an
+     * empty Optional is returned and the token should be validated by the
+     * OP's user-info endpoint.
+     */
+    private Optional<LookupResult> validateJwtOffline(String token)
+    {
+        if (!JsonWebToken.isCompatibleFormat(token)) {
+            return Optional.empty();
+        }
+
+        JsonWebToken jwt;
+        try {
+            jwt = new JsonWebToken(token);
+        } catch (IOException | RuntimeException e) {
+            // Reported by identityProviders when falling back to user-info.
+            return Optional.empty();
+        }
+
+        IdentityProvider ip = jwt.getPayloadString("iss")
+                .map(this::providerByIssuer)
+                .orElse(null);
+        if (ip == null) {
+            return Optional.empty();
+        }
+
+        Optional<String> reason = reasonForUserInfoLookup(jwt);
+        if (reason.isPresent()) {
+            LOG.debug("Unable to validate JWT issued by {} offline: {}", ip.getName(), reason.get());
+            return Optional.empty();
+        }
+
+        JsonWebKeySet keys;
+        try {
+            keys = jwksCache.get(ip);
+        } catch (ExecutionException e) {
+            LOG.debug("Unable to fetch JWKS from {}: {}", ip.getName(), e.getCause().toString());
+            return Optional.empty();
+        }
+
+        Optional<PublicKey> key = keys.findKey(jwt);
+        if (!key.isPresent()) {
+            LOG.debug("JWT issued by {} not signed by any known key", ip.getName());
+            if (keys.isOlderThan(JWKS_MIN_REFRESH_INTERVAL)) {
+                jwksCache.refresh(ip);
+            }
+            return Optional.empty();
+        }
+
+        if (!jwt.isSignedBy(key.get())) {
+            return Optional.of(LookupResult.error(ip, "Invalid signature"));
+        }
+
+        Instant now = Instant.now();
+        Instant exp = jwt.getPayloadInstant("exp").get();
+        if (now.isAfter(exp.plus(CLOCK_SKEW))) {
+            return Optional.of(LookupResult.error(ip, "Token expired"));
+        }
+
+        Optional<Instant> nbf = jwt.getPayloadInstant("nbf");
+        if (nbf.isPresent() && nbf.get().isAfter(now.plus(CLOCK_SKEW))) {
+            return Optional.of(LookupResult.error(ip, "Token not yet valid"));
+        }
+
+        List<String> aud = jwt.getPayloadStringOrArray("aud");
+        if (!aud.isEmpty() && aud.stream().noneMatch(audienceTargets::contains)) {
+            return Optional.of(LookupResult.error(ip, "Token intended for " + aud));
+        }
+
+        try {
+            LOG.debug("Validated JWT issued by {} offline", ip.getName());
+            return Optional.of(LookupResult.success(ip, principalsFromClaims(jwt.getPayload())));
+        } catch (IllegalArgumentException e) {
+            return Optional.of(LookupResult.error(ip, "Error parsing JWT claims: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Returns why the JWT must be validated by the OP's user-info endpoint,
+     * if it must.
+     */
+    private Optional<String> reasonForUserInfoLookup(JsonWebToken jwt)
+    {
+        if (!jwt.isSignatureSupported()) {
+            return Optional.of("unsupported signature algorithm");
+        }
+
+        if (!jwt.getPayloadString("sub").isPresent()) {
+            return Optional.of("missing \"sub\" claim");
+        }
+
+        if (!jwt.getPayloadInstant("exp").isPresent()) {
+            return Optional.of("missing \"exp\" claim");
+        }
+
+        if (audienceTargets.isEmpty() && !jwt.getPayloadStringOrArray("aud").isEmpty()) {
+            return Optional.of("\"aud\" claim but no audience targets configured");
+        }
+
+        return offlineRequiredClaims.stream()
+                .filter(c -> !jwt.getPayload().has(c))
+                .findFirst()
+                .map(c -> "missing \"" + c + "\" claim");
+    }
+
+    private IdentityProvider providerByIssuer(String iss)
+    {
+        try {
+            return providersByIssuer.get(new URI(iss));
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
     private Collection<IdentityProvider> identityProviders(String token)
             throws AuthenticationException
     {
@@ -459,14 +665,7 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
             JsonNode userInfo = getUserInfo(infoUrl, token);
             if (userInfo != null && userInfo.has("sub")) {
                 LOG.debug("UserInfo from OpenId Provider: {}", userInfo);
-                Set<Principal> principals = new HashSet<>();
-                addSub(userInfo, principals);
-                addNames(userInfo, principals);
-                addEmail(userInfo, principals);
-                addGroups(userInfo, principals);
-                addLoAs(userInfo, principals);
-                addEntitlements(userInfo, principals);
-                return principals;
+                return principalsFromClaims(userInfo);
             } else {
                 throw new OidcException("No OpendId \"sub\"");
             }
@@ -479,6 +678,18 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
         }
     }
 
+    private Set<Principal> principalsFromClaims(JsonNode claims)
+    {
+        Set<Principal> principals = new HashSet<>();
+        addSub(claims, principals);
+        addNames(claims, principals);
+        addEmail(claims, principals);
+        addGroups(claims, principals);
+        addLoAs(claims, principals);
+        addEntitlements(claims, principals);
+        return principals;
+    }
+
     private JsonNode getUserInfo(String url, String token) throws AuthenticationException, IOException
     {
         JsonNode userInfo = jsonHttpClient.doGetWithToken(url, token);
@@ -0,0 +1,239 @@
+package org.dcache.gplazma.oidc;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.Principal;
+import java.security.Security;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.dcache.auth.BearerTokenCredential;
+import org.dcache.auth.OidcSubjectPrincipal;
+import org.dcache.auth.OpenIdGroupPrincipal;
+import org.dcache.gplazma.AuthenticationException;
+import org.dcache.gplazma.oidc.helpers.JsonHttpClient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests validating JWTs offline against a {@link StubIdentityProvider}.
+ */
+public class OfflineJwtValidationTest
+{
+    private StubIdentityProvider op;
+    private Properties givenConfiguration;
+    private OidcAuthPlugin plugin;
+
+    @BeforeClass
+    public static void addProvider()
+    {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        op = new StubIdentityProvider();
+
+        givenConfiguration = new Properties();
+        givenConfiguration.put("gplazma.oidc.hostnames", "");
+        givenConfiguration.put("gplazma.oidc.provider!STUB", op.getIssuer());
+        givenConfiguration.put("gplazma.oidc.concurrent-requests", "20");
+        givenConfiguration.put("gplazma.oidc.http.slow-threshold", "2");
+        givenConfiguration.put("gplazma.oidc.http.slow-threshold.unit", "SECONDS");
+        givenConfiguration.put("gplazma.oidc.discovery-cache", "1");
+        givenConfiguration.put("gplazma.oidc.discovery-cache.unit", "HOURS");
+        givenConfiguration.put("gplazma.oidc.access-token-cache.size", "1000");
+        givenConfiguration.put("gplazma.oidc.access-token-cache.refresh", "100");
+        givenConfiguration.put("gplazma.oidc.access-token-cache.refresh.unit", "SECONDS");
+        givenConfiguration.put("gplazma.oidc.access-token-cache.expire", "120");
+        givenConfiguration.put("gplazma.oidc.access-token-cache.expire.unit", "SECONDS");
+        givenConfiguration.put("gplazma.oidc.offline-validation", "true");
+        givenConfiguration.put("gplazma.oidc.offline-validation.required-claims", "");
+        givenConfiguration.put("gplazma.oidc.audience-targets", "");
+        givenConfiguration.put("gplazma.oidc.jwks-cache", "10");
+        givenConfiguration.put("gplazma.oidc.jwks-cache.unit", "MINUTES");
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (plugin != null) {
+            plugin.stop();
+        }
+        op.close();
+    }
+
+    @Test
+    public void shouldValidateJwtWithoutUserInfo() throws Exception
+    {
+        Set<Principal> principals = whenAuthenticatingWith(op.aJwtFor("kermit")
+                .withClaim("groups", "muppets", "frogs")
+                .build());
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("kermit")));
+        assertThat(principals, hasItem(new OpenIdGroupPrincipal("muppets")));
+        assertThat(principals, hasItem(new OpenIdGroupPrincipal("frogs")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldFetchJwksOnlyOnce() throws Exception
+    {
+        givenPlugin();
+
+        for (int i = 0; i < 10; i++) {
+            authenticate(op.aJwtFor("user" + i).build());
+        }
+
+        assertThat(op.getDiscoveryRequests(), is(equalTo(1)));
+        assertThat(op.getJwksRequests(), is(equalTo(1)));
+        assertThat(op.getUserInfoRequests(), is(equalTo(0)));
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void shouldRejectExpiredJwt() throws Exception
+    {
+        whenAuthenticatingWith(op.aJwtFor("kermit")
+                .withClaim("exp", Instant.now().minus(Duration.ofMinutes(10)))
+                .build());
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void shouldRejectNotYetValidJwt() throws Exception
+    {
+        whenAuthenticatingWith(op.aJwtFor("kermit")
+                .withClaim("nbf", Instant.now().plus(Duration.ofMinutes(10)))
+                .build());
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void shouldRejectJwtWithInvalidSignature() throws Exception
+    {
+        whenAuthenticatingWith(op.aJwtFor("kermit")
+                .signedWithUnpublishedKey()
+                .build());
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void shouldRejectJwtForOtherAudience() throws Exception
+    {
+        givenConfiguration.put("gplazma.oidc.audience-targets", "dcache.example.org");
+
+        whenAuthenticatingWith(op.aJwtFor("kermit")
+                .withClaim("aud", "other.example.org")
+                .build());
+    }
+
+    @Test
+    public void shouldValidateJwtForConfiguredAudience() throws Exception
+    {
+        givenConfiguration.put("gplazma.oidc.audience-targets", "dcache.example.org");
+
+        Set<Principal> principals = whenAuthenticatingWith(op.aJwtFor("kermit")
+                .withClaim("aud", "other.example.org", "dcache.example.org")
+                .build());
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("kermit")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldUseUserInfoForJwtWithAudienceIfNoTargets() throws Exception
+    {
+        Set<Principal> principals = whenAuthenticatingWith(op.aJwtFor("kermit")
+                .withClaim("aud", "dcache.example.org")
+                .build());
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("kermit")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldUseUserInfoForJwtWithUnknownKey() throws Exception
+    {
+        Set<Principal> principals = whenAuthenticatingWith(op.aJwtFor("kermit")
+                .withKeyId("rotated")
+                .signedWithUnpublishedKey()
+                .build());
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("kermit")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldUseUserInfoForJwtWithoutRequiredClaim() throws Exception
+    {
+        givenConfiguration.put("gplazma.oidc.offline-validation.required-claims", "groups");
+
+        Set<Principal> principals = whenAuthenticatingWith(op.aJwtFor("kermit").build());
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("kermit")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldUseUserInfoForJwtWithoutExpiry() throws Exception
+    {
+        Set<Principal> principals = whenAuthenticatingWith(op.aJwtFor("kermit")
+                .omittingClaim("exp")
+                .build());
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("kermit")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldUseUserInfoForOpaqueToken() throws Exception
+    {
+        Set<Principal> principals = whenAuthenticatingWith("opaque-token");
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("opaque-token")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(1)));
+        assertThat(op.getJwksRequests(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldUseUserInfoIfOfflineValidationDisabled() throws Exception
+    {
+        givenConfiguration.put("gplazma.oidc.offline-validation", "false");
+
+        Set<Principal> principals = whenAuthenticatingWith(op.aJwtFor("kermit").build());
+
+        assertThat(principals, hasItem(new OidcSubjectPrincipal("kermit")));
+        assertThat(op.getUserInfoRequests(), is(equalTo(1)));
+        assertThat(op.getJwksRequests(), is(equalTo(0)));
+    }
+
+    /*-------------------------------- Helpers --------------------------------------*/
+
+    private void givenPlugin()
+    {
+        plugin = new OidcAuthPlugin(givenConfiguration, new JsonHttpClient(10, 10, 10_000));
+    }
+
+    private Set<Principal> whenAuthenticatingWith(String token) throws AuthenticationException
+    {
+        givenPlugin();
+        return authenticate(token);
+    }
+
+    private Set<Principal> authenticate(String token) throws AuthenticationException
+    {
+        Set<Object> priv = new HashSet<>();
+        priv.add(new BearerTokenCredential(token));
+        Set<Principal> principals = new HashSet<>();
+        plugin.authenticate(new HashSet<>(), priv, principals);
+        return principals;
+    }
+}
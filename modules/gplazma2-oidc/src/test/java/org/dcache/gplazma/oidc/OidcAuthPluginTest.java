@@ -57,6 +57,11 @@ public class OidcAuthPluginTest {
         givenConfiguration.put("gplazma.oidc.access-token-cache.refresh.unit", "SECONDS");
         givenConfiguration.put("gplazma.oidc.access-token-cache.expire", "120");
         givenConfiguration.put("gplazma.oidc.access-token-cache.expire.unit", "SECONDS");
+        givenConfiguration.put("gplazma.oidc.offline-validation", "false");
+        givenConfiguration.put("gplazma.oidc.offline-validation.required-claims", "");
+        givenConfiguration.put("gplazma.oidc.audience-targets", "");
+        givenConfiguration.put("gplazma.oidc.jwks-cache", "10");
+        givenConfiguration.put("gplazma.oidc.jwks-cache.unit", "MINUTES");
 
         givenConfiguration.setProperty(OIDC_PROPERTY_NAME, "");
     }
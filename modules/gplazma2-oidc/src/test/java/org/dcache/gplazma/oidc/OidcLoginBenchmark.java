@@ -0,0 +1,114 @@
+package org.dcache.gplazma.oidc;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.Principal;
+import java.security.Security;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dcache.auth.BearerTokenCredential;
+import org.dcache.gplazma.oidc.helpers.JsonHttpClient;
+
+/**
+ * Compares the login throughput of the OIDC plugin with and without offline
+ * validation of JWTs.  Each login uses a new access token, as happens with
+ * short-lived tokens, so the access-token cache does not help.  The stub OP
+ * delays its user-info replies to simulate a remote OP.
+ *
+ * Usage: OidcLoginBenchmark [logins [threads [user-info-delay-ms]]]
+ */
+public class OidcLoginBenchmark
+{
+    private static Properties configuration(StubIdentityProvider op, int threads,
+            boolean offline)
+    {
+        Properties properties = new Properties();
+        properties.put("gplazma.oidc.hostnames", "");
+        properties.put("gplazma.oidc.provider!STUB", op.getIssuer());
+        properties.put("gplazma.oidc.concurrent-requests", String.valueOf(threads));
+        properties.put("gplazma.oidc.http.slow-threshold", "2");
+        properties.put("gplazma.oidc.http.slow-threshold.unit", "SECONDS");
+        properties.put("gplazma.oidc.discovery-cache", "1");
+        properties.put("gplazma.oidc.discovery-cache.unit", "HOURS");
+        properties.put("gplazma.oidc.access-token-cache.size", "1000");
+        properties.put("gplazma.oidc.access-token-cache.refresh", "100");
+        properties.put("gplazma.oidc.access-token-cache.refresh.unit", "SECONDS");
+        properties.put("gplazma.oidc.access-token-cache.expire", "120");
+        properties.put("gplazma.oidc.access-token-cache.expire.unit", "SECONDS");
+        properties.put("gplazma.oidc.offline-validation", String.valueOf(offline));
+        properties.put("gplazma.oidc.offline-validation.required-claims", "");
+        properties.put("gplazma.oidc.audience-targets", "");
+        properties.put("gplazma.oidc.jwks-cache", "10");
+        properties.put("gplazma.oidc.jwks-cache.unit", "MINUTES");
+        return properties;
+    }
+
+    private static void run(StubIdentityProvider op, List<String> tokens, int threads,
+            boolean offline) throws Exception
+    {
+        OidcAuthPlugin plugin = new OidcAuthPlugin(configuration(op, threads, offline),
+                new JsonHttpClient(threads, threads, 30_000));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int userInfoRequests = op.getUserInfoRequests();
+
+        long start = System.nanoTime();
+        List<Future<?>> logins = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            logins.add(executor.submit(() -> {
+                Set<Object> priv = new HashSet<>();
+                priv.add(new BearerTokenCredential(token));
+                Set<Principal> principals = new HashSet<>();
+                plugin.authenticate(new HashSet<>(), priv, principals);
+                return principals;
+            }));
+        }
+        for (Future<?> login : logins) {
+            login.get();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-8s %6d logins in %6.2f s, %8.0f logins/s, %6d user-info requests%n",
+                offline ? "offline" : "userinfo", tokens.size(), elapsed / 1e9,
+                tokens.size() / (elapsed / 1e9), op.getUserInfoRequests() - userInfoRequests);
+
+        executor.shutdown();
+        plugin.stop();
+    }
+
+    private static List<String> tokens(StubIdentityProvider op, int count) throws Exception
+    {
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add(op.aJwtFor("user" + (i % 100)).withClaim("groups", "users").build());
+        }
+        return tokens;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int logins = (args.length > 0) ? Integer.parseInt(args[0]) : 2_000;
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int delay = (args.length > 2) ? Integer.parseInt(args[2]) : 50;
+
+        Security.addProvider(new BouncyCastleProvider());
+
+        try (StubIdentityProvider op = new StubIdentityProvider()) {
+            op.setUserInfoDelay(Duration.ofMillis(delay));
+
+            System.out.println("Warm-up");
+            run(op, tokens(op, Math.min(logins, 200)), threads, false);
+            run(op, tokens(op, Math.min(logins, 200)), threads, true);
+            System.out.println("Measurement");
+            run(op, tokens(op, logins), threads, false);
+            run(op, tokens(op, logins), threads, true);
+        }
+    }
+}
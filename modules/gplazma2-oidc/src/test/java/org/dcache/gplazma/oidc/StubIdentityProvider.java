@@ -0,0 +1,237 @@
+package org.dcache.gplazma.oidc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcache.gplazma.util.JsonWebToken;
+
+/**
+ * A minimal OpenID-Connect provider listening on a local port.  It serves
+ * a discovery document, a JWKS with a single RSA key and a user-info
+ * endpoint, and it issues JWTs signed with its key.  The user-info endpoint
+ * returns the claims of the JWT it is called with, optionally after a delay
+ * to simulate a remote OP.
+ */
+public class StubIdentityProvider implements AutoCloseable
+{
+    public static final String KEY_ID = "key1";
+
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final KeyPair keyPair;
+    private final KeyPair otherKeyPair;
+
+    private final AtomicInteger discoveryRequests = new AtomicInteger();
+    private final AtomicInteger jwksRequests = new AtomicInteger();
+    private final AtomicInteger userInfoRequests = new AtomicInteger();
+    private volatile Duration userInfoDelay = Duration.ZERO;
+
+    public StubIdentityProvider() throws IOException, GeneralSecurityException
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        otherKeyPair = generator.generateKeyPair();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/.well-known/openid-configuration", this::discovery);
+        server.createContext("/jwks", this::jwks);
+        server.createContext("/userinfo", this::userInfo);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getIssuer()
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public void setUserInfoDelay(Duration delay)
+    {
+        userInfoDelay = delay;
+    }
+
+    public int getDiscoveryRequests()
+    {
+        return discoveryRequests.get();
+    }
+
+    public int getJwksRequests()
+    {
+        return jwksRequests.get();
+    }
+
+    public int getUserInfoRequests()
+    {
+        return userInfoRequests.get();
+    }
+
+    /**
+     * Returns a builder for a JWT issued by this OP for the given subject.
+     * The token is valid for an hour.
+     */
+    public JwtBuilder aJwtFor(String sub)
+    {
+        return new JwtBuilder()
+                .withClaim("iss", getIssuer())
+                .withClaim("sub", sub)
+                .withClaim("jti", UUID.randomUUID().toString())
+                .withClaim("iat", Instant.now())
+                .withClaim("exp", Instant.now().plus(Duration.ofHours(1)));
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void discovery(HttpExchange exchange) throws IOException
+    {
+        discoveryRequests.incrementAndGet();
+        ObjectNode document = mapper.createObjectNode();
+        document.put("issuer", getIssuer());
+        document.put("jwks_uri", getIssuer() + "jwks");
+        document.put("userinfo_endpoint", getIssuer() + "userinfo");
+        reply(exchange, document);
+    }
+
+    private void jwks(HttpExchange exchange) throws IOException
+    {
+        jwksRequests.incrementAndGet();
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        ObjectNode jwks = mapper.createObjectNode();
+        jwks.putArray("keys").addObject()
+                .put("kty", "RSA")
+                .put("use", "sig")
+                .put("alg", "RS256")
+                .put("kid", KEY_ID)
+                .put("e", encode(key.getPublicExponent()))
+                .put("n", encode(key.getModulus()));
+        reply(exchange, jwks);
+    }
+
+    private void userInfo(HttpExchange exchange) throws IOException
+    {
+        userInfoRequests.incrementAndGet();
+        try {
+            Thread.sleep(userInfoDelay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String token = authorization.substring("Bearer ".length());
+        if (JsonWebToken.isCompatibleFormat(token)) {
+            reply(exchange, new JsonWebToken(token).getPayload());
+        } else {
+            reply(exchange, mapper.createObjectNode().put("sub", token));
+        }
+    }
+
+    private void reply(HttpExchange exchange, JsonNode json) throws IOException
+    {
+        byte[] body = mapper.writeValueAsBytes(json);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String encode(BigInteger value)
+    {
+        byte[] bytes = value.toByteArray();
+        int leadingZeros = bytes[0] == 0 ? 1 : 0;
+        return BASE64.encodeToString(Arrays.copyOfRange(bytes, leadingZeros, bytes.length));
+    }
+
+    public class JwtBuilder
+    {
+        private final ObjectNode claims = mapper.createObjectNode();
+        private String kid = KEY_ID;
+        private KeyPair signer = keyPair;
+
+        public JwtBuilder withClaim(String name, String value)
+        {
+            claims.put(name, value);
+            return this;
+        }
+
+        public JwtBuilder withClaim(String name, Instant value)
+        {
+            claims.put(name, value.getEpochSecond());
+            return this;
+        }
+
+        public JwtBuilder withClaim(String name, String... values)
+        {
+            ArrayNode array = claims.putArray(name);
+            Arrays.stream(values).forEach(array::add);
+            return this;
+        }
+
+        public JwtBuilder omittingClaim(String name)
+        {
+            claims.remove(name);
+            return this;
+        }
+
+        public JwtBuilder withKeyId(String kid)
+        {
+            this.kid = kid;
+            return this;
+        }
+
+        /**
+         * Sign the token with a key that this OP does not publish.
+         */
+        public JwtBuilder signedWithUnpublishedKey()
+        {
+            signer = otherKeyPair;
+            return this;
+        }
+
+        public String build() throws GeneralSecurityException, IOException
+        {
+            ObjectNode header = mapper.createObjectNode().put("alg", "RS256").put("typ", "JWT");
+            if (kid != null) {
+                header.put("kid", kid);
+            }
+            String unsigned = BASE64.encodeToString(mapper.writeValueAsBytes(header))
+                    + "." + BASE64.encodeToString(mapper.writeValueAsBytes(claims));
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(signer.getPrivate());
+            signature.update(unsigned.getBytes(StandardCharsets.US_ASCII));
+            return unsigned + "." + BASE64.encodeToString(signature.sign());
+        }
+    }
+}
@@ -133,6 +133,20 @@ public class JsonWebToken
         }
     }
 
+    /**
+     * Whether {@link #isSignedBy} is able to verify the signature of this
+     * token; that is, whether the token's signing algorithm is supported.
+     */
+    public boolean isSignatureSupported()
+    {
+        try {
+            getSignature();
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
     private Signature getSignature() throws GeneralSecurityException
     {
         switch (alg) {
@@ -143,6 +157,15 @@ public class JsonWebToken
         }
     }
 
+    /**
+     * Returns all claims of the payload.  The returned node must not be
+     * modified.
+     */
+    public JsonNode getPayload()
+    {
+        return payload;
+    }
+
     public Optional<Instant> getPayloadInstant(String key)
     {
         return Optional.ofNullable(payload.get(key))
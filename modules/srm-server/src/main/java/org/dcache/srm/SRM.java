@@ -369,6 +369,11 @@ public class SRM implements CellLifeCycleAware
         return schedulers.getInfo();
     }
 
+    public CharSequence getDatabaseInfo()
+    {
+        return databaseFactory.getInfo();
+    }
+
     public CharSequence getGetSchedulerInfo()
     {
         return schedulers.getDetailedInfo(GetFileRequest.class);
@@ -624,6 +624,13 @@ public class SrmCommandLineInterface
                srm.getAbstractStorageElementGauges().toString();
     }
 
+    public static final String hh_print_db_stats = "# prints statistics about writing requests to the database";
+
+    public String ac_print_db_stats_$_0(Args args)
+    {
+        return srm.getDatabaseInfo().toString();
+    }
+
     public static final String fh_db_history_log = " Syntax: db history log [on|off] " +
             "# show status or enable db history log ";
     public static final String hh_db_history_log = "[-get] [-put] [-bringonline] [-ls] [-copy] [-reserve] [on|off] " +
@@ -97,27 +97,26 @@ public class BringOnlineFileRequestStorage extends DatabaseFileRequestStorage<Br
         return TABLE_NAME;
     }
 
-    private PreparedStatement getStatement(Connection connection,
+    private PreparedStatement getStatement(StatementFactory statements,
                                           String query,
                                           Job fr) throws SQLException {
         BringOnlineFileRequest gfr = (BringOnlineFileRequest)fr;
-        return getPreparedStatement(connection,
-                                    query,
-                                    gfr.getNextJobId(),
-                                    gfr.getCreationTime(),
-                                    gfr.getLifetime(),
-                                    gfr.getState().getStateId(),
-                                    gfr.latestHistoryEvent(),//5
-                                    gfr.getSchedulerId(),
-                                    gfr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    gfr.getLastStateTransitionTime(),
-                                    gfr.getRequestId(),//10
-                                    gfr.getStatusCodeString(),
-                                    gfr.getSurlString(),
-                                    gfr.getFileId(),
-                                    gfr.getPinId(),
-                                    gfr.getId());
+        return statements.prepare(query,
+                                  gfr.getNextJobId(),
+                                  gfr.getCreationTime(),
+                                  gfr.getLifetime(),
+                                  gfr.getState().getStateId(),
+                                  gfr.latestHistoryEvent(),//5
+                                  gfr.getSchedulerId(),
+                                  gfr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  gfr.getLastStateTransitionTime(),
+                                  gfr.getRequestId(),//10
+                                  gfr.getStatusCodeString(),
+                                  gfr.getSurlString(),
+                                  gfr.getFileId(),
+                                  gfr.getPinId(),
+                                  gfr.getId());
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -128,10 +127,10 @@ public class BringOnlineFileRequestStorage extends DatabaseFileRequestStorage<Br
             ", FILEID=?" +
             ", PINID=? WHERE ID=?";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
                                                 Job fr)
         throws SQLException {
-        return getStatement(connection,UPDATE_REQUEST_SQL, fr);
+        return getStatement(statements,UPDATE_REQUEST_SQL, fr);
     }
 
     private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
@@ -155,28 +154,27 @@ public class BringOnlineFileRequestStorage extends DatabaseFileRequestStorage<Br
         "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection,
+    public PreparedStatement getCreateStatement(StatementFactory statements,
                                                 Job fr)
         throws SQLException {
         BringOnlineFileRequest gfr = (BringOnlineFileRequest)fr;
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    gfr.getId(),
-                                    gfr.getNextJobId(),
-                                    gfr.getCreationTime(),
-                                    gfr.getLifetime(),
-                                    gfr.getState().getStateId(),//5
-                                    gfr.latestHistoryEvent(),
-                                    gfr.getSchedulerId(),
-                                    gfr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    gfr.getLastStateTransitionTime(),
-                                    //DATABSE FILE REQUEST STORAGE
-                                    gfr.getRequestId(),
-                                    gfr.getStatusCodeString(),
-                                    // BRING ONLINE FILE REQUEST
-                                    gfr.getSurlString(),
-                                    gfr.getFileId(),//15
-                                    gfr.getPinId());
+        return statements.prepare(INSERT_SQL,
+                                  gfr.getId(),
+                                  gfr.getNextJobId(),
+                                  gfr.getCreationTime(),
+                                  gfr.getLifetime(),
+                                  gfr.getState().getStateId(),//5
+                                  gfr.latestHistoryEvent(),
+                                  gfr.getSchedulerId(),
+                                  gfr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  gfr.getLastStateTransitionTime(),
+                                  //DATABSE FILE REQUEST STORAGE
+                                  gfr.getRequestId(),
+                                  gfr.getStatusCodeString(),
+                                  // BRING ONLINE FILE REQUEST
+                                  gfr.getSurlString(),
+                                  gfr.getFileId(),//15
+                                  gfr.getPinId());
     }
 }
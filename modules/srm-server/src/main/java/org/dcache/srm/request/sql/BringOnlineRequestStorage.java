@@ -77,27 +77,26 @@ public class BringOnlineRequestStorage extends DatabaseContainerRequestStorage<B
 
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException {
+    public PreparedStatement getCreateStatement(StatementFactory statements, Job job) throws SQLException {
         BringOnlineRequest bor = (BringOnlineRequest)job;
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    bor.getId(),
-                                    bor.getNextJobId(),
-                                    bor.getCreationTime(),
-                                    bor.getLifetime(),
-                                    bor.getState().getStateId(),//5
-                                    bor.latestHistoryEvent(),
-                                    bor.getSchedulerId(),
-                                    bor.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    bor.getLastStateTransitionTime(), // 10
-                                    //Database Request Storage
-                                    bor.getRetryDeltaTime(),
-                                                      bor.isShould_updateretryDeltaTime()?0:1,
-                                    bor.getDescription(),
-                                    bor.getClient_host(),
-                                    bor.getStatusCodeString(),
-                                    bor.getUser().getId());
+        return statements.prepare(INSERT_SQL,
+                                  bor.getId(),
+                                  bor.getNextJobId(),
+                                  bor.getCreationTime(),
+                                  bor.getLifetime(),
+                                  bor.getState().getStateId(),//5
+                                  bor.latestHistoryEvent(),
+                                  bor.getSchedulerId(),
+                                  bor.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  bor.getLastStateTransitionTime(), // 10
+                                  //Database Request Storage
+                                  bor.getRetryDeltaTime(),
+                                                    bor.isShould_updateretryDeltaTime()?0:1,
+                                  bor.getDescription(),
+                                  bor.getClient_host(),
+                                  bor.getStatusCodeString(),
+                                  bor.getUser().getId());
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -109,28 +108,27 @@ public class BringOnlineRequestStorage extends DatabaseContainerRequestStorage<B
                 " USERID=?" +
                 " WHERE ID=?";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
             Job job) throws SQLException {
         BringOnlineRequest bor = (BringOnlineRequest)job;
-        return getPreparedStatement(connection,
-                                    UPDATE_REQUEST_SQL,
-                                    bor.getNextJobId(),
-                                    bor.getCreationTime(),
-                                    bor.getLifetime(),
-                                    bor.getState().getStateId(),
-                                    bor.latestHistoryEvent(),//5
-                                    bor.getSchedulerId(),
-                                    bor.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    bor.getLastStateTransitionTime(),//10
-                                    //Database Request Storage
-                                    bor.getRetryDeltaTime(),
-                                  bor.isShould_updateretryDeltaTime()?0:1,
-                                    bor.getDescription(),
-                                    bor.getClient_host(),
-                                    bor.getStatusCodeString(),
-                                    bor.getUser().getId(),
-                                    bor.getId());
+        return statements.prepare(UPDATE_REQUEST_SQL,
+                                  bor.getNextJobId(),
+                                  bor.getCreationTime(),
+                                  bor.getLifetime(),
+                                  bor.getState().getStateId(),
+                                  bor.latestHistoryEvent(),//5
+                                  bor.getSchedulerId(),
+                                  bor.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  bor.getLastStateTransitionTime(),//10
+                                  //Database Request Storage
+                                  bor.getRetryDeltaTime(),
+                                bor.isShould_updateretryDeltaTime()?0:1,
+                                  bor.getDescription(),
+                                  bor.getClient_host(),
+                                  bor.getStatusCodeString(),
+                                  bor.getUser().getId(),
+                                  bor.getId());
     }
 
 
@@ -96,51 +96,50 @@ public class CopyFileRequestStorage extends DatabaseFileRequestStorage<CopyFileR
     }
 
 
-    private PreparedStatement getStatement(Connection connection,
+    private PreparedStatement getStatement(StatementFactory statements,
                                           String query,
                                           Job job) throws SQLException {
         CopyFileRequest request = (CopyFileRequest)job;
-        return getPreparedStatement(connection,
-                                    query,
-                                    request.getNextJobId(),
-                                    request.getCreationTime(),
-                                    request.getLifetime(),
-                                    request.getState().getStateId(),
-                                    request.latestHistoryEvent(),
-                                    request.getSchedulerId(),
-                                    request.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    request.getLastStateTransitionTime(),
-                                    request.getRequestId(), // 10
-                                    request.getCredentialId(),
-                                    request.getStatusCodeString(),
-                                    request.getSourceSurl().toString(),
-                                    request.getDestinationSurl().toString(),
-                                    (request.getSourceTurl()!=null?request.getSourceTurl().toString():null),
-                                    (request.getDestinationTurl()!=null?request.getDestinationTurl().toString():null),
-                                    request.getLocalSourcePath(),
-                                    request.getLocalDestinationPath(),
-                                    request.getSize(),//20
-                                    null, // FromFileId (unused)
-                                    null, // ToFileId (unused)
-                                    request.getRemoteRequestId(),
-                                    request.getRemoteFileId(),
-                                    request.getSpaceReservationId(),
-                                    request.getTransferId(),
-                                    serialiseMap(request.getExtraInfo()),
-                                    request.getId());
+        return statements.prepare(query,
+                                  request.getNextJobId(),
+                                  request.getCreationTime(),
+                                  request.getLifetime(),
+                                  request.getState().getStateId(),
+                                  request.latestHistoryEvent(),
+                                  request.getSchedulerId(),
+                                  request.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  request.getLastStateTransitionTime(),
+                                  request.getRequestId(), // 10
+                                  request.getCredentialId(),
+                                  request.getStatusCodeString(),
+                                  request.getSourceSurl().toString(),
+                                  request.getDestinationSurl().toString(),
+                                  (request.getSourceTurl()!=null?request.getSourceTurl().toString():null),
+                                  (request.getDestinationTurl()!=null?request.getDestinationTurl().toString():null),
+                                  request.getLocalSourcePath(),
+                                  request.getLocalDestinationPath(),
+                                  request.getSize(),//20
+                                  null, // FromFileId (unused)
+                                  null, // ToFileId (unused)
+                                  request.getRemoteRequestId(),
+                                  request.getRemoteFileId(),
+                                  request.getSpaceReservationId(),
+                                  request.getTransferId(),
+                                  serialiseMap(request.getExtraInfo()),
+                                  request.getId());
     }
 
 
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof CopyFileRequest)) {
             throw new IllegalArgumentException("job is not CopyFileRequest" );
         }
         CopyFileRequest request = (CopyFileRequest)job;
-        return getStatement(connection,UPDATE_REQUEST_SQL, request);
+        return getStatement(statements,UPDATE_REQUEST_SQL, request);
     }
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
             "ID ,"+
@@ -176,42 +175,41 @@ public class CopyFileRequestStorage extends DatabaseFileRequestStorage<CopyFileR
                     "?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection,
+    public PreparedStatement getCreateStatement(StatementFactory statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof CopyFileRequest)) {
             throw new IllegalArgumentException("fr is not CopyFileRequest" );
         }
         CopyFileRequest request = (CopyFileRequest)job;
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    request.getId(),
-                                    request.getNextJobId(),
-                                    request.getCreationTime(),
-                                    request.getLifetime(),
-                                    request.getState().getStateId(),
-                                    request.latestHistoryEvent(),
-                                    request.getSchedulerId(),
-                                    request.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    request.getLastStateTransitionTime(),
-                                    request.getRequestId(),
-                                    request.getCredentialId(),
-                                    request.getStatusCodeString(),
-                                    request.getSourceSurl().toString(),
-                                    request.getDestinationSurl().toString(),
-                                    (request.getSourceTurl()!=null?request.getSourceTurl().toString():null),
-                                    (request.getDestinationTurl()!=null?request.getDestinationTurl().toString():null),
-                                    request.getLocalSourcePath(),
-                                    request.getLocalDestinationPath(),
-                                    request.getSize(),
-                                    null, // FromFileId (unused)
-                                    null, // ToFileId (unused)
-                                    request.getRemoteRequestId(),
-                                    request.getRemoteFileId(),
-                                    request.getSpaceReservationId(),
-                                    request.getTransferId(),
-                                    serialiseMap(request.getExtraInfo()));
+        return statements.prepare(INSERT_SQL,
+                                  request.getId(),
+                                  request.getNextJobId(),
+                                  request.getCreationTime(),
+                                  request.getLifetime(),
+                                  request.getState().getStateId(),
+                                  request.latestHistoryEvent(),
+                                  request.getSchedulerId(),
+                                  request.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  request.getLastStateTransitionTime(),
+                                  request.getRequestId(),
+                                  request.getCredentialId(),
+                                  request.getStatusCodeString(),
+                                  request.getSourceSurl().toString(),
+                                  request.getDestinationSurl().toString(),
+                                  (request.getSourceTurl()!=null?request.getSourceTurl().toString():null),
+                                  (request.getDestinationTurl()!=null?request.getDestinationTurl().toString():null),
+                                  request.getLocalSourcePath(),
+                                  request.getLocalDestinationPath(),
+                                  request.getSize(),
+                                  null, // FromFileId (unused)
+                                  null, // ToFileId (unused)
+                                  request.getRemoteRequestId(),
+                                  request.getRemoteFileId(),
+                                  request.getSpaceReservationId(),
+                                  request.getTransferId(),
+                                  serialiseMap(request.getExtraInfo()));
     }
 
 
@@ -69,7 +69,7 @@ public class CopyRequestStorage extends DatabaseContainerRequestStorage<CopyRequ
     "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException {
+    public PreparedStatement getCreateStatement(StatementFactory statements, Job job) throws SQLException {
         CopyRequest cr = (CopyRequest)job;
         String storageTypeValue=null;
         if(cr.getStorageType() != null) {
@@ -83,29 +83,28 @@ public class CopyRequestStorage extends DatabaseContainerRequestStorage<CopyRequ
         if(cr.getTargetAccessLatency() != null) {
             accessLatencyValue = cr.getTargetAccessLatency().getValue();
         }
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    cr.getId(),
-                                    cr.getNextJobId(),
-                                    cr.getCreationTime(),
-                                    cr.getLifetime(),
-                                    cr.getState().getStateId(),//5
-                                    cr.latestHistoryEvent(),
-                                    cr.getSchedulerId(),
-                                    cr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    cr.getLastStateTransitionTime(), // 10
-                                    //Database Request Storage
-                                    cr.getCredentialId(),
-                                    cr.getRetryDeltaTime(),
-                                  cr.isShould_updateretryDeltaTime()?0:1,
-                                    cr.getDescription(),
-                                    cr.getClient_host(),
-                                    cr.getStatusCodeString(),
-                                    cr.getUser().getId(),
-                                    storageTypeValue,
-                                    retentionPolicyValue,
-                                    accessLatencyValue);
+        return statements.prepare(INSERT_SQL,
+                                  cr.getId(),
+                                  cr.getNextJobId(),
+                                  cr.getCreationTime(),
+                                  cr.getLifetime(),
+                                  cr.getState().getStateId(),//5
+                                  cr.latestHistoryEvent(),
+                                  cr.getSchedulerId(),
+                                  cr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  cr.getLastStateTransitionTime(), // 10
+                                  //Database Request Storage
+                                  cr.getCredentialId(),
+                                  cr.getRetryDeltaTime(),
+                                cr.isShould_updateretryDeltaTime()?0:1,
+                                  cr.getDescription(),
+                                  cr.getClient_host(),
+                                  cr.getStatusCodeString(),
+                                  cr.getUser().getId(),
+                                  storageTypeValue,
+                                  retentionPolicyValue,
+                                  accessLatencyValue);
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -122,7 +121,7 @@ public class CopyRequestStorage extends DatabaseContainerRequestStorage<CopyRequ
                 " WHERE ID=?";
 
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
             Job job) throws SQLException {
         CopyRequest cr = (CopyRequest)job;
         String storageTypeValue=null;
@@ -138,29 +137,28 @@ public class CopyRequestStorage extends DatabaseContainerRequestStorage<CopyRequ
             accessLatencyValue = cr.getTargetAccessLatency().getValue();
         }
 
-        return getPreparedStatement(connection,
-                                    UPDATE_REQUEST_SQL,
-                                    cr.getNextJobId(),
-                                    cr.getCreationTime(),
-                                    cr.getLifetime(),
-                                    cr.getState().getStateId(),
-                                    cr.latestHistoryEvent(),//5
-                                    cr.getSchedulerId(),
-                                    cr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    cr.getLastStateTransitionTime(),
-                                    //Database Request Storage
-                                    cr.getCredentialId(), // 10
-                                    cr.getRetryDeltaTime(),
-                                  cr.isShould_updateretryDeltaTime()?0:1,
-                                    cr.getDescription(),
-                                    cr.getClient_host(),
-                                    cr.getStatusCodeString(),
-                                    cr.getUser().getId(),
-                                    storageTypeValue,
-                                    retentionPolicyValue,
-                                    accessLatencyValue,
-                                    cr.getId());
+        return statements.prepare(UPDATE_REQUEST_SQL,
+                                  cr.getNextJobId(),
+                                  cr.getCreationTime(),
+                                  cr.getLifetime(),
+                                  cr.getState().getStateId(),
+                                  cr.latestHistoryEvent(),//5
+                                  cr.getSchedulerId(),
+                                  cr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  cr.getLastStateTransitionTime(),
+                                  //Database Request Storage
+                                  cr.getCredentialId(), // 10
+                                  cr.getRetryDeltaTime(),
+                                cr.isShould_updateretryDeltaTime()?0:1,
+                                  cr.getDescription(),
+                                  cr.getClient_host(),
+                                  cr.getStatusCodeString(),
+                                  cr.getUser().getId(),
+                                  storageTypeValue,
+                                  retentionPolicyValue,
+                                  accessLatencyValue,
+                                  cr.getId());
     }
 
     /** Creates a new instance of GetRequestStorage */
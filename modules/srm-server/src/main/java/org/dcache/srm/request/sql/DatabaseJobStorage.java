@@ -80,9 +80,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -239,8 +244,10 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
                         job.rlock();
                         try {
                             history = getJobHistoriesToSave(job);
-                            updateStatement = getUpdateStatement(con, job);
-                            createStatement = getCreateStatement(con, job);
+                            StatementFactory statements =
+                                    (query, args) -> getPreparedStatement(con, query, args);
+                            updateStatement = getUpdateStatement(statements, job);
+                            createStatement = getCreateStatement(statements, job);
                             batchCreateStatement = getBatchCreateStatement(con, job);
                         } finally {
                             job.runlock();
@@ -266,14 +273,127 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
         markHistoryAsSaved(savedHistory);
     }
 
+    /**
+     * Saves several jobs in a single transaction.
+     * <p>
+     * The update and create statements of all jobs are executed as JDBC
+     * batches, as are the inserts into the history table. Should the batch
+     * fail, e.g. because a single job cannot be saved, every job is saved
+     * in a transaction of its own so that the other jobs are not lost.
+     */
+    @Override
+    public void saveJobs(Collection<J> jobs) throws TransactionException
+    {
+        if (jobs.size() == 1) {
+            saveJob(jobs.iterator().next(), true);
+            return;
+        }
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        Map<Job, List<Job.JobHistory>> savedHistory;
+        try {
+            savedHistory = transactionTemplate.execute(status -> jdbcTemplate.execute(
+                    (Connection con) -> saveJobs(con, jobs)));
+        } catch (TransactionException | DataAccessException e) {
+            LOGGER.warn("Failed to save batch of {} jobs to {}, saving jobs individually: {}",
+                        jobs.size(), getTableName(), e.getMessage());
+            TransactionException failure = null;
+            for (J job : jobs) {
+                try {
+                    saveJob(job, true);
+                } catch (TransactionException ex) {
+                    if (failure == null) {
+                        failure = ex;
+                    } else {
+                        failure.addSuppressed(ex);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return;
+        }
+        savedHistory.values().forEach(this::markHistoryAsSaved);
+    }
+
+    private Map<Job, List<Job.JobHistory>> saveJobs(Connection con, Collection<? extends Job> jobs)
+            throws SQLException
+    {
+        Map<Job, List<Job.JobHistory>> histories = new IdentityHashMap<>();
+        Map<Job, PreparedStatement> updates = new IdentityHashMap<>();
+        Map<Job, Integer> positions = new IdentityHashMap<>();
+        Map<PreparedStatement, int[]> rowCounts;
+
+        try (StatementBatch batch = new StatementBatch(con)) {
+            for (Job job : jobs) {
+                job.rlock();
+                try {
+                    histories.put(job, getJobHistoriesToSave(job));
+                    PreparedStatement statement = getUpdateStatement(batch, job);
+                    updates.put(job, statement);
+                    positions.put(job, batch.size(statement) - 1);
+                } finally {
+                    job.runlock();
+                }
+            }
+            rowCounts = batch.execute();
+        }
+
+        /* Jobs not updated are not in the database yet. */
+        try (StatementBatch batch = new StatementBatch(con)) {
+            for (Job job : jobs) {
+                if (rowCounts.get(updates.get(job))[positions.get(job)] == 0) {
+                    job.rlock();
+                    try {
+                        getCreateStatement(batch, job);
+                        batch.add(getBatchCreateStatement(con, job));
+                    } finally {
+                        job.runlock();
+                    }
+                }
+            }
+            batch.execute();
+        }
+
+        if (histories.values().stream().anyMatch(history -> !history.isEmpty())) {
+            try (PreparedStatement stmt =
+                         con.prepareStatement("INSERT INTO " + getHistoryTableName() + " VALUES (?,?,?,?,?)")) {
+                for (Map.Entry<Job, List<Job.JobHistory>> entry : histories.entrySet()) {
+                    for (Job.JobHistory element : entry.getValue()) {
+                        stmt.setLong(1, element.getId());
+                        stmt.setLong(2, entry.getKey().getId());
+                        stmt.setInt(3, element.getState().getStateId());
+                        stmt.setLong(4, element.getTransitionTime());
+                        stmt.setString(5, element.getDescription());
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+        }
+        return histories;
+    }
+
     protected PreparedStatement getBatchCreateStatement(Connection connection, Job job)
             throws SQLException
     {
         return null;
     }
 
-    public abstract PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException;
-    public abstract PreparedStatement getUpdateStatement(Connection connection, Job job) throws SQLException;
+    /**
+     * Returns the statement inserting the job into the database, prepared
+     * by the given factory.
+     */
+    public abstract PreparedStatement getCreateStatement(StatementFactory statements, Job job) throws SQLException;
+
+    /**
+     * Returns the statement updating the job in the database, prepared by
+     * the given factory.
+     */
+    public abstract PreparedStatement getUpdateStatement(StatementFactory statements, Job job) throws SQLException;
 
     protected Job.JobHistory[] getJobHistory(long jobId,Connection _con) throws SQLException{
         List<Job.JobHistory> l = new ArrayList<>();
@@ -391,4 +511,84 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
         }
         return stmt;
     }
+
+    /**
+     * Prepares the statements used to save a job.
+     */
+    @FunctionalInterface
+    protected interface StatementFactory
+    {
+        PreparedStatement prepare(String query, Object... args) throws SQLException;
+    }
+
+    /**
+     * JDBC batches of a batched save.
+     * <p>
+     * Statements prepared by the batch are shared by all statements with the
+     * same query, with the arguments added to its JDBC batch. Such statements
+     * must neither be executed nor closed by the caller.
+     */
+    private static class StatementBatch implements StatementFactory, AutoCloseable
+    {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private final Map<PreparedStatement, Integer> sizes = new LinkedHashMap<>();
+        private final List<PreparedStatement> dependent = new ArrayList<>();
+
+        StatementBatch(Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        @Override
+        public PreparedStatement prepare(String query, Object... args) throws SQLException
+        {
+            PreparedStatement stmt = statements.get(query);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(query);
+                statements.put(query, stmt);
+            }
+            for (int i = 0; i < args.length; i++) {
+                stmt.setObject(i + 1, args[i]);
+            }
+            stmt.addBatch();
+            sizes.merge(stmt, 1, Integer::sum);
+            return stmt;
+        }
+
+        /**
+         * Adds a statement with its own JDBC batch, to be executed after all
+         * other statements of this batch.
+         */
+        void add(PreparedStatement statement)
+        {
+            if (statement != null) {
+                dependent.add(statement);
+            }
+        }
+
+        int size(PreparedStatement statement)
+        {
+            return sizes.getOrDefault(statement, 0);
+        }
+
+        Map<PreparedStatement, int[]> execute() throws SQLException
+        {
+            Map<PreparedStatement, int[]> rowCounts = new IdentityHashMap<>();
+            for (PreparedStatement statement : sizes.keySet()) {
+                rowCounts.put(statement, statement.executeBatch());
+            }
+            for (PreparedStatement statement : dependent) {
+                statement.executeBatch();
+            }
+            return rowCounts;
+        }
+
+        @Override
+        public void close()
+        {
+            statements.values().forEach(SqlHelper::tryToClose);
+            dependent.forEach(SqlHelper::tryToClose);
+        }
+    }
 }
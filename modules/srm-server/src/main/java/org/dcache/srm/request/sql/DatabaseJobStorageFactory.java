@@ -17,6 +17,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -42,6 +43,7 @@ import org.dcache.srm.scheduler.JobStorageFactory;
 import org.dcache.srm.scheduler.NoopJobStorage;
 import org.dcache.srm.scheduler.SchedulerContainer;
 import org.dcache.srm.scheduler.SharedMemoryCacheJobStorage;
+import org.dcache.srm.scheduler.WriteBehindJobStorage;
 import org.dcache.srm.util.Configuration;
 import org.dcache.srm.util.Configuration.DatabaseParameters;
 
@@ -56,8 +58,15 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
             Collections.unmodifiableMap(jobStorageMap);
     private final Map<Class<? extends Job>, DatabaseParameters> configurations =
             new HashMap<>();
+    private final Map<Class<? extends Job>, WriteBehindJobStorage<?>> writeBehindStorageMap =
+            new LinkedHashMap<>();
     private final ExecutorService executor;
     private final ScheduledExecutorService scheduledExecutor;
+    /** Executor of write-behind storages, or null if saves are not batched. */
+    private final ScheduledExecutorService batchExecutor;
+    private final int batchSize;
+    private final long batchDelay;
+    private final int maxQueued;
 
     private <J extends Job> void add(DatabaseParameters config, Class<J> entityClass,
                      Supplier<JobStorage<J>> storageFactory)
@@ -71,7 +80,15 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
         JobStorage<J> js;
         if (config.isDatabaseEnabled()) {
             js = storageFactory.get();
-            js = new AsynchronousSaveJobStorage<>(js, executor);
+            if (batchExecutor != null) {
+                WriteBehindJobStorage<J> writeBehind =
+                        new WriteBehindJobStorage<>(js, batchExecutor, batchExecutor,
+                                                    batchDelay, batchSize, maxQueued);
+                writeBehindStorageMap.put(entityClass, writeBehind);
+                js = writeBehind;
+            } else {
+                js = new AsynchronousSaveJobStorage<>(js, executor);
+            }
             if (config.getStoreCompletedRequestsOnly()) {
                 js = new ForceOnlyJobStorageDecorator<>(js);
             }
@@ -87,11 +104,25 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
     {
         requireNonNull(srmId);
         requireNonNull(manager);
-        executor = new ThreadPoolExecutor(
-                config.getJdbcExecutionThreadNum(), config.getJdbcExecutionThreadNum(),
-                0L, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(config.getMaxQueuedJdbcTasksNum()),
-                new ThreadFactoryBuilder().setNameFormat("srm-db-save-%d").build());
+        batchSize = config.getJdbcBatchSize();
+        batchDelay = config.getJdbcBatchDelay();
+        maxQueued = config.getMaxQueuedJdbcTasksNum();
+        if (batchSize > 1) {
+            /* Write-behind storages queue jobs themselves and submit at most
+             * two tasks each, hence the executor queue need not be bounded.
+             */
+            batchExecutor = new ScheduledThreadPoolExecutor(
+                    config.getJdbcExecutionThreadNum(),
+                    new ThreadFactoryBuilder().setNameFormat("srm-db-save-%d").build());
+            executor = batchExecutor;
+        } else {
+            batchExecutor = null;
+            executor = new ThreadPoolExecutor(
+                    config.getJdbcExecutionThreadNum(), config.getJdbcExecutionThreadNum(),
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(config.getMaxQueuedJdbcTasksNum()),
+                    new ThreadFactoryBuilder().setNameFormat("srm-db-save-%d").build());
+        }
         scheduledExecutor =
                 Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("srm-db-gc-%d").build());
         try {
@@ -159,6 +190,9 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
 
     public void shutdown()
     {
+        for (WriteBehindJobStorage<?> storage : writeBehindStorageMap.values()) {
+            storage.flush();
+        }
         scheduledExecutor.shutdown();
         executor.shutdown();
         try {
@@ -170,6 +204,22 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
         }
     }
 
+    /**
+     * Returns statistics about writing requests to the database.
+     */
+    public CharSequence getInfo()
+    {
+        StringBuilder sb = new StringBuilder();
+        if (writeBehindStorageMap.isEmpty()) {
+            sb.append("Requests are written without batching.\n");
+        }
+        for (Map.Entry<Class<? extends Job>, WriteBehindJobStorage<?>> entry : writeBehindStorageMap.entrySet()) {
+            sb.append(entry.getKey().getSimpleName()).append(":\n");
+            entry.getValue().getInfo(sb);
+        }
+        return sb;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public <J extends Job> JobStorage<J> getJobStorage(J job) {
@@ -36,28 +36,27 @@ public class GetFileRequestStorage extends DatabaseFileRequestStorage<GetFileReq
         "NUMOFRETR=?," +
         "LASTSTATETRANSITIONTIME=? ";
 
-    private PreparedStatement getStatement(Connection connection,
+    private PreparedStatement getStatement(StatementFactory statements,
                                           String query,
                                           Job job) throws SQLException {
         GetFileRequest request = (GetFileRequest)job;
-        return getPreparedStatement(connection,
-                                    query,
-                                    request.getNextJobId(),
-                                    request.getCreationTime(),
-                                    request.getLifetime(),
-                                    request.getState().getStateId(),
-                                    request.latestHistoryEvent(),
-                                    request.getSchedulerId(),
-                                    request.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    request.getLastStateTransitionTime(),
-                                    request.getRequestId(),
-                                    request.getStatusCodeString(),
-                                    request.getSurlString(),
-                                    request.getTurlString(),
-                                    request.getFileId(),
-                                    request.getPinId(),
-                                    request.getId());
+        return statements.prepare(query,
+                                  request.getNextJobId(),
+                                  request.getCreationTime(),
+                                  request.getLifetime(),
+                                  request.getState().getStateId(),
+                                  request.latestHistoryEvent(),
+                                  request.getSchedulerId(),
+                                  request.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  request.getLastStateTransitionTime(),
+                                  request.getRequestId(),
+                                  request.getStatusCodeString(),
+                                  request.getSurlString(),
+                                  request.getTurlString(),
+                                  request.getFileId(),
+                                  request.getPinId(),
+                                  request.getId());
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -70,14 +69,14 @@ public class GetFileRequestStorage extends DatabaseFileRequestStorage<GetFileReq
             "PINID=? "+
             "WHERE ID=? ";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof GetFileRequest)) {
             throw new IllegalArgumentException("fr is not GetFileRequest" );
         }
         GetFileRequest request = (GetFileRequest)job;
-        return getStatement(connection,UPDATE_REQUEST_SQL, request);
+        return getStatement(statements,UPDATE_REQUEST_SQL, request);
     }
 
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
@@ -101,31 +100,30 @@ public class GetFileRequestStorage extends DatabaseFileRequestStorage<GetFileReq
             "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection,
+    public PreparedStatement getCreateStatement(StatementFactory statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof GetFileRequest)) {
             throw new IllegalArgumentException("job is not GetFileRequest" );
         }
         GetFileRequest request = (GetFileRequest)job;
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    request.getId(),
-                                    request.getNextJobId(),
-                                    request.getCreationTime(),
-                                    request.getLifetime(),
-                                    request.getState().getStateId(),
-                                    request.latestHistoryEvent(),
-                                    request.getSchedulerId(),
-                                    request.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    request.getLastStateTransitionTime(),
-                                    request.getRequestId(),
-                                    request.getStatusCodeString(),
-                                    request.getSurlString(),
-                                    request.getTurlString(),
-                                    request.getFileId(),
-                                    request.getPinId());
+        return statements.prepare(INSERT_SQL,
+                                  request.getId(),
+                                  request.getNextJobId(),
+                                  request.getCreationTime(),
+                                  request.getLifetime(),
+                                  request.getState().getStateId(),
+                                  request.latestHistoryEvent(),
+                                  request.getSchedulerId(),
+                                  request.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  request.getLastStateTransitionTime(),
+                                  request.getRequestId(),
+                                  request.getStatusCodeString(),
+                                  request.getSurlString(),
+                                  request.getTurlString(),
+                                  request.getFileId(),
+                                  request.getPinId());
     }
 
     /** Creates a new instance of GetFileRequestStorage */
@@ -69,27 +69,26 @@ public class GetRequestStorage extends DatabaseContainerRequestStorage<GetReques
         "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException {
+    public PreparedStatement getCreateStatement(StatementFactory statements, Job job) throws SQLException {
         GetRequest gr = (GetRequest)job;
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    gr.getId(),
-                                    gr.getNextJobId(),
-                                    gr.getCreationTime(),
-                                    gr.getLifetime(),
-                                    gr.getState().getStateId(),//5
-                                    gr.latestHistoryEvent(),
-                                    gr.getSchedulerId(),
-                                    gr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    gr.getLastStateTransitionTime(), // 10
-                                    //Database Request Storage
-                                    gr.getRetryDeltaTime(),
-                                  gr.isShould_updateretryDeltaTime()?0:1,
-                                    gr.getDescription(),
-                                    gr.getClient_host(),
-                                    gr.getStatusCodeString(),
-                                    gr.getUser().getId());
+        return statements.prepare(INSERT_SQL,
+                                  gr.getId(),
+                                  gr.getNextJobId(),
+                                  gr.getCreationTime(),
+                                  gr.getLifetime(),
+                                  gr.getState().getStateId(),//5
+                                  gr.latestHistoryEvent(),
+                                  gr.getSchedulerId(),
+                                  gr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  gr.getLastStateTransitionTime(), // 10
+                                  //Database Request Storage
+                                  gr.getRetryDeltaTime(),
+                                gr.isShould_updateretryDeltaTime()?0:1,
+                                  gr.getDescription(),
+                                  gr.getClient_host(),
+                                  gr.getStatusCodeString(),
+                                  gr.getUser().getId());
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -101,28 +100,27 @@ public class GetRequestStorage extends DatabaseContainerRequestStorage<GetReques
                 " USERID=?" +
                 " WHERE ID=?";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
             Job job) throws SQLException {
         GetRequest gr = (GetRequest)job;
-        return getPreparedStatement(connection,
-                                    UPDATE_REQUEST_SQL,
-                                    gr.getNextJobId(),
-                                    gr.getCreationTime(),
-                                    gr.getLifetime(),
-                                    gr.getState().getStateId(),
-                                    gr.latestHistoryEvent(),//5
-                                    gr.getSchedulerId(),
-                                    gr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    gr.getLastStateTransitionTime(),
-                                    //Database Request Storage
-                                    gr.getRetryDeltaTime(), // 10
-                                  gr.isShould_updateretryDeltaTime()?0:1,
-                                    gr.getDescription(),
-                                    gr.getClient_host(),
-                                    gr.getStatusCodeString(),
-                                    gr.getUser().getId(),
-                                    gr.getId());
+        return statements.prepare(UPDATE_REQUEST_SQL,
+                                  gr.getNextJobId(),
+                                  gr.getCreationTime(),
+                                  gr.getLifetime(),
+                                  gr.getState().getStateId(),
+                                  gr.latestHistoryEvent(),//5
+                                  gr.getSchedulerId(),
+                                  gr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  gr.getLastStateTransitionTime(),
+                                  //Database Request Storage
+                                  gr.getRetryDeltaTime(), // 10
+                                gr.isShould_updateretryDeltaTime()?0:1,
+                                  gr.getDescription(),
+                                  gr.getClient_host(),
+                                  gr.getStatusCodeString(),
+                                  gr.getUser().getId(),
+                                  gr.getId());
     }
 
 
@@ -71,25 +71,24 @@ public class LsFileRequestStorage extends DatabaseFileRequestStorage<LsFileReque
         }
 
 
-        private PreparedStatement getStatement(Connection connection,
+        private PreparedStatement getStatement(StatementFactory statements,
                                               String query,
                                               Job fr) throws SQLException {
             LsFileRequest gfr = (LsFileRequest)fr;
-            return getPreparedStatement(connection,
-                                    query,
-                                    gfr.getNextJobId(),
-                                    gfr.getCreationTime(),
-                                    gfr.getLifetime(),
-                                    gfr.getState().getStateId(),
-                                    gfr.latestHistoryEvent(),
-                                    gfr.getSchedulerId(),
-                                    gfr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    gfr.getLastStateTransitionTime(),
-                                    gfr.getRequestId(),
-                                    gfr.getStatusCodeString(),
-                                    gfr.getSurlString(),
-                                    gfr.getId());
+            return statements.prepare(query,
+                                  gfr.getNextJobId(),
+                                  gfr.getCreationTime(),
+                                  gfr.getLifetime(),
+                                  gfr.getState().getStateId(),
+                                  gfr.latestHistoryEvent(),
+                                  gfr.getSchedulerId(),
+                                  gfr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  gfr.getLastStateTransitionTime(),
+                                  gfr.getRequestId(),
+                                  gfr.getStatusCodeString(),
+                                  gfr.getSurlString(),
+                                  gfr.getId());
         }
 
         private static final String UPDATE_REQUEST_SQL =
@@ -98,13 +97,13 @@ public class LsFileRequestStorage extends DatabaseFileRequestStorage<LsFileReque
                 ", STATUSCODE=?" +
                 ", SURL=? WHERE ID=?";
         @Override
-        public PreparedStatement getUpdateStatement(Connection connection,
+        public PreparedStatement getUpdateStatement(StatementFactory statements,
                                                     Job fr)
                 throws SQLException {
                 if(fr == null || !(fr instanceof LsFileRequest)) {
                         throw new IllegalArgumentException("fr is not LsFileRequest" );
                 }
-                return getStatement(connection,UPDATE_REQUEST_SQL, fr);
+                return getStatement(statements,UPDATE_REQUEST_SQL, fr);
         }
 
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
@@ -125,27 +124,26 @@ public class LsFileRequestStorage extends DatabaseFileRequestStorage<LsFileReque
             "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
         @Override
-        public PreparedStatement getCreateStatement(Connection connection,
+        public PreparedStatement getCreateStatement(StatementFactory statements,
                                                 Job fr)
                 throws SQLException {
             if(fr == null || !(fr instanceof LsFileRequest)) {
                 throw new IllegalArgumentException("fr is not LsFileRequest" );
             }
             LsFileRequest gfr = (LsFileRequest)fr;
-            return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    gfr.getId(),
-                                    gfr.getNextJobId(),
-                                    gfr.getCreationTime(),
-                                    gfr.getLifetime(),
-                                    gfr.getState().getStateId(),
-                                    gfr.latestHistoryEvent(),
-                                    gfr.getSchedulerId(),
-                                    gfr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    gfr.getLastStateTransitionTime(),
-                                    gfr.getRequestId(),
-                                    gfr.getStatusCodeString(),
-                                    gfr.getSurlString());
+            return statements.prepare(INSERT_SQL,
+                                  gfr.getId(),
+                                  gfr.getNextJobId(),
+                                  gfr.getCreationTime(),
+                                  gfr.getLifetime(),
+                                  gfr.getState().getStateId(),
+                                  gfr.latestHistoryEvent(),
+                                  gfr.getSchedulerId(),
+                                  gfr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  gfr.getLastStateTransitionTime(),
+                                  gfr.getRequestId(),
+                                  gfr.getStatusCodeString(),
+                                  gfr.getSurlString());
         }
 }
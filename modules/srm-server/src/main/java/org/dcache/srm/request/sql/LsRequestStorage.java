@@ -59,33 +59,32 @@ public class LsRequestStorage extends DatabaseContainerRequestStorage<LsRequest,
         "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException {
+    public PreparedStatement getCreateStatement(StatementFactory statements, Job job) throws SQLException {
         LsRequest lr = (LsRequest)job;
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    lr.getId(),
-                                    lr.getNextJobId(),
-                                    lr.getCreationTime(),
-                                    lr.getLifetime(),
-                                    lr.getState().getStateId(),//5
-                                    lr.latestHistoryEvent(),
-                                    lr.getSchedulerId(),
-                                    lr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    lr.getLastStateTransitionTime(), // 10
-                                    //Database Request Storage
-                                    lr.getRetryDeltaTime(),
-                                    lr.isShould_updateretryDeltaTime()?0:1,
-                                    lr.getDescription(),
-                                    lr.getClient_host(),
-                                    lr.getStatusCodeString(),
-                                    lr.getUser().getId(),
-                                    lr.getExplanation(),
-                                  lr.getLongFormat() ?1:0,
-                                    lr.getNumOfLevels(),
-                                    lr.getCount(),
-                                    lr.getOffset()
-                                  );
+        return statements.prepare(INSERT_SQL,
+                                  lr.getId(),
+                                  lr.getNextJobId(),
+                                  lr.getCreationTime(),
+                                  lr.getLifetime(),
+                                  lr.getState().getStateId(),//5
+                                  lr.latestHistoryEvent(),
+                                  lr.getSchedulerId(),
+                                  lr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  lr.getLastStateTransitionTime(), // 10
+                                  //Database Request Storage
+                                  lr.getRetryDeltaTime(),
+                                  lr.isShould_updateretryDeltaTime()?0:1,
+                                  lr.getDescription(),
+                                  lr.getClient_host(),
+                                  lr.getStatusCodeString(),
+                                  lr.getUser().getId(),
+                                  lr.getExplanation(),
+                                lr.getLongFormat() ?1:0,
+                                  lr.getNumOfLevels(),
+                                  lr.getCount(),
+                                  lr.getOffset()
+                                );
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -103,33 +102,32 @@ public class LsRequestStorage extends DatabaseContainerRequestStorage<LsRequest,
                 " LSOFFSET=? "+
                 " WHERE ID=?";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
             Job job) throws SQLException {
         LsRequest lr = (LsRequest)job;
-        return getPreparedStatement(connection,
-                                    UPDATE_REQUEST_SQL,
-                                    lr.getNextJobId(),
-                                    lr.getCreationTime(),
-                                    lr.getLifetime(),
-                                    lr.getState().getStateId(),
-                                    lr.latestHistoryEvent(),//5
-                                    lr.getSchedulerId(),
-                                    lr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    lr.getLastStateTransitionTime(),
-                                    //Database Request Storage
-                                    lr.getRetryDeltaTime(), // 10
-                                    lr.isShould_updateretryDeltaTime()?0:1,
-                                    lr.getDescription(),
-                                    lr.getClient_host(),
-                                    lr.getStatusCodeString(),
-                                    lr.getUser().getId(),
-                                    lr.getExplanation(),
-                                  lr.getLongFormat() ?1:0,
-                                    lr.getNumOfLevels(),
-                                    lr.getCount(),
-                                    lr.getOffset(),
-                                    lr.getId());
+        return statements.prepare(UPDATE_REQUEST_SQL,
+                                  lr.getNextJobId(),
+                                  lr.getCreationTime(),
+                                  lr.getLifetime(),
+                                  lr.getState().getStateId(),
+                                  lr.latestHistoryEvent(),//5
+                                  lr.getSchedulerId(),
+                                  lr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  lr.getLastStateTransitionTime(),
+                                  //Database Request Storage
+                                  lr.getRetryDeltaTime(), // 10
+                                  lr.isShould_updateretryDeltaTime()?0:1,
+                                  lr.getDescription(),
+                                  lr.getClient_host(),
+                                  lr.getStatusCodeString(),
+                                  lr.getUser().getId(),
+                                  lr.getExplanation(),
+                                lr.getLongFormat() ?1:0,
+                                  lr.getNumOfLevels(),
+                                  lr.getCount(),
+                                  lr.getOffset(),
+                                  lr.getId());
     }
 
         public LsRequestStorage(@Nonnull String srmId,
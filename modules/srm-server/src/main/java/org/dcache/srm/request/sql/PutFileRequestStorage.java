@@ -39,34 +39,33 @@ public class PutFileRequestStorage extends DatabaseFileRequestStorage<PutFileReq
         "LASTSTATETRANSITIONTIME=? ";
 
 
-    private PreparedStatement getStatement(Connection connection,
+    private PreparedStatement getStatement(StatementFactory statements,
                                           String query,
                                           Job job) throws SQLException {
         PutFileRequest request = (PutFileRequest)job;
         TRetentionPolicy retentionPolicy = request.getRetentionPolicy();
         TAccessLatency  accessLatency = request.getAccessLatency();
-        return getPreparedStatement(connection,
-                                    query,
-                                    request.getNextJobId(),
-                                    request.getCreationTime(),
-                                    request.getLifetime(),
-                                    request.getState().getStateId(),
-                                    request.latestHistoryEvent(),
-                                    request.getSchedulerId(),
-                                    request.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    request.getLastStateTransitionTime(),
-                                    request.getRequestId(),
-                                    request.getStatusCodeString(),
-                                    request.getSurlString(),
-                                    request.getTurlString(),
-                                    request.getFileId(),
-                                    null, // parentFileId (unused)
-                                    request.getSpaceReservationId(),
-                                    request.getSize(),
-                                    (retentionPolicy!=null? retentionPolicy.getValue():null),
-                                    (accessLatency!=null? accessLatency.getValue():null),
-                                    request.getId());
+        return statements.prepare(query,
+                                  request.getNextJobId(),
+                                  request.getCreationTime(),
+                                  request.getLifetime(),
+                                  request.getState().getStateId(),
+                                  request.latestHistoryEvent(),
+                                  request.getSchedulerId(),
+                                  request.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  request.getLastStateTransitionTime(),
+                                  request.getRequestId(),
+                                  request.getStatusCodeString(),
+                                  request.getSurlString(),
+                                  request.getTurlString(),
+                                  request.getFileId(),
+                                  null, // parentFileId (unused)
+                                  request.getSpaceReservationId(),
+                                  request.getSize(),
+                                  (retentionPolicy!=null? retentionPolicy.getValue():null),
+                                  (accessLatency!=null? accessLatency.getValue():null),
+                                  request.getId());
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -82,14 +81,14 @@ public class PutFileRequestStorage extends DatabaseFileRequestStorage<PutFileReq
             "ACCESSLATENCY=? "+
             "WHERE ID=? ";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof PutFileRequest)) {
             throw new IllegalArgumentException("job is not PutFileRequest" );
         }
         PutFileRequest request = (PutFileRequest)job;
-        return getStatement(connection,UPDATE_REQUEST_SQL, request);
+        return getStatement(statements,UPDATE_REQUEST_SQL, request);
     }
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
             "ID ,"+
@@ -116,7 +115,7 @@ public class PutFileRequestStorage extends DatabaseFileRequestStorage<PutFileReq
             "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection,
+    public PreparedStatement getCreateStatement(StatementFactory statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof PutFileRequest)) {
@@ -125,28 +124,27 @@ public class PutFileRequestStorage extends DatabaseFileRequestStorage<PutFileReq
         PutFileRequest request = (PutFileRequest)job;
         TRetentionPolicy retentionPolicy = request.getRetentionPolicy();
         TAccessLatency  accessLatency = request.getAccessLatency();
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    request.getId(),
-                                    request.getNextJobId(),
-                                    request.getCreationTime(),
-                                    request.getLifetime(),
-                                    request.getState().getStateId(),
-                                    request.latestHistoryEvent(),
-                                    request.getSchedulerId(),
-                                    request.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    request.getLastStateTransitionTime(),
-                                    request.getRequestId(),
-                                    request.getStatusCodeString(),
-                                    request.getSurlString(),
-                                    request.getTurlString(),
-                                    request.getFileId(),
-                                    null, // parentFileId (unused)
-                                    request.getSpaceReservationId(),
-                                    request.getSize(),
-                                    (retentionPolicy!=null? retentionPolicy.getValue():null),
-                                    (accessLatency!=null? accessLatency.getValue():null));
+        return statements.prepare(INSERT_SQL,
+                                  request.getId(),
+                                  request.getNextJobId(),
+                                  request.getCreationTime(),
+                                  request.getLifetime(),
+                                  request.getState().getStateId(),
+                                  request.latestHistoryEvent(),
+                                  request.getSchedulerId(),
+                                  request.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  request.getLastStateTransitionTime(),
+                                  request.getRequestId(),
+                                  request.getStatusCodeString(),
+                                  request.getSurlString(),
+                                  request.getTurlString(),
+                                  request.getFileId(),
+                                  null, // parentFileId (unused)
+                                  request.getSpaceReservationId(),
+                                  request.getSize(),
+                                  (retentionPolicy!=null? retentionPolicy.getValue():null),
+                                  (accessLatency!=null? accessLatency.getValue():null));
     }
 
    /** Creates a new instance of PutFileRequestStorage */
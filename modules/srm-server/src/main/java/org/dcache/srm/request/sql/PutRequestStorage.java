@@ -70,27 +70,26 @@ public class PutRequestStorage extends DatabaseContainerRequestStorage<PutReques
         "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException {
+    public PreparedStatement getCreateStatement(StatementFactory statements, Job job) throws SQLException {
         PutRequest pr = (PutRequest)job;
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    pr.getId(),
-                                    pr.getNextJobId(),
-                                    pr.getCreationTime(),
-                                    pr.getLifetime(),
-                                    pr.getState().getStateId(),//5
-                                    pr.latestHistoryEvent(),
-                                    pr.getSchedulerId(),
-                                    pr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    pr.getLastStateTransitionTime(), // 10
-                                    //Database Request Storage
-                                    pr.getRetryDeltaTime(),
-                                  pr.isShould_updateretryDeltaTime()?0:1,
-                                    pr.getDescription(),
-                                    pr.getClient_host(),
-                                    pr.getStatusCodeString(),
-                                    pr.getUser().getId());
+        return statements.prepare(INSERT_SQL,
+                                  pr.getId(),
+                                  pr.getNextJobId(),
+                                  pr.getCreationTime(),
+                                  pr.getLifetime(),
+                                  pr.getState().getStateId(),//5
+                                  pr.latestHistoryEvent(),
+                                  pr.getSchedulerId(),
+                                  pr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  pr.getLastStateTransitionTime(), // 10
+                                  //Database Request Storage
+                                  pr.getRetryDeltaTime(),
+                                pr.isShould_updateretryDeltaTime()?0:1,
+                                  pr.getDescription(),
+                                  pr.getClient_host(),
+                                  pr.getStatusCodeString(),
+                                  pr.getUser().getId());
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -102,11 +101,10 @@ public class PutRequestStorage extends DatabaseContainerRequestStorage<PutReques
                 " USERID=?" +
                 " WHERE ID=?";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
             Job job) throws SQLException {
         PutRequest pr = (PutRequest)job;
-        return getPreparedStatement(
-                                  connection,
+        return statements.prepare(
                                   UPDATE_REQUEST_SQL,
                                   pr.getNextJobId(),
                                   pr.getCreationTime(),
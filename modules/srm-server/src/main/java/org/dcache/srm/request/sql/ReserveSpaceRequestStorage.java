@@ -86,7 +86,7 @@ public class ReserveSpaceRequestStorage extends DatabaseRequestStorage<ReserveSp
 
 
     @Override
-    public PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException {
+    public PreparedStatement getCreateStatement(StatementFactory statements, Job job) throws SQLException {
         ReserveSpaceRequest rsr = (ReserveSpaceRequest)job;
         String retentionPolicyValue=null;
         if(rsr.getRetentionPolicy() != null) {
@@ -96,31 +96,30 @@ public class ReserveSpaceRequestStorage extends DatabaseRequestStorage<ReserveSp
         if(rsr.getAccessLatency() != null) {
             accessLatencyValue = rsr.getAccessLatency().getValue();
         }
-        return getPreparedStatement(connection,
-                                    INSERT_SQL,
-                                    rsr.getId(),
-                                    rsr.getNextJobId(),
-                                    rsr.getCreationTime(),
-                                    rsr.getLifetime(),
-                                    rsr.getState().getStateId(),//5
-                                    rsr.latestHistoryEvent(),
-                                    rsr.getSchedulerId(),
-                                    rsr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    rsr.getLastStateTransitionTime(), // 10
-                                    //Database Request Storage
-                                    rsr.getRetryDeltaTime(),
-                                    rsr.isShould_updateretryDeltaTime()?0:1,
-                                    rsr.getDescription(),
-                                    rsr.getClient_host(),
-                                    rsr.getStatusCodeString(),
-                                    rsr.getUser().getId(),
-                                    rsr.getSizeInBytes(),
-                                    rsr.getSpaceReservationLifetime(),
-                                    rsr.getSpaceToken(),
-                                    retentionPolicyValue,
-                                    accessLatencyValue,
-                                    encodeExtraInfo(rsr.getExtraInfo()));
+        return statements.prepare(INSERT_SQL,
+                                  rsr.getId(),
+                                  rsr.getNextJobId(),
+                                  rsr.getCreationTime(),
+                                  rsr.getLifetime(),
+                                  rsr.getState().getStateId(),//5
+                                  rsr.latestHistoryEvent(),
+                                  rsr.getSchedulerId(),
+                                  rsr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  rsr.getLastStateTransitionTime(), // 10
+                                  //Database Request Storage
+                                  rsr.getRetryDeltaTime(),
+                                  rsr.isShould_updateretryDeltaTime()?0:1,
+                                  rsr.getDescription(),
+                                  rsr.getClient_host(),
+                                  rsr.getStatusCodeString(),
+                                  rsr.getUser().getId(),
+                                  rsr.getSizeInBytes(),
+                                  rsr.getSpaceReservationLifetime(),
+                                  rsr.getSpaceToken(),
+                                  retentionPolicyValue,
+                                  accessLatencyValue,
+                                  encodeExtraInfo(rsr.getExtraInfo()));
     }
 
     private static final String UPDATE_REQUEST_SQL =
@@ -139,7 +138,7 @@ public class ReserveSpaceRequestStorage extends DatabaseRequestStorage<ReserveSp
                 " EXTRAINFO=?" +
                 " WHERE ID=?";
     @Override
-    public PreparedStatement getUpdateStatement(Connection connection,
+    public PreparedStatement getUpdateStatement(StatementFactory statements,
             Job job) throws SQLException {
         ReserveSpaceRequest rsr = (ReserveSpaceRequest)job;
         String retentionPolicyValue=null;
@@ -150,31 +149,30 @@ public class ReserveSpaceRequestStorage extends DatabaseRequestStorage<ReserveSp
         if(rsr.getAccessLatency() != null) {
             accessLatencyValue = rsr.getAccessLatency().getValue();
         }
-        return getPreparedStatement(connection,
-                                    UPDATE_REQUEST_SQL,
-                                    rsr.getNextJobId(),
-                                    rsr.getCreationTime(),
-                                    rsr.getLifetime(),
-                                    rsr.getState().getStateId(),
-                                    rsr.latestHistoryEvent(),//5
-                                    rsr.getSchedulerId(),
-                                    rsr.getSchedulerTimeStamp(),
-                                    0, // num of retries
-                                    rsr.getLastStateTransitionTime(),
-                                    //Database Request Storage
-                                    rsr.getRetryDeltaTime(), // 10
-                                    rsr.isShould_updateretryDeltaTime()?0:1,
-                                    rsr.getDescription(),
-                                    rsr.getClient_host(),
-                                    rsr.getStatusCodeString(),
-                                    rsr.getUser().getId(),
-                                    rsr.getSizeInBytes(),
-                                    rsr.getSpaceReservationLifetime(),
-                                    rsr.getSpaceToken(),
-                                    retentionPolicyValue,
-                                    accessLatencyValue,
-                                    encodeExtraInfo(rsr.getExtraInfo()),
-                                    rsr.getId());
+        return statements.prepare(UPDATE_REQUEST_SQL,
+                                  rsr.getNextJobId(),
+                                  rsr.getCreationTime(),
+                                  rsr.getLifetime(),
+                                  rsr.getState().getStateId(),
+                                  rsr.latestHistoryEvent(),//5
+                                  rsr.getSchedulerId(),
+                                  rsr.getSchedulerTimeStamp(),
+                                  0, // num of retries
+                                  rsr.getLastStateTransitionTime(),
+                                  //Database Request Storage
+                                  rsr.getRetryDeltaTime(), // 10
+                                  rsr.isShould_updateretryDeltaTime()?0:1,
+                                  rsr.getDescription(),
+                                  rsr.getClient_host(),
+                                  rsr.getStatusCodeString(),
+                                  rsr.getUser().getId(),
+                                  rsr.getSizeInBytes(),
+                                  rsr.getSpaceReservationLifetime(),
+                                  rsr.getSpaceToken(),
+                                  retentionPolicyValue,
+                                  accessLatencyValue,
+                                  encodeExtraInfo(rsr.getExtraInfo()),
+                                  rsr.getId());
     }
 
     private String encodeExtraInfo(Map<String,String> extraInfo)
@@ -77,6 +77,7 @@ import org.springframework.transaction.TransactionException;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Set;
 
 import org.dcache.srm.request.Job;
@@ -100,6 +101,20 @@ public interface JobStorage<J extends Job> {
     void saveJob(J job, boolean force)
             throws TransactionException;
 
+    /**
+     * Saves several jobs. Saves are treated as forced. Implementations
+     * may write all jobs in a single transaction.
+     *
+     * @param jobs Jobs to save
+     * @throws TransactionException if there was a problem
+     */
+    default void saveJobs(Collection<J> jobs) throws TransactionException
+    {
+        for (J job : jobs) {
+            saveJob(job, true);
+        }
+    }
+
     Set<Long> getLatestCompletedJobIds(int maxNum) throws DataAccessException;
     Set<Long> getLatestFailedJobIds(int maxNum) throws DataAccessException;
     Set<Long> getLatestCanceledJobIds(int maxNum) throws DataAccessException;
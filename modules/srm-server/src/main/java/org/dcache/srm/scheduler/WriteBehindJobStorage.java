@@ -0,0 +1,356 @@
+package org.dcache.srm.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dcache.srm.request.Job;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * JobStorage decorator that collects saves and writes them in batches.
+ * <p>
+ * Saved jobs are collected for a short delay, after which all collected jobs
+ * are written to the decorated storage with a single call to
+ * {@link JobStorage#saveJobs}. Repeated saves of a job while it waits are
+ * merged. A forced save, or reaching the maximum batch size, causes the
+ * batch to be written without waiting for the delay to pass.
+ * <p>
+ * Batches are written one at a time, so saves of a job reach the decorated
+ * storage in order. Once too many jobs are waiting, saves that are not forced
+ * are dropped, while a forced save writes its job in the calling thread, thus
+ * creating back pressure. Only that job is written, as the caller holds its
+ * lock and writing other jobs requires their locks too.
+ */
+public class WriteBehindJobStorage<J extends Job> implements JobStorage<J>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindJobStorage.class);
+
+    private final JobStorage<J> storage;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final long delay;
+    private final int maxBatchSize;
+    private final int maxQueued;
+
+    /** Serializes writing batches. */
+    private final Object writeLock = new Object();
+
+    private class Entry
+    {
+        final J job;
+        final long queuedAt;
+        boolean isForced;
+
+        Entry(J job, boolean isForced, long queuedAt)
+        {
+            this.job = job;
+            this.isForced = isForced;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /** Jobs waiting to be written, in order of their first save. */
+    @GuardedBy("this")
+    private final Map<Long, Entry> queue = new LinkedHashMap<>();
+
+    @GuardedBy("this")
+    private int forcedCount;
+
+    /** Ids of the jobs in the batch being written. */
+    @GuardedBy("this")
+    private final Set<Long> writing = new HashSet<>();
+
+    /** Whether writing a batch was scheduled. */
+    @GuardedBy("this")
+    private boolean isScheduled;
+
+    /** Whether writing a batch was scheduled without delay. */
+    @GuardedBy("this")
+    private boolean isUrgent;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder savedJobs = new LongAdder();
+    private final LongAdder failedJobs = new LongAdder();
+    private final LongAdder droppedJobs = new LongAdder();
+    private final LongAccumulator largestBatch = new LongAccumulator(Long::max, 0);
+    private final LongAdder totalLag = new LongAdder();
+    private final LongAccumulator maxLag = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param storage the storage to which batches are written
+     * @param executor executor writing batches
+     * @param timer executor used to delay writing batches
+     * @param delay time in milliseconds saves are collected before being written
+     * @param maxBatchSize maximum number of jobs written in a single batch
+     * @param maxQueued maximum number of jobs waiting to be written
+     */
+    public WriteBehindJobStorage(JobStorage<J> storage, Executor executor, ScheduledExecutorService timer,
+                                 long delay, int maxBatchSize, int maxQueued)
+    {
+        checkArgument(maxBatchSize > 0, "Batch size must be positive");
+        checkArgument(maxQueued > 0, "Queue size must be positive");
+        this.storage = storage;
+        this.executor = executor;
+        this.timer = timer;
+        this.delay = delay;
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueued = maxQueued;
+    }
+
+    @Override
+    public void init() throws DataAccessException
+    {
+        storage.init();
+    }
+
+    @Override
+    public J getJob(long jobId) throws DataAccessException
+    {
+        return storage.getJob(jobId);
+    }
+
+    @Override
+    public J getJob(long jobId, Connection connection) throws SQLException
+    {
+        return storage.getJob(jobId, connection);
+    }
+
+    @Override
+    public void saveJob(J job, boolean force)
+    {
+        synchronized (this) {
+            Entry entry = queue.get(job.getId());
+            if (entry != null) {
+                if (!force || entry.isForced) {
+                    return;
+                }
+                entry.isForced = true;
+                forcedCount++;
+                if (schedule(true)) {
+                    return;
+                }
+            } else if (queue.size() < maxQueued) {
+                enqueue(job, force);
+                if (schedule(force || queue.size() >= maxBatchSize) || !force) {
+                    return;
+                }
+            } else if (!force) {
+                droppedJobs.increment();
+                LOGGER.warn("Persistence of request {} skipped, queue is too long.", job.getId());
+                return;
+            } else {
+                enqueue(job, true);
+            }
+
+            // The batch being written must reach the storage first.
+            if (writing.contains(job.getId())) {
+                return;
+            }
+            queue.remove(job.getId());
+            forcedCount--;
+        }
+
+        // Write forced save synchronously, thus creating back pressure.
+        write(singletonList(new Entry(job, true, System.currentTimeMillis())));
+    }
+
+    @GuardedBy("this")
+    private void enqueue(J job, boolean force)
+    {
+        queue.put(job.getId(), new Entry(job, force, System.currentTimeMillis()));
+        if (force) {
+            forcedCount++;
+        }
+    }
+
+    /**
+     * Schedules writing the next batch, either immediately or after the delay.
+     *
+     * @return false if the executor rejected the task, true otherwise
+     */
+    @GuardedBy("this")
+    private boolean schedule(boolean urgent)
+    {
+        try {
+            if (urgent) {
+                if (!isUrgent) {
+                    isUrgent = true;
+                    isScheduled = true;
+                    executor.execute(this::run);
+                }
+            } else if (!isScheduled) {
+                isScheduled = true;
+                timer.schedule(this::submit, delay, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        } catch (RejectedExecutionException e) {
+            isScheduled = false;
+            isUrgent = false;
+            LOGGER.warn("Failed to schedule persistence of {} requests: {}", queue.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void submit()
+    {
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            run();
+        }
+    }
+
+    private void run()
+    {
+        synchronized (this) {
+            isScheduled = false;
+            isUrgent = false;
+        }
+        write();
+        synchronized (this) {
+            if (!queue.isEmpty()) {
+                schedule(forcedCount > 0 || queue.size() >= maxBatchSize);
+            }
+        }
+    }
+
+    /**
+     * Writes the next batch of waiting jobs.
+     */
+    private void write()
+    {
+        synchronized (writeLock) {
+            List<Entry> batch = new ArrayList<>();
+            synchronized (this) {
+                Iterator<Entry> iterator = queue.values().iterator();
+                while (batch.size() < maxBatchSize && iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    iterator.remove();
+                    if (entry.isForced) {
+                        forcedCount--;
+                    }
+                    batch.add(entry);
+                    writing.add(entry.job.getId());
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                write(batch);
+            } finally {
+                synchronized (this) {
+                    writing.clear();
+                }
+            }
+        }
+    }
+
+    private void write(List<Entry> batch)
+    {
+        try {
+            storage.saveJobs(batch.stream().map(entry -> entry.job).collect(toList()));
+            long now = System.currentTimeMillis();
+            batches.increment();
+            savedJobs.add(batch.size());
+            largestBatch.accumulate(batch.size());
+            for (Entry entry : batch) {
+                totalLag.add(now - entry.queuedAt);
+                maxLag.accumulate(now - entry.queuedAt);
+            }
+        } catch (TransactionException e) {
+            failedJobs.add(batch.size());
+            LOGGER.error("SQL statement failed: {}", e.getMessage());
+        } catch (Throwable e) {
+            failedJobs.add(batch.size());
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+        }
+    }
+
+    /**
+     * Writes all waiting jobs in the calling thread.
+     */
+    public void flush()
+    {
+        while (true) {
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+            }
+            write();
+        }
+    }
+
+    public void getInfo(Appendable appendable)
+    {
+        int queued;
+        long oldest;
+        synchronized (this) {
+            queued = queue.size();
+            oldest = queue.values().stream().findFirst().map(e -> System.currentTimeMillis() - e.queuedAt).orElse(0L);
+        }
+        long batchCount = batches.sum();
+        long saved = savedJobs.sum();
+        Formatter formatter = new Formatter(appendable);
+        formatter.format("    Queued                          : %d (max %d, oldest %d ms)\n", queued, maxQueued, oldest);
+        formatter.format("    Batches written                 : %d (max size %d, largest %d, average %.1f)\n",
+                         batchCount, maxBatchSize, largestBatch.get(),
+                         (batchCount == 0) ? 0.0 : (double) saved / batchCount);
+        formatter.format("    Requests written                : %d\n", saved);
+        formatter.format("    Requests failed                 : %d\n", failedJobs.sum());
+        formatter.format("    Requests skipped                : %d\n", droppedJobs.sum());
+        formatter.format("    Persistence lag                 : average %d ms, max %d ms\n",
+                         (saved == 0) ? 0 : totalLag.sum() / saved, maxLag.get());
+        formatter.flush();
+    }
+
+    @Override
+    public Set<Long> getLatestCompletedJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestCompletedJobIds(maxNum);
+    }
+
+    @Override
+    public Set<Long> getLatestFailedJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestFailedJobIds(maxNum);
+    }
+
+    @Override
+    public Set<Long> getLatestCanceledJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestCanceledJobIds(maxNum);
+    }
+
+    @Override
+    public Set<J> getActiveJobs() throws DataAccessException
+    {
+        return storage.getActiveJobs();
+    }
+}
@@ -153,6 +153,8 @@ public class Configuration {
     protected String qosConfigFile = null;
     private Integer maxQueuedJdbcTasksNum ; //null by default
     private Integer jdbcExecutionThreadNum;//null by default
+    private int jdbcBatchSize = 1;
+    private long jdbcBatchDelay;
     private String credentialsDirectory="/opt/d-cache/credentials";
     private boolean overwrite = false;
     private boolean overwrite_by_default = false;
@@ -704,6 +706,30 @@ public class Configuration {
         this.maxQueuedJdbcTasksNum = maxQueuedJdbcTasksNum;
     }
 
+    /**
+     * Returns the maximum number of requests written to the database in
+     * a single transaction. A value of 1 disables batching.
+     */
+    public int getJdbcBatchSize() {
+        return jdbcBatchSize;
+    }
+
+    public void setJdbcBatchSize(int jdbcBatchSize) {
+        this.jdbcBatchSize = jdbcBatchSize;
+    }
+
+    /**
+     * Returns the time in milliseconds updates of requests are collected
+     * before being written to the database.
+     */
+    public long getJdbcBatchDelay() {
+        return jdbcBatchDelay;
+    }
+
+    public void setJdbcBatchDelay(long jdbcBatchDelay) {
+        this.jdbcBatchDelay = jdbcBatchDelay;
+    }
+
     public String getCredentialsDirectory() {
         return credentialsDirectory;
     }
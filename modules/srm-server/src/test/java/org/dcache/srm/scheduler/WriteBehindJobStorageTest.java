@@ -0,0 +1,253 @@
+package org.dcache.srm.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.srm.request.Job;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.mockito.Mockito.*;
+
+public class WriteBehindJobStorageTest
+{
+    private JobStorage<Job> storage;
+    private List<Runnable> tasks;
+    private List<Runnable> delayedTasks;
+    private ScheduledExecutorService timer;
+    private WriteBehindJobStorage<Job> writeBehindStorage;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        storage = mock(JobStorage.class);
+        tasks = new ArrayList<>();
+        delayedTasks = new ArrayList<>();
+        timer = mock(ScheduledExecutorService.class);
+        when(timer.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).then(invocation -> {
+            delayedTasks.add(invocation.getArgument(0));
+            return null;
+        });
+        writeBehindStorage = new WriteBehindJobStorage<>(storage, new ListExecutor(tasks), timer, 100, 3, 5);
+    }
+
+    @Test
+    public void whenSavingWithoutForceThenJobsAreWrittenAfterDelay() throws Exception
+    {
+        Job job1 = job(1);
+        Job job2 = job(2);
+
+        writeBehindStorage.saveJob(job1, false);
+        writeBehindStorage.saveJob(job2, false);
+
+        verify(timer).schedule(any(Runnable.class), eq(100L), eq(TimeUnit.MILLISECONDS));
+        assertNoTasks();
+
+        runDelayedTasks();
+        runTasks();
+
+        verify(storage).saveJobs(asList(job1, job2));
+        verify(storage, never()).saveJob(any(Job.class), anyBoolean());
+    }
+
+    @Test
+    public void whenSavingTwiceThenJobIsWrittenOnce() throws Exception
+    {
+        Job job = job(1);
+
+        writeBehindStorage.saveJob(job, false);
+        writeBehindStorage.saveJob(job, false);
+        runDelayedTasks();
+        runTasks();
+
+        verify(storage).saveJobs(singletonList(job));
+    }
+
+    @Test
+    public void whenSavingWithForceThenJobsAreWrittenWithoutDelay() throws Exception
+    {
+        Job job1 = job(1);
+        Job job2 = job(2);
+
+        writeBehindStorage.saveJob(job1, false);
+        writeBehindStorage.saveJob(job2, true);
+        runTasks();
+
+        verify(storage).saveJobs(asList(job1, job2));
+    }
+
+    @Test
+    public void whenSavingWithoutAndWithForceThenJobIsWrittenWithoutDelay() throws Exception
+    {
+        Job job = job(1);
+
+        writeBehindStorage.saveJob(job, false);
+        writeBehindStorage.saveJob(job, true);
+        runTasks();
+
+        verify(storage).saveJobs(singletonList(job));
+    }
+
+    @Test
+    public void whenBatchIsFullThenJobsAreWrittenWithoutDelay() throws Exception
+    {
+        Job job1 = job(1);
+        Job job2 = job(2);
+        Job job3 = job(3);
+        Job job4 = job(4);
+
+        writeBehindStorage.saveJob(job1, false);
+        writeBehindStorage.saveJob(job2, false);
+        writeBehindStorage.saveJob(job3, false);
+        writeBehindStorage.saveJob(job4, false);
+        runTasks();
+
+        verify(storage).saveJobs(asList(job1, job2, job3));
+        verify(storage, never()).saveJobs(singletonList(job4));
+
+        runDelayedTasks();
+        runTasks();
+
+        verify(storage).saveJobs(singletonList(job4));
+    }
+
+    @Test
+    public void whenQueueIsFullThenSaveWithoutForceIsSkipped() throws Exception
+    {
+        for (int i = 0; i < 5; i++) {
+            writeBehindStorage.saveJob(job(i), false);
+        }
+        Job job = job(5);
+
+        writeBehindStorage.saveJob(job, false);
+        runDelayedTasks();
+        runTasks();
+
+        verify(storage, never()).saveJobs(argThat((Collection<Job> jobs) -> jobs.contains(job)));
+    }
+
+    @Test
+    public void whenQueueIsFullThenForcedSaveIsStillExecuted() throws Exception
+    {
+        Executor executor = mock(Executor.class);
+        writeBehindStorage = new WriteBehindJobStorage<>(storage, executor, timer, 100, 10, 1);
+        writeBehindStorage.saveJob(job(1), false);
+
+        Job job = job(2);
+
+        writeBehindStorage.saveJob(job, true);
+
+        verify(storage).saveJobs(singletonList(job));
+    }
+
+    @Test
+    public void whenQueueIsFullThenForcedSaveWritesOnlyItsOwnJob() throws Exception
+    {
+        writeBehindStorage = new WriteBehindJobStorage<>(storage, new ListExecutor(tasks), timer, 100, 10, 2);
+        Job job1 = job(1);
+        Job job2 = job(2);
+        Job job3 = job(3);
+        writeBehindStorage.saveJob(job1, false);
+        writeBehindStorage.saveJob(job2, false);
+
+        writeBehindStorage.saveJob(job3, true);
+
+        verify(storage).saveJobs(singletonList(job3));
+        verify(storage, never()).saveJobs(argThat((Collection<Job> jobs) -> jobs.contains(job1)));
+
+        runDelayedTasks();
+        runTasks();
+
+        verify(storage).saveJobs(asList(job1, job2));
+    }
+
+    @Test
+    public void whenQueueIsFullThenForcedSaveOfJobBeingWrittenIsQueued() throws Exception
+    {
+        writeBehindStorage = new WriteBehindJobStorage<>(storage, new ListExecutor(tasks), timer, 100, 10, 1);
+        Job job1 = job(1);
+        Job job2 = job(2);
+        doAnswer(invocation -> {
+            writeBehindStorage.saveJob(job2, false);
+            writeBehindStorage.saveJob(job1, true);
+            return null;
+        }).doNothing().when(storage).saveJobs(singletonList(job1));
+        writeBehindStorage.saveJob(job1, true);
+
+        runTasks();
+
+        verify(storage, times(1)).saveJobs(singletonList(job1));
+
+        runTasks();
+
+        verify(storage).saveJobs(asList(job2, job1));
+    }
+
+    @Test
+    public void whenFlushingThenAllJobsAreWritten() throws Exception
+    {
+        for (int i = 0; i < 5; i++) {
+            writeBehindStorage.saveJob(job(i), false);
+        }
+
+        writeBehindStorage.flush();
+
+        verify(storage, times(2)).saveJobs(anyCollection());
+    }
+
+    private static Job job(long id)
+    {
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn(id);
+        return job;
+    }
+
+    private void assertNoTasks()
+    {
+        verify(storage, never()).saveJobs(anyCollection());
+        if (!tasks.isEmpty()) {
+            throw new AssertionError("Unexpected task: " + tasks);
+        }
+    }
+
+    private void runTasks()
+    {
+        List<Runnable> current = new ArrayList<>(tasks);
+        tasks.clear();
+        for (Runnable task : current) {
+            task.run();
+        }
+    }
+
+    private void runDelayedTasks()
+    {
+        List<Runnable> current = new ArrayList<>(delayedTasks);
+        delayedTasks.clear();
+        for (Runnable task : current) {
+            task.run();
+        }
+    }
+
+    private static class ListExecutor implements Executor
+    {
+        private final List<Runnable> tasks;
+
+        private ListExecutor(List<Runnable> tasks)
+        {
+            this.tasks = tasks;
+        }
+
+        @Override
+        public void execute(Runnable command)
+        {
+            tasks.add(command);
+        }
+    }
+}